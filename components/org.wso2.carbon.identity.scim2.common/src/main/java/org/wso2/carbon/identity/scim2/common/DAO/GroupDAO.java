@@ -22,7 +22,6 @@ import org.apache.commons.lang.StringUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.wso2.carbon.CarbonConstants;
-import org.wso2.carbon.identity.core.util.IdentityDatabaseUtil;
 import org.wso2.carbon.identity.scim2.common.exceptions.IdentitySCIMException;
 import org.wso2.carbon.identity.scim2.common.utils.SCIMCommonUtils;
 import org.wso2.carbon.user.core.UserCoreConstants;
@@ -33,6 +32,7 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -46,6 +46,8 @@ import java.util.Set;
 public class GroupDAO {
 
     private static Log log = LogFactory.getLog(GroupDAO.class);
+    // Maximum number of group names bound to a single IN clause.
+    private static final int MAX_GROUP_NAMES_PER_QUERY = 100;
 
     /**
      * Lists the groups that are created from SCIM
@@ -54,7 +56,7 @@ public class GroupDAO {
      * @throws IdentitySCIMException
      */
     public Set<String> listSCIMGroups() throws IdentitySCIMException {
-        Connection connection = IdentityDatabaseUtil.getDBConnection();
+        Connection connection = UnitOfWork.getDBConnection("listSCIMGroups");
         PreparedStatement prepStmt = null;
         ResultSet resultSet = null;
         Set<String> groups = new HashSet<>();
@@ -73,14 +75,14 @@ public class GroupDAO {
         } catch (SQLException e) {
             throw new IdentitySCIMException("Error when reading the SCIM Group information from persistence store.", e);
         } finally {
-            IdentityDatabaseUtil.closeAllConnections(connection, resultSet, prepStmt);
+            UnitOfWork.closeAllConnections(connection, resultSet, prepStmt);
         }
         return groups;
     }
 
     public boolean isExistingGroup(String groupName, int tenantId) throws IdentitySCIMException {
 
-        Connection connection = IdentityDatabaseUtil.getDBConnection();
+        Connection connection = UnitOfWork.getDBConnection("isExistingGroup");
         PreparedStatement prepStmt = null;
         ResultSet rSet = null;
 
@@ -98,56 +100,129 @@ public class GroupDAO {
             if (rSet.next()) {
                 isExistingGroup = true;
             }
-            connection.commit();
+            UnitOfWork.commit(connection);
         } catch (SQLException e) {
             throw new IdentitySCIMException("Error when reading the group information from the persistence store.", e);
         } finally {
-            IdentityDatabaseUtil.closeAllConnections(connection, rSet, prepStmt);
+            UnitOfWork.closeAllConnections(connection, rSet, prepStmt);
         }
         return isExistingGroup;
     }
 
-    private boolean isExistingAttribute(String attributeName, String groupName, int tenantId)
+    /**
+     * Find which of the given groups have SCIM attributes, querying up to a hundred groups at a time.
+     *
+     * @param tenantId   Tenant id.
+     * @param groupNames Group names with the user store domain.
+     * @return Names of the groups which have SCIM attributes, as stored in the identity table.
+     * @throws IdentitySCIMException
+     */
+    public Set<String> getExistingGroupNames(int tenantId, Collection<String> groupNames)
+            throws IdentitySCIMException {
+
+        Set<String> existingGroupNames = new HashSet<>();
+        List<String> groupNameList = new ArrayList<>(groupNames);
+        for (int fromIndex = 0; fromIndex < groupNameList.size(); fromIndex += MAX_GROUP_NAMES_PER_QUERY) {
+            List<String> groupNamesOfQuery = groupNameList.subList(fromIndex,
+                    Math.min(fromIndex + MAX_GROUP_NAMES_PER_QUERY, groupNameList.size()));
+            addExistingGroupNames(tenantId, groupNamesOfQuery, existingGroupNames);
+        }
+        return existingGroupNames;
+    }
+
+    private void addExistingGroupNames(int tenantId, List<String> groupNames, Set<String> existingGroupNames)
             throws IdentitySCIMException {
-        Connection connection = IdentityDatabaseUtil.getDBConnection();
+
+        StringBuilder sql = new StringBuilder(SQLQueries.LIST_EXISTING_GROUPS_SQL);
+        for (int i = 0; i < groupNames.size(); i++) {
+            sql.append(i == 0 ? "?" : ", ?");
+        }
+        sql.append(")");
+
+        Connection connection = UnitOfWork.getDBConnection("getExistingGroupNames");
         PreparedStatement prepStmt = null;
         ResultSet rSet = null;
-        boolean isExistingAttribute = false;
+        try {
+            prepStmt = connection.prepareStatement(sql.toString());
+            prepStmt.setInt(1, tenantId);
+            // Specifically checking SCIM 2.0 ID attribute to avoid conflict with SCIM 1.1
+            prepStmt.setString(2, SCIMConstants.CommonSchemaConstants.ID_URI);
+            for (int i = 0; i < groupNames.size(); i++) {
+                prepStmt.setString(i + 3, groupNames.get(i));
+            }
+            rSet = prepStmt.executeQuery();
+            while (rSet.next()) {
+                existingGroupNames.add(rSet.getString(1));
+            }
+            UnitOfWork.commit(connection);
+        } catch (SQLException e) {
+            throw new IdentitySCIMException("Error when reading the group information from the persistence store.", e);
+        } finally {
+            UnitOfWork.closeAllConnections(connection, rSet, prepStmt);
+        }
+    }
+
+    /**
+     * Read the names of the attributes stored for the group, to check the existence of the group and its attributes
+     * with a single query.
+     *
+     * @param groupName Group name with the user store domain.
+     * @param tenantId  Tenant id.
+     * @return Names of the existing attributes of the group.
+     * @throws IdentitySCIMException
+     */
+    private Set<String> getExistingAttributeNames(String groupName, int tenantId) throws IdentitySCIMException {
+        Connection connection = UnitOfWork.getDBConnection("getExistingAttributeNames");
+        PreparedStatement prepStmt = null;
+        ResultSet rSet = null;
+        Set<String> attributeNames = new HashSet<>();
 
         try {
-            prepStmt = connection.prepareStatement(SQLQueries.CHECK_EXISTING_ATTRIBUTE_SQL);
+            prepStmt = connection.prepareStatement(SQLQueries.GET_ATTRIBUTE_NAMES_SQL);
             prepStmt.setInt(1, tenantId);
             prepStmt.setString(2, SCIMCommonUtils.getGroupNameWithDomain(groupName));
-            prepStmt.setString(3, attributeName);
 
             rSet = prepStmt.executeQuery();
-            if (rSet.next()) {
-                isExistingAttribute = true;
+            while (rSet.next()) {
+                attributeNames.add(rSet.getString(1));
             }
-            connection.commit();
+            UnitOfWork.commit(connection);
         } catch (SQLException e) {
             throw new IdentitySCIMException("Error when reading the group attribute information from " +
                     "the persistence store.", e);
         } finally {
-            IdentityDatabaseUtil.closeAllConnections(connection, rSet, prepStmt);
+            UnitOfWork.closeAllConnections(connection, rSet, prepStmt);
         }
-        return isExistingAttribute;
+        return attributeNames;
     }
 
     public void addSCIMGroupAttributes(int tenantId, String roleName, Map<String, String> attributes)
             throws IdentitySCIMException {
-        Connection connection = IdentityDatabaseUtil.getDBConnection();
+        UnitOfWork unitOfWork = UnitOfWork.begin();
+        try {
+            addSCIMGroupAttributesInUnitOfWork(tenantId, roleName, attributes);
+            unitOfWork.commit();
+        } finally {
+            unitOfWork.end();
+        }
+    }
+
+    private void addSCIMGroupAttributesInUnitOfWork(int tenantId, String roleName, Map<String, String> attributes)
+            throws IdentitySCIMException {
+        Connection connection = UnitOfWork.getDBConnection("addSCIMGroupAttributes");
         PreparedStatement prepStmt = null;
 
-        if (!isExistingGroup(SCIMCommonUtils.getGroupNameWithDomain(roleName), tenantId)) {
+        Set<String> existingAttributeNames = getExistingAttributeNames(
+                SCIMCommonUtils.getGroupNameWithDomain(roleName), tenantId);
+        // Specifically checking SCIM 2.0 ID attribute to avoid conflict with SCIM 1.1
+        if (!existingAttributeNames.contains(SCIMConstants.CommonSchemaConstants.ID_URI)) {
             try {
                 prepStmt = connection.prepareStatement(SQLQueries.ADD_ATTRIBUTES_SQL);
                 prepStmt.setInt(1, tenantId);
                 prepStmt.setString(2, roleName);
 
                 for (Map.Entry<String, String> entry : attributes.entrySet()) {
-                    if (!isExistingAttribute(entry.getKey(),
-                            SCIMCommonUtils.getGroupNameWithDomain(roleName), tenantId)) {
+                    if (!existingAttributeNames.contains(entry.getKey())) {
                         prepStmt.setString(3, entry.getKey());
                         prepStmt.setString(4, entry.getValue());
                         prepStmt.addBatch();
@@ -159,13 +234,13 @@ public class GroupDAO {
                     }
                 }
                 prepStmt.executeBatch();
-                connection.commit();
+                UnitOfWork.commit(connection);
 
             } catch (SQLException e) {
                 throw new IdentitySCIMException("Error when adding SCIM attributes for the group: "
                         + roleName, e);
             } finally {
-                IdentityDatabaseUtil.closeAllConnections(connection, null, prepStmt);
+                UnitOfWork.closeAllConnections(connection, null, prepStmt);
             }
         } else {
             throw new IdentitySCIMException("Error when adding SCIM Attributes for the group: "
@@ -173,13 +248,63 @@ public class GroupDAO {
         }
     }
 
+    /**
+     * Add the SCIM attributes of many groups in a single batch. The caller should make sure that the groups do not
+     * have SCIM attributes, e.g. with {@link #getExistingGroupNames(int, Collection)}.
+     *
+     * @param tenantId           Tenant id.
+     * @param attributesOfGroups SCIM attributes by the group names with the user store domain.
+     * @throws IdentitySCIMException
+     */
+    public void addSCIMGroupAttributesInBatch(int tenantId, Map<String, Map<String, String>> attributesOfGroups)
+            throws IdentitySCIMException {
+
+        if (attributesOfGroups.isEmpty()) {
+            return;
+        }
+        Connection connection = UnitOfWork.getDBConnection("addSCIMGroupAttributesInBatch");
+        PreparedStatement prepStmt = null;
+        try {
+            prepStmt = connection.prepareStatement(SQLQueries.ADD_ATTRIBUTES_SQL);
+            prepStmt.setInt(1, tenantId);
+            for (Map.Entry<String, Map<String, String>> attributesOfGroup : attributesOfGroups.entrySet()) {
+                prepStmt.setString(2, attributesOfGroup.getKey());
+                for (Map.Entry<String, String> entry : attributesOfGroup.getValue().entrySet()) {
+                    prepStmt.setString(3, entry.getKey());
+                    prepStmt.setString(4, entry.getValue());
+                    prepStmt.addBatch();
+                }
+            }
+            prepStmt.executeBatch();
+            UnitOfWork.commit(connection);
+        } catch (SQLException e) {
+            throw new IdentitySCIMException("Error when adding SCIM attributes for the groups: "
+                    + attributesOfGroups.keySet(), e);
+        } finally {
+            UnitOfWork.closeAllConnections(connection, null, prepStmt);
+        }
+    }
+
     public void updateSCIMGroupAttributes(int tenantId, String roleName,
                                           Map<String, String> attributes) throws IdentitySCIMException {
+        UnitOfWork unitOfWork = UnitOfWork.begin();
+        try {
+            updateSCIMGroupAttributesInUnitOfWork(tenantId, roleName, attributes);
+            unitOfWork.commit();
+        } finally {
+            unitOfWork.end();
+        }
+    }
 
-        Connection connection = IdentityDatabaseUtil.getDBConnection();
+    private void updateSCIMGroupAttributesInUnitOfWork(int tenantId, String roleName, Map<String, String> attributes)
+            throws IdentitySCIMException {
+
+        Connection connection = UnitOfWork.getDBConnection("updateSCIMGroupAttributes");
         PreparedStatement prepStmt = null;
 
-        if (isExistingGroup(SCIMCommonUtils.getGroupNameWithDomain(roleName), tenantId)) {
+        Set<String> existingAttributeNames = getExistingAttributeNames(
+                SCIMCommonUtils.getGroupNameWithDomain(roleName), tenantId);
+        if (existingAttributeNames.contains(SCIMConstants.CommonSchemaConstants.ID_URI)) {
             try {
                 prepStmt = connection.prepareStatement(SQLQueries.UPDATE_ATTRIBUTES_SQL);
 
@@ -187,8 +312,7 @@ public class GroupDAO {
                 prepStmt.setString(3, roleName);
 
                 for (Map.Entry<String, String> entry : attributes.entrySet()) {
-                    if (isExistingAttribute(entry.getKey(),
-                            SCIMCommonUtils.getGroupNameWithDomain(roleName), tenantId)) {
+                    if (existingAttributeNames.contains(entry.getKey())) {
                         prepStmt.setString(4, entry.getKey());
                         prepStmt.setString(1, entry.getValue());
                         prepStmt.addBatch();
@@ -203,12 +327,12 @@ public class GroupDAO {
                 if (log.isDebugEnabled()) {
                     log.debug("No. of records updated for updating SCIM Group : " + return_count.length);
                 }
-                connection.commit();
+                UnitOfWork.commit(connection);
 
             } catch (SQLException e) {
                 throw new IdentitySCIMException("Error updating the SCIM Group Attributes.", e);
             } finally {
-                IdentityDatabaseUtil.closeAllConnections(connection, null, prepStmt);
+                UnitOfWork.closeAllConnections(connection, null, prepStmt);
             }
         } else {
             throw new IdentitySCIMException("Error when updating SCIM Attributes for the group: "
@@ -216,8 +340,62 @@ public class GroupDAO {
         }
     }
 
+    /**
+     * Set an attribute of many groups to the same value, updating up to a hundred groups with a single statement.
+     * Groups which do not have the attribute are skipped.
+     *
+     * @param tenantId       Tenant id.
+     * @param groupNames     Group names as stored in the identity table.
+     * @param attributeName  Attribute name.
+     * @param attributeValue New value of the attribute.
+     * @throws IdentitySCIMException
+     */
+    public void updateSCIMGroupAttribute(int tenantId, Collection<String> groupNames, String attributeName,
+                                         String attributeValue) throws IdentitySCIMException {
+
+        List<String> groupNameList = new ArrayList<>(groupNames);
+        for (int fromIndex = 0; fromIndex < groupNameList.size(); fromIndex += MAX_GROUP_NAMES_PER_QUERY) {
+            List<String> groupNamesOfQuery = groupNameList.subList(fromIndex,
+                    Math.min(fromIndex + MAX_GROUP_NAMES_PER_QUERY, groupNameList.size()));
+            updateSCIMGroupAttributeOfGroups(tenantId, groupNamesOfQuery, attributeName, attributeValue);
+        }
+    }
+
+    private void updateSCIMGroupAttributeOfGroups(int tenantId, List<String> groupNames, String attributeName,
+                                                  String attributeValue) throws IdentitySCIMException {
+
+        StringBuilder sql = new StringBuilder(SQLQueries.UPDATE_ATTRIBUTE_OF_GROUPS_SQL);
+        for (int i = 0; i < groupNames.size(); i++) {
+            sql.append(i == 0 ? "?" : ", ?");
+        }
+        sql.append(")");
+
+        Connection connection = UnitOfWork.getDBConnection("updateSCIMGroupAttribute");
+        PreparedStatement prepStmt = null;
+        try {
+            prepStmt = connection.prepareStatement(sql.toString());
+            prepStmt.setString(1, attributeValue);
+            prepStmt.setInt(2, tenantId);
+            prepStmt.setString(3, attributeName);
+            for (int i = 0; i < groupNames.size(); i++) {
+                prepStmt.setString(i + 4, groupNames.get(i));
+            }
+            int updatedCount = prepStmt.executeUpdate();
+            if (log.isDebugEnabled()) {
+                log.debug("No. of records updated for updating the attribute " + attributeName + " of SCIM " +
+                        "Groups : " + updatedCount);
+            }
+            UnitOfWork.commit(connection);
+        } catch (SQLException e) {
+            throw new IdentitySCIMException("Error updating the attribute " + attributeName + " of the SCIM " +
+                    "Groups: " + groupNames, e);
+        } finally {
+            UnitOfWork.closeAllConnections(connection, null, prepStmt);
+        }
+    }
+
     public void removeSCIMGroup(int tenantId, String roleName) throws IdentitySCIMException {
-        Connection connection = IdentityDatabaseUtil.getDBConnection();
+        Connection connection = UnitOfWork.getDBConnection("removeSCIMGroup");
         PreparedStatement prepStmt = null;
 
         try {
@@ -226,19 +404,19 @@ public class GroupDAO {
             prepStmt.setString(2, SCIMCommonUtils.getGroupNameWithDomain(roleName));
 
             prepStmt.execute();
-            connection.commit();
+            UnitOfWork.commit(connection);
 
         } catch (SQLException e) {
             log.error("Error when executing the SQL : " + SQLQueries.DELETE_GROUP_SQL);
             throw new IdentitySCIMException("Error deleting the SCIM Group.", e);
         } finally {
-            IdentityDatabaseUtil.closeAllConnections(connection, null, prepStmt);
+            UnitOfWork.closeAllConnections(connection, null, prepStmt);
         }
     }
 
     public Map<String, String> getSCIMGroupAttributes(int tenantId, String roleName)
             throws IdentitySCIMException {
-        Connection connection = IdentityDatabaseUtil.getDBConnection();
+        Connection connection = UnitOfWork.getDBConnection("getSCIMGroupAttributes");
         PreparedStatement prepStmt = null;
         ResultSet rSet = null;
         Map<String, String> attributes = new HashMap<>();
@@ -254,19 +432,19 @@ public class GroupDAO {
                     attributes.put(rSet.getString(1), rSet.getString(2));
                 }
             }
-            connection.commit();
+            UnitOfWork.commit(connection);
         } catch (SQLException e) {
             log.error("Error when executing the SQL : " + SQLQueries.GET_ATTRIBUTES_SQL);
             throw new IdentitySCIMException("Error when reading the SCIM Group information from the " +
                     "persistence store.", e);
         } finally {
-            IdentityDatabaseUtil.closeAllConnections(connection, rSet, prepStmt);
+            UnitOfWork.closeAllConnections(connection, rSet, prepStmt);
         }
         return attributes;
     }
 
     public String getGroupNameById(int tenantId, String id) throws IdentitySCIMException {
-        Connection connection = IdentityDatabaseUtil.getDBConnection();
+        Connection connection = UnitOfWork.getDBConnection("getGroupNameById");
         PreparedStatement prepStmt = null;
         ResultSet rSet = null;
         String roleName = null;
@@ -281,11 +459,11 @@ public class GroupDAO {
                 //we assume only one result since group id and tenant id is unique.
                 roleName = rSet.getString(1);
             }
-            connection.commit();
+            UnitOfWork.commit(connection);
         } catch (SQLException e) {
             throw new IdentitySCIMException("Error when reading the SCIM Group information from the persistence store.", e);
         } finally {
-            IdentityDatabaseUtil.closeAllConnections(connection, rSet, prepStmt);
+            UnitOfWork.closeAllConnections(connection, rSet, prepStmt);
         }
         if (StringUtils.isNotEmpty(roleName)) {
             return SCIMCommonUtils.getPrimaryFreeGroupName(roleName);
@@ -295,7 +473,7 @@ public class GroupDAO {
 
     public void updateRoleName(int tenantId, String oldRoleName, String newRoleName)
             throws IdentitySCIMException {
-        Connection connection = IdentityDatabaseUtil.getDBConnection();
+        Connection connection = UnitOfWork.getDBConnection("updateRoleName");
         PreparedStatement prepStmt = null;
 
         if (isExistingGroup(SCIMCommonUtils.getGroupNameWithDomain(oldRoleName), tenantId)) {
@@ -310,11 +488,11 @@ public class GroupDAO {
                 if (log.isDebugEnabled()) {
                     log.debug("No. of records updated for updating SCIM Group : " + count);
                 }
-                connection.commit();
+                UnitOfWork.commit(connection);
             } catch (SQLException e) {
                 throw new IdentitySCIMException("Error updating the SCIM Group Attributes", e);
             } finally {
-                IdentityDatabaseUtil.closeAllConnections(connection, null, prepStmt);
+                UnitOfWork.closeAllConnections(connection, null, prepStmt);
             }
         } else {
             throw new IdentitySCIMException("Error when updating role name of the role: " + oldRoleName);
@@ -330,26 +508,25 @@ public class GroupDAO {
             throws IdentitySCIMException {
 
         List<String> roleList = new ArrayList<>();
-        try (Connection connection = IdentityDatabaseUtil.getDBConnection()) {
-            try (PreparedStatement prepStmt =
-                         connection.prepareStatement(SQLQueries.LIST_SCIM_GROUPS_SQL_BY_ATT_AND_ATT_VALUE)) {
+        Connection connection = UnitOfWork.getDBConnection("getGroupNameList");
+        PreparedStatement prepStmt = null;
+        ResultSet rSet = null;
+        try {
+            prepStmt = connection.prepareStatement(SQLQueries.LIST_SCIM_GROUPS_SQL_BY_ATT_AND_ATT_VALUE);
+            prepStmt.setInt(1, tenantId);
+            prepStmt.setString(2, searchAttributeName);
+            prepStmt.setString(3, searchAttributeValue);
 
-                prepStmt.setInt(1, tenantId);
-                prepStmt.setString(2, searchAttributeName);
-                prepStmt.setString(3, searchAttributeValue);
-
-                try (ResultSet rSet = prepStmt.executeQuery()) {
-                    while (rSet.next()) {
-                        String roleName = rSet.getString(1);
-                        if (StringUtils.isNotEmpty(roleName)) {
-                            if (!roleName.toLowerCase().contains(UserCoreConstants.INTERNAL_DOMAIN.toLowerCase())
-                                    && roleName.contains(CarbonConstants.DOMAIN_SEPARATOR)) {
-                                String[] parts = roleName.split(CarbonConstants.DOMAIN_SEPARATOR);
-                                roleList.add(parts[parts.length - 1]);
-                            } else {
-                                roleList.add(roleName);
-                            }
-                        }
+            rSet = prepStmt.executeQuery();
+            while (rSet.next()) {
+                String roleName = rSet.getString(1);
+                if (StringUtils.isNotEmpty(roleName)) {
+                    if (!roleName.toLowerCase().contains(UserCoreConstants.INTERNAL_DOMAIN.toLowerCase())
+                            && roleName.contains(CarbonConstants.DOMAIN_SEPARATOR)) {
+                        String[] parts = roleName.split(CarbonConstants.DOMAIN_SEPARATOR);
+                        roleList.add(parts[parts.length - 1]);
+                    } else {
+                        roleList.add(roleName);
                     }
                 }
             }
@@ -357,6 +534,8 @@ public class GroupDAO {
             log.error("Error when executing the SQL : " + SQLQueries.LIST_SCIM_GROUPS_SQL_BY_ATT_AND_ATT_VALUE);
             throw new IdentitySCIMException("Error when reading the SCIM Group information from the " +
                     "persistence store.", e);
+        } finally {
+            UnitOfWork.closeAllConnections(connection, rSet, prepStmt);
         }
         return roleList.toArray(new String[roleList.size()]);
     }
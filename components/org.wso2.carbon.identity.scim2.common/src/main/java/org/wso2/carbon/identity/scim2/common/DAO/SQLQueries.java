@@ -26,6 +26,8 @@ public class SQLQueries {
     public static final String GET_ATTRIBUTES_SQL =
             "SELECT ATTR_NAME, ATTR_VALUE FROM IDN_SCIM_GROUP WHERE IDN_SCIM_GROUP.TENANT_ID=? AND " +
                     "IDN_SCIM_GROUP.ROLE_NAME=?";
+    public static final String GET_ATTRIBUTE_NAMES_SQL =
+            "SELECT ATTR_NAME FROM IDN_SCIM_GROUP WHERE IDN_SCIM_GROUP.TENANT_ID=? AND IDN_SCIM_GROUP.ROLE_NAME=?";
     public static final String GET_GROUP_NAME_BY_ID_SQL =
             "SELECT ROLE_NAME FROM IDN_SCIM_GROUP WHERE IDN_SCIM_GROUP.TENANT_ID=? AND " +
                     "IDN_SCIM_GROUP.ATTR_VALUE=? AND IDN_SCIM_GROUP.ATTR_NAME=?";
@@ -33,6 +35,8 @@ public class SQLQueries {
             "INSERT INTO IDN_SCIM_GROUP (TENANT_ID, ROLE_NAME, ATTR_NAME, ATTR_VALUE) VALUES (?, ?, ?, ?)";
     public static final String UPDATE_ATTRIBUTES_SQL =
             "UPDATE IDN_SCIM_GROUP SET UM_ATTR_VALUE=? WHERE TENANT_ID=? AND ROLE_NAME=? AND ATTR_NAME=?";
+    public static final String UPDATE_ATTRIBUTE_OF_GROUPS_SQL =
+            "UPDATE IDN_SCIM_GROUP SET ATTR_VALUE=? WHERE TENANT_ID=? AND ATTR_NAME=? AND ROLE_NAME IN (";
     public static final String UPDATE_GROUP_NAME_SQL =
             "UPDATE IDN_SCIM_GROUP SET ROLE_NAME=? WHERE TENANT_ID=? AND ROLE_NAME=?";
     public static final String DELETE_GROUP_SQL =
@@ -40,6 +44,9 @@ public class SQLQueries {
     public static final String CHECK_EXISTING_ATTRIBUTE_SQL =
             "SELECT TENANT_ID, ROLE_NAME, ATTR_NAME FROM IDN_SCIM_GROUP WHERE IDN_SCIM_GROUP.TENANT_ID=? AND " +
                     "IDN_SCIM_GROUP.ROLE_NAME=? AND IDN_SCIM_GROUP.ATTR_NAME=?";
+    public static final String LIST_EXISTING_GROUPS_SQL =
+            "SELECT ROLE_NAME FROM IDN_SCIM_GROUP WHERE IDN_SCIM_GROUP.TENANT_ID=? AND " +
+                    "IDN_SCIM_GROUP.ATTR_NAME=? AND IDN_SCIM_GROUP.ROLE_NAME IN (";
     public static final String LIST_SCIM_GROUPS_SQL_BY_ATT_AND_ATT_VALUE =
             "SELECT ROLE_NAME FROM IDN_SCIM_GROUP WHERE IDN_SCIM_GROUP.TENANT_ID=? AND " +
                     "IDN_SCIM_GROUP.ATTR_NAME=? AND ATTR_VALUE LIKE ?";
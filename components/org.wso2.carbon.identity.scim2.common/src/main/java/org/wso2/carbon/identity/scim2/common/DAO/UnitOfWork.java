@@ -0,0 +1,192 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.scim2.common.DAO;
+
+import org.wso2.carbon.identity.core.util.IdentityDatabaseUtil;
+import org.wso2.carbon.identity.scim2.common.exceptions.IdentitySCIMException;
+import org.wso2.carbon.identity.scim2.common.metrics.SCIMOperationContext;
+import org.wso2.carbon.identity.scim2.common.metrics.SCIMRequestContext;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Unit of work which lets the DAO calls of one logical SCIM operation share a single identity database connection
+ * and transaction. While a unit of work is active on the thread, the DAO methods use its connection and leave the
+ * commit and the closing of the connection to the unit of work. The connection is borrowed when a DAO method first
+ * needs it, so a unit of work in which no DAO method reaches the database does not use a connection.
+ *
+ * Units of work can be nested, in which case the inner units join the outermost one. Always end a unit of work in a
+ * finally block:
+ * <pre>
+ * UnitOfWork unitOfWork = UnitOfWork.begin();
+ * try {
+ *     ...
+ *     unitOfWork.commit();
+ * } finally {
+ *     unitOfWork.end();
+ * }
+ * </pre>
+ * The transaction is rolled back if any of the nested units of work ends without being committed.
+ */
+public class UnitOfWork {
+
+    private static final ThreadLocal<UnitOfWork> currentUnitOfWork = new ThreadLocal<>();
+
+    private Connection connection;
+    private int depth;
+    private boolean committed;
+    private boolean rollbackOnly;
+
+    /**
+     * Begin a unit of work, or join the unit of work active on the thread.
+     *
+     * @return Unit of work.
+     */
+    public static UnitOfWork begin() {
+
+        UnitOfWork unitOfWork = currentUnitOfWork.get();
+        if (unitOfWork == null) {
+            unitOfWork = new UnitOfWork();
+            currentUnitOfWork.set(unitOfWork);
+        }
+        unitOfWork.depth++;
+        unitOfWork.committed = false;
+        return unitOfWork;
+    }
+
+    /**
+     * Commit the work done in this unit of work. The transaction is committed when the outermost unit of work is
+     * committed.
+     *
+     * @throws IdentitySCIMException if the transaction could not be committed.
+     */
+    public void commit() throws IdentitySCIMException {
+
+        if (depth == 1 && connection != null) {
+            if (rollbackOnly) {
+                throw new IdentitySCIMException("Error when committing the SCIM group information. The transaction " +
+                        "is rolled back as a part of it failed.");
+            }
+            try {
+                connection.commit();
+            } catch (SQLException e) {
+                throw new IdentitySCIMException("Error when committing the SCIM group information to the " +
+                        "persistence store.", e);
+            }
+        }
+        committed = true;
+    }
+
+    /**
+     * End this unit of work. The transaction is rolled back unless it is committed, and the connection is closed
+     * when the outermost unit of work ends.
+     */
+    public void end() {
+
+        if (!committed) {
+            rollbackOnly = true;
+        }
+        committed = false;
+        depth--;
+        if (depth > 0) {
+            return;
+        }
+        currentUnitOfWork.remove();
+        if (connection == null) {
+            return;
+        }
+        if (rollbackOnly) {
+            IdentityDatabaseUtil.rollBack(connection);
+        }
+        IdentityDatabaseUtil.closeConnection(connection);
+    }
+
+    /**
+     * Get the connection of the unit of work active on the thread, or a new connection if there is none. Each DAO
+     * method gets the connection first, which starts the timing of the DAO call for the SCIM request running on the
+     * thread. A DAO method called by another one is timed as a part of the outer call.
+     *
+     * @param daoMethod Name of the DAO method, to record the call against.
+     * @return Database connection.
+     */
+    static Connection getDBConnection(String daoMethod) {
+
+        SCIMRequestContext.startIdentityDBCall(daoMethod);
+        try {
+            UnitOfWork unitOfWork = currentUnitOfWork.get();
+            if (unitOfWork == null) {
+                return IdentityDatabaseUtil.getDBConnection();
+            }
+            if (unitOfWork.connection == null) {
+                unitOfWork.connection = IdentityDatabaseUtil.getDBConnection();
+            }
+            return unitOfWork.connection;
+        } catch (RuntimeException e) {
+            // The connection is not closed by the DAO method, which ends the timing of the call.
+            SCIMRequestContext.endIdentityDBCall();
+            throw e;
+        }
+    }
+
+    /**
+     * Commit the connection, unless it belongs to a unit of work which commits it at the end.
+     *
+     * @param connection Database connection.
+     * @throws SQLException
+     */
+    static void commit(Connection connection) throws SQLException {
+
+        if (!isUnitOfWorkConnection(connection)) {
+            connection.commit();
+        }
+    }
+
+    /**
+     * Close the result set and the statement, and the connection unless it belongs to a unit of work. Each DAO method
+     * executes its statement, or batch of statements, in a single round trip, which is counted as a query of the SCIM
+     * operation running on the thread. This ends the timing of the DAO call.
+     *
+     * @param connection Database connection.
+     * @param resultSet  Result set, or null.
+     * @param prepStmt   Prepared statement, or null.
+     */
+    static void closeAllConnections(Connection connection, ResultSet resultSet, PreparedStatement prepStmt) {
+
+        if (prepStmt != null) {
+            SCIMOperationContext.countIdentityDBQuery();
+        }
+
+        if (isUnitOfWorkConnection(connection)) {
+            IdentityDatabaseUtil.closeResultSet(resultSet);
+            IdentityDatabaseUtil.closeStatement(prepStmt);
+        } else {
+            IdentityDatabaseUtil.closeAllConnections(connection, resultSet, prepStmt);
+        }
+        SCIMRequestContext.endIdentityDBCall();
+    }
+
+    private static boolean isUnitOfWorkConnection(Connection connection) {
+
+        UnitOfWork unitOfWork = currentUnitOfWork.get();
+        return unitOfWork != null && unitOfWork.connection != null && unitOfWork.connection == connection;
+    }
+}
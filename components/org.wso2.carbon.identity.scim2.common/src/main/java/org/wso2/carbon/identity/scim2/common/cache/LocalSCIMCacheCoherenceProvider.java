@@ -0,0 +1,33 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.scim2.common.cache;
+
+/**
+ * Default cache coherence provider which keeps the SCIM caches local to the node. Invalidations are not propagated,
+ * so the entries cached on the other nodes are refreshed only when they expire. This is only safe on a single node,
+ * which is why the SCIM caches are disabled unless they are enabled in the configuration.
+ */
+public class LocalSCIMCacheCoherenceProvider implements SCIMCacheCoherenceProvider {
+
+    @Override
+    public void publishInvalidation(String cacheName, int tenantId, String key, String value) {
+
+        // Nothing to publish as the caches are local to the node.
+    }
+}
@@ -0,0 +1,38 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.scim2.common.cache;
+
+/**
+ * Propagates invalidations of the SCIM caches to the other nodes of a cluster. An implementation registered as an
+ * OSGi service is picked by the SCIM common component. The receiving nodes should apply the invalidations with
+ * {@link SCIMTenantCache#invalidateLocally(int, String, String)} of the cache returned by
+ * {@link SCIMTenantCache#getCache(String)}.
+ */
+public interface SCIMCacheCoherenceProvider {
+
+    /**
+     * Publish the invalidation of a mapping to the other nodes of the cluster.
+     *
+     * @param cacheName Name of the cache.
+     * @param tenantId  Tenant id.
+     * @param key       Invalidated key, or null.
+     * @param value     Invalidated value, or null.
+     */
+    void publishInvalidation(String cacheName, int tenantId, String key, String value);
+}
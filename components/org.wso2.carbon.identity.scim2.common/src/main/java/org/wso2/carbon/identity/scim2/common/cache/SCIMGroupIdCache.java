@@ -0,0 +1,144 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.scim2.common.cache;
+
+import org.wso2.carbon.user.core.UserCoreConstants;
+
+import java.util.Locale;
+
+/**
+ * Tenant scoped cache of the SCIM ids of groups to their role names. Role names are cached without the primary
+ * domain, as returned by the identity table. Mappings are added when the SCIM attributes of groups are added or read,
+ * and updated when groups are renamed or deleted.
+ */
+public class SCIMGroupIdCache extends SCIMTenantCache {
+
+    private static final String CACHE_NAME = "GroupIdCache";
+    private static final int DEFAULT_CAPACITY = 10000;
+    private static final int DEFAULT_TIME_TO_LIVE = 900;
+
+    private static volatile SCIMGroupIdCache instance;
+
+    private SCIMGroupIdCache() {
+
+        super(CACHE_NAME, DEFAULT_CAPACITY, DEFAULT_TIME_TO_LIVE);
+    }
+
+    public static SCIMGroupIdCache getInstance() {
+
+        if (instance == null) {
+            synchronized (SCIMGroupIdCache.class) {
+                if (instance == null) {
+                    instance = new SCIMGroupIdCache();
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * Get the role name of the group with the given SCIM id.
+     *
+     * @param tenantId Tenant id.
+     * @param groupId  SCIM id of the group.
+     * @return Role name without the primary domain, or null if the id is not cached.
+     */
+    public String getGroupName(int tenantId, String groupId) {
+
+        return getValue(tenantId, groupId);
+    }
+
+    /**
+     * Get the SCIM id of the group with the given role name.
+     *
+     * @param tenantId  Tenant id.
+     * @param groupName Role name with or without the primary domain.
+     * @return SCIM id of the group, or null if the role name is not cached.
+     */
+    public String getGroupId(int tenantId, String groupName) {
+
+        return getKey(tenantId, groupName);
+    }
+
+    /**
+     * Add the mapping of a group.
+     *
+     * @param tenantId  Tenant id.
+     * @param groupId   SCIM id of the group.
+     * @param groupName Role name with or without the primary domain.
+     */
+    public void addGroup(int tenantId, String groupId, String groupName) {
+
+        if (groupName == null) {
+            return;
+        }
+        put(tenantId, groupId, getPrimaryFreeGroupName(groupName));
+    }
+
+    /**
+     * Add the mapping of a group read from the identity table, unless a group was invalidated while it was read.
+     *
+     * @param tenantId                    Tenant id.
+     * @param groupId                     SCIM id of the group.
+     * @param groupName                   Role name with or without the primary domain.
+     * @param invalidationCountBeforeRead {@link #getInvalidationCount()} read before the group was read.
+     */
+    public void addGroup(int tenantId, String groupId, String groupName, long invalidationCountBeforeRead) {
+
+        if (groupName == null) {
+            return;
+        }
+        put(tenantId, groupId, getPrimaryFreeGroupName(groupName), invalidationCountBeforeRead);
+    }
+
+    /**
+     * Remove the mapping of the group from the cache.
+     *
+     * @param tenantId  Tenant id.
+     * @param groupName Role name with or without the primary domain.
+     */
+    public void invalidateGroup(int tenantId, String groupName) {
+
+        invalidate(tenantId, null, groupName);
+    }
+
+    /**
+     * Role names are looked up with the upper case domain, adding the primary domain when there is no domain.
+     */
+    @Override
+    protected String getValueKey(String groupName) {
+
+        int separatorIndex = groupName.indexOf(UserCoreConstants.DOMAIN_SEPARATOR);
+        if (separatorIndex > 0) {
+            return groupName.substring(0, separatorIndex).toUpperCase(Locale.ENGLISH) +
+                    groupName.substring(separatorIndex);
+        }
+        return UserCoreConstants.PRIMARY_DEFAULT_DOMAIN_NAME + UserCoreConstants.DOMAIN_SEPARATOR + groupName;
+    }
+
+    private String getPrimaryFreeGroupName(String groupName) {
+
+        String primaryDomainPrefix = UserCoreConstants.PRIMARY_DEFAULT_DOMAIN_NAME +
+                UserCoreConstants.DOMAIN_SEPARATOR;
+        if (groupName.toUpperCase(Locale.ENGLISH).startsWith(primaryDomainPrefix)) {
+            return groupName.substring(primaryDomainPrefix.length());
+        }
+        return groupName;
+    }
+}
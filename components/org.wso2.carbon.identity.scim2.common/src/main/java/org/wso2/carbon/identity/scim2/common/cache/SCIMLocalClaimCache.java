@@ -0,0 +1,105 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.scim2.common.cache;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Tenant scoped cache of the local claims mapped to SCIM attributes, so that the claim mappings of the tenant are
+ * not read for each user. Several SCIM attributes may be mapped to the same local claim, so the mappings are not
+ * looked up by the local claim.
+ *
+ * The claim metadata management of the identity framework does not notify claim mapping changes, so changes take
+ * effect on expiry of the mappings, after SCIM.LocalClaimCache.TimeToLive seconds (300 by default). Set
+ * SCIM.LocalClaimCache.Enable to false to read the claim mappings for each user instead.
+ */
+public class SCIMLocalClaimCache extends SCIMTenantCache {
+
+    private static final String CACHE_NAME = "LocalClaimCache";
+    private static final int DEFAULT_CAPACITY = 100;
+    private static final int DEFAULT_TIME_TO_LIVE = 300;
+    // Cached for SCIM attributes which are not mapped, as the cache does not hold null values.
+    private static final String NOT_MAPPED = "";
+
+    private static volatile SCIMLocalClaimCache instance;
+
+    private SCIMLocalClaimCache() {
+
+        super(CACHE_NAME, DEFAULT_CAPACITY, DEFAULT_TIME_TO_LIVE);
+    }
+
+    public static SCIMLocalClaimCache getInstance() {
+
+        if (instance == null) {
+            synchronized (SCIMLocalClaimCache.class) {
+                if (instance == null) {
+                    instance = new SCIMLocalClaimCache();
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * Get the local claims mapped to the given SCIM attributes.
+     *
+     * @param tenantId          Tenant id.
+     * @param scimAttributeUris URIs of the SCIM attributes.
+     * @return Local claim URIs by the SCIM attribute URIs, with null values for the attributes which are not mapped,
+     * or null if any of the attributes is not cached.
+     */
+    public Map<String, String> getLocalClaimUris(int tenantId, String... scimAttributeUris) {
+
+        Map<String, String> localClaimUris = new HashMap<>();
+        for (String scimAttributeUri : scimAttributeUris) {
+            String localClaimUri = getValue(tenantId, scimAttributeUri);
+            if (localClaimUri == null) {
+                return null;
+            }
+            localClaimUris.put(scimAttributeUri, NOT_MAPPED.equals(localClaimUri) ? null : localClaimUri);
+        }
+        return localClaimUris;
+    }
+
+    /**
+     * Add the local claims mapped to the given SCIM attributes.
+     *
+     * @param tenantId            Tenant id.
+     * @param scimToLocalMappings Local claim URIs by the SCIM attribute URIs, as read from the claim mappings.
+     * @param scimAttributeUris   URIs of the SCIM attributes to be cached.
+     */
+    public void addLocalClaimUris(int tenantId, Map<String, String> scimToLocalMappings,
+                                  String... scimAttributeUris) {
+
+        for (String scimAttributeUri : scimAttributeUris) {
+            String localClaimUri = scimToLocalMappings.get(scimAttributeUri);
+            put(tenantId, scimAttributeUri, localClaimUri == null ? NOT_MAPPED : localClaimUri);
+        }
+    }
+
+    /**
+     * Local claims are not looked up, and may be mapped to several SCIM attributes.
+     */
+    @Override
+    protected String getValueKey(String localClaimUri) {
+
+        return null;
+    }
+}
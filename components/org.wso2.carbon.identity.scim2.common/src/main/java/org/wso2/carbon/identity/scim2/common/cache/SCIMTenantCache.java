@@ -0,0 +1,389 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.scim2.common.cache;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.wso2.carbon.identity.core.util.IdentityUtil;
+import org.wso2.carbon.identity.scim2.common.internal.SCIMCommonComponentHolder;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Tenant scoped cache of one to one mappings, such as SCIM ids to names. Entries can be looked up by the key and by
+ * the value. Each tenant holds at most the configured number of entries, evicting the least recently used ones, and
+ * entries expire after the configured time to live.
+ *
+ * Entries are invalidated on the other nodes of a cluster through the {@link SCIMCacheCoherenceProvider} registered
+ * as an OSGi service. Without one, the cache is local to the node, and a node may keep resolving a SCIM id to a user
+ * or group which was renamed or deleted on another node until the entry expires. Hence the cache is disabled unless
+ * it is enabled in the configuration, which should be done for a cluster only with a coherence provider registered.
+ *
+ * Values read from the store are added with {@link #put(int, String, String, long)}, which drops the value if a
+ * mapping was invalidated while it was read, so that a value invalidated during the read is not cached again.
+ *
+ * The cache is configured in identity.xml with the properties
+ * SCIM.[cache name].Enable (false by default), SCIM.[cache name].Capacity and SCIM.[cache name].TimeToLive
+ * (in seconds).
+ */
+public class SCIMTenantCache {
+
+    private static final Log log = LogFactory.getLog(SCIMTenantCache.class);
+    private static final String CONFIG_PREFIX = "SCIM.";
+    private static final String ENABLE = ".Enable";
+    private static final String CAPACITY = ".Capacity";
+    private static final String TIME_TO_LIVE = ".TimeToLive";
+
+    private static final ConcurrentMap<String, SCIMTenantCache> caches = new ConcurrentHashMap<>();
+
+    private final String cacheName;
+    private final int capacity;
+    private final long timeToLiveInMillis;
+    private final ConcurrentMap<Integer, TenantCache> tenantCaches = new ConcurrentHashMap<>();
+    // Number of invalidations applied to the cache, to detect the invalidations made while a value is read.
+    private final AtomicLong invalidationCount = new AtomicLong();
+    private volatile boolean enabled;
+
+    protected SCIMTenantCache(String cacheName, int defaultCapacity, int defaultTimeToLiveInSeconds) {
+
+        this.cacheName = cacheName;
+        this.enabled = "true".equalsIgnoreCase(getConfig(ENABLE));
+        this.capacity = getIntConfig(CAPACITY, defaultCapacity);
+        this.timeToLiveInMillis = getIntConfig(TIME_TO_LIVE, defaultTimeToLiveInSeconds) * 1000L;
+        caches.put(cacheName, this);
+    }
+
+    /**
+     * Get the cache with the given name, to apply invalidations received from other nodes.
+     *
+     * @param cacheName Name of the cache.
+     * @return Cache, or null if there is no cache with the given name.
+     */
+    public static SCIMTenantCache getCache(String cacheName) {
+
+        return caches.get(cacheName);
+    }
+
+    public String getCacheName() {
+
+        return cacheName;
+    }
+
+    public boolean isEnabled() {
+
+        return enabled;
+    }
+
+    /**
+     * Enable or disable the cache on this node, overriding the configuration. The mappings are cleared when the cache
+     * is disabled.
+     *
+     * @param enabled Whether the cache is enabled.
+     */
+    public void setEnabled(boolean enabled) {
+
+        this.enabled = enabled;
+        if (!enabled) {
+            clear();
+        }
+    }
+
+    /**
+     * Get the number of invalidations applied to the cache, to be read before a value is read from the store and
+     * passed to {@link #put(int, String, String, long)}.
+     *
+     * @return Number of invalidations.
+     */
+    public long getInvalidationCount() {
+
+        return invalidationCount.get();
+    }
+
+    /**
+     * Get the value mapped to the key.
+     *
+     * @param tenantId Tenant id.
+     * @param key      Key.
+     * @return Value, or null if the key is not cached.
+     */
+    public String getValue(int tenantId, String key) {
+
+        if (!enabled || key == null) {
+            return null;
+        }
+        return getTenantCache(tenantId).getValue(key);
+    }
+
+    /**
+     * Get the key mapped to the value.
+     *
+     * @param tenantId Tenant id.
+     * @param value    Value.
+     * @return Key, or null if the value is not cached.
+     */
+    public String getKey(int tenantId, String value) {
+
+        if (!enabled || value == null) {
+            return null;
+        }
+        return getTenantCache(tenantId).getKey(getValueKey(value));
+    }
+
+    /**
+     * Add a mapping, replacing the existing mappings of the key and the value.
+     *
+     * @param tenantId Tenant id.
+     * @param key      Key.
+     * @param value    Value.
+     */
+    public void put(int tenantId, String key, String value) {
+
+        if (!enabled || key == null || value == null) {
+            return;
+        }
+        getTenantCache(tenantId).put(key, value, getValueKey(value));
+    }
+
+    /**
+     * Add a mapping read from the store, unless a mapping of the cache was invalidated since the read started. The
+     * mapping read may be the one invalidated, e.g. a user renamed or deleted while the user was being resolved.
+     *
+     * @param tenantId                    Tenant id.
+     * @param key                         Key.
+     * @param value                       Value.
+     * @param invalidationCountBeforeRead {@link #getInvalidationCount()} read before the value was read.
+     */
+    public void put(int tenantId, String key, String value, long invalidationCountBeforeRead) {
+
+        if (!enabled || key == null || value == null) {
+            return;
+        }
+        TenantCache tenantCache = getTenantCache(tenantId);
+        // Invalidations are counted under the lock of the tenant cache, hence an invalidation either is counted
+        // before this check, or removes the mapping after it is added.
+        synchronized (tenantCache) {
+            if (invalidationCount.get() == invalidationCountBeforeRead) {
+                tenantCache.put(key, value, getValueKey(value));
+            }
+        }
+    }
+
+    /**
+     * Remove the mapping of the key or the value from the cache of this node and the other nodes of the cluster.
+     *
+     * @param tenantId Tenant id.
+     * @param key      Key to be removed, or null.
+     * @param value    Value to be removed, or null.
+     */
+    public void invalidate(int tenantId, String key, String value) {
+
+        if (!enabled) {
+            return;
+        }
+        invalidateLocally(tenantId, key, value);
+        SCIMCommonComponentHolder.getCacheCoherenceProvider().publishInvalidation(cacheName, tenantId, key, value);
+    }
+
+    /**
+     * Remove the mapping of the key or the value from the cache of this node only. This is called when an
+     * invalidation is received from another node.
+     *
+     * @param tenantId Tenant id.
+     * @param key      Key to be removed, or null.
+     * @param value    Value to be removed, or null.
+     */
+    public void invalidateLocally(int tenantId, String key, String value) {
+
+        if (!enabled) {
+            return;
+        }
+        TenantCache tenantCache = getTenantCache(tenantId);
+        synchronized (tenantCache) {
+            invalidationCount.incrementAndGet();
+            if (key != null) {
+                tenantCache.removeByKey(key);
+            }
+            if (value != null) {
+                tenantCache.removeByValueKey(getValueKey(value));
+            }
+        }
+    }
+
+    /**
+     * Remove all the mappings of the tenant from the cache of this node.
+     *
+     * @param tenantId Tenant id.
+     */
+    public void clear(int tenantId) {
+
+        invalidationCount.incrementAndGet();
+        tenantCaches.remove(tenantId);
+    }
+
+    /**
+     * Remove the mappings of all the tenants from the cache of this node.
+     */
+    public void clear() {
+
+        invalidationCount.incrementAndGet();
+        tenantCaches.clear();
+    }
+
+    /**
+     * Get the form of the value used to look up keys. Override to look up values case insensitively etc, or to
+     * return null for caches of which the keys are not looked up by the value, e.g. to map several keys to a value.
+     *
+     * @param value Value.
+     * @return Lookup form of the value, or null if keys are not looked up by the value.
+     */
+    protected String getValueKey(String value) {
+
+        return value;
+    }
+
+    private TenantCache getTenantCache(int tenantId) {
+
+        TenantCache tenantCache = tenantCaches.get(tenantId);
+        if (tenantCache == null) {
+            tenantCache = new TenantCache(capacity, timeToLiveInMillis);
+            TenantCache existingCache = tenantCaches.putIfAbsent(tenantId, tenantCache);
+            if (existingCache != null) {
+                tenantCache = existingCache;
+            }
+        }
+        return tenantCache;
+    }
+
+    private String getConfig(String property) {
+
+        return IdentityUtil.getProperty(CONFIG_PREFIX + cacheName + property);
+    }
+
+    private int getIntConfig(String property, int defaultValue) {
+
+        String value = getConfig(property);
+        if (StringUtils.isNotBlank(value)) {
+            try {
+                return Integer.parseInt(value.trim());
+            } catch (NumberFormatException e) {
+                log.warn("Invalid value: " + value + " for " + CONFIG_PREFIX + cacheName + property +
+                        ". Using the default value: " + defaultValue);
+            }
+        }
+        return defaultValue;
+    }
+
+    /**
+     * Bounded mappings of a tenant, kept in access order to evict the least recently used mapping.
+     */
+    private static class TenantCache {
+
+        private final int capacity;
+        private final long timeToLiveInMillis;
+        private final LinkedHashMap<String, CacheEntry> entries;
+        private final Map<String, String> keysByValue = new HashMap<>();
+
+        TenantCache(final int capacity, long timeToLiveInMillis) {
+
+            this.capacity = capacity;
+            this.timeToLiveInMillis = timeToLiveInMillis;
+            this.entries = new LinkedHashMap<>(16, 0.75f, true);
+        }
+
+        synchronized String getValue(String key) {
+
+            CacheEntry entry = entries.get(key);
+            if (entry == null) {
+                return null;
+            }
+            if (entry.isExpired()) {
+                removeByKey(key);
+                return null;
+            }
+            return entry.value;
+        }
+
+        synchronized String getKey(String valueKey) {
+
+            String key = keysByValue.get(valueKey);
+            if (key == null) {
+                return null;
+            }
+            // Reads the entry to expire it and to mark it as used.
+            return getValue(key) == null ? null : key;
+        }
+
+        synchronized void put(String key, String value, String valueKey) {
+
+            removeByKey(key);
+            if (valueKey != null) {
+                removeByValueKey(valueKey);
+            }
+            entries.put(key, new CacheEntry(value, valueKey, System.currentTimeMillis() + timeToLiveInMillis));
+            if (valueKey != null) {
+                keysByValue.put(valueKey, key);
+            }
+            if (entries.size() > capacity) {
+                String eldestKey = entries.keySet().iterator().next();
+                removeByKey(eldestKey);
+            }
+        }
+
+        synchronized void removeByKey(String key) {
+
+            CacheEntry entry = entries.remove(key);
+            if (entry != null) {
+                keysByValue.remove(entry.valueKey);
+            }
+        }
+
+        synchronized void removeByValueKey(String valueKey) {
+
+            String key = keysByValue.remove(valueKey);
+            if (key != null) {
+                entries.remove(key);
+            }
+        }
+    }
+
+    private static class CacheEntry {
+
+        private final String value;
+        private final String valueKey;
+        private final long expiryTime;
+
+        CacheEntry(String value, String valueKey, long expiryTime) {
+
+            this.value = value;
+            this.valueKey = valueKey;
+            this.expiryTime = expiryTime;
+        }
+
+        boolean isExpired() {
+
+            return System.currentTimeMillis() > expiryTime;
+        }
+    }
+}
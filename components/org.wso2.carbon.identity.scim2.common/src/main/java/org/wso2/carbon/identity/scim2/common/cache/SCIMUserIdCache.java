@@ -0,0 +1,111 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.scim2.common.cache;
+
+import org.wso2.carbon.user.core.UserCoreConstants;
+
+import java.util.Locale;
+
+/**
+ * Tenant scoped cache of the SCIM ids of users to their user names with the user store domain. Mappings are added
+ * when users are added or resolved, and invalidated when users are deleted or their ids or user names are changed.
+ */
+public class SCIMUserIdCache extends SCIMTenantCache {
+
+    private static final String CACHE_NAME = "UserIdCache";
+    private static final int DEFAULT_CAPACITY = 10000;
+    private static final int DEFAULT_TIME_TO_LIVE = 900;
+
+    private static volatile SCIMUserIdCache instance;
+
+    private SCIMUserIdCache() {
+
+        super(CACHE_NAME, DEFAULT_CAPACITY, DEFAULT_TIME_TO_LIVE);
+    }
+
+    public static SCIMUserIdCache getInstance() {
+
+        if (instance == null) {
+            synchronized (SCIMUserIdCache.class) {
+                if (instance == null) {
+                    instance = new SCIMUserIdCache();
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * Get the user name of the user with the given SCIM id.
+     *
+     * @param tenantId Tenant id.
+     * @param userId   SCIM id of the user.
+     * @return User name with the user store domain, or null if the id is not cached.
+     */
+    public String getUserName(int tenantId, String userId) {
+
+        return getValue(tenantId, userId);
+    }
+
+    /**
+     * Get the SCIM id of the user with the given user name.
+     *
+     * @param tenantId Tenant id.
+     * @param userName User name with the user store domain.
+     * @return SCIM id of the user, or null if the user name is not cached.
+     */
+    public String getUserId(int tenantId, String userName) {
+
+        String userId = getKey(tenantId, userName);
+        // User names are indexed ignoring the case, which may map to a different user in a case sensitive store.
+        if (userId != null && !userName.equals(getValue(tenantId, userId))) {
+            return null;
+        }
+        return userId;
+    }
+
+    /**
+     * Remove the mapping of the user from the cache.
+     *
+     * @param tenantId Tenant id.
+     * @param userName User name with the user store domain.
+     */
+    public void invalidateUser(int tenantId, String userName) {
+
+        invalidate(tenantId, null, userName);
+    }
+
+    /**
+     * User names are looked up with the upper case domain, as returned by the user core, and ignoring the case of
+     * the name since the user stores are case insensitive by default.
+     */
+    @Override
+    protected String getValueKey(String userName) {
+
+        String domainName = UserCoreConstants.PRIMARY_DEFAULT_DOMAIN_NAME;
+        String nameWithoutDomain = userName;
+        int separatorIndex = userName.indexOf(UserCoreConstants.DOMAIN_SEPARATOR);
+        if (separatorIndex > 0) {
+            domainName = userName.substring(0, separatorIndex);
+            nameWithoutDomain = userName.substring(separatorIndex + 1);
+        }
+        return domainName.toUpperCase(Locale.ENGLISH) + UserCoreConstants.DOMAIN_SEPARATOR +
+                nameWithoutDomain.toLowerCase(Locale.ENGLISH);
+    }
+}
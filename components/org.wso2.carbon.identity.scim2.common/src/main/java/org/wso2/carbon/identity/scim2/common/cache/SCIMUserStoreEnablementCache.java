@@ -0,0 +1,172 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.wso2.carbon.identity.scim2.common.cache;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.wso2.carbon.user.api.UserStoreException;
+import org.wso2.carbon.user.core.UserStoreManager;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Cache of whether SCIM is enabled for the user stores, read from the SCIMEnabled user store property.
+ *
+ * Entries are held against the user store manager instances. The user core builds new user store managers when a user
+ * store is added, updated or removed, so the entries of the replaced managers are no longer used and are garbage
+ * collected with them.
+ */
+public class SCIMUserStoreEnablementCache {
+
+    private static final Log log = LogFactory.getLog(SCIMUserStoreEnablementCache.class);
+    private static final SCIMUserStoreEnablementCache instance = new SCIMUserStoreEnablementCache();
+
+    private final Map<UserStoreManager, Boolean> enablementOfUserStores =
+            Collections.synchronizedMap(new WeakHashMap<UserStoreManager, Boolean>());
+    private final Map<UserStoreManager, TenantUserStores> userStoresOfTenants =
+            Collections.synchronizedMap(new WeakHashMap<UserStoreManager, TenantUserStores>());
+
+    private SCIMUserStoreEnablementCache() {
+
+    }
+
+    public static SCIMUserStoreEnablementCache getInstance() {
+
+        return instance;
+    }
+
+    /**
+     * Check whether SCIM is enabled for the given user store.
+     *
+     * @param userStoreManager User store manager of the user store.
+     * @return true if SCIM is enabled for the user store.
+     * @throws UserStoreException
+     */
+    public boolean isSCIMEnabled(UserStoreManager userStoreManager) throws UserStoreException {
+
+        Boolean scimEnabled = enablementOfUserStores.get(userStoreManager);
+        if (scimEnabled == null) {
+            scimEnabled = userStoreManager.isSCIMEnabled();
+            enablementOfUserStores.put(userStoreManager, scimEnabled);
+        }
+        return scimEnabled;
+    }
+
+    /**
+     * Get the user stores of a tenant, to check whether SCIM is enabled for them by the domain name. The user stores
+     * are checked for changes when they are read, so they should be read once per request and used for the request.
+     *
+     * @param userStoreManager User store manager of the tenant.
+     * @return User stores of the tenant.
+     */
+    public TenantUserStores getTenantUserStores(UserStoreManager userStoreManager) {
+
+        synchronized (userStoresOfTenants) {
+            TenantUserStores tenantUserStores = userStoresOfTenants.get(userStoreManager);
+            if (tenantUserStores == null || !tenantUserStores.isCurrent(userStoreManager)) {
+                tenantUserStores = new TenantUserStores(userStoreManager);
+                userStoresOfTenants.put(userStoreManager, tenantUserStores);
+            }
+            return tenantUserStores;
+        }
+    }
+
+    /**
+     * Remove all the entries of the cache.
+     */
+    public void clear() {
+
+        enablementOfUserStores.clear();
+        userStoresOfTenants.clear();
+    }
+
+    /**
+     * Whether SCIM is enabled for the user stores of a tenant, by the domain name. The secondary user store managers
+     * are referenced weakly, to detect when they are replaced without keeping them alive.
+     */
+    public static class TenantUserStores {
+
+        private final List<WeakReference<UserStoreManager>> secondaryUserStoreManagers = new ArrayList<>();
+        private final ConcurrentMap<String, Boolean> enablementOfDomains = new ConcurrentHashMap<>();
+
+        TenantUserStores(UserStoreManager userStoreManager) {
+
+            for (UserStoreManager secondaryUserStoreManager = userStoreManager.getSecondaryUserStoreManager();
+                 secondaryUserStoreManager != null;
+                 secondaryUserStoreManager = secondaryUserStoreManager.getSecondaryUserStoreManager()) {
+                secondaryUserStoreManagers.add(new WeakReference<>(secondaryUserStoreManager));
+            }
+        }
+
+        /**
+         * Check whether SCIM is enabled for the user store with the given domain name.
+         *
+         * @param userStoreManager User store manager of the tenant.
+         * @param domainName       Domain name of the user store.
+         * @return true if SCIM is enabled for the user store, false if it is not or if there is no such user store.
+         */
+        public boolean isSCIMEnabled(UserStoreManager userStoreManager, String domainName) {
+
+            if (domainName == null) {
+                return false;
+            }
+            String domainKey = domainName.toUpperCase(Locale.ENGLISH);
+            Boolean scimEnabled = enablementOfDomains.get(domainKey);
+            if (scimEnabled != null) {
+                return scimEnabled;
+            }
+            UserStoreManager secondaryUserStoreManager = userStoreManager.getSecondaryUserStoreManager(domainName);
+            if (secondaryUserStoreManager == null) {
+                return false;
+            }
+            try {
+                scimEnabled = secondaryUserStoreManager.isSCIMEnabled();
+            } catch (UserStoreException e) {
+                log.error("Error while evaluating isSCIMEnalbed for user store " + domainName, e);
+                return false;
+            }
+            enablementOfDomains.put(domainKey, scimEnabled);
+            return scimEnabled;
+        }
+
+        private boolean isCurrent(UserStoreManager userStoreManager) {
+
+            int index = 0;
+            for (UserStoreManager secondaryUserStoreManager = userStoreManager.getSecondaryUserStoreManager();
+                 secondaryUserStoreManager != null;
+                 secondaryUserStoreManager = secondaryUserStoreManager.getSecondaryUserStoreManager()) {
+                if (index >= secondaryUserStoreManagers.size() ||
+                        secondaryUserStoreManagers.get(index).get() != secondaryUserStoreManager) {
+                    return false;
+                }
+                index++;
+            }
+            return index == secondaryUserStoreManagers.size();
+        }
+    }
+}
@@ -18,11 +18,15 @@
 
 package org.wso2.carbon.identity.scim2.common.group;
 
+import org.apache.commons.lang.StringUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.wso2.carbon.identity.scim2.common.DAO.GroupDAO;
+import org.wso2.carbon.identity.scim2.common.DAO.UnitOfWork;
+import org.wso2.carbon.identity.scim2.common.cache.SCIMGroupIdCache;
 import org.wso2.carbon.identity.scim2.common.exceptions.IdentitySCIMException;
 import org.wso2.carbon.identity.scim2.common.utils.SCIMCommonUtils;
+import org.wso2.carbon.identity.scim2.common.utils.SCIMDateTimeFormatter;
 import org.wso2.charon3.core.exceptions.BadRequestException;
 import org.wso2.charon3.core.exceptions.CharonException;
 import org.wso2.charon3.core.objects.Group;
@@ -31,10 +35,12 @@ import org.wso2.charon3.core.schema.SCIMResourceSchemaManager;
 import org.wso2.charon3.core.schema.SCIMResourceTypeSchema;
 import org.wso2.charon3.core.utils.AttributeUtil;
 
-import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -45,6 +51,8 @@ import java.util.UUID;
  * This is for managing SCIM specific attributes related to Group resource in Identity_SCIM_GROUP
  * Table. This should be managed per tenant.
  * But need to use the same approach as for User, by going through AttributMapper to do it in a generic way.
+ * Group ids and names are cached in the tenant's {@link SCIMGroupIdCache}, which is kept up to date by the methods
+ * of this class that add, rename and delete the group attributes.
  */
 public class SCIMGroupHandler {
     private static Log logger = LogFactory.getLog(SCIMGroupHandler.class);
@@ -67,17 +75,63 @@ public class SCIMGroupHandler {
      */
     public void addMandatoryAttributes(String groupName)
             throws IdentitySCIMException {
-        Map<String, String> attributes = new HashMap<>();
         String id = UUID.randomUUID().toString();
-        attributes.put(SCIMConstants.CommonSchemaConstants.ID_URI, id);
+        Map<String, String> attributes = getMandatoryAttributes(id, SCIMDateTimeFormatter.formatNow());
+        GroupDAO groupDAO = new GroupDAO();
+        groupDAO.addSCIMGroupAttributes(tenantId, groupName, attributes);
+        SCIMGroupIdCache.getInstance().addGroup(tenantId, id, groupName);
+    }
 
-        String createdDate = AttributeUtil.formatDateTime(Instant.now());
-        attributes.put(SCIMConstants.CommonSchemaConstants.CREATED_URI, createdDate);
+    /**
+     * Add the READONLY attributes added by Charon to the groups which do not have them yet, e.g. when roles are
+     * added or imported through the user core. The missing groups are found with one query and their attributes are
+     * added in a single batch.
+     *
+     * @param groupNames Group names, with the user store domain if it is not the primary domain.
+     * @return Names of the groups to which the attributes were added, with the user store domain.
+     * @throws IdentitySCIMException
+     */
+    public Set<String> addMandatoryAttributes(Collection<String> groupNames) throws IdentitySCIMException {
+        Set<String> groupNamesWithDomain = new LinkedHashSet<>();
+        for (String groupName : groupNames) {
+            groupNamesWithDomain.add(SCIMCommonUtils.getGroupNameWithDomain(groupName));
+        }
+        Map<String, Map<String, String>> attributesOfGroups = new LinkedHashMap<>();
+        GroupDAO groupDAO = new GroupDAO();
+        UnitOfWork unitOfWork = UnitOfWork.begin();
+        try {
+            Set<String> existingGroupNames = groupDAO.getExistingGroupNames(tenantId, groupNamesWithDomain);
+            String createdDate = SCIMDateTimeFormatter.formatNow();
+            for (String groupName : groupNamesWithDomain) {
+                if (!existingGroupNames.contains(groupName)) {
+                    attributesOfGroups.put(groupName, getMandatoryAttributes(UUID.randomUUID().toString(),
+                            createdDate));
+                }
+            }
+            groupDAO.addSCIMGroupAttributesInBatch(tenantId, attributesOfGroups);
+            unitOfWork.commit();
+        } finally {
+            unitOfWork.end();
+        }
+        for (Map.Entry<String, Map<String, String>> attributesOfGroup : attributesOfGroups.entrySet()) {
+            SCIMGroupIdCache.getInstance().addGroup(tenantId,
+                    attributesOfGroup.getValue().get(SCIMConstants.CommonSchemaConstants.ID_URI),
+                    attributesOfGroup.getKey());
+        }
+        if (logger.isDebugEnabled()) {
+            logger.debug("Added SCIM attributes to " + attributesOfGroups.size() + " of " +
+                    groupNamesWithDomain.size() + " groups in tenant: " + tenantId);
+        }
+        return attributesOfGroups.keySet();
+    }
 
+    private Map<String, String> getMandatoryAttributes(String id, String createdDate) {
+        Map<String, String> attributes = new HashMap<>();
+        attributes.put(SCIMConstants.CommonSchemaConstants.ID_URI, id);
+        attributes.put(SCIMConstants.CommonSchemaConstants.CREATED_URI, createdDate);
         attributes.put(SCIMConstants.CommonSchemaConstants.LAST_MODIFIED_URI, createdDate);
         attributes.put(SCIMConstants.CommonSchemaConstants.LOCATION_URI, SCIMCommonUtils.getSCIMGroupURL(id));
-        GroupDAO groupDAO = new GroupDAO();
-        groupDAO.addSCIMGroupAttributes(tenantId, groupName, attributes);
+        return attributes;
     }
 
     /**
@@ -110,13 +164,14 @@ public class SCIMGroupHandler {
         try {
             Map<String, String> attributes = new HashMap<>();
             attributes.put(SCIMConstants.CommonSchemaConstants.ID_URI, group.getId());
-            attributes.put(SCIMConstants.CommonSchemaConstants.CREATED_URI, AttributeUtil.formatDateTime(
+            attributes.put(SCIMConstants.CommonSchemaConstants.CREATED_URI, SCIMDateTimeFormatter.format(
                     group.getCreatedDate().toInstant()));
-            attributes.put(SCIMConstants.CommonSchemaConstants.LAST_MODIFIED_URI, AttributeUtil.formatDateTime(
+            attributes.put(SCIMConstants.CommonSchemaConstants.LAST_MODIFIED_URI, SCIMDateTimeFormatter.format(
                     group.getLastModified().toInstant()));
             attributes.put(SCIMConstants.CommonSchemaConstants.LOCATION_URI, group.getLocation());
             GroupDAO groupDAO = new GroupDAO();
             groupDAO.addSCIMGroupAttributes(tenantId, group.getDisplayName(), attributes);
+            SCIMGroupIdCache.getInstance().addGroup(tenantId, group.getId(), group.getDisplayName());
         } catch (CharonException e) {
             throw new IdentitySCIMException("Error getting group name from SCIM Group.", e);
         }
@@ -129,14 +184,20 @@ public class SCIMGroupHandler {
      * @return
      */
     public String getGroupName(String id) throws IdentitySCIMException {
+        String roleName = SCIMGroupIdCache.getInstance().getGroupName(tenantId, id);
+        if (roleName != null) {
+            return roleName;
+        }
         GroupDAO groupDAO = new GroupDAO();
-        String roleName = groupDAO.getGroupNameById(tenantId, id);
+        long invalidationCount = SCIMGroupIdCache.getInstance().getInvalidationCount();
+        roleName = groupDAO.getGroupNameById(tenantId, id);
         if (roleName == null) {
             if (logger.isDebugEnabled()) {
                 logger.debug("Role doesn't exist with id: " + id);
             }
             return null;
         } else {
+            SCIMGroupIdCache.getInstance().addGroup(tenantId, id, roleName, invalidationCount);
             return roleName;
         }
     }
@@ -159,15 +220,31 @@ public class SCIMGroupHandler {
      */
     public Group getGroupWithAttributes(Group group, String groupName)
             throws IdentitySCIMException, CharonException, BadRequestException {
+        return getGroupWithAttributes(group, groupName, null);
+    }
+
+    /**
+     * Set the attributes retrieved from the Identity table, in the given group object, and keep the last modified time
+     * of the group as it is stored, which is the version of the group.
+     *
+     * @param group     Group.
+     * @param groupName Group name.
+     * @param versions  Map to which the stored last modified time is added, keyed by the group id, or null.
+     * @return Group with the attributes set.
+     */
+    public Group getGroupWithAttributes(Group group, String groupName, Map<String, String> versions)
+            throws IdentitySCIMException, CharonException, BadRequestException {
         if (!isGroupExisting(groupName)) {
             logger.debug("The group " + groupName + " is not a SCIM group. Skipping..");
             return group;
         }
         GroupDAO groupDAO = new GroupDAO();
+        long invalidationCount = SCIMGroupIdCache.getInstance().getInvalidationCount();
         Map<String, String> attributes = groupDAO.getSCIMGroupAttributes(tenantId, groupName);
         for (Map.Entry<String, String> entry : attributes.entrySet()) {
             if (SCIMConstants.CommonSchemaConstants.ID_URI.equals(entry.getKey())) {
                 group.setId(entry.getValue());
+                SCIMGroupIdCache.getInstance().addGroup(tenantId, entry.getValue(), groupName, invalidationCount);
             } else if (SCIMConstants.CommonSchemaConstants.CREATED_URI.equals(entry.getKey())) {
                 group.setCreatedDate(Date.from(AttributeUtil.parseDateTime(entry.getValue())));
             } else if (SCIMConstants.CommonSchemaConstants.LAST_MODIFIED_URI.equals(entry.getKey())) {
@@ -176,11 +253,16 @@ public class SCIMGroupHandler {
                 group.setLocation(entry.getValue());
             }
         }
+        if (versions != null && group.getId() != null) {
+            versions.put(group.getId(), StringUtils.trimToNull(
+                    attributes.get(SCIMConstants.CommonSchemaConstants.LAST_MODIFIED_URI)));
+        }
         return group;
     }
 
     /**
-     * Check whether attributes related to the given group name and tenant Id exist in the identity table.
+     * Check whether attributes related to the given group name and tenant Id exist in the identity table. The
+     * identity table is always checked, as a group cached on this node may have been deleted or renamed on another.
      *
      * @param groupName
      * @return
@@ -199,24 +281,85 @@ public class SCIMGroupHandler {
      */
     public void deleteGroupAttributes(String groupName) throws IdentitySCIMException {
         GroupDAO groupDAO = new GroupDAO();
-        if (groupDAO.isExistingGroup(groupName, this.tenantId)) {
-            groupDAO.removeSCIMGroup(tenantId, groupName);
-        } else {
-            if (logger.isDebugEnabled()) {
-                logger.debug("Information for the group: " + groupName +
-                        " doesn't contain in the identity scim table.");
+        UnitOfWork unitOfWork = UnitOfWork.begin();
+        try {
+            if (groupDAO.isExistingGroup(groupName, this.tenantId)) {
+                groupDAO.removeSCIMGroup(tenantId, groupName);
+            } else {
+                if (logger.isDebugEnabled()) {
+                    logger.debug("Information for the group: " + groupName +
+                            " doesn't contain in the identity scim table.");
+                }
             }
+            unitOfWork.commit();
+        } finally {
+            unitOfWork.end();
         }
+        SCIMGroupIdCache.getInstance().invalidateGroup(tenantId, groupName);
     }
 
     public void updateRoleName(String oldRoleName, String newRoleName)
             throws IdentitySCIMException {
         GroupDAO groupDAO = new GroupDAO();
-        if (groupDAO.isExistingGroup(oldRoleName, this.tenantId)) {
+        UnitOfWork unitOfWork = UnitOfWork.begin();
+        try {
+            if (!groupDAO.isExistingGroup(oldRoleName, this.tenantId)) {
+                throw new IdentitySCIMException("Non-existent group: " + oldRoleName +
+                        " is trying to be updated..");
+            }
             groupDAO.updateRoleName(this.tenantId, oldRoleName, newRoleName);
-        } else {
-            throw new IdentitySCIMException("Non-existent group: " + oldRoleName +
-                    " is trying to be updated..");
+            unitOfWork.commit();
+        } finally {
+            unitOfWork.end();
+        }
+        SCIMGroupIdCache groupIdCache = SCIMGroupIdCache.getInstance();
+        String groupId = groupIdCache.getGroupId(tenantId, oldRoleName);
+        groupIdCache.invalidateGroup(tenantId, oldRoleName);
+        if (groupId != null) {
+            groupIdCache.addGroup(tenantId, groupId, newRoleName);
+        }
+    }
+
+    /**
+     * Get the last modified time of the group from the identity table.
+     *
+     * @param groupName Group name.
+     * @return Last modified time as in meta.lastModified, or null if the group has no SCIM attributes.
+     * @throws IdentitySCIMException
+     */
+    public String getLastModified(String groupName) throws IdentitySCIMException {
+        GroupDAO groupDAO = new GroupDAO();
+        return groupDAO.getSCIMGroupAttributes(tenantId, groupName)
+                .get(SCIMConstants.CommonSchemaConstants.LAST_MODIFIED_URI);
+    }
+
+    /**
+     * Set the last modified time of the groups to now, e.g. when the groups are renamed or their members change.
+     * Groups which have no SCIM attributes are skipped.
+     *
+     * @param groupNames Group names.
+     * @throws IdentitySCIMException
+     */
+    public void updateLastModified(Collection<String> groupNames) throws IdentitySCIMException {
+        Set<String> groupNamesWithDomain = new LinkedHashSet<>();
+        for (String groupName : groupNames) {
+            groupNamesWithDomain.add(SCIMCommonUtils.getGroupNameWithDomain(groupName));
+        }
+        if (groupNamesWithDomain.isEmpty()) {
+            return;
+        }
+        GroupDAO groupDAO = new GroupDAO();
+        UnitOfWork unitOfWork = UnitOfWork.begin();
+        try {
+            Set<String> existingGroupNames = groupDAO.getExistingGroupNames(tenantId, groupNamesWithDomain);
+            if (!existingGroupNames.isEmpty()) {
+                groupDAO.updateSCIMGroupAttribute(tenantId, existingGroupNames,
+                        SCIMConstants.CommonSchemaConstants.LAST_MODIFIED_URI,
+                        SCIMDateTimeFormatter.formatNewVersion());
+            }
+            unitOfWork.commit();
+        } finally {
+            unitOfWork.end();
         }
     }
 
@@ -19,8 +19,10 @@
 package org.wso2.carbon.identity.scim2.common.impl;
 
 import org.apache.commons.collections.MapUtils;
+import org.apache.commons.lang.StringUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.wso2.carbon.CarbonConstants;
 import org.wso2.carbon.context.PrivilegedCarbonContext;
 import org.wso2.carbon.identity.scim2.common.internal.SCIMCommonComponentHolder;
 import org.wso2.carbon.identity.scim2.common.utils.AuthenticationSchema;
@@ -131,6 +133,36 @@ public class IdentitySCIMManager {
         return scimUserManager;
     }
 
+    /**
+     * Check whether the user authenticated at the SCIM endpoint is authorized for a permission.
+     *
+     * @param permission Permission resource, e.g. /permission/admin.
+     * @return True if the user is authorized to execute the permission.
+     * @throws CharonException if the authorization could not be checked.
+     */
+    public boolean isAuthenticatedUserAuthorized(String permission) throws CharonException {
+
+        PrivilegedCarbonContext carbonContext = PrivilegedCarbonContext.getThreadLocalCarbonContext();
+        String username = carbonContext.getUsername();
+        if (StringUtils.isBlank(username)) {
+            return false;
+        }
+        String tenantDomain = carbonContext.getTenantDomain();
+        try {
+            RealmService realmService = SCIMCommonComponentHolder.getRealmService();
+            if (realmService == null) {
+                throw new CharonException("Can not obtain carbon realm service..");
+            }
+            int tenantId = realmService.getTenantManager().getTenantId(tenantDomain);
+            UserRealm userRealm = realmService.getTenantUserRealm(tenantId);
+            return userRealm != null && userRealm.getAuthorizationManager().isUserAuthorized(username, permission,
+                    CarbonConstants.UI_PERMISSION_ACTION);
+        } catch (UserStoreException e) {
+            throw new CharonException("Error while checking the authorization of user: " + username +
+                    " in tenant: " + tenantDomain, e);
+        }
+    }
+
     /**
      * Resgister endpoint URLs in AbstractResourceEndpoint.
      */
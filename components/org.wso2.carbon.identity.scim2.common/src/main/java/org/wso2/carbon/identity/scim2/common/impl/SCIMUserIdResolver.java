@@ -0,0 +1,189 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.scim2.common.impl;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.wso2.carbon.identity.core.util.IdentityUtil;
+import org.wso2.carbon.identity.scim2.common.cache.SCIMUserIdCache;
+import org.wso2.carbon.identity.scim2.common.utils.SCIMCommonUtils;
+import org.wso2.carbon.user.api.UserStoreException;
+import org.wso2.carbon.user.core.UserCoreConstants;
+import org.wso2.carbon.user.core.UserStoreManager;
+import org.wso2.charon3.core.schema.SCIMConstants;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Resolves SCIM ids of users to user names and vice versa, reading only the id claim of the users. This is used by
+ * the operations which need to identify a user, without building the SCIM user. Resolved values are kept for the
+ * lifetime of the resolver, and ids resolved to user names are shared through the tenant's {@link SCIMUserIdCache}.
+ */
+public class SCIMUserIdResolver {
+
+    private static final Log log = LogFactory.getLog(SCIMUserIdResolver.class);
+
+    private UserStoreManager userStoreManager;
+    private Map<String, String> userNamesById = new HashMap<>();
+    private Map<String, String> userIdsByName = new HashMap<>();
+
+    public SCIMUserIdResolver(UserStoreManager userStoreManager) {
+
+        this.userStoreManager = userStoreManager;
+    }
+
+    /**
+     * Get the user name of the user with the given SCIM id.
+     *
+     * @param userId SCIM id of the user.
+     * @return User name with the user store domain, or null if there is no user with the given id.
+     * @throws UserStoreException
+     */
+    public String getUserName(String userId) throws UserStoreException {
+
+        if (StringUtils.isBlank(userId)) {
+            return null;
+        }
+        String userName = userNamesById.get(userId);
+        if (userName != null) {
+            return userName;
+        }
+        int tenantId = userStoreManager.getTenantId();
+        userName = SCIMUserIdCache.getInstance().getUserName(tenantId, userId);
+        if (userName != null) {
+            put(userId, userName);
+            return userName;
+        }
+        String userIdLocalClaim = getUserIdLocalClaim();
+        if (StringUtils.isBlank(userIdLocalClaim)) {
+            return null;
+        }
+        long invalidationCount = SCIMUserIdCache.getInstance().getInvalidationCount();
+        String[] userNames = userStoreManager.getUserList(userIdLocalClaim, userId, UserCoreConstants
+                .DEFAULT_PROFILE);
+        if (userNames == null || userNames.length == 0) {
+            if (log.isDebugEnabled()) {
+                log.debug("User with SCIM id: " + userId + " does not exist in the system.");
+            }
+            return null;
+        }
+        //we assume (since id is unique per user) only one user exists for a given id
+        userName = userNames[0];
+        put(userId, userName);
+        SCIMUserIdCache.getInstance().put(tenantId, userId, userName, invalidationCount);
+        return userName;
+    }
+
+    /**
+     * Get the user name of the user with the given SCIM id, searching only the given user store domain.
+     *
+     * @param userId          SCIM id of the user.
+     * @param userStoreDomain User store domain of the user.
+     * @return User name with the user store domain, or null if there is no user with the given id in the domain.
+     * @throws UserStoreException
+     */
+    public String getUserName(String userId, String userStoreDomain) throws UserStoreException {
+
+        if (StringUtils.isBlank(userStoreDomain)) {
+            return getUserName(userId);
+        }
+        if (StringUtils.isBlank(userId)) {
+            return null;
+        }
+        int tenantId = userStoreManager.getTenantId();
+        String userName = userNamesById.get(userId);
+        if (userName == null) {
+            userName = SCIMUserIdCache.getInstance().getUserName(tenantId, userId);
+        }
+        if (userName != null && isInDomain(userName, userStoreDomain)) {
+            put(userId, userName);
+            return userName;
+        }
+        String userIdLocalClaim = getUserIdLocalClaim();
+        if (StringUtils.isBlank(userIdLocalClaim)) {
+            return null;
+        }
+        long invalidationCount = SCIMUserIdCache.getInstance().getInvalidationCount();
+        String[] userNames = userStoreManager.getUserList(userIdLocalClaim, IdentityUtil.addDomainToName(userId,
+                userStoreDomain), UserCoreConstants.DEFAULT_PROFILE);
+        if (userNames == null || userNames.length == 0 || !isInDomain(userNames[0], userStoreDomain)) {
+            if (log.isDebugEnabled()) {
+                log.debug("User with SCIM id: " + userId + " does not exist in user store: " + userStoreDomain);
+            }
+            return null;
+        }
+        userName = userNames[0];
+        put(userId, userName);
+        SCIMUserIdCache.getInstance().put(tenantId, userId, userName, invalidationCount);
+        return userName;
+    }
+
+    /**
+     * Get the SCIM id of the user with the given user name.
+     *
+     * @param userName User name with the user store domain.
+     * @return SCIM id of the user, or null if the user does not have a SCIM id.
+     * @throws UserStoreException
+     */
+    public String getUserId(String userName) throws UserStoreException {
+
+        if (StringUtils.isBlank(userName)) {
+            return null;
+        }
+        String userId = userIdsByName.get(userName);
+        if (userId != null) {
+            return userId;
+        }
+        int tenantId = userStoreManager.getTenantId();
+        userId = SCIMUserIdCache.getInstance().getUserId(tenantId, userName);
+        if (userId != null) {
+            put(userId, userName);
+            return userId;
+        }
+        String userIdLocalClaim = getUserIdLocalClaim();
+        if (StringUtils.isBlank(userIdLocalClaim)) {
+            return null;
+        }
+        long invalidationCount = SCIMUserIdCache.getInstance().getInvalidationCount();
+        userId = userStoreManager.getUserClaimValue(userName, userIdLocalClaim, null);
+        if (StringUtils.isNotBlank(userId)) {
+            put(userId, userName);
+            SCIMUserIdCache.getInstance().put(tenantId, userId, userName, invalidationCount);
+        }
+        return userId;
+    }
+
+    private void put(String userId, String userName) {
+
+        userNamesById.put(userId, userName);
+        userIdsByName.put(userName, userId);
+    }
+
+    private boolean isInDomain(String userName, String userStoreDomain) {
+
+        return userStoreDomain.equalsIgnoreCase(IdentityUtil.extractDomainFromName(userName));
+    }
+
+    private String getUserIdLocalClaim() throws UserStoreException {
+
+        return SCIMCommonUtils.getSCIMtoLocalMappings().get(SCIMConstants.CommonSchemaConstants.ID_URI);
+    }
+}
@@ -24,16 +24,29 @@ import org.apache.commons.lang.ArrayUtils;
 import org.apache.commons.lang.StringUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.json.JSONArray;
+import org.json.JSONObject;
 import org.wso2.carbon.CarbonConstants;
 import org.wso2.carbon.identity.application.common.IdentityApplicationManagementException;
 import org.wso2.carbon.identity.application.common.model.ServiceProvider;
 import org.wso2.carbon.identity.core.util.IdentityUtil;
 import org.wso2.carbon.identity.mgt.policy.PolicyViolationException;
+import org.wso2.carbon.identity.scim2.common.DAO.UnitOfWork;
+import org.wso2.carbon.identity.scim2.common.cache.SCIMUserStoreEnablementCache;
 import org.wso2.carbon.identity.scim2.common.exceptions.IdentitySCIMException;
 import org.wso2.carbon.identity.scim2.common.group.SCIMGroupHandler;
+import org.wso2.carbon.identity.scim2.common.metrics.ClaimManagerCallCounter;
+import org.wso2.carbon.identity.scim2.common.metrics.DownstreamService;
+import org.wso2.carbon.identity.scim2.common.metrics.SCIMFilterExplain;
+import org.wso2.carbon.identity.scim2.common.metrics.SCIMOperation;
+import org.wso2.carbon.identity.scim2.common.metrics.SCIMOperationContext;
+import org.wso2.carbon.identity.scim2.common.metrics.SCIMRequestContext;
+import org.wso2.carbon.identity.scim2.common.metrics.UserStoreCallCounter;
 import org.wso2.carbon.identity.scim2.common.utils.AttributeMapper;
 import org.wso2.carbon.identity.scim2.common.utils.SCIMCommonConstants;
 import org.wso2.carbon.identity.scim2.common.utils.SCIMCommonUtils;
+import org.wso2.carbon.identity.scim2.common.utils.SCIMDateTimeFormatter;
+import org.wso2.carbon.identity.scim2.common.utils.SCIMResourceLocks;
 import org.wso2.carbon.user.api.ClaimMapping;
 import org.wso2.carbon.user.api.UserStoreException;
 import org.wso2.carbon.user.core.PaginatedUserStoreManager;
@@ -49,6 +62,7 @@ import org.wso2.carbon.user.core.model.OperationalCondition;
 import org.wso2.carbon.user.core.model.OperationalOperation;
 import org.wso2.carbon.user.core.model.UserClaimSearchEntry;
 import org.wso2.carbon.user.core.util.UserCoreUtil;
+import org.wso2.carbon.utils.multitenancy.MultitenantConstants;
 import org.wso2.charon3.core.attributes.Attribute;
 import org.wso2.charon3.core.attributes.MultiValuedAttribute;
 import org.wso2.charon3.core.attributes.SimpleAttribute;
@@ -62,14 +76,15 @@ import org.wso2.charon3.core.extensions.UserManager;
 import org.wso2.charon3.core.objects.Group;
 import org.wso2.charon3.core.objects.User;
 import org.wso2.charon3.core.protocol.ResponseCodeConstants;
+import org.wso2.charon3.core.schema.AttributeSchema;
 import org.wso2.charon3.core.schema.SCIMConstants;
+import org.wso2.charon3.core.schema.SCIMDefinitions;
 import org.wso2.charon3.core.schema.SCIMResourceSchemaManager;
-import org.wso2.charon3.core.schema.SCIMResourceTypeSchema;
 import org.wso2.charon3.core.utils.AttributeUtil;
-import org.wso2.charon3.core.utils.ResourceManagerUtil;
 import org.wso2.charon3.core.utils.codeutils.ExpressionNode;
 import org.wso2.charon3.core.utils.codeutils.Node;
 import org.wso2.charon3.core.utils.codeutils.OperationNode;
+import org.wso2.charon3.core.utils.codeutils.PatchOperation;
 import org.wso2.charon3.core.utils.codeutils.SearchRequest;
 
 import java.util.ArrayList;
@@ -77,9 +92,15 @@ import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.locks.Lock;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 public class SCIMUserManager implements UserManager {
 
@@ -90,91 +111,179 @@ public class SCIMUserManager implements UserManager {
     private static Log log = LogFactory.getLog(SCIMUserManager.class);
     private UserStoreManager carbonUM = null;
     private ClaimManager carbonClaimManager = null;
+    private SCIMUserIdResolver userIdResolver = null;
+    private SCIMUserStoreEnablementCache.TenantUserStores tenantUserStores = null;
+    // Last modified times of the users and groups built by this user manager, as they are stored, keyed by SCIM id.
+    private final Map<String, String> versionsOfBuiltResources = new HashMap<>();
     private static final int MAX_ITEM_LIMIT_UNLIMITED = -1;
     private static final String ENABLE_PAGINATED_USER_STORE = "SCIM.EnablePaginatedUserStore";
+    private static final String SCHEMA_URN_PREFIX = "urn:";
+    private static final Pattern MEMBER_VALUE_FILTER_PATTERN =
+            Pattern.compile("^members\\[\\s*value\\s+eq\\s+\"([^\"]+)\"\\s*\\]$", Pattern.CASE_INSENSITIVE);
 
     public SCIMUserManager(UserStoreManager carbonUserStoreManager, ClaimManager claimManager) {
-        carbonUM = carbonUserStoreManager;
-        carbonClaimManager = claimManager;
+        // User store and claim manager calls are made through the wrappers, which account them for the metrics of
+        // the operations and the requests.
+        carbonUM = UserStoreCallCounter.wrap(carbonUserStoreManager);
+        carbonClaimManager = ClaimManagerCallCounter.wrap(claimManager);
+        userIdResolver = new SCIMUserIdResolver(carbonUM);
     }
 
-    @Override
-    public User createUser(User user, Map<String, Boolean> requiredAttributes)
-            throws CharonException, ConflictException, BadRequestException {
-        String userStoreName = null;
+    /**
+     * SCIM operation run by {@link #runOperation}, with the exceptions it throws besides CharonException.
+     * RuntimeException is given for the exceptions that are not thrown.
+     */
+    private interface MeteredOperation<T, E1 extends Exception, E2 extends Exception> {
+
+        T execute() throws CharonException, E1, E2;
+    }
+
+    private <T, E1 extends Exception, E2 extends Exception> T runOperation(
+            SCIMOperation operation, MeteredOperation<T, E1, E2> meteredOperation) throws CharonException, E1, E2 {
+
+        return runOperation(operation, null, meteredOperation);
+    }
+
+    /**
+     * Run a SCIM operation, recording its metrics.
+     *
+     * @param operation        SCIM operation.
+     * @param userStoreDomain  User store domain the operation is limited to, or null.
+     * @param meteredOperation Body of the operation.
+     * @return Result of the operation.
+     */
+    private <T, E1 extends Exception, E2 extends Exception> T runOperation(SCIMOperation operation,
+            String userStoreDomain, MeteredOperation<T, E1, E2> meteredOperation) throws CharonException, E1, E2 {
 
+        int tenantId = MultitenantConstants.INVALID_TENANT_ID;
         try {
-            String userStoreDomainFromSP = getUserStoreDomainFromSP();
-            if (userStoreDomainFromSP != null) {
-                userStoreName = userStoreDomainFromSP;
+            if (carbonUM != null) {
+                tenantId = carbonUM.getTenantId();
             }
-        } catch (IdentityApplicationManagementException e) {
-            throw new CharonException("Error retrieving User Store name. ", e);
+        } catch (UserStoreException e) {
+            if (log.isDebugEnabled()) {
+                log.debug("Error while reading the tenant of the user store for the metrics of: " + operation, e);
+            }
+        }
+        SCIMOperationContext operationContext = SCIMOperationContext.start(operation, tenantId,
+                UserStoreCallCounter.unwrap(carbonUM));
+        if (StringUtils.isNotBlank(userStoreDomain)) {
+            operationContext.setUserStoreDomain(userStoreDomain);
+        }
+        boolean successful = false;
+        try {
+            T result = meteredOperation.execute();
+            successful = true;
+            return result;
+        } finally {
+            operationContext.end(successful);
         }
+    }
 
-        StringBuilder userName = new StringBuilder();
+    /**
+     * Get the user store manager as an AbstractUserStoreManager, for the methods which are not in the
+     * UserStoreManager interface. The calls made through it are not accounted by the wrapper, hence they are
+     * recorded by the callers.
+     *
+     * @return User store manager, or null if it is not an AbstractUserStoreManager.
+     */
+    private AbstractUserStoreManager getAbstractUserStoreManager() {
 
-        if (StringUtils.isNotBlank(userStoreName)) {
-            // if we have set a user store under provisioning configuration - we should only use that.
-            String currentUserName = user.getUserName();
-            currentUserName = UserCoreUtil.removeDomainFromName(currentUserName);
-            user.setUserName(userName.append(userStoreName)
-                    .append(CarbonConstants.DOMAIN_SEPARATOR).append(currentUserName)
-                    .toString());
+        UserStoreManager userStoreManager = UserStoreCallCounter.unwrap(carbonUM);
+        if (userStoreManager instanceof AbstractUserStoreManager) {
+            return (AbstractUserStoreManager) userStoreManager;
         }
+        return null;
+    }
 
-        String userStoreDomainName = IdentityUtil.extractDomainFromName(user.getUserName());
-        if (!user.getUserName().contains(CarbonConstants.DOMAIN_SEPARATOR) &&
-                !UserCoreConstants.PRIMARY_DEFAULT_DOMAIN_NAME.equalsIgnoreCase(userStoreDomainName)) {
-            user.setUserName(IdentityUtil.addDomainToName(user.getUserName(), userStoreDomainName));
-        }
-        if(StringUtils.isNotBlank(userStoreDomainName) && !isSCIMEnabled(userStoreDomainName)){
-            throw new CharonException("Cannot add user through scim to user store " + ". SCIM is not " +
-                    "enabled for user store " + userStoreDomainName);
-        }
+    @Override
+    public User createUser(final User user, final Map<String, Boolean> requiredAttributes)
+            throws CharonException, ConflictException, BadRequestException {
 
-        try {
+        return runOperation(SCIMOperation.CREATE_USER, new MeteredOperation<User, ConflictException,
+                BadRequestException>() {
+            @Override
+            public User execute() throws CharonException, ConflictException, BadRequestException {
+                String userStoreName = null;
 
-            //Persist in carbon user store
-            if (log.isDebugEnabled()) {
-                log.debug("Creating user: " + user.getUserName());
-            }
-                /*set thread local property to signal the downstream SCIMUserOperationListener
-                about the provisioning route.*/
-            SCIMCommonUtils.setThreadLocalIsManagedThroughSCIMEP(true);
-            Map<String, String> claimsMap = AttributeMapper.getClaimsMap(user);
+                try {
+                    String userStoreDomainFromSP = getUserStoreDomainFromSP();
+                    if (userStoreDomainFromSP != null) {
+                        userStoreName = userStoreDomainFromSP;
+                    }
+                } catch (IdentityApplicationManagementException e) {
+                    throw new CharonException("Error retrieving User Store name. ", e);
+                }
 
-                /*skip groups attribute since we map groups attribute to actual groups in ldap.
-                and do not update it as an attribute in user schema*/
-            if (claimsMap.containsKey(SCIMConstants.UserSchemaConstants.GROUP_URI)) {
-                claimsMap.remove(SCIMConstants.UserSchemaConstants.GROUP_URI);
-            }
+                StringBuilder userName = new StringBuilder();
 
-            /* Skip roles list since we map SCIM groups to local roles internally. It shouldn't be allowed to
-                manipulate SCIM groups from user endpoint as this attribute has a mutability of "readOnly". Group
-                changes must be applied via Group Resource */
-            if (claimsMap.containsKey(SCIMConstants.UserSchemaConstants.ROLES_URI + "." + SCIMConstants.DEFAULT)) {
-                claimsMap.remove(SCIMConstants.UserSchemaConstants.ROLES_URI);
-            }
+                if (StringUtils.isNotBlank(userStoreName)) {
+                    // if we have set a user store under provisioning configuration - we should only use that.
+                    String currentUserName = user.getUserName();
+                    currentUserName = UserCoreUtil.removeDomainFromName(currentUserName);
+                    user.setUserName(userName.append(userStoreName)
+                            .append(CarbonConstants.DOMAIN_SEPARATOR).append(currentUserName)
+                            .toString());
+                }
 
-            if (carbonUM.isExistingUser(user.getUserName())) {
-                String error = "User with the name: " + user.getUserName() + " already exists in the system.";
-                throw new ConflictException(error);
-            }
-            if (claimsMap.containsKey(SCIMConstants.UserSchemaConstants.USER_NAME_URI)) {
-                claimsMap.remove(SCIMConstants.UserSchemaConstants.USER_NAME_URI);
-            }
-            Map<String, String> claimsInLocalDialect = SCIMCommonUtils.convertSCIMtoLocalDialect(claimsMap);
-            carbonUM.addUser(user.getUserName(), user.getPassword(), null, claimsInLocalDialect, null);
-            log.info("User: " + user.getUserName() + " is created through SCIM.");
+                String userStoreDomainName = IdentityUtil.extractDomainFromName(user.getUserName());
+                SCIMOperationContext.setCurrentUserStoreDomain(userStoreDomainName);
+                if (!user.getUserName().contains(CarbonConstants.DOMAIN_SEPARATOR) &&
+                        !UserCoreConstants.PRIMARY_DEFAULT_DOMAIN_NAME.equalsIgnoreCase(userStoreDomainName)) {
+                    user.setUserName(IdentityUtil.addDomainToName(user.getUserName(), userStoreDomainName));
+                }
+                if(StringUtils.isNotBlank(userStoreDomainName) && !isSCIMEnabled(userStoreDomainName)){
+                    throw new CharonException("Cannot add user through scim to user store " + ". SCIM is not " +
+                            "enabled for user store " + userStoreDomainName);
+                }
 
-        } catch (UserStoreException e) {
-            handleErrorsOnUserNameAndPasswordPolicy(e);
-            String errMsg = "Error in adding the user: " + user.getUserName() + " to the user store. ";
-            errMsg += e.getMessage();
-            throw new CharonException(errMsg, e);
-        }
-        return user;
+                try {
+
+                    //Persist in carbon user store
+                    if (log.isDebugEnabled()) {
+                        log.debug("Creating user: " + user.getUserName());
+                    }
+                        /*set thread local property to signal the downstream SCIMUserOperationListener
+                        about the provisioning route.*/
+                    SCIMCommonUtils.setThreadLocalIsManagedThroughSCIMEP(true);
+                    Map<String, String> claimsMap = AttributeMapper.getClaimsMap(user);
+
+                        /*skip groups attribute since we map groups attribute to actual groups in ldap.
+                        and do not update it as an attribute in user schema*/
+                    if (claimsMap.containsKey(SCIMConstants.UserSchemaConstants.GROUP_URI)) {
+                        claimsMap.remove(SCIMConstants.UserSchemaConstants.GROUP_URI);
+                    }
+
+                    /* Skip roles list since we map SCIM groups to local roles internally. It shouldn't be allowed
+                        to manipulate SCIM groups from user endpoint as this attribute has a mutability of "readOnly".
+                        Group changes must be applied via Group Resource */
+                    if (claimsMap.containsKey(SCIMConstants.UserSchemaConstants.ROLES_URI + "." +
+                            SCIMConstants.DEFAULT)) {
+                        claimsMap.remove(SCIMConstants.UserSchemaConstants.ROLES_URI);
+                    }
+
+                    if (carbonUM.isExistingUser(user.getUserName())) {
+                        String error = "User with the name: " + user.getUserName() + " already exists in the system.";
+                        throw new ConflictException(error);
+                    }
+                    if (claimsMap.containsKey(SCIMConstants.UserSchemaConstants.USER_NAME_URI)) {
+                        claimsMap.remove(SCIMConstants.UserSchemaConstants.USER_NAME_URI);
+                    }
+                    Map<String, String> claimsInLocalDialect = SCIMCommonUtils.convertSCIMtoLocalDialect(claimsMap);
+                    carbonUM.addUser(user.getUserName(), user.getPassword(), null, claimsInLocalDialect, null);
+                    if (log.isDebugEnabled()) {
+                        log.debug("User: " + user.getUserName() + " is created through SCIM.");
+                    }
+
+                } catch (UserStoreException e) {
+                    handleErrorsOnUserNameAndPasswordPolicy(e);
+                    String errMsg = "Error in adding the user: " + user.getUserName() + " to the user store. ";
+                    errMsg += e.getMessage();
+                    throw new CharonException(errMsg, e);
+                }
+                return user;
+            }
+        });
     }
 
     private void handleErrorsOnUserNameAndPasswordPolicy(Throwable e) throws BadRequestException {
@@ -195,118 +304,222 @@ public class SCIMUserManager implements UserManager {
     }
 
     @Override
-    public User getUser(String userId, Map<String, Boolean> requiredAttributes) throws CharonException {
-        if (log.isDebugEnabled()) {
-            log.debug("Retrieving user: " + userId);
-        }
-        User scimUser;
-        try {
-            //get the user name of the user with this id
-            String userIdLocalClaim = SCIMCommonUtils.getSCIMtoLocalMappings().get(SCIMConstants
-                    .CommonSchemaConstants.ID_URI);
-            String[] userNames = null;
-            if (StringUtils.isNotBlank(userIdLocalClaim)) {
-                userNames = carbonUM.getUserList(userIdLocalClaim, userId, UserCoreConstants.DEFAULT_PROFILE);
-            }
+    public User getUser(final String userId, final Map<String, Boolean> requiredAttributes) throws CharonException {
 
-            if (userNames == null || userNames.length == 0) {
+        return runOperation(SCIMOperation.GET_USER, new MeteredOperation<User, RuntimeException, RuntimeException>() {
+            @Override
+            public User execute() throws CharonException {
                 if (log.isDebugEnabled()) {
-                    log.debug("User with SCIM id: " + userId + " does not exist in the system.");
+                    log.debug("Retrieving user: " + userId);
                 }
-                return null;
-            } else {
-                //get Claims related to SCIM claim dialect
-                Map<String, String> scimToLocalClaimsMap = SCIMCommonUtils.getSCIMtoLocalMappings();
-                List<String> requiredClaims = getOnlyRequiredClaims(scimToLocalClaimsMap.keySet(), requiredAttributes);
-                List<String> requiredClaimsInLocalDialect;
-                if (MapUtils.isNotEmpty(scimToLocalClaimsMap)) {
-                    scimToLocalClaimsMap.keySet().retainAll(requiredClaims);
-                    requiredClaimsInLocalDialect = new ArrayList<>(scimToLocalClaimsMap.values());
-                } else {
-                    if (log.isDebugEnabled()) {
-                        log.debug("SCIM to Local Claim mappings list is empty.");
+                User scimUser;
+                try {
+                    //get the user name of the user with this id
+                    String userName = userIdResolver.getUserName(userId);
+
+                    if (userName == null) {
+                        return null;
+                    } else {
+                        SCIMOperationContext.setCurrentUserStoreDomain(IdentityUtil.extractDomainFromName(userName));
+                        scimUser = getSCIMUserWithRequiredAttributes(userName, requiredAttributes);
+                        if (log.isDebugEnabled()) {
+                            log.debug("User: " + scimUser.getUserName() + " is retrieved through SCIM.");
+                        }
                     }
-                    requiredClaimsInLocalDialect = new ArrayList<>();
+
+                } catch (UserStoreException e) {
+                    throw new CharonException("Error in getting user information from Carbon User Store for" +
+                            "user: " + userId, e);
                 }
-                //we assume (since id is unique per user) only one user exists for a given id
-                scimUser = this.getSCIMUser(userNames[0], requiredClaimsInLocalDialect, scimToLocalClaimsMap);
-                //set the schemas of the scim user
-                scimUser.setSchemas();
-                log.info("User: " + scimUser.getUserName() + " is retrieved through SCIM.");
+                return scimUser;
             }
+        });
+    }
+
+    /**
+     * Get the last modified time of the user, reading only the last modified claim of the user instead of building
+     * the whole user. This is used as the version of the user, to evaluate the ETags of conditional requests.
+     *
+     * The version changes when the claims of the user are set through setUserClaimValues, which every SCIM update of
+     * the user goes through. It doesn't change when only the group memberships of the user change, or when a group of
+     * the user is renamed or deleted, as that would take a write to every member of the group. Neither does it change
+     * for single claim changes made through other APIs, e.g. setUserClaimValue.
+     *
+     * @param userId SCIM id of the user.
+     * @return Last modified time as in meta.lastModified, or null if the user doesn't exist or the time is not known.
+     * @throws CharonException
+     */
+    public String getUserVersion(final String userId) throws CharonException {
 
+        return runOperation(SCIMOperation.GET_USER_VERSION, new MeteredOperation<String, RuntimeException,
+                RuntimeException>() {
+            @Override
+            public String execute() throws CharonException {
+                try {
+                    String userName = userIdResolver.getUserName(userId);
+                    if (userName == null) {
+                        return null;
+                    }
+                    SCIMOperationContext.setCurrentUserStoreDomain(IdentityUtil.extractDomainFromName(userName));
+                    String lastModifiedClaim = SCIMCommonUtils.getSCIMtoLocalMappings().get(
+                            SCIMConstants.CommonSchemaConstants.LAST_MODIFIED_URI);
+                    if (StringUtils.isBlank(lastModifiedClaim)) {
+                        return null;
+                    }
+                    return StringUtils.trimToNull(carbonUM.getUserClaimValue(userName, lastModifiedClaim, null));
+                } catch (UserStoreException e) {
+                    throw new CharonException("Error in getting the last modified time of the user: " + userId, e);
+                }
+            }
+        });
+    }
+
+    /**
+     * Get the version of a user or a group built by this user manager, i.e. its last modified time as it was read
+     * while building it. This gives the ETag of a resource returned by a request, without reading its version again.
+     *
+     * @param id SCIM id of the user or the group.
+     * @return Last modified time as in meta.lastModified, or null if the resource was not built by this user manager
+     * or its last modified time was not read with it.
+     */
+    public String getBuiltResourceVersion(String id) {
+
+        return versionsOfBuiltResources.get(id);
+    }
+
+    /**
+     * Get the lock of a user or a group of the tenant, to be held while the version of the resource is compared with
+     * the version expected by a conditional update and the update is applied. The lock only serializes the
+     * conditional SCIM updates received by this node, see {@link SCIMResourceLocks}.
+     *
+     * @param id SCIM id of the user or the group.
+     * @return Lock of the resource.
+     * @throws CharonException
+     */
+    public Lock getResourceLock(String id) throws CharonException {
+
+        try {
+            return SCIMResourceLocks.getLock(carbonUM.getTenantId(), id);
         } catch (UserStoreException e) {
-            throw new CharonException("Error in getting user information from Carbon User Store for" +
-                    "user: " + userId, e);
+            throw new CharonException("Error in getting the tenant of the user store to lock the resource: " + id, e);
+        }
+    }
+
+    /**
+     * Build the SCIM user of the given user name, reading only the claims needed for the required attributes.
+     *
+     * @param userName           User name with the user store domain.
+     * @param requiredAttributes Attributes required in the response.
+     * @return SCIM user with schemas set.
+     * @throws CharonException
+     * @throws UserStoreException
+     */
+    private User getSCIMUserWithRequiredAttributes(String userName, Map<String, Boolean> requiredAttributes)
+            throws CharonException, UserStoreException {
+
+        //get Claims related to SCIM claim dialect
+        Map<String, String> scimToLocalClaimsMap = SCIMCommonUtils.getSCIMtoLocalMappings();
+        List<String> requiredClaims = getOnlyRequiredClaims(scimToLocalClaimsMap.keySet(), requiredAttributes);
+        List<String> requiredClaimsInLocalDialect;
+        if (MapUtils.isNotEmpty(scimToLocalClaimsMap)) {
+            scimToLocalClaimsMap.keySet().retainAll(requiredClaims);
+            requiredClaimsInLocalDialect = new ArrayList<>(scimToLocalClaimsMap.values());
+        } else {
+            if (log.isDebugEnabled()) {
+                log.debug("SCIM to Local Claim mappings list is empty.");
+            }
+            requiredClaimsInLocalDialect = new ArrayList<>();
         }
+        User scimUser = getSCIMUser(userName, requiredClaimsInLocalDialect, scimToLocalClaimsMap,
+                isGroupsRequired(requiredAttributes));
+        //set the schemas of the scim user
+        scimUser.setSchemas();
         return scimUser;
     }
 
     @Override
-    public void deleteUser(String userId) throws NotFoundException, CharonException {
-        if (log.isDebugEnabled()) {
-            log.debug("Deleting user: " + userId);
-        }
-        //get the user name of the user with this id
-        String[] userNames = null;
-        String userName = null;
-        try {
-            /*set thread local property to signal the downstream SCIMUserOperationListener
-                about the provisioning route.*/
-            SCIMCommonUtils.setThreadLocalIsManagedThroughSCIMEP(true);
-            String userIdLocalClaim = SCIMCommonUtils.getSCIMtoLocalMappings().get(SCIMConstants
-                    .CommonSchemaConstants.ID_URI);
-            if (StringUtils.isNotBlank(userIdLocalClaim)) {
-                userNames = carbonUM.getUserList(userIdLocalClaim, userId, UserCoreConstants.DEFAULT_PROFILE);
-            }
-            String userStoreDomainFromSP = null;
-            try {
-                userStoreDomainFromSP = getUserStoreDomainFromSP();
-            } catch (IdentityApplicationManagementException e) {
-                throw new CharonException("Error retrieving User Store name. ", e);
-            }
-            if (userNames == null || userNames.length == 0) {
-                //resource with given id not found
+    public void deleteUser(final String userId) throws NotFoundException, CharonException {
+
+        runOperation(SCIMOperation.DELETE_USER, new MeteredOperation<Void, NotFoundException, RuntimeException>() {
+            @Override
+            public Void execute() throws CharonException, NotFoundException {
                 if (log.isDebugEnabled()) {
-                    log.debug("User with id: " + userId + " not found.");
-                }
-                throw new NotFoundException();
-            } else if (userStoreDomainFromSP != null &&
-                    !(userStoreDomainFromSP
-                            .equalsIgnoreCase(IdentityUtil.extractDomainFromName(userNames[0])))) {
-                throw new CharonException("User :" + userNames[0] + "is not belong to user store " +
-                        userStoreDomainFromSP + "Hence user updating fail");
-            } else {
-                //we assume (since id is unique per user) only one user exists for a given id
-                userName = userNames[0];
-                String userStoreDomainName = IdentityUtil.extractDomainFromName(userName);
-                //check if SCIM is enabled for the user store
-                if (!isSCIMEnabled(userStoreDomainName)) {
-                    throw new CharonException("Cannot delete user: " + userName + " through SCIM from user store: " +
-                            userStoreDomainName + ". SCIM is not enabled for user store: " + userStoreDomainName);
+                    log.debug("Deleting user: " + userId);
                 }
-                carbonUM.deleteUser(userName);
-                log.info("User: " + userName + " is deleted through SCIM.");
-            }
+                String userName = null;
+                try {
+                    /*set thread local property to signal the downstream SCIMUserOperationListener
+                        about the provisioning route.*/
+                    SCIMCommonUtils.setThreadLocalIsManagedThroughSCIMEP(true);
+                    //get the user name of the user with this id
+                    userName = userIdResolver.getUserName(userId);
+                    String userStoreDomainFromSP = null;
+                    try {
+                        userStoreDomainFromSP = getUserStoreDomainFromSP();
+                    } catch (IdentityApplicationManagementException e) {
+                        throw new CharonException("Error retrieving User Store name. ", e);
+                    }
+                    if (userName == null) {
+                        //resource with given id not found
+                        if (log.isDebugEnabled()) {
+                            log.debug("User with id: " + userId + " not found.");
+                        }
+                        throw new NotFoundException();
+                    } else if (userStoreDomainFromSP != null &&
+                            !(userStoreDomainFromSP
+                                    .equalsIgnoreCase(IdentityUtil.extractDomainFromName(userName)))) {
+                        throw new CharonException("User :" + userName + "is not belong to user store " +
+                                userStoreDomainFromSP + "Hence user updating fail");
+                    } else {
+                        String userStoreDomainName = IdentityUtil.extractDomainFromName(userName);
+                        SCIMOperationContext.setCurrentUserStoreDomain(userStoreDomainName);
+                        //check if SCIM is enabled for the user store
+                        if (!isSCIMEnabled(userStoreDomainName)) {
+                            throw new CharonException("Cannot delete user: " + userName +
+                                    " through SCIM from user store: " + userStoreDomainName +
+                                    ". SCIM is not enabled for user store: " + userStoreDomainName);
+                        }
+                        carbonUM.deleteUser(userName);
+                        if (log.isDebugEnabled()) {
+                            log.debug("User: " + userName + " is deleted through SCIM.");
+                        }
+                    }
 
-        } catch (org.wso2.carbon.user.core.UserStoreException e) {
-            throw new CharonException("Error in deleting user: " + userName, e);
-        }
+                } catch (org.wso2.carbon.user.core.UserStoreException e) {
+                    throw new CharonException("Error in deleting user: " + userName, e);
+                }
 
+                return null;
+            }
+        });
     }
 
     @Override
-    public List<Object> listUsersWithGET(Node rootNode, int startIndex, int count, String sortBy, String sortOrder,
-                                         String domainName, Map<String, Boolean> requiredAttributes)
+    public List<Object> listUsersWithGET(final Node rootNode, final int startIndex, final int count,
+                                         final String sortBy, final String sortOrder, final String domainName,
+                                         final Map<String, Boolean> requiredAttributes)
             throws CharonException, NotImplementedException {
 
-        if (sortBy != null || sortOrder != null) {
-            throw new NotImplementedException("Sorting is not supported");
-        } else if (rootNode != null) {
-            return filterUsers(rootNode, requiredAttributes, startIndex, count, sortBy, sortOrder, domainName);
-        } else {
-            return listUsers(requiredAttributes, startIndex, count, sortBy, sortOrder, domainName);
-        }
+        SCIMOperation operation = rootNode == null ? SCIMOperation.LIST_USERS : SCIMOperation.FILTER_USERS;
+        return runOperation(operation, domainName, new MeteredOperation<List<Object>, NotImplementedException,
+                RuntimeException>() {
+            @Override
+            public List<Object> execute() throws CharonException, NotImplementedException {
+                if (sortBy != null || sortOrder != null) {
+                    throw new NotImplementedException("Sorting is not supported");
+                } else if (rootNode != null) {
+                    SCIMFilterExplain filterExplain = SCIMFilterExplain.start();
+                    try {
+                        return filterUsers(rootNode, requiredAttributes, startIndex, count, sortBy, sortOrder,
+                                domainName);
+                    } finally {
+                        filterExplain.end();
+                    }
+                } else {
+                    return listUsers(requiredAttributes, startIndex, count, sortBy, sortOrder, domainName);
+                }
+            }
+        });
     }
 
     @Override
@@ -511,13 +724,15 @@ public class SCIMUserManager implements UserManager {
             }
 
             User[] scimUsers;
-            if (isPaginatedUserStoreAvailable() && carbonUM instanceof PaginatedUserStoreManager) {
+            if (isBulkUserReadAvailable()) {
                 // Retrieve all SCIM users at once.
-                scimUsers = this.getSCIMUsers(userNames, requiredClaimsInLocalDialect, scimToLocalClaimsMap);
+                scimUsers = this.getSCIMUsers(userNames, requiredClaimsInLocalDialect, scimToLocalClaimsMap,
+                        isGroupsRequired(requiredAttributes));
                 users.addAll(Arrays.asList(scimUsers));
             } else {
                 // Retrieve SCIM users one by one.
-                retriveSCIMUsers(users, userNames, requiredClaimsInLocalDialect, scimToLocalClaimsMap);
+                retriveSCIMUsers(users, userNames, requiredClaimsInLocalDialect, scimToLocalClaimsMap,
+                        isGroupsRequired(requiredAttributes));
             }
         } catch (UserStoreException e) {
             throw new CharonException("Error while retrieving users from user store.", e);
@@ -526,7 +741,7 @@ public class SCIMUserManager implements UserManager {
     }
 
     private void retriveSCIMUsers(List<Object> users, String[] userNames, List<String> requiredClaims,
-            Map<String, String> scimToLocalClaimsMap) throws CharonException {
+            Map<String, String> scimToLocalClaimsMap, boolean isGroupsRequired) throws CharonException {
         for (String userName : userNames) {
             if (userName.contains(UserCoreConstants.NAME_COMBINER)) {
                 userName = userName.split("\\" + UserCoreConstants.NAME_COMBINER)[0];
@@ -537,7 +752,7 @@ public class SCIMUserManager implements UserManager {
                     log.debug("SCIM is enabled for the user-store domain : " + userStoreDomainName + ". "
                             + "Including user : " + userName + " in the response.");
                 }
-                User scimUser = this.getSCIMUser(userName, requiredClaims, scimToLocalClaimsMap);
+                User scimUser = getSCIMUser(userName, requiredClaims, scimToLocalClaimsMap, isGroupsRequired);
                 if (scimUser != null) {
                     Map<String, Attribute> attrMap = scimUser.getAttributeList();
                     if (attrMap != null && !attrMap.isEmpty()) {
@@ -554,95 +769,471 @@ public class SCIMUserManager implements UserManager {
     }
 
     @Override
-    public User updateUser(User user, Map<String, Boolean> requiredAttributes) throws CharonException,
+    public User updateUser(final User user, final Map<String, Boolean> requiredAttributes) throws CharonException,
             BadRequestException {
-        try {
-            if (log.isDebugEnabled()) {
-                log.debug("Updating user: " + user.getUserName());
+
+        return runOperation(SCIMOperation.UPDATE_USER, new MeteredOperation<User, BadRequestException,
+                RuntimeException>() {
+            @Override
+            public User execute() throws CharonException, BadRequestException {
+                try {
+                    if (log.isDebugEnabled()) {
+                        log.debug("Updating user: " + user.getUserName());
+                    }
+
+                    /*set thread local property to signal the downstream SCIMUserOperationListener
+                        about the provisioning route.*/
+                    SCIMCommonUtils.setThreadLocalIsManagedThroughSCIMEP(true);
+                    //get user claim values
+                    Map<String, String> claims = AttributeMapper.getClaimsMap(user);
+
+                    //check if username of the updating user existing in the userstore.
+                    try {
+                        String userStoreDomainFromSP = getUserStoreDomainFromSP();
+                        // only the name of the existing user is needed here, hence the user is not retrieved.
+                        String oldUserName = userIdResolver.getUserName(user.getId());
+                        if (oldUserName == null) {
+                            throw new CharonException("User with id: " + user.getId() +
+                                    " does not exist in the system.");
+                        }
+                        SCIMOperationContext.setCurrentUserStoreDomain(IdentityUtil.extractDomainFromName(oldUserName));
+                        if (userStoreDomainFromSP != null && !userStoreDomainFromSP
+                                .equalsIgnoreCase(IdentityUtil.extractDomainFromName(oldUserName))) {
+                            throw new CharonException("User :" + oldUserName + "is not belong to user store " +
+                                    userStoreDomainFromSP + "Hence user updating fail");
+                        }
+                        if (getUserStoreDomainFromSP() != null && !UserCoreConstants.PRIMARY_DEFAULT_DOMAIN_NAME
+                                .equalsIgnoreCase(getUserStoreDomainFromSP())) {
+                            user.setUserName(IdentityUtil
+                                    .addDomainToName(UserCoreUtil.removeDomainFromName(user.getUserName()),
+                                            getUserStoreDomainFromSP()));
+                        }
+                    } catch (IdentityApplicationManagementException e) {
+                        throw new CharonException("Error retrieving User Store name. ", e);
+                    }
+                    if (!carbonUM.isExistingUser(user.getUserName())) {
+                        throw new CharonException("User name is immutable in carbon user store.");
+                    }
+
+                        /*skip groups attribute since we map groups attribute to actual groups in ldap.
+                        and do not update it as an attribute in user schema*/
+                    if (claims.containsKey(SCIMConstants.UserSchemaConstants.GROUP_URI)) {
+                        claims.remove(SCIMConstants.UserSchemaConstants.GROUP_URI);
+                    }
+
+                        /* Skip roles list since we map SCIM groups to local roles internally. It shouldn't be allowed
+                        to manipulate SCIM groups from user endpoint as this attribute has a mutability of "readOnly".
+                        Group changes must be applied via Group Resource */
+                    if (claims.containsKey(SCIMConstants.UserSchemaConstants.ROLES_URI + "." + SCIMConstants.DEFAULT)) {
+                        claims.remove(SCIMConstants.UserSchemaConstants.ROLES_URI);
+                    }
+
+                    if (claims.containsKey(SCIMConstants.UserSchemaConstants.USER_NAME_URI)) {
+                        claims.remove(SCIMConstants.UserSchemaConstants.USER_NAME_URI);
+                    }
+
+                    Map<String, String> scimToLocalClaimsMap = SCIMCommonUtils.getSCIMtoLocalMappings();
+                    List<String> requiredClaims = getOnlyRequiredClaims(scimToLocalClaimsMap.keySet(),
+                            requiredAttributes);
+                    List<String> requiredClaimsInLocalDialect;
+                    if (MapUtils.isNotEmpty(scimToLocalClaimsMap)) {
+                        scimToLocalClaimsMap.keySet().retainAll(requiredClaims);
+                        requiredClaimsInLocalDialect = new ArrayList<>(scimToLocalClaimsMap.values());
+                    } else {
+                        if (log.isDebugEnabled()) {
+                            log.debug("SCIM to Local Claim mappings list is empty.");
+                        }
+                        requiredClaimsInLocalDialect = new ArrayList<>();
+                    }
+
+                    Map<String, String> oldClaimList = carbonUM.getUserClaimValues(user.getUserName(),
+                            requiredClaimsInLocalDialect.toArray(new String[requiredClaims.size()]), null);
+
+                    for (Map.Entry<String, String> entry : oldClaimList.entrySet()) {
+                        if (!isImmutableClaim(entry.getKey())) {
+                            carbonUM.deleteUserClaimValue(user.getUserName(), entry.getKey(), null);
+                        }
+                    }
+                    // Get user claims mapped from SCIM dialect to WSO2 dialect.
+                    Map<String, String> claimValuesInLocalDialect = SCIMCommonUtils.convertSCIMtoLocalDialect(claims);
+                    //set user claim values
+                    carbonUM.setUserClaimValues(user.getUserName(), claimValuesInLocalDialect, null);
+                    //if password is updated, set it separately
+                    if (user.getPassword() != null) {
+                        carbonUM.updateCredentialByAdmin(user.getUserName(), user.getPassword());
+                    }
+                    if (log.isDebugEnabled()) {
+                        log.debug("User: " + user.getUserName() + " updated through SCIM.");
+                    }
+                    return getUser(user.getId(),requiredAttributes);
+                } catch (UserStoreException e) {
+                    handleErrorsOnUserNameAndPasswordPolicy(e);
+                    throw new CharonException("Error while updating attributes of user: " + user.getUserName(), e);
+                } catch (BadRequestException | CharonException e) {
+                    throw new CharonException("Error occured while trying to update the user", e);
+                }
             }
+        });
+    }
 
-            /*set thread local property to signal the downstream SCIMUserOperationListener
-                about the provisioning route.*/
-            SCIMCommonUtils.setThreadLocalIsManagedThroughSCIMEP(true);
-            //get user claim values
-            Map<String, String> claims = AttributeMapper.getClaimsMap(user);
+    /**
+     * Apply the given PATCH operations on the user directly as claim level changes, instead of loading the whole
+     * user and replacing every claim through {@link #updateUser(User, Map)}. Only operations on singular attributes
+     * which are mapped to a mutable local claim are handled here, after validating them against the user schema. If
+     * any of the operations cannot be applied that way, nothing is changed and null is returned so that the caller
+     * can fall back to the generic PATCH flow.
+     *
+     * @param userId             SCIM id of the user.
+     * @param patchOperations    Decoded PATCH operations.
+     * @param requiredAttributes Attributes required in the response.
+     * @return Updated user with the required attributes, or null if the operations need the generic PATCH flow.
+     * @throws CharonException
+     * @throws BadRequestException If an operation violates the user schema.
+     * @throws NotFoundException
+     */
+    public User patchUser(final String userId, final List<PatchOperation> patchOperations, final Map<String, Boolean>
+            requiredAttributes) throws CharonException, BadRequestException, NotFoundException {
 
-            //check if username of the updating user existing in the userstore.
-            try {
-                String userStoreDomainFromSP = getUserStoreDomainFromSP();
-                SCIMResourceTypeSchema schema = SCIMResourceSchemaManager.getInstance().getUserResourceSchema();
-                User oldUser = this.getUser(user.getId(), ResourceManagerUtil.getAllAttributeURIs(schema));
-                if (userStoreDomainFromSP != null && !userStoreDomainFromSP
-                        .equalsIgnoreCase(IdentityUtil.extractDomainFromName(oldUser.getUserName()))) {
-                    throw new CharonException("User :" + oldUser.getUserName() + "is not belong to user store " +
-                            userStoreDomainFromSP + "Hence user updating fail");
+        return runOperation(SCIMOperation.PATCH_USER, new MeteredOperation<User, BadRequestException,
+                NotFoundException>() {
+            @Override
+            public User execute() throws CharonException, BadRequestException, NotFoundException {
+                if (log.isDebugEnabled()) {
+                    log.debug("Patching user: " + userId);
                 }
-                if (getUserStoreDomainFromSP() != null &&
-                        !UserCoreConstants.PRIMARY_DEFAULT_DOMAIN_NAME.equalsIgnoreCase(getUserStoreDomainFromSP())) {
-                    user.setUserName(IdentityUtil
-                            .addDomainToName(UserCoreUtil.removeDomainFromName(user.getUserName()),
-                                    getUserStoreDomainFromSP()));
+                if (CollectionUtils.isEmpty(patchOperations)) {
+                    return null;
+                }
+                String userName = null;
+                try {
+                    Map<String, String> scimToLocalClaimsMap = SCIMCommonUtils.getSCIMtoLocalMappings();
+                    Map<String, String> claimsToSet = new HashMap<>();
+                    Set<String> claimsToRemove = new HashSet<>();
+                    for (PatchOperation operation : patchOperations) {
+                        if (!addClaimsOfPatchOperation(operation, scimToLocalClaimsMap, claimsToSet, claimsToRemove)) {
+                            if (log.isDebugEnabled()) {
+                                log.debug("PATCH operation: " + operation.getOperation() + " on path: " +
+                                        operation.getPath() + " cannot be applied as a claim update for user: " +
+                                        userId);
+                            }
+                            return null;
+                        }
+                    }
+
+                    /*set thread local property to signal the downstream SCIMUserOperationListener
+                        about the provisioning route.*/
+                    SCIMCommonUtils.setThreadLocalIsManagedThroughSCIMEP(true);
+                    userName = userIdResolver.getUserName(userId);
+                    if (userName == null) {
+                        if (log.isDebugEnabled()) {
+                            log.debug("User with id: " + userId + " not found.");
+                        }
+                        throw new NotFoundException();
+                    }
+                    String userStoreDomainFromSP;
+                    try {
+                        userStoreDomainFromSP = getUserStoreDomainFromSP();
+                    } catch (IdentityApplicationManagementException e) {
+                        throw new CharonException("Error retrieving User Store name. ", e);
+                    }
+                    String userStoreDomainName = IdentityUtil.extractDomainFromName(userName);
+                    SCIMOperationContext.setCurrentUserStoreDomain(userStoreDomainName);
+                    if (userStoreDomainFromSP != null && !userStoreDomainFromSP.equalsIgnoreCase(userStoreDomainName)) {
+                        throw new CharonException("User :" + userName + "is not belong to user store " +
+                                userStoreDomainFromSP + "Hence user updating fail");
+                    }
+                    if (!isSCIMEnabled(userStoreDomainName)) {
+                        throw new CharonException("Cannot update user: " + userName +
+                                " through SCIM from user store: " + userStoreDomainName +
+                                ". SCIM is not enabled for user store: " + userStoreDomainName);
+                    }
+
+                    if (!claimsToRemove.isEmpty()) {
+                        carbonUM.deleteUserClaimValues(userName,
+                                claimsToRemove.toArray(new String[claimsToRemove.size()]), null);
+                    }
+                    // The last modified time is set along with the claims, so that the version of the user changes
+                    // with a single write, also when claims are only removed.
+                    String lastModifiedClaim = scimToLocalClaimsMap.get(
+                            SCIMConstants.CommonSchemaConstants.LAST_MODIFIED_URI);
+                    if (StringUtils.isNotBlank(lastModifiedClaim)) {
+                        claimsToSet.put(lastModifiedClaim, SCIMDateTimeFormatter.formatNewVersion());
+                    }
+                    if (!claimsToSet.isEmpty()) {
+                        carbonUM.setUserClaimValues(userName, claimsToSet, null);
+                    }
+                    if (log.isDebugEnabled()) {
+                        log.debug("User: " + userName + " patched through SCIM.");
+                    }
+                    return getSCIMUserWithRequiredAttributes(userName, requiredAttributes);
+                } catch (UserStoreException e) {
+                    handleErrorsOnUserNameAndPasswordPolicy(e);
+                    throw new CharonException("Error while patching attributes of user: " + userName, e);
                 }
-            } catch (IdentityApplicationManagementException e) {
-                throw new CharonException("Error retrieving User Store name. ", e);
-            }
-            if (!carbonUM.isExistingUser(user.getUserName())) {
-                throw new CharonException("User name is immutable in carbon user store.");
             }
+        });
+    }
+
+    /**
+     * Translate a PATCH operation into local claims to be set or removed.
+     *
+     * @param operation            PATCH operation.
+     * @param scimToLocalClaimsMap SCIM to local claim mappings.
+     * @param claimsToSet          Local claims to be set, populated by this method.
+     * @param claimsToRemove       Local claims to be removed, populated by this method.
+     * @return False if the operation cannot be applied as plain claim changes.
+     * @throws UserStoreException
+     * @throws BadRequestException If the operation violates the user schema.
+     */
+    private boolean addClaimsOfPatchOperation(PatchOperation operation, Map<String, String> scimToLocalClaimsMap,
+                                              Map<String, String> claimsToSet, Set<String> claimsToRemove)
+            throws UserStoreException, BadRequestException {
+
+        String path = operation.getPath();
+        Object value = operation.getValues();
+        if (SCIMConstants.OperationalConstants.REMOVE.equalsIgnoreCase(operation.getOperation())) {
+            if (StringUtils.isBlank(path) || value != null) {
+                // Removing values from a multi-valued attribute by value is not a plain claim removal.
+                return false;
+            }
+            String localClaim = getMutableLocalClaimOfPatchPath(path, null, scimToLocalClaimsMap);
+            if (localClaim == null) {
+                return false;
+            }
+            claimsToSet.remove(localClaim);
+            claimsToRemove.add(localClaim);
+            return true;
+        }
+        if (!SCIMConstants.OperationalConstants.ADD.equalsIgnoreCase(operation.getOperation()) &&
+                !SCIMConstants.OperationalConstants.REPLACE.equalsIgnoreCase(operation.getOperation())) {
+            return false;
+        }
 
-                /*skip groups attribute since we map groups attribute to actual groups in ldap.
-                and do not update it as an attribute in user schema*/
-            if (claims.containsKey(SCIMConstants.UserSchemaConstants.GROUP_URI)) {
-                claims.remove(SCIMConstants.UserSchemaConstants.GROUP_URI);
+        Map<String, Object> values = new HashMap<>();
+        if (StringUtils.isBlank(path)) {
+            // Without a path the value holds the attributes of the user to be changed.
+            if (!(value instanceof JSONObject) || !flattenPatchValue(null, (JSONObject) value, values)) {
+                return false;
             }
-            
-                /* Skip roles list since we map SCIM groups to local roles internally. It shouldn't be allowed to
-                manipulate SCIM groups from user endpoint as this attribute has a mutability of "readOnly". Group
-                changes must be applied via Group Resource */
-            if (claims.containsKey(SCIMConstants.UserSchemaConstants.ROLES_URI + "." + SCIMConstants.DEFAULT)) {
-                claims.remove(SCIMConstants.UserSchemaConstants.ROLES_URI);
+        } else if (value instanceof JSONObject) {
+            // Value of a singular complex attribute, i.e. name.
+            if (!flattenPatchValue(getPatchAttributeURI(path), (JSONObject) value, values)) {
+                return false;
             }
+        } else {
+            values.put(getPatchAttributeURI(path), value);
+        }
 
-            if (claims.containsKey(SCIMConstants.UserSchemaConstants.USER_NAME_URI)) {
-                claims.remove(SCIMConstants.UserSchemaConstants.USER_NAME_URI);
+        for (Map.Entry<String, Object> entry : values.entrySet()) {
+            Object attributeValue = entry.getValue();
+            if (attributeValue == null || JSONObject.NULL.equals(attributeValue)) {
+                return false;
             }
+            String localClaim = getMutableLocalClaimOfPatchPath(entry.getKey(), attributeValue,
+                    scimToLocalClaimsMap);
+            if (localClaim == null) {
+                return false;
+            }
+            claimsToRemove.remove(localClaim);
+            claimsToSet.put(localClaim, String.valueOf(attributeValue));
+        }
+        return true;
+    }
 
-            Map<String, String> scimToLocalClaimsMap = SCIMCommonUtils.getSCIMtoLocalMappings();
-            List<String> requiredClaims = getOnlyRequiredClaims(scimToLocalClaimsMap.keySet(), requiredAttributes);
-            List<String> requiredClaimsInLocalDialect;
-            if (MapUtils.isNotEmpty(scimToLocalClaimsMap)) {
-                scimToLocalClaimsMap.keySet().retainAll(requiredClaims);
-                requiredClaimsInLocalDialect = new ArrayList<>(scimToLocalClaimsMap.values());
+    /**
+     * Flatten the attributes of a PATCH value into attribute URIs, i.e. {"name": {"givenName": "x"}} is flattened to
+     * urn:ietf:params:scim:schemas:core:2.0:User:name.givenName.
+     *
+     * @param parentURI URI of the attribute holding the value, or null for a value without a path.
+     * @param value     PATCH value.
+     * @param values    Flattened attribute values, populated by this method.
+     * @return False if the value contains attributes that cannot be flattened.
+     */
+    private boolean flattenPatchValue(String parentURI, JSONObject value, Map<String, Object> values) {
+
+        Iterator<String> keys = value.keys();
+        while (keys.hasNext()) {
+            String key = keys.next();
+            Object subValue = value.opt(key);
+            String attributeURI;
+            if (parentURI == null) {
+                if (SCIMConstants.CommonSchemaConstants.SCHEMAS.equals(key)) {
+                    continue;
+                }
+                if (key.startsWith(SCHEMA_URN_PREFIX)) {
+                    // Attributes of an extension schema.
+                    if (!(subValue instanceof JSONObject) ||
+                            !flattenPatchValue(key + ":", (JSONObject) subValue, values)) {
+                        return false;
+                    }
+                    continue;
+                }
+                attributeURI = getPatchAttributeURI(key);
+            } else if (parentURI.endsWith(":")) {
+                attributeURI = parentURI + key;
             } else {
-                if (log.isDebugEnabled()) {
-                    log.debug("SCIM to Local Claim mappings list is empty.");
+                attributeURI = parentURI + "." + key;
+            }
+
+            if (subValue instanceof JSONObject) {
+                if (parentURI != null && !parentURI.endsWith(":")) {
+                    // Sub attributes can not be complex.
+                    return false;
                 }
-                requiredClaimsInLocalDialect = new ArrayList<>();
+                if (!flattenPatchValue(attributeURI, (JSONObject) subValue, values)) {
+                    return false;
+                }
+            } else {
+                values.put(attributeURI, subValue);
             }
+        }
+        return true;
+    }
 
-            Map<String, String> oldClaimList = carbonUM.getUserClaimValues(user.getUserName(), requiredClaimsInLocalDialect
-                    .toArray(new String[requiredClaims.size()]), null);
+    /**
+     * Get the fully qualified attribute URI of a PATCH path. Paths without a schema URN belong to the core user
+     * schema.
+     *
+     * @param path PATCH path.
+     * @return Attribute URI.
+     */
+    private String getPatchAttributeURI(String path) {
 
-            for (Map.Entry<String, String> entry : oldClaimList.entrySet()) {
-                if (!isImmutableClaim(entry.getKey())) {
-                    carbonUM.deleteUserClaimValue(user.getUserName(), entry.getKey(), null);
-                }
+        if (path.startsWith(SCHEMA_URN_PREFIX)) {
+            return path;
+        }
+        return SCIMCommonConstants.SCIM_USER_CLAIM_DIALECT + ":" + path;
+    }
+
+    /**
+     * Get the local claim of a PATCH path if the path points to a singular attribute which is mapped to a mutable
+     * local claim. The change is validated against the user schema as charon validates it in the generic PATCH flow,
+     * since the claims are written without going through charon.
+     *
+     * @param path                 PATCH path or attribute URI.
+     * @param value                Value to be set, or null if the attribute is removed.
+     * @param scimToLocalClaimsMap SCIM to local claim mappings.
+     * @return Local claim URI or null if the path can not be patched as a single claim.
+     * @throws UserStoreException
+     * @throws BadRequestException If the change violates the schema of the attribute.
+     */
+    private String getMutableLocalClaimOfPatchPath(String path, Object value, Map<String, String> scimToLocalClaimsMap)
+            throws UserStoreException, BadRequestException {
+
+        if (path.contains("[")) {
+            // Value filters are resolved against the values of multi-valued attributes.
+            return null;
+        }
+        List<AttributeSchema> attributeSchemas = new ArrayList<>();
+        if (!findAttributeSchema(SCIMResourceSchemaManager.getInstance().getUserResourceSchema().getAttributesList(),
+                getPatchAttributeURI(path), attributeSchemas)) {
+            // Attributes unknown to the schema are left to charon to validate.
+            return null;
+        }
+        for (AttributeSchema attributeSchema : attributeSchemas) {
+            if (attributeSchema.getMultiValued()) {
+                return null;
             }
-            // Get user claims mapped from SCIM dialect to WSO2 dialect.
-            Map<String, String> claimValuesInLocalDialect = SCIMCommonUtils.convertSCIMtoLocalDialect(claims);
-            //set user claim values
-            carbonUM.setUserClaimValues(user.getUserName(), claimValuesInLocalDialect, null);
-            //if password is updated, set it separately
-            if (user.getPassword() != null) {
-                carbonUM.updateCredentialByAdmin(user.getUserName(), user.getPassword());
+            if (SCIMDefinitions.Mutability.READ_ONLY.equals(attributeSchema.getMutability())) {
+                throw new BadRequestException("Attribute: " + attributeSchema.getURI() + " is read only.",
+                        ResponseCodeConstants.MUTABILITY);
             }
-            log.info("User: " + user.getUserName() + " updated through SCIM.");
-            return getUser(user.getId(),requiredAttributes);
-        } catch (UserStoreException e) {
-            handleErrorsOnUserNameAndPasswordPolicy(e);
-            throw new CharonException("Error while updating attributes of user: " + user.getUserName(), e);
-        } catch (BadRequestException | CharonException e) {
-            throw new CharonException("Error occured while trying to update the user", e);
+            if (SCIMDefinitions.Mutability.IMMUTABLE.equals(attributeSchema.getMutability())) {
+                // Immutable attributes can only be set once, which is validated against the user in the generic flow.
+                return null;
+            }
+        }
+
+        AttributeSchema attributeSchema = attributeSchemas.get(attributeSchemas.size() - 1);
+        if (value == null) {
+            if (attributeSchema.getRequired()) {
+                throw new BadRequestException("Required attribute: " + attributeSchema.getURI() +
+                        " cannot be removed.", ResponseCodeConstants.INVALID_VALUE);
+            }
+        } else {
+            Boolean validValue = isValidPatchValue(attributeSchema.getType(), value);
+            if (validValue == null) {
+                return null;
+            }
+            if (!validValue) {
+                throw new BadRequestException("Value of attribute: " + attributeSchema.getURI() +
+                        " is not of type: " + attributeSchema.getType() + ".", ResponseCodeConstants.INVALID_VALUE);
+            }
+        }
+
+        // Mappings are keyed by the URI of the schema, while names in the request are case insensitive.
+        String localClaim = scimToLocalClaimsMap.get(attributeSchema.getURI());
+        if (StringUtils.isBlank(localClaim) || isImmutableClaim(localClaim, scimToLocalClaimsMap)) {
+            return null;
+        }
+        return localClaim;
+    }
+
+    /**
+     * Find the schema of an attribute by its URI, ignoring the case, along with the schemas of its parent attributes.
+     *
+     * @param attributeSchemas Schemas to search in.
+     * @param attributeURI     Attribute URI.
+     * @param path             Schemas from the top level attribute down to the attribute, populated by this method.
+     * @return False if the attribute is not found.
+     */
+    private boolean findAttributeSchema(List<? extends AttributeSchema> attributeSchemas, String attributeURI,
+                                        List<AttributeSchema> path) {
+
+        if (attributeSchemas == null) {
+            return false;
+        }
+        for (AttributeSchema attributeSchema : attributeSchemas) {
+            String schemaURI = attributeSchema.getURI();
+            if (schemaURI == null) {
+                continue;
+            }
+            if (schemaURI.equalsIgnoreCase(attributeURI)) {
+                path.add(attributeSchema);
+                return true;
+            }
+            if (attributeURI.length() > schemaURI.length() &&
+                    attributeURI.regionMatches(true, 0, schemaURI, 0, schemaURI.length()) &&
+                    (attributeURI.charAt(schemaURI.length()) == '.' ||
+                            attributeURI.charAt(schemaURI.length()) == ':')) {
+                path.add(attributeSchema);
+                if (findAttributeSchema(attributeSchema.getSubAttributeSchemas(), attributeURI, path)) {
+                    return true;
+                }
+                path.remove(path.size() - 1);
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Check whether a PATCH value matches the data type of the attribute.
+     *
+     * @param type  Data type of the attribute.
+     * @param value PATCH value.
+     * @return Whether the value is valid, or null if the value is only validated in the generic PATCH flow.
+     */
+    private Boolean isValidPatchValue(SCIMDefinitions.DataType type, Object value) {
+
+        if (type == null) {
+            return null;
+        }
+        switch (type) {
+            case STRING:
+            case BINARY:
+            case REFERENCE:
+                return value instanceof String;
+            case BOOLEAN:
+                return value instanceof Boolean;
+            case INTEGER:
+                return value instanceof Integer || value instanceof Long;
+            case DECIMAL:
+                return value instanceof Number;
+            case COMPLEX:
+                return false;
+            default:
+                // Date times are parsed by charon in the generic flow.
+                return null;
         }
     }
 
@@ -716,9 +1307,11 @@ public class SCIMUserManager implements UserManager {
                             + "value: %s ", domainName, node.getValue());
             throw new CharonException(errorMessage, e);
         }
+        long startTime = System.nanoTime();
         try {
             // Check which APIs should the filter needs to follow.
             if (isUseLegacyAPIs(limit)) {
+                SCIMFilterExplain.setStrategy(SCIMFilterExplain.LEGACY_APIS);
                 userNames = filterUsersUsingLegacyAPIs(node, limit, offset, domainName);
             } else {
                 userNames = filterUsers(node, offset, limit, sortBy, sortOrder, domainName);
@@ -726,8 +1319,16 @@ public class SCIMUserManager implements UserManager {
         } catch (NotImplementedException e) {
             String errorMessage = String.format("System does not support filter operator: %s", node.getOperation());
             throw new CharonException(errorMessage, e);
+        } finally {
+            SCIMFilterExplain.recordStage(SCIMFilterExplain.FILTER_STAGE, startTime);
+        }
+
+        startTime = System.nanoTime();
+        try {
+            return getDetailedUsers(userNames, requiredAttributes);
+        } finally {
+            SCIMFilterExplain.recordStage(SCIMFilterExplain.USER_DETAILS_STAGE, startTime);
         }
-        return getDetailedUsers(userNames, requiredAttributes);
     }
 
     /**
@@ -866,9 +1467,11 @@ public class SCIMUserManager implements UserManager {
 
         // Filter users when the domain is specified in the request.
         if (StringUtils.isNotEmpty(domainName)) {
+            SCIMFilterExplain.setStrategy(SCIMFilterExplain.PAGINATED_CONDITION);
             return filterUsernames(createConditionForSingleAttributeFilter(domainName, node), offset, limit,
                     sortBy, sortOrder, domainName);
         } else {
+            SCIMFilterExplain.setStrategy(SCIMFilterExplain.MULTI_DOMAIN_FAN_OUT);
             return filterUsersFromMultipleDomains(node, offset, limit, sortBy, sortOrder, null);
         }
     }
@@ -916,7 +1519,10 @@ public class SCIMUserManager implements UserManager {
                 if (log.isDebugEnabled()) {
                     log.debug(String.format("Filter returned no results for original offset: %d.", offset));
                 }
+                long startTime = System.nanoTime();
+                int originalOffset = offset;
                 offset = calculateOffset(condition, offset, sortBy, sortOrder, userStoreDomainName);
+                SCIMFilterExplain.recordOffsetRecalculation(userStoreDomainName, originalOffset, offset, startTime);
             } else {
                 // Returned user names size > 0 implies there are users in that domain which is larger than
                 // the offset.
@@ -1007,10 +1613,13 @@ public class SCIMUserManager implements UserManager {
             log.debug(String.format("Filtering users in domain : %s with limit: %d and offset: %d.", domainName, limit,
                     offset));
         }
+        long startTime = System.nanoTime();
         try {
-            return ((PaginatedUserStoreManager) carbonUM)
+            String[] userNames = ((PaginatedUserStoreManager) carbonUM)
                     .getUserList(condition, domainName, UserCoreConstants.DEFAULT_PROFILE, limit, offset, sortBy,
                             sortOrder);
+            SCIMFilterExplain.recordStoreQuery(domainName, condition, offset, limit, userNames, startTime);
+            return userNames;
         } catch (UserStoreException e) {
             String errorMessage = String
                     .format("Error while retrieving users for the domain: %s with limit: %d and offset: %d.",
@@ -1095,9 +1704,10 @@ public class SCIMUserManager implements UserManager {
                 .containsNone(attributeValue, CarbonConstants.DOMAIN_SEPARATOR)) {
             attributeValue = domainName.toUpperCase() + CarbonConstants.DOMAIN_SEPARATOR + node.getValue();
         }
+        long startTime = System.nanoTime();
         try {
             if (SCIMConstants.UserSchemaConstants.GROUP_URI.equals(attributeName)) {
-                if (carbonUM instanceof AbstractUserStoreManager) {
+                if (getAbstractUserStoreManager() != null) {
                     String[] roleNames = getRoleNames(filterOperation, attributeValue);
                     userNames = getUserListOfRoles(roleNames);
                 } else {
@@ -1115,6 +1725,8 @@ public class SCIMUserManager implements UserManager {
                     attributeValue);
             throw new CharonException(errorMessage, e);
         }
+        SCIMFilterExplain.recordStoreQuery(domainName, new ExpressionCondition(filterOperation, attributeName,
+                attributeValue), offset, limit, userNames, startTime);
         userNames = paginateUsers(userNames, limit, offset);
         return userNames;
     }
@@ -1169,30 +1781,34 @@ public class SCIMUserManager implements UserManager {
 
         // Handle pagination.
         if (limit > 0) {
+            SCIMFilterExplain.setStrategy(SCIMFilterExplain.PAGINATED_CONDITION);
             userNames = getFilteredUsersFromMultiAttributeFiltering(node, offset, limit, sortBy,
                     sortOrder, domainName);
             filteredUsers.set(0, userNames.length);
-            filteredUsers.addAll(getFilteredUserDetails(userNames, requiredAttributes));
+            filteredUsers.addAll(getFilteredUserDetailsOfFilter(userNames, requiredAttributes));
         } else {
             int maxLimit = getMaxLimit(domainName);
             if (StringUtils.isNotEmpty(domainName)) {
+                SCIMFilterExplain.setStrategy(SCIMFilterExplain.PAGINATED_CONDITION);
                 userNames = getFilteredUsersFromMultiAttributeFiltering(node, offset, maxLimit, sortBy,
                         sortOrder, domainName);
                 filteredUsers.set(0, userNames.length);
-                filteredUsers.addAll(getFilteredUserDetails(userNames, requiredAttributes));
+                filteredUsers.addAll(getFilteredUserDetailsOfFilter(userNames, requiredAttributes));
             } else {
+                SCIMFilterExplain.setStrategy(SCIMFilterExplain.MULTI_DOMAIN_FAN_OUT);
                 int totalUserCount = 0;
                 // If pagination and domain name are not given, then perform filtering on all available user stores.
                 while (carbonUM != null) {
                     // If carbonUM is not an instance of Abstract User Store Manger we can't get the domain name.
-                    if (carbonUM instanceof AbstractUserStoreManager) {
+                    if (getAbstractUserStoreManager() != null) {
                         domainName = carbonUM.getRealmConfiguration().getUserStoreProperty("DomainName");
                         userNames = getFilteredUsersFromMultiAttributeFiltering(node, offset, maxLimit,
                                 sortBy, sortOrder, domainName);
                         totalUserCount += userNames.length;
-                        filteredUsers.addAll(getFilteredUserDetails(userNames, requiredAttributes));
+                        filteredUsers.addAll(getFilteredUserDetailsOfFilter(userNames, requiredAttributes));
                     }
-                    carbonUM = carbonUM.getSecondaryUserStoreManager();
+                    // The secondary user store managers are not wrapped by the user store manager of the realm.
+                    carbonUM = UserStoreCallCounter.wrap(carbonUM.getSecondaryUserStoreManager());
                 }
                 //set the total results
                 filteredUsers.set(0, totalUserCount);
@@ -1337,18 +1953,45 @@ public class SCIMUserManager implements UserManager {
             if (StringUtils.isEmpty(domainName)) {
                 domainName = "PRIMARY";
             }
-            Map<String, String> attributes = getAllAttributes(domainName);
-            if (log.isDebugEnabled()) {
-                log.debug("Invoking the do get user list for domain: " + domainName);
+            long startTime = System.nanoTime();
+            try {
+                Map<String, String> attributes = getAllAttributes(domainName);
+                if (log.isDebugEnabled()) {
+                    log.debug("Invoking the do get user list for domain: " + domainName);
+                }
+                Condition condition = getCondition(node, attributes);
+                long queryStartTime = System.nanoTime();
+                userNames = ((PaginatedUserStoreManager) carbonUM).getUserList(condition, domainName,
+                        UserCoreConstants.DEFAULT_PROFILE, limit, offset, sortBy, sortOrder);
+                SCIMFilterExplain.recordStoreQuery(domainName, condition, offset, limit, userNames, queryStartTime);
+                return userNames;
+            } finally {
+                SCIMFilterExplain.recordStage(SCIMFilterExplain.FILTER_STAGE, startTime);
             }
-            userNames = ((PaginatedUserStoreManager) carbonUM).getUserList(getCondition(node, attributes), domainName,
-                    UserCoreConstants.DEFAULT_PROFILE, limit, offset, sortBy, sortOrder);
-            return userNames;
         } catch (UserStoreException e) {
             throw new CharonException("Error in filtering users by multi attributes ", e);
         }
     }
 
+    /**
+     * Get required claim details for the users of a filter, timing it as a stage of the filter.
+     *
+     * @param userNames
+     * @param requiredAttributes
+     * @return
+     * @throws CharonException
+     */
+    private List<Object> getFilteredUserDetailsOfFilter(String[] userNames, Map<String, Boolean> requiredAttributes)
+            throws CharonException {
+
+        long startTime = System.nanoTime();
+        try {
+            return getFilteredUserDetails(userNames, requiredAttributes);
+        } finally {
+            SCIMFilterExplain.recordStage(SCIMFilterExplain.USER_DETAILS_STAGE, startTime);
+        }
+    }
+
     /**
      * Get required claim details for filtered user.
      *
@@ -1382,16 +2025,15 @@ public class SCIMUserManager implements UserManager {
                     requiredClaimsInLocalDialect = new ArrayList<>();
                 }
 
+                boolean isGroupsRequired = isGroupsRequired(requiredAttributes);
                 User[] scimUsers;
-                if (isPaginatedUserStoreAvailable()) {
-                    if (carbonUM instanceof PaginatedUserStoreManager) {
-                        scimUsers = this.getSCIMUsers(userNames, requiredClaimsInLocalDialect, scimToLocalClaimsMap);
-                        filteredUsers.addAll(Arrays.asList(scimUsers));
-                    } else {
-                        addSCIMUsers(filteredUsers, userNames, requiredClaimsInLocalDialect, scimToLocalClaimsMap);
-                    }
+                if (isBulkUserReadAvailable()) {
+                    scimUsers = this.getSCIMUsers(userNames, requiredClaimsInLocalDialect, scimToLocalClaimsMap,
+                            isGroupsRequired);
+                    filteredUsers.addAll(Arrays.asList(scimUsers));
                 } else {
-                    addSCIMUsers(filteredUsers, userNames, requiredClaimsInLocalDialect, scimToLocalClaimsMap);
+                    addSCIMUsers(filteredUsers, userNames, requiredClaimsInLocalDialect, scimToLocalClaimsMap,
+                            isGroupsRequired);
                 }
             } catch (UserStoreException e) {
                 throw new CharonException("Error in retrieve user details. ", e);
@@ -1401,7 +2043,7 @@ public class SCIMUserManager implements UserManager {
     }
 
     private void addSCIMUsers(List<Object> filteredUsers, String[] userNames, List<String> requiredClaims,
-                              Map<String, String> scimToLocalClaimsMap)
+                              Map<String, String> scimToLocalClaimsMap, boolean isGroupsRequired)
             throws CharonException {
 
         User scimUser;
@@ -1415,7 +2057,7 @@ public class SCIMUserManager implements UserManager {
                     log.debug("SCIM is enabled for the user-store domain : " + userStoreDomainName + ". " +
                             "Including user : " + userName + " in the response.");
                 }
-                scimUser = this.getSCIMUser(userName, requiredClaims, scimToLocalClaimsMap);
+                scimUser = getSCIMUser(userName, requiredClaims, scimToLocalClaimsMap, isGroupsRequired);
                 //if SCIM-ID is not present in the attributes, skip
                 if (scimUser != null && StringUtils.isBlank(scimUser.getId())) {
                     continue;
@@ -1431,46 +2073,56 @@ public class SCIMUserManager implements UserManager {
     }
 
     @Override
-    public User getMe(String userName,
-                      Map<String, Boolean> requiredAttributes) throws CharonException, NotFoundException {
+    public User getMe(final String userName,
+                      final Map<String, Boolean> requiredAttributes) throws CharonException, NotFoundException {
 
-        if (log.isDebugEnabled()) {
-            log.debug("Getting user: " + userName);
-        }
-
-        User scimUser;
-
-        try {
-            //get Claims related to SCIM claim dialect
-            Map<String, String> scimToLocalClaimsMap = SCIMCommonUtils.getSCIMtoLocalMappings();
-            List<String> requiredClaims = getOnlyRequiredClaims(scimToLocalClaimsMap.keySet(), requiredAttributes);
-            List<String> requiredClaimsInLocalDialect;
-            if (MapUtils.isNotEmpty(scimToLocalClaimsMap)) {
-                scimToLocalClaimsMap.keySet().retainAll(requiredClaims);
-                requiredClaimsInLocalDialect = new ArrayList<>(scimToLocalClaimsMap.values());
-            } else {
+        return runOperation(SCIMOperation.GET_ME, new MeteredOperation<User, NotFoundException, RuntimeException>() {
+            @Override
+            public User execute() throws CharonException, NotFoundException {
                 if (log.isDebugEnabled()) {
-                    log.debug("SCIM to Local Claim mappings list is empty.");
+                    log.debug("Getting user: " + userName);
                 }
-                requiredClaimsInLocalDialect = new ArrayList<>();
-            }
-            //we assume (since id is unique per user) only one user exists for a given id
-            scimUser = this.getSCIMUser(userName, requiredClaimsInLocalDialect, scimToLocalClaimsMap);
+                SCIMOperationContext.setCurrentUserStoreDomain(IdentityUtil.extractDomainFromName(userName));
 
-            if (scimUser == null) {
-                if (log.isDebugEnabled()) {
-                    log.debug("User with userName : " + userName + " does not exist in the system.");
+                User scimUser;
+
+                try {
+                    //get Claims related to SCIM claim dialect
+                    Map<String, String> scimToLocalClaimsMap = SCIMCommonUtils.getSCIMtoLocalMappings();
+                    List<String> requiredClaims = getOnlyRequiredClaims(scimToLocalClaimsMap.keySet(),
+                            requiredAttributes);
+                    List<String> requiredClaimsInLocalDialect;
+                    if (MapUtils.isNotEmpty(scimToLocalClaimsMap)) {
+                        scimToLocalClaimsMap.keySet().retainAll(requiredClaims);
+                        requiredClaimsInLocalDialect = new ArrayList<>(scimToLocalClaimsMap.values());
+                    } else {
+                        if (log.isDebugEnabled()) {
+                            log.debug("SCIM to Local Claim mappings list is empty.");
+                        }
+                        requiredClaimsInLocalDialect = new ArrayList<>();
+                    }
+                    //we assume (since id is unique per user) only one user exists for a given id
+                    scimUser = getSCIMUser(userName, requiredClaimsInLocalDialect, scimToLocalClaimsMap,
+                            isGroupsRequired(requiredAttributes));
+
+                    if (scimUser == null) {
+                        if (log.isDebugEnabled()) {
+                            log.debug("User with userName : " + userName + " does not exist in the system.");
+                        }
+                        throw new NotFoundException("No such user exist");
+                    } else {
+                        //set the schemas of the scim user
+                        scimUser.setSchemas();
+                        if (log.isDebugEnabled()) {
+                            log.debug("User: " + scimUser.getUserName() + " is retrieved through SCIM.");
+                        }
+                        return scimUser;
+                    }
+                } catch (UserStoreException e) {
+                    throw new CharonException("Error from getting the authenticated user", e);
                 }
-                throw new NotFoundException("No such user exist");
-            } else {
-                //set the schemas of the scim user
-                scimUser.setSchemas();
-                log.info("User: " + scimUser.getUserName() + " is retrieved through SCIM.");
-                return scimUser;
             }
-        } catch (UserStoreException e) {
-            throw new CharonException("Error from getting the authenticated user", e);
-        }
+        });
     }
 
     @Override
@@ -1492,220 +2144,291 @@ public class SCIMUserManager implements UserManager {
     }
 
     @Override
-    public Group createGroup(Group group, Map<String, Boolean> requiredAttributes)
+    public Group createGroup(final Group group, final Map<String, Boolean> requiredAttributes)
             throws CharonException, ConflictException, BadRequestException {
-        if (log.isDebugEnabled()) {
-            log.debug("Creating group: " + group.getDisplayName());
-        }
-        try {
-            //modify display name if no domain is specified, in order to support multiple user store feature
-            String originalName = group.getDisplayName();
-            String roleNameWithDomain = null;
-            String domainName = "";
-            try {
-                if (getUserStoreDomainFromSP() != null) {
-                    domainName = getUserStoreDomainFromSP();
-                    roleNameWithDomain = IdentityUtil
-                            .addDomainToName(UserCoreUtil.removeDomainFromName(originalName), domainName);
-                } else if (originalName.indexOf(CarbonConstants.DOMAIN_SEPARATOR) > 0) {
-                    domainName = IdentityUtil.extractDomainFromName(originalName);
-                    roleNameWithDomain = IdentityUtil
-                            .addDomainToName(UserCoreUtil.removeDomainFromName(originalName), domainName);
-                } else {
-                    domainName = UserCoreConstants.PRIMARY_DEFAULT_DOMAIN_NAME;
-                    roleNameWithDomain = SCIMCommonUtils.getGroupNameWithDomain(originalName);
-                }
-            } catch (IdentityApplicationManagementException e) {
-                throw new CharonException("Error retrieving User Store name. ", e);
-            }
-
-            if(!isInternalOrApplicationGroup(domainName) && StringUtils.isNotBlank(domainName) && !isSCIMEnabled
-                    (domainName)){
-                throw new CharonException("Cannot create group through scim to user store " + ". SCIM is not " +
-                        "enabled for user store " + domainName);
-            }
-            group.setDisplayName(roleNameWithDomain);
-            //check if the group already exists
-            if (carbonUM.isExistingRole(group.getDisplayName(), false)) {
-                String error = "Group with name: " + group.getDisplayName() +" already exists in the system.";
-                throw new ConflictException(error);
-            }
-
-                /*set thread local property to signal the downstream SCIMUserOperationListener
-                about the provisioning route.*/
-            SCIMCommonUtils.setThreadLocalIsManagedThroughSCIMEP(true);
-                /*if members are sent when creating the group, check whether users already exist in the
-                user store*/
-            List<Object> userIds = group.getMembers();
-            List<String> userDisplayNames = group.getMembersWithDisplayName();
-            if (CollectionUtils.isNotEmpty(userIds)) {
-                List<String> members = new ArrayList<>();
-                for (Object userId : userIds) {
-                    String userIdLocalClaim = SCIMCommonUtils.getSCIMtoLocalMappings().get(SCIMConstants
-                            .CommonSchemaConstants.ID_URI);
-                    String[] userNames = null;
-                    if (StringUtils.isNotBlank(userIdLocalClaim)) {
-                        userNames = carbonUM.getUserList(userIdLocalClaim, (String) userId, UserCoreConstants
-                                .DEFAULT_PROFILE);
-                    }
-                    if (userNames == null || userNames.length == 0) {
-                        String error = "User: " + userId + " doesn't exist in the user store. " +
-                                "Hence, can not create the group: " + group.getDisplayName();
-                        throw new IdentitySCIMException(error);
-                    } else if (userNames[0].indexOf(UserCoreConstants.DOMAIN_SEPARATOR) > 0 &&
-                            !StringUtils.containsIgnoreCase(userNames[0], domainName)) {
-                        String error = "User: " + userId + " doesn't exist in the same user store. " +
-                                "Hence, can not create the group: " + group.getDisplayName();
-                        throw new IdentitySCIMException(error);
-                    } else {
-                        members.add(userNames[0]);
-                        if (CollectionUtils.isNotEmpty(userDisplayNames)) {
-                            boolean userContains = false;
-                            for (String user : userDisplayNames) {
-                                user =
-                                        user.indexOf(UserCoreConstants.DOMAIN_SEPARATOR) > 0
-                                                ? user.split(UserCoreConstants.DOMAIN_SEPARATOR)[1]
-                                                : user;
-                                if (user.equalsIgnoreCase(userNames[0].indexOf(UserCoreConstants.DOMAIN_SEPARATOR) > 0
-                                        ? userNames[0].split(UserCoreConstants.DOMAIN_SEPARATOR)[1]
-                                        : userNames[0])) {
-                                    userContains = true;
-                                    break;
-                                }
+
+        return runOperation(SCIMOperation.CREATE_GROUP, new MeteredOperation<Group, ConflictException,
+                BadRequestException>() {
+            @Override
+            public Group execute() throws CharonException, ConflictException, BadRequestException {
+                if (log.isDebugEnabled()) {
+                    log.debug("Creating group: " + group.getDisplayName());
+                }
+                try {
+                    //modify display name if no domain is specified, in order to support multiple user store feature
+                    String originalName = group.getDisplayName();
+                    String roleNameWithDomain = null;
+                    String domainName = "";
+                    try {
+                        if (getUserStoreDomainFromSP() != null) {
+                            domainName = getUserStoreDomainFromSP();
+                            roleNameWithDomain = IdentityUtil
+                                    .addDomainToName(UserCoreUtil.removeDomainFromName(originalName), domainName);
+                        } else if (originalName.indexOf(CarbonConstants.DOMAIN_SEPARATOR) > 0) {
+                            domainName = IdentityUtil.extractDomainFromName(originalName);
+                            roleNameWithDomain = IdentityUtil
+                                    .addDomainToName(UserCoreUtil.removeDomainFromName(originalName), domainName);
+                        } else {
+                            domainName = UserCoreConstants.PRIMARY_DEFAULT_DOMAIN_NAME;
+                            roleNameWithDomain = SCIMCommonUtils.getGroupNameWithDomain(originalName);
+                        }
+                    } catch (IdentityApplicationManagementException e) {
+                        throw new CharonException("Error retrieving User Store name. ", e);
+                    }
+
+                    SCIMOperationContext.setCurrentUserStoreDomain(domainName);
+                    if(!isInternalOrApplicationGroup(domainName) && StringUtils.isNotBlank(domainName) && !isSCIMEnabled
+                            (domainName)){
+                        throw new CharonException("Cannot create group through scim to user store " + ". SCIM is not " +
+                                "enabled for user store " + domainName);
+                    }
+                    group.setDisplayName(roleNameWithDomain);
+                    //check if the group already exists
+                    if (carbonUM.isExistingRole(group.getDisplayName(), false)) {
+                        String error = "Group with name: " + group.getDisplayName() +" already exists in the system.";
+                        throw new ConflictException(error);
+                    }
+
+                        /*set thread local property to signal the downstream SCIMUserOperationListener
+                        about the provisioning route.*/
+                    SCIMCommonUtils.setThreadLocalIsManagedThroughSCIMEP(true);
+                        /*if members are sent when creating the group, check whether users already exist in the
+                        user store*/
+                    List<Object> userIds = group.getMembers();
+                    List<String> userDisplayNames = group.getMembersWithDisplayName();
+                    if (CollectionUtils.isNotEmpty(userIds)) {
+                        List<String> members = new ArrayList<>();
+                        for (Object userId : userIds) {
+                            String[] userNames = null;
+                            String userName = userIdResolver.getUserName((String) userId);
+                            if (userName != null) {
+                                userNames = new String[]{userName};
                             }
-                            if (!userContains) {
-                                throw new IdentitySCIMException("Given SCIM user Id and name does not match..");
+                            if (userNames == null || userNames.length == 0) {
+                                String error = "User: " + userId + " doesn't exist in the user store. " +
+                                        "Hence, can not create the group: " + group.getDisplayName();
+                                throw new IdentitySCIMException(error);
+                            } else if (userNames[0].indexOf(UserCoreConstants.DOMAIN_SEPARATOR) > 0 &&
+                                    !StringUtils.containsIgnoreCase(userNames[0], domainName)) {
+                                String error = "User: " + userId + " doesn't exist in the same user store. " +
+                                        "Hence, can not create the group: " + group.getDisplayName();
+                                throw new IdentitySCIMException(error);
+                            } else {
+                                members.add(userNames[0]);
+                                if (CollectionUtils.isNotEmpty(userDisplayNames)) {
+                                    boolean userContains = false;
+                                    for (String user : userDisplayNames) {
+                                        user =
+                                                user.indexOf(UserCoreConstants.DOMAIN_SEPARATOR) > 0
+                                                        ? user.split(UserCoreConstants.DOMAIN_SEPARATOR)[1]
+                                                        : user;
+                                        if (user.equalsIgnoreCase(
+                                                userNames[0].indexOf(UserCoreConstants.DOMAIN_SEPARATOR) > 0
+                                                        ? userNames[0].split(UserCoreConstants.DOMAIN_SEPARATOR)[1]
+                                                        : userNames[0])) {
+                                            userContains = true;
+                                            break;
+                                        }
+                                    }
+                                    if (!userContains) {
+                                        throw new IdentitySCIMException("Given SCIM user Id and name does not match..");
+                                    }
+                                }
                             }
                         }
+                        //add other scim attributes in the identity DB since user store doesn't support some attributes.
+                        SCIMGroupHandler scimGroupHandler = new SCIMGroupHandler(carbonUM.getTenantId());
+                        scimGroupHandler.createSCIMAttributes(group);
+                        carbonUM.addRole(group.getDisplayName(),
+                                members.toArray(new String[members.size()]), null, false);
+                        if (log.isDebugEnabled()) {
+                            log.debug("Group: " + group.getDisplayName() + " is created through SCIM.");
+                        }
+                    } else {
+                        //add other scim attributes in the identity DB since user store doesn't support some attributes.
+                        SCIMGroupHandler scimGroupHandler = new SCIMGroupHandler(carbonUM.getTenantId());
+                        scimGroupHandler.createSCIMAttributes(group);
+                        carbonUM.addRole(group.getDisplayName(), null, null, false);
+                        if (log.isDebugEnabled()) {
+                            log.debug("Group: " + group.getDisplayName() + " is created through SCIM.");
+                        }
+                    }
+                } catch (UserStoreException e) {
+                    try {
+                        SCIMGroupHandler scimGroupHandler = new SCIMGroupHandler(carbonUM.getTenantId());
+                        scimGroupHandler.deleteGroupAttributes(group.getDisplayName());
+                    } catch (UserStoreException | IdentitySCIMException ex) {
+                        log.error("Error occurred while doing rollback operation of the SCIM table entry for role: " +
+                                group.getDisplayName(), ex);
+                        throw new CharonException("Error occurred while doing rollback operation of the SCIM table " +
+                                "entry for role: " + group.getDisplayName(), e);
                     }
+                    throw new CharonException("Error occurred while adding role : " + group.getDisplayName(), e);
+                } catch (IdentitySCIMException | BadRequestException e) {
+                    String error = "One or more group members do not exist in the same user store. " +
+                            "Hence, can not create the group: " + group.getDisplayName();
+                    if (log.isDebugEnabled()) {
+                        log.debug(error, e);
+                    }
+                    throw new BadRequestException(error, ResponseCodeConstants.INVALID_VALUE);
                 }
-                //add other scim attributes in the identity DB since user store doesn't support some attributes.
-                SCIMGroupHandler scimGroupHandler = new SCIMGroupHandler(carbonUM.getTenantId());
-                scimGroupHandler.createSCIMAttributes(group);
-                carbonUM.addRole(group.getDisplayName(),
-                        members.toArray(new String[members.size()]), null, false);
-                log.info("Group: " + group.getDisplayName() + " is created through SCIM.");
-            } else {
-                //add other scim attributes in the identity DB since user store doesn't support some attributes.
-                SCIMGroupHandler scimGroupHandler = new SCIMGroupHandler(carbonUM.getTenantId());
-                scimGroupHandler.createSCIMAttributes(group);
-                carbonUM.addRole(group.getDisplayName(), null, null, false);
-                log.info("Group: " + group.getDisplayName() + " is created through SCIM.");
-            }
-        } catch (UserStoreException e) {
-            try {
-                SCIMGroupHandler scimGroupHandler = new SCIMGroupHandler(carbonUM.getTenantId());
-                scimGroupHandler.deleteGroupAttributes(group.getDisplayName());
-            } catch (UserStoreException | IdentitySCIMException ex) {
-                log.error("Error occurred while doing rollback operation of the SCIM table entry for role: " + group.getDisplayName(), ex);
-                throw new CharonException("Error occurred while doing rollback operation of the SCIM table entry for role: " + group.getDisplayName(), e);
-            }
-            throw new CharonException("Error occurred while adding role : " + group.getDisplayName(), e);
-        } catch (IdentitySCIMException | BadRequestException e) {
-            String error = "One or more group members do not exist in the same user store. " +
-                    "Hence, can not create the group: " + group.getDisplayName();
-            if (log.isDebugEnabled()) {
-                log.debug(error, e);
+                return group;
             }
-            throw new BadRequestException(error, ResponseCodeConstants.INVALID_VALUE);
-        }
-        return group;
+        });
     }
 
     @Override
-    public Group getGroup(String id, Map<String, Boolean> requiredAttributes) throws CharonException {
-        if (log.isDebugEnabled()) {
-            log.debug("Retrieving group with id: " + id);
-        }
-        Group group = null;
-        try {
-            SCIMGroupHandler groupHandler = new SCIMGroupHandler(carbonUM.getTenantId());
-            //get group name by Id
-            String groupName = groupHandler.getGroupName(id);
+    public Group getGroup(final String id, final Map<String, Boolean> requiredAttributes) throws CharonException {
 
-            if (groupName != null) {
-                group = getGroupWithName(groupName);
-                group.setSchemas();
-                return group;
-            } else {
-                //returning null will send a resource not found error to client by Charon.
-                return null;
+        return runOperation(SCIMOperation.GET_GROUP, new MeteredOperation<Group, RuntimeException, RuntimeException>() {
+            @Override
+            public Group execute() throws CharonException {
+                if (log.isDebugEnabled()) {
+                    log.debug("Retrieving group with id: " + id);
+                }
+                Group group = null;
+                try {
+                    SCIMGroupHandler groupHandler = new SCIMGroupHandler(carbonUM.getTenantId());
+                    //get group name by Id
+                    String groupName = groupHandler.getGroupName(id);
+
+                    if (groupName != null) {
+                        SCIMOperationContext.setCurrentUserStoreDomain(IdentityUtil.extractDomainFromName(groupName));
+                        group = getGroupWithName(groupName);
+                        group.setSchemas();
+                        return group;
+                    } else {
+                        //returning null will send a resource not found error to client by Charon.
+                        return null;
+                    }
+                } catch (org.wso2.carbon.user.core.UserStoreException e) {
+                    throw new CharonException("Error in retrieving group : " + id, e);
+                } catch (IdentitySCIMException e) {
+                    throw new CharonException("Error in retrieving SCIM Group information from database.", e);
+                } catch (CharonException | BadRequestException e) {
+                    throw new CharonException("Error in retrieving the group", e);
+                }
             }
-        } catch (org.wso2.carbon.user.core.UserStoreException e) {
-            throw new CharonException("Error in retrieving group : " + id, e);
-        } catch (IdentitySCIMException e) {
-            throw new CharonException("Error in retrieving SCIM Group information from database.", e);
-        } catch (CharonException | BadRequestException e) {
-            throw new CharonException("Error in retrieving the group", e);
-        }
+        });
     }
 
-    @Override
-    public void deleteGroup(String groupId) throws NotFoundException, CharonException {
-        if (log.isDebugEnabled()) {
-            log.debug("Deleting group: " + groupId);
-        }
-        try {
-            /*set thread local property to signal the downstream SCIMUserOperationListener
-                about the provisioning route.*/
-            SCIMCommonUtils.setThreadLocalIsManagedThroughSCIMEP(true);
-
-            //get group name by id
-            SCIMGroupHandler groupHandler = new SCIMGroupHandler(carbonUM.getTenantId());
-            String groupName = groupHandler.getGroupName(groupId);
+    /**
+     * Get the last modified time of the group from the SCIM attributes of the group, without reading the members of
+     * the group. This is used as the version of the group, to evaluate the ETags of conditional requests.
+     *
+     * @param groupId SCIM id of the group.
+     * @return Last modified time as in meta.lastModified, or null if the group doesn't exist or the time is not known.
+     * @throws CharonException
+     */
+    public String getGroupVersion(final String groupId) throws CharonException {
 
-            if (groupName != null) {
-                String userStoreDomainFromSP = null;
+        return runOperation(SCIMOperation.GET_GROUP_VERSION, new MeteredOperation<String, RuntimeException,
+                RuntimeException>() {
+            @Override
+            public String execute() throws CharonException {
                 try {
-                    userStoreDomainFromSP = getUserStoreDomainFromSP();
-                } catch (IdentityApplicationManagementException e) {
-                    throw new CharonException("Error retrieving User Store name. ", e);
-                }
-                if (userStoreDomainFromSP != null &&
-                        !(userStoreDomainFromSP.equalsIgnoreCase(IdentityUtil.extractDomainFromName(groupName)))) {
-                    throw new CharonException("Group :" + groupName + "is not belong to user store " +
-                            userStoreDomainFromSP + "Hence group updating fail");
+                    SCIMGroupHandler groupHandler = new SCIMGroupHandler(carbonUM.getTenantId());
+                    String groupName = groupHandler.getGroupName(groupId);
+                    if (groupName == null) {
+                        return null;
+                    }
+                    SCIMOperationContext.setCurrentUserStoreDomain(IdentityUtil.extractDomainFromName(groupName));
+                    return StringUtils.trimToNull(groupHandler.getLastModified(groupName));
+                } catch (UserStoreException e) {
+                    throw new CharonException("Error in getting the last modified time of the group: " + groupId, e);
+                } catch (IdentitySCIMException e) {
+                    throw new CharonException("Error in retrieving SCIM Group information from database.", e);
                 }
+            }
+        });
+    }
+
+    @Override
+    public void deleteGroup(final String groupId) throws NotFoundException, CharonException {
 
-                String userStoreDomainName = IdentityUtil.extractDomainFromName(groupName);
-                if (!isInternalOrApplicationGroup(userStoreDomainName) && StringUtils.isNotBlank(userStoreDomainName)
-                        && !isSCIMEnabled
-                        (userStoreDomainName)) {
-                    throw new CharonException("Cannot delete group: " + groupName + " through scim from user store: " +
-                            userStoreDomainName + ". SCIM is not enabled for user store: " + userStoreDomainName);
+        runOperation(SCIMOperation.DELETE_GROUP, new MeteredOperation<Void, NotFoundException, RuntimeException>() {
+            @Override
+            public Void execute() throws CharonException, NotFoundException {
+                if (log.isDebugEnabled()) {
+                    log.debug("Deleting group: " + groupId);
                 }
+                try {
+                    /*set thread local property to signal the downstream SCIMUserOperationListener
+                        about the provisioning route.*/
+                    SCIMCommonUtils.setThreadLocalIsManagedThroughSCIMEP(true);
+
+                    //get group name by id
+                    SCIMGroupHandler groupHandler = new SCIMGroupHandler(carbonUM.getTenantId());
+                    String groupName = groupHandler.getGroupName(groupId);
+
+                    if (groupName != null) {
+                        String userStoreDomainFromSP = null;
+                        try {
+                            userStoreDomainFromSP = getUserStoreDomainFromSP();
+                        } catch (IdentityApplicationManagementException e) {
+                            throw new CharonException("Error retrieving User Store name. ", e);
+                        }
+                        if (userStoreDomainFromSP != null && !(userStoreDomainFromSP.equalsIgnoreCase(
+                                IdentityUtil.extractDomainFromName(groupName)))) {
+                            throw new CharonException("Group :" + groupName + "is not belong to user store " +
+                                    userStoreDomainFromSP + "Hence group updating fail");
+                        }
 
-                //delete group in carbon UM
-                carbonUM.deleteRole(groupName);
+                        String userStoreDomainName = IdentityUtil.extractDomainFromName(groupName);
+                        SCIMOperationContext.setCurrentUserStoreDomain(userStoreDomainName);
+                        if (!isInternalOrApplicationGroup(userStoreDomainName) &&
+                                StringUtils.isNotBlank(userStoreDomainName) && !isSCIMEnabled(userStoreDomainName)) {
+                            throw new CharonException("Cannot delete group: " + groupName +
+                                    " through scim from user store: " + userStoreDomainName +
+                                    ". SCIM is not enabled for user store: " + userStoreDomainName);
+                        }
 
-                //we do not update Identity_SCIM DB here since it is updated in SCIMUserOperationListener's methods.
-                log.info("Group: " + groupName + " is deleted through SCIM.");
+                        //delete group in carbon UM
+                        carbonUM.deleteRole(groupName);
 
-            } else {
-                if (log.isDebugEnabled()) {
-                    log.debug("Group with SCIM id: " + groupId + " doesn't exist in the system.");
+                        //we do not update Identity_SCIM DB here since it is updated in SCIMUserOperationListener's
+                        //methods.
+                        if (log.isDebugEnabled()) {
+                            log.debug("Group: " + groupName + " is deleted through SCIM.");
+                        }
+
+                    } else {
+                        if (log.isDebugEnabled()) {
+                            log.debug("Group with SCIM id: " + groupId + " doesn't exist in the system.");
+                        }
+                        throw new NotFoundException();
+                    }
+                } catch (UserStoreException | IdentitySCIMException e) {
+                    throw new CharonException("Error occurred while deleting group " + groupId, e);
                 }
-                throw new NotFoundException();
-            }
-        } catch (UserStoreException | IdentitySCIMException e) {
-            throw new CharonException("Error occurred while deleting group " + groupId, e);
-        }
 
+                return null;
+            }
+        });
     }
 
     @Override
-    public List<Object> listGroupsWithGET(Node rootNode, int startIndex, int count, String sortBy, String sortOrder,
-            String domainName, Map<String, Boolean> requiredAttributes)
+    public List<Object> listGroupsWithGET(final Node rootNode, final int startIndex, final int count,
+            final String sortBy, final String sortOrder, final String domainName,
+            final Map<String, Boolean> requiredAttributes)
             throws CharonException, NotImplementedException, BadRequestException {
-        if (sortBy != null || sortOrder != null) {
-            throw new NotImplementedException("Sorting is not supported");
-        } else if (startIndex != 1) {
-            throw new NotImplementedException("Pagination is not supported");
-        } else if (rootNode != null) {
-            return filterGroups(rootNode, requiredAttributes);
-        } else {
-            return listGroups(requiredAttributes);
-        }
+
+        SCIMOperation operation = rootNode == null ? SCIMOperation.LIST_GROUPS : SCIMOperation.FILTER_GROUPS;
+        return runOperation(operation, domainName, new MeteredOperation<List<Object>, NotImplementedException,
+                BadRequestException>() {
+            @Override
+            public List<Object> execute() throws CharonException, NotImplementedException, BadRequestException {
+                if (sortBy != null || sortOrder != null) {
+                    throw new NotImplementedException("Sorting is not supported");
+                } else if (startIndex != 1) {
+                    throw new NotImplementedException("Pagination is not supported");
+                } else if (rootNode != null) {
+                    return filterGroups(rootNode, requiredAttributes);
+                } else {
+                    return listGroups(requiredAttributes);
+                }
+            }
+        });
     }
 
     private List<Object> listGroups(Map<String, Boolean> requiredAttributes) throws CharonException {
@@ -1715,6 +2438,7 @@ public class SCIMUserManager implements UserManager {
         try {
             SCIMGroupHandler groupHandler = new SCIMGroupHandler(carbonUM.getTenantId());
             Set<String> roleNames = groupHandler.listSCIMRoles();
+            Map<String, Group> groupsWithMembers = new LinkedHashMap<>();
             for (String roleName : roleNames) {
                 String userStoreDomainName = IdentityUtil.extractDomainFromName(roleName);
                 if (isInternalOrApplicationGroup(userStoreDomainName) || isSCIMEnabled(userStoreDomainName)) {
@@ -1722,10 +2446,7 @@ public class SCIMUserManager implements UserManager {
                         log.debug("SCIM is enabled for the user-store domain : " + userStoreDomainName + ". " +
                                 "Including group with name : " + roleName + " in the response.");
                     }
-                    Group group = this.getGroupWithName(roleName);
-                    if (group.getId() != null) {
-                        groupList.add(group);
-                    }
+                    groupsWithMembers.put(roleName, getGroupWithMembers(roleName));
                 } else {
                     if (log.isDebugEnabled()) {
                         log.debug("SCIM is disabled for the user-store domain : " + userStoreDomainName + ". Hence " +
@@ -1733,6 +2454,11 @@ public class SCIMUserManager implements UserManager {
                     }
                 }
             }
+            for (Group group : setAttributesOfGroups(groupsWithMembers)) {
+                if (group.getId() != null) {
+                    groupList.add(group);
+                }
+            }
         } catch (org.wso2.carbon.user.core.UserStoreException e) {
             String errMsg = "Error in obtaining role names from user store.";
             errMsg += e.getMessage();
@@ -1781,6 +2507,7 @@ public class SCIMUserManager implements UserManager {
         filteredGroups.add(0);
         try {
             String[] roleList = getGroupList(attributeName, filterOperation, attributeValue);
+            Map<String, Group> groupsWithMembers = new LinkedHashMap<>();
             if (roleList != null) {
                 for (String roleName : roleList) {
                     if (roleName != null && carbonUM.isExistingRole(roleName, false)) {
@@ -1804,8 +2531,7 @@ public class SCIMUserManager implements UserManager {
                                 log.debug("SCIM is enabled for the user-store domain : " + userStoreDomainName + ". " +
                                         "Including group with name : " + roleName + " in the response.");
                             }
-                            Group group = getGroupWithName(groupNameWithDomain);
-                            filteredGroups.add(group);
+                            groupsWithMembers.put(groupNameWithDomain, getGroupWithMembers(groupNameWithDomain));
                         } else {
                             if (log.isDebugEnabled()) {
                                 log.debug("SCIM is disabled for the user-store domain : " + userStoreDomainName + ". Hence " +
@@ -1820,6 +2546,7 @@ public class SCIMUserManager implements UserManager {
                     }
                 }
             }
+            filteredGroups.addAll(setAttributesOfGroups(groupsWithMembers));
         } catch (org.wso2.carbon.user.core.UserStoreException e) {
             throw new CharonException("Error in filtering groups by attribute name : " + attributeName + ", " +
                     "attribute value : " + attributeValue + " and filter operation " + filterOperation, e);
@@ -1838,161 +2565,513 @@ public class SCIMUserManager implements UserManager {
 
 
     @Override
-    public Group updateGroup(Group oldGroup, Group newGroup, Map<String, Boolean> requiredAttributes)
-            throws CharonException {
+    public Group updateGroup(final Group oldGroup, final Group newGroup, final Map<String, Boolean> requiredAttributes)
+            throws CharonException, BadRequestException {
 
-        try {
-            String userStoreDomainFromSP = getUserStoreDomainFromSP();
+        return runOperation(SCIMOperation.UPDATE_GROUP, new MeteredOperation<Group, BadRequestException,
+                RuntimeException>() {
+            @Override
+            public Group execute() throws CharonException, BadRequestException {
+                try {
+                    String userStoreDomainFromSP = getUserStoreDomainFromSP();
+                    SCIMOperationContext.setCurrentUserStoreDomain(IdentityUtil.extractDomainFromName(
+                            oldGroup.getDisplayName()));
+
+                    if(userStoreDomainFromSP != null && !userStoreDomainFromSP.equalsIgnoreCase(
+                            IdentityUtil.extractDomainFromName(oldGroup.getDisplayName()))) {
+                        throw new CharonException("Group :" + oldGroup.getDisplayName() +
+                                "is not belong to user store " + userStoreDomainFromSP + "Hence group updating fail");
+                    }
+                    oldGroup.setDisplayName(IdentityUtil.addDomainToName(
+                            UserCoreUtil.removeDomainFromName(oldGroup.getDisplayName()),
+                            IdentityUtil.extractDomainFromName(oldGroup.getDisplayName())));
+
+                    newGroup.setDisplayName(IdentityUtil.addDomainToName(
+                            UserCoreUtil.removeDomainFromName(newGroup.getDisplayName()),
+                            IdentityUtil.extractDomainFromName(newGroup.getDisplayName())));
+
+                    String primaryDomain = IdentityUtil.getPrimaryDomainName();
+                    if (IdentityUtil.extractDomainFromName(newGroup.getDisplayName()).equals(primaryDomain) &&
+                            !(IdentityUtil.extractDomainFromName(oldGroup.getDisplayName()).equals(primaryDomain))) {
+                        String userStoreDomain = IdentityUtil.extractDomainFromName(oldGroup.getDisplayName());
+                        newGroup.setDisplayName(IdentityUtil.addDomainToName(newGroup.getDisplayName(),
+                                userStoreDomain));
+
+                    } else if (!IdentityUtil.extractDomainFromName(oldGroup.getDisplayName())
+                            .equals(IdentityUtil.extractDomainFromName(newGroup.getDisplayName()))) {
+                        throw new IdentitySCIMException(
+                                "User store domain of the group is not matching with the given SCIM group Id.");
+                    }
 
-            if(userStoreDomainFromSP != null && !userStoreDomainFromSP.equalsIgnoreCase(
-                    IdentityUtil.extractDomainFromName(oldGroup.getDisplayName()))) {
-                throw new CharonException("Group :" + oldGroup.getDisplayName() + "is not belong to user store " +
-                        userStoreDomainFromSP + "Hence group updating fail");
-            }
-            oldGroup.setDisplayName(IdentityUtil.addDomainToName(UserCoreUtil.removeDomainFromName(oldGroup.getDisplayName()),
-                    IdentityUtil.extractDomainFromName(oldGroup.getDisplayName())));
+                    newGroup.setDisplayName(SCIMCommonUtils.getGroupNameWithDomain(newGroup.getDisplayName()));
+                    oldGroup.setDisplayName(SCIMCommonUtils.getGroupNameWithDomain(oldGroup.getDisplayName()));
 
-            newGroup.setDisplayName(IdentityUtil.addDomainToName(UserCoreUtil.removeDomainFromName(newGroup.getDisplayName()),
-                    IdentityUtil.extractDomainFromName(newGroup.getDisplayName())));
+                    if (log.isDebugEnabled()) {
+                        log.debug("Updating group: " + oldGroup.getDisplayName());
+                    }
 
-            String primaryDomain = IdentityUtil.getPrimaryDomainName();
-            if (IdentityUtil.extractDomainFromName(newGroup.getDisplayName()).equals(primaryDomain) && !(IdentityUtil
-                    .extractDomainFromName(oldGroup.getDisplayName())
-                    .equals(primaryDomain))) {
-                String userStoreDomain = IdentityUtil.extractDomainFromName(oldGroup.getDisplayName());
-                newGroup.setDisplayName(IdentityUtil.addDomainToName(newGroup.getDisplayName(), userStoreDomain));
+                    String groupName = newGroup.getDisplayName();
+                    String userStoreDomainForGroup = IdentityUtil.extractDomainFromName(groupName);
 
-            } else if (!IdentityUtil.extractDomainFromName(oldGroup.getDisplayName())
-                    .equals(IdentityUtil.extractDomainFromName(newGroup.getDisplayName()))) {
-                throw new IdentitySCIMException(
-                        "User store domain of the group is not matching with the given SCIM group Id.");
-            }
+                    if (newGroup.getMembers() != null && !(newGroup.getMembers().isEmpty()) &&
+                            !isInternalOrApplicationGroup(userStoreDomainForGroup)) {
+                        addDomainToUserMembers(newGroup, userStoreDomainForGroup);
+                    }
+                    boolean updated = false;
+                        /*set thread local property to signal the downstream SCIMUserOperationListener
+                        about the provisioning route.*/
+                    SCIMCommonUtils.setThreadLocalIsManagedThroughSCIMEP(true);
+                    //check if the user ids sent in updated group exist in the user store and the associated user name
+                    //also a matching one.
+                    List<Object> userIds = newGroup.getMembers();
+                    List<String> userDisplayNames = newGroup.getMembersWithDisplayName();
+
+                        /* compare user store domain of group and user store domain of user name , if there is a
+                         mismatch do not update the group */
+                    if (userDisplayNames != null && userDisplayNames.size() > 0) {
+                        for (String userDisplayName : userDisplayNames) {
+                            String userStoreDomainForUser =
+                                    IdentityUtil.extractDomainFromName(userDisplayName);
+                            if (!isInternalOrApplicationGroup(userStoreDomainForGroup) &&
+                                    !userStoreDomainForGroup.equalsIgnoreCase(userStoreDomainForUser)) {
+                                throw new IdentitySCIMException(userDisplayName + " does not " +
+                                        "belongs to user store " + userStoreDomainForGroup);
+                            }
 
-            newGroup.setDisplayName(SCIMCommonUtils.getGroupNameWithDomain(newGroup.getDisplayName()));
-            oldGroup.setDisplayName(SCIMCommonUtils.getGroupNameWithDomain(oldGroup.getDisplayName()));
+                        }
+                    }
 
-            if (log.isDebugEnabled()) {
-                log.debug("Updating group: " + oldGroup.getDisplayName());
-            }
-
-            String groupName = newGroup.getDisplayName();
-            String userStoreDomainForGroup = IdentityUtil.extractDomainFromName(groupName);
-
-            if (newGroup.getMembers() != null && !(newGroup.getMembers().isEmpty()) &&
-                    !isInternalOrApplicationGroup(userStoreDomainForGroup)) {
-                newGroup = addDomainToUserMembers(newGroup, userStoreDomainForGroup);
-            }
-            boolean updated = false;
-                /*set thread local property to signal the downstream SCIMUserOperationListener
-                about the provisioning route.*/
-            SCIMCommonUtils.setThreadLocalIsManagedThroughSCIMEP(true);
-            //check if the user ids sent in updated group exist in the user store and the associated user name
-            //also a matching one.
-            List<Object> userIds = newGroup.getMembers();
-            List<String> userDisplayNames = newGroup.getMembersWithDisplayName();
-
-                /* compare user store domain of group and user store domain of user name , if there is a mismatch do not
-                 update the group */
-            if (userDisplayNames != null && userDisplayNames.size() > 0) {
-                for (String userDisplayName : userDisplayNames) {
-                    String userStoreDomainForUser =
-                            IdentityUtil.extractDomainFromName(userDisplayName);
-                    if (!isInternalOrApplicationGroup(userStoreDomainForGroup) && !userStoreDomainForGroup.equalsIgnoreCase
-                            (userStoreDomainForUser)) {
-                        throw new IdentitySCIMException(
-                                userDisplayName + " does not " + "belongs to user store " + userStoreDomainForGroup);
+                    if (CollectionUtils.isNotEmpty(userIds)) {
+                        validateGroupMembers(newGroup, userStoreDomainForGroup, oldGroup.getDisplayName());
                     }
+                    //we do not update Identity_SCIM DB here since it is updated in SCIMUserOperationListener's methods.
 
-                }
-            }
+                    //update name if it is changed
+                    if (!(oldGroup.getDisplayName().equalsIgnoreCase(newGroup.getDisplayName()))) {
+                        //update group name in carbon UM
+                        carbonUM.updateRoleName(oldGroup.getDisplayName(),
+                                newGroup.getDisplayName());
 
-            if (CollectionUtils.isNotEmpty(userIds)) {
-                String[] userNames = null;
-                for (Object userId : userIds) {
-                    if (userId != null) {
-                        String userIdLocalClaim = SCIMCommonUtils.getSCIMtoLocalMappings().get(SCIMConstants
-                                .CommonSchemaConstants.ID_URI);
-                        if (StringUtils.isNotBlank(userIdLocalClaim)) {
-                            userNames = carbonUM.getUserList(userIdLocalClaim, IdentityUtil.addDomainToName((String)
-                                            userId, userStoreDomainForGroup), UserCoreConstants.DEFAULT_PROFILE);
+                        updated = true;
+                    }
+
+                    //find out added members and deleted members..
+                    List<String> oldMembers = oldGroup.getMembersWithDisplayName();
+                    List<String> newMembers = newGroup.getMembersWithDisplayName();
+                    if (newMembers != null) {
+
+                        // Members are compared by their domain qualified names, so that a member given with and
+                        // without the primary domain is not treated as a change.
+                        Map<String, String> oldMembersByKey = getMembersByKey(oldMembers);
+                        Map<String, String> newMembersByKey = getMembersByKey(newMembers);
+
+                        List<String> addedMembers = new ArrayList<>();
+                        List<String> deletedMembers = new ArrayList<>();
+
+                        //check for deleted members
+                        for (Map.Entry<String, String> oldMember : oldMembersByKey.entrySet()) {
+                            if (!newMembersByKey.containsKey(oldMember.getKey())) {
+                                deletedMembers.add(oldMember.getValue());
+                            }
                         }
-                        if (userNames == null || userNames.length == 0) {
-                            String error = "User: " + userId + " doesn't exist in the user store. " +
-                                    "Hence, can not update the group: " + oldGroup.getDisplayName();
-                            throw new IdentitySCIMException(error);
-                        } else {
-                            if (!UserCoreUtil.isContain(UserCoreUtil.removeDomainFromName(userNames[0]),
-                                    UserCoreUtil.removeDomainFromNames(userDisplayNames.toArray(
-                                            new String[userDisplayNames.size()])))) {
-                                throw new IdentitySCIMException("Given SCIM user Id and name not matching..");
+
+                        //check for added members
+                        for (Map.Entry<String, String> newMember : newMembersByKey.entrySet()) {
+                            if (!oldMembersByKey.containsKey(newMember.getKey())) {
+                                addedMembers.add(newMember.getValue());
                             }
                         }
+
+                        if (CollectionUtils.isNotEmpty(addedMembers) || CollectionUtils.isNotEmpty(deletedMembers)) {
+                            carbonUM.updateUserListOfRole(newGroup.getDisplayName(),
+                                    deletedMembers.toArray(new String[deletedMembers.size()]),
+                                    addedMembers.toArray(new String[addedMembers.size()]));
+                            updated = true;
+                        }
+                    }
+                    if (updated) {
+                        if (log.isDebugEnabled()) {
+                            log.debug("Group: " + oldGroup.getDisplayName() + " is updated through SCIM.");
+                        }
+                    } else {
+                        log.warn("There is no updated field in the group: " + oldGroup.getDisplayName() +
+                                ". Therefore ignoring the provisioning.");
+                    }
+
+                } catch (UserStoreException | IdentitySCIMException e) {
+                    throw new CharonException(e.getMessage(), e);
+                } catch (IdentityApplicationManagementException e){
+                    throw new CharonException("Error retrieving User Store name. ", e);
+                } catch (CharonException e) {
+                    throw new CharonException("Error in updating the group", e);
+
+                }
+
+                return newGroup;
+            }
+        });
+    }
+
+    /**
+     * Check whether the members of the group exist in the user store and whether the given ids and display names of
+     * the members belong to the same users. The ids of the members are read with a single claim lookup over the
+     * display names, and only the ids which are not resolved that way are searched one by one.
+     *
+     * @param group                   Group with the members.
+     * @param userStoreDomainForGroup User store domain of the group.
+     * @param groupName               Name of the group being updated.
+     * @throws BadRequestException If a member does not exist or the id and the name of a member do not match.
+     * @throws UserStoreException
+     */
+    private void validateGroupMembers(Group group, String userStoreDomainForGroup, String groupName)
+            throws BadRequestException, UserStoreException {
+
+        List<String> userDisplayNames = group.getMembersWithDisplayName();
+        Set<String> displayNames = new HashSet<>();
+        if (userDisplayNames != null) {
+            for (String userDisplayName : userDisplayNames) {
+                displayNames.add(UserCoreUtil.removeDomainFromName(userDisplayName).toLowerCase());
+            }
+        }
+
+        Map<String, String> userNamesOfIds = new HashMap<>();
+        String userIdLocalClaim = SCIMCommonUtils.getSCIMtoLocalMappings().get(SCIMConstants.CommonSchemaConstants
+                .ID_URI);
+        AbstractUserStoreManager abstractUserStoreManager = getAbstractUserStoreManager();
+        if (StringUtils.isNotBlank(userIdLocalClaim) && CollectionUtils.isNotEmpty(userDisplayNames) &&
+                abstractUserStoreManager != null) {
+            Set<String> userNames = new HashSet<>(userDisplayNames);
+            UserClaimSearchEntry[] searchEntries = null;
+            long startTime = System.nanoTime();
+            try {
+                searchEntries = abstractUserStoreManager.getUsersClaimValues(
+                        userNames.toArray(new String[userNames.size()]), new String[]{userIdLocalClaim}, null);
+            } catch (org.wso2.carbon.user.core.UserStoreException e) {
+                if (log.isDebugEnabled()) {
+                    log.debug("Error while reading the ids of the members of group: " + groupName + ". Members " +
+                            "will be resolved by their ids.", e);
+                }
+            } finally {
+                SCIMRequestContext.recordCall(DownstreamService.USER_STORE, "getUsersClaimValues", startTime);
+            }
+            if (searchEntries != null) {
+                for (UserClaimSearchEntry searchEntry : searchEntries) {
+                    if (searchEntry.getClaims() != null &&
+                            StringUtils.isNotBlank(searchEntry.getClaims().get(userIdLocalClaim))) {
+                        userNamesOfIds.put(searchEntry.getClaims().get(userIdLocalClaim), searchEntry.getUserName());
                     }
                 }
             }
-            //we do not update Identity_SCIM DB here since it is updated in SCIMUserOperationListener's methods.
+        }
 
-            //update name if it is changed
-            if (!(oldGroup.getDisplayName().equalsIgnoreCase(newGroup.getDisplayName()))) {
-                //update group name in carbon UM
-                carbonUM.updateRoleName(oldGroup.getDisplayName(),
-                        newGroup.getDisplayName());
+        for (Object userId : group.getMembers()) {
+            if (userId == null) {
+                continue;
+            }
+            String userName = userNamesOfIds.get(userId);
+            if (userName == null) {
+                userName = getUserNameOfGroupMember((String) userId, userStoreDomainForGroup);
+            }
+            if (userName == null) {
+                String error = "User: " + userId + " doesn't exist in the user store. " +
+                        "Hence, can not update the group: " + groupName;
+                throw new BadRequestException(error, ResponseCodeConstants.INVALID_VALUE);
+            } else if (!displayNames.contains(UserCoreUtil.removeDomainFromName(userName).toLowerCase())) {
+                throw new BadRequestException("Given SCIM user Id and name not matching..",
+                        ResponseCodeConstants.INVALID_VALUE);
+            }
+        }
+    }
 
-                updated = true;
+    /**
+     * Index the member names of a group by their domain qualified names.
+     *
+     * @param members Member names.
+     * @return Member names mapped by the domain qualified names, in the order of the given members.
+     */
+    private Map<String, String> getMembersByKey(List<String> members) {
+
+        Map<String, String> membersByKey = new LinkedHashMap<>();
+        if (members != null) {
+            for (String member : members) {
+                String key = getMemberKey(member);
+                if (!membersByKey.containsKey(key)) {
+                    membersByKey.put(key, member);
+                }
             }
+        }
+        return membersByKey;
+    }
+
+    /**
+     * Get the domain qualified name of a group member, by which the members of a group are compared.
+     *
+     * @param member Member name, with or without the domain.
+     * @return Domain qualified name.
+     */
+    private String getMemberKey(String member) {
 
-            //find out added members and deleted members..
-            List<String> oldMembers = oldGroup.getMembersWithDisplayName();
-            List<String> newMembers = newGroup.getMembersWithDisplayName();
-            if (newMembers != null) {
+        String userStoreDomain = IdentityUtil.extractDomainFromName(member);
+        String key = UserCoreUtil.removeDomainFromName(member);
+        if (userStoreDomain != null) {
+            key = userStoreDomain.toUpperCase() + CarbonConstants.DOMAIN_SEPARATOR + key;
+        }
+        return key;
+    }
 
-                List<String> addedMembers = new ArrayList<>();
-                List<String> deletedMembers = new ArrayList<>();
+    /**
+     * Apply PATCH operations which add or remove group members directly on the role, resolving only the users
+     * referenced by the operations instead of building every member of the group. The member names of the role are
+     * read once, to skip the added users who are already members and the removed users who are not. Supported
+     * operations are add on members, remove on members with a value, remove on members[value eq "id"] and remove on
+     * members without a value. If any other operation is present, nothing is changed and null is returned so that the
+     * caller can fall back to the generic PATCH flow.
+     *
+     * @param groupId            SCIM id of the group.
+     * @param patchOperations    Decoded PATCH operations.
+     * @param requiredAttributes Attributes required in the response.
+     * @return Updated group, or null if the operations need the generic PATCH flow.
+     * @throws CharonException
+     * @throws BadRequestException
+     * @throws NotFoundException
+     */
+    public Group patchGroup(final String groupId, final List<PatchOperation> patchOperations, final Map<String, Boolean>
+            requiredAttributes) throws CharonException, BadRequestException, NotFoundException {
 
-                //check for deleted members
-                if (CollectionUtils.isNotEmpty(oldMembers)) {
-                    for (String oldMember : oldMembers) {
-                        if (newMembers != null && newMembers.contains(oldMember)) {
+        return runOperation(SCIMOperation.PATCH_GROUP, new MeteredOperation<Group, BadRequestException,
+                NotFoundException>() {
+            @Override
+            public Group execute() throws CharonException, BadRequestException, NotFoundException {
+                if (log.isDebugEnabled()) {
+                    log.debug("Patching group: " + groupId);
+                }
+                if (CollectionUtils.isEmpty(patchOperations)) {
+                    return null;
+                }
+                // Member ids to be added with the display names given in the request, in the order of the operations.
+                Map<String, String> addedMemberIds = new LinkedHashMap<>();
+                Set<String> deletedMemberIds = new LinkedHashSet<>();
+                boolean removeAllMembers = false;
+                for (PatchOperation operation : patchOperations) {
+                    String path = operation.getPath();
+                    if (SCIMConstants.OperationalConstants.ADD.equalsIgnoreCase(operation.getOperation()) &&
+                            SCIMConstants.GroupSchemaConstants.MEMBERS.equalsIgnoreCase(path)) {
+                        Map<String, String> members = getMembersOfPatchValue(operation.getValues());
+                        if (members == null) {
+                            return null;
+                        }
+                        deletedMemberIds.removeAll(members.keySet());
+                        addedMemberIds.putAll(members);
+                    } else if (SCIMConstants.OperationalConstants.REMOVE.equalsIgnoreCase(operation.getOperation()) &&
+                            SCIMConstants.GroupSchemaConstants.MEMBERS.equalsIgnoreCase(path)) {
+                        if (operation.getValues() == null) {
+                            removeAllMembers = true;
+                            addedMemberIds.clear();
+                            deletedMemberIds.clear();
                             continue;
                         }
-                        deletedMembers.add(oldMember);
+                        Map<String, String> members = getMembersOfPatchValue(operation.getValues());
+                        if (members == null) {
+                            return null;
+                        }
+                        addedMemberIds.keySet().removeAll(members.keySet());
+                        deletedMemberIds.addAll(members.keySet());
+                    } else if (SCIMConstants.OperationalConstants.REMOVE.equalsIgnoreCase(operation.getOperation()) &&
+                            path != null && MEMBER_VALUE_FILTER_PATTERN.matcher(path).matches()) {
+                        Matcher matcher = MEMBER_VALUE_FILTER_PATTERN.matcher(path);
+                        matcher.matches();
+                        addedMemberIds.remove(matcher.group(1));
+                        deletedMemberIds.add(matcher.group(1));
+                    } else {
+                        if (log.isDebugEnabled()) {
+                            log.debug("PATCH operation: " + operation.getOperation() + " on path: " + path +
+                                    " cannot be applied as a membership update of group: " + groupId);
+                        }
+                        return null;
                     }
                 }
 
-                //check for added members
-                if (CollectionUtils.isNotEmpty(newMembers)) {
-                    for (String newMember : newMembers) {
-                        if (oldMembers != null && oldMembers.contains(newMember)) {
-                            continue;
+                try {
+                    /*set thread local property to signal the downstream SCIMUserOperationListener
+                        about the provisioning route.*/
+                    SCIMCommonUtils.setThreadLocalIsManagedThroughSCIMEP(true);
+                    SCIMGroupHandler groupHandler = new SCIMGroupHandler(carbonUM.getTenantId());
+                    String groupName = groupHandler.getGroupName(groupId);
+                    if (groupName == null) {
+                        if (log.isDebugEnabled()) {
+                            log.debug("Group with SCIM id: " + groupId + " doesn't exist in the system.");
                         }
-                        addedMembers.add(newMember);
+                        throw new NotFoundException();
+                    }
+                    String userStoreDomainForGroup = IdentityUtil.extractDomainFromName(groupName);
+                    SCIMOperationContext.setCurrentUserStoreDomain(userStoreDomainForGroup);
+                    String userStoreDomainFromSP;
+                    try {
+                        userStoreDomainFromSP = getUserStoreDomainFromSP();
+                    } catch (IdentityApplicationManagementException e) {
+                        throw new CharonException("Error retrieving User Store name. ", e);
+                    }
+                    if (userStoreDomainFromSP != null &&
+                            !userStoreDomainFromSP.equalsIgnoreCase(userStoreDomainForGroup)) {
+                        throw new CharonException("Group :" + groupName + "is not belong to user store " +
+                                userStoreDomainFromSP + "Hence group updating fail");
+                    }
+                    if (!isInternalOrApplicationGroup(userStoreDomainForGroup) && StringUtils.isNotBlank
+                            (userStoreDomainForGroup) && !isSCIMEnabled(userStoreDomainForGroup)) {
+                        throw new CharonException("Cannot update group: " + groupName +
+                                " through scim from user store: " + userStoreDomainForGroup +
+                                ". SCIM is not enabled for user store: " + userStoreDomainForGroup);
+                    }
+
+                    String[] membersOfRole = carbonUM.getUserListOfRole(groupName);
+                    Map<String, String> existingMembers = getMembersByKey(membersOfRole == null ? null :
+                            Arrays.asList(membersOfRole));
+                    List<String> addedMembers = new ArrayList<>();
+                    Set<String> retainedMembers = new HashSet<>();
+                    for (Map.Entry<String, String> member : addedMemberIds.entrySet()) {
+                        String userName = getUserNameOfGroupMember(member.getKey(), userStoreDomainForGroup);
+                        if (userName == null) {
+                            throw new BadRequestException("User: " + member.getKey() +
+                                    " doesn't exist in the user store. Hence, can not update the group: " + groupName,
+                                    ResponseCodeConstants.INVALID_VALUE);
+                        }
+                        if (StringUtils.isNotBlank(member.getValue()) && !UserCoreUtil.removeDomainFromName(userName)
+                                .equals(UserCoreUtil.removeDomainFromName(member.getValue()))) {
+                            throw new BadRequestException("Given SCIM user Id and name not matching..",
+                                    ResponseCodeConstants.INVALID_VALUE);
+                        }
+                        String memberKey = getMemberKey(userName);
+                        if (existingMembers.containsKey(memberKey)) {
+                            retainedMembers.add(memberKey);
+                        } else {
+                            addedMembers.add(userName);
+                        }
+                    }
+
+                    Set<String> deletedMembers = new LinkedHashSet<>();
+                    if (removeAllMembers) {
+                        // Existing members which are added back after removing all members are kept as they are.
+                        for (Map.Entry<String, String> member : existingMembers.entrySet()) {
+                            if (!retainedMembers.contains(member.getKey())) {
+                                deletedMembers.add(member.getValue());
+                            }
+                        }
+                    }
+                    for (String memberId : deletedMemberIds) {
+                        String userName = getUserNameOfGroupMember(memberId, userStoreDomainForGroup);
+                        // Removing a user who is not a member of the group leaves the group unchanged.
+                        String existingMember = userName == null ? null : existingMembers.get(getMemberKey(userName));
+                        if (existingMember != null) {
+                            deletedMembers.add(existingMember);
+                        }
+                    }
+
+                    if (!addedMembers.isEmpty() || !deletedMembers.isEmpty()) {
+                        carbonUM.updateUserListOfRole(groupName,
+                                deletedMembers.toArray(new String[deletedMembers.size()]),
+                                addedMembers.toArray(new String[addedMembers.size()]));
+                        if (log.isDebugEnabled()) {
+                            log.debug("Group: " + groupName + " is updated through SCIM.");
+                        }
+                    } else {
+                        log.warn("There is no updated field in the group: " + groupName +
+                                ". Therefore ignoring the provisioning.");
                     }
-                }
 
-                if (CollectionUtils.isNotEmpty(addedMembers) || CollectionUtils.isNotEmpty(deletedMembers)) {
-                    carbonUM.updateUserListOfRole(newGroup.getDisplayName(),
-                            deletedMembers.toArray(new String[deletedMembers.size()]),
-                            addedMembers.toArray(new String[addedMembers.size()]));
-                    updated = true;
+                    Group group;
+                    if (isMembersRequired(requiredAttributes)) {
+                        group = getGroupWithName(groupName);
+                    } else {
+                        group = getGroupOnlyWithMetaAttributes(groupName);
+                    }
+                    group.setSchemas();
+                    return group;
+                } catch (UserStoreException | IdentitySCIMException e) {
+                    throw new CharonException("Error occurred while patching group " + groupId, e);
                 }
             }
-            if (updated) {
-                log.info("Group: " + oldGroup.getDisplayName() + " is updated through SCIM.");
-            } else {
-                log.warn("There is no updated field in the group: " + oldGroup.getDisplayName() +
-                        ". Therefore ignoring the provisioning.");
+        });
+    }
+
+    /**
+     * Read the member ids and display names of the value of a PATCH operation on members.
+     *
+     * @param value PATCH value.
+     * @return Member ids mapped to their display names, or null if the value is not a list of members with ids.
+     */
+    private Map<String, String> getMembersOfPatchValue(Object value) {
+
+        if (!(value instanceof JSONArray)) {
+            return null;
+        }
+        Map<String, String> members = new LinkedHashMap<>();
+        JSONArray memberArray = (JSONArray) value;
+        for (int i = 0; i < memberArray.length(); i++) {
+            JSONObject member = memberArray.optJSONObject(i);
+            if (member == null || StringUtils.isBlank(member.optString(SCIMConstants.CommonSchemaConstants.VALUE))) {
+                return null;
             }
+            members.put(member.optString(SCIMConstants.CommonSchemaConstants.VALUE),
+                    member.optString(SCIMConstants.CommonSchemaConstants.DISPLAY, null));
+        }
+        return members;
+    }
+
+    /**
+     * Resolve the user name of a group member from the SCIM id of the user. Members of a group in a user store domain
+     * have to be in the same domain.
+     *
+     * @param userId                  SCIM id of the user.
+     * @param userStoreDomainForGroup User store domain of the group.
+     * @return User name, or null if there is no user with the given id in the domain of the group.
+     * @throws UserStoreException
+     */
+    private String getUserNameOfGroupMember(String userId, String userStoreDomainForGroup) throws UserStoreException {
+
+        if (isInternalOrApplicationGroup(userStoreDomainForGroup)) {
+            // Internal and application roles can have members of any user store.
+            return userIdResolver.getUserName(userId);
+        }
+        return userIdResolver.getUserName(userId, userStoreDomainForGroup);
+    }
 
-        } catch (UserStoreException | IdentitySCIMException e) {
-            throw new CharonException(e.getMessage(), e);
-        } catch (IdentityApplicationManagementException e){
-            throw new CharonException("Error retrieving User Store name. ", e);
-        } catch (BadRequestException | CharonException e) {
-            throw new CharonException("Error in updating the group", e);
+    /**
+     * Check whether the groups of the user are required in the response. Groups are resolved from the roles of the
+     * user and the SCIM attributes of each role, hence they are skipped when not requested.
+     *
+     * @param requiredAttributes Attributes required in the response.
+     * @return True if groups or any sub attribute of groups is required.
+     */
+    private boolean isGroupsRequired(Map<String, Boolean> requiredAttributes) {
 
+        if (requiredAttributes == null) {
+            return true;
+        }
+        for (String attribute : requiredAttributes.keySet()) {
+            if (attribute.startsWith(SCIMConstants.UserSchemaConstants.GROUP_URI)) {
+                return true;
+            }
         }
+        return false;
+    }
+
+    /**
+     * Check whether the members of the group are required in the response.
+     *
+     * @param requiredAttributes Attributes required in the response.
+     * @return True if members or any sub attribute of members is required.
+     */
+    private boolean isMembersRequired(Map<String, Boolean> requiredAttributes) {
 
-        return newGroup;
+        if (requiredAttributes == null) {
+            return true;
+        }
+        for (String attribute : requiredAttributes.keySet()) {
+            if (attribute.startsWith(SCIMConstants.GroupSchemaConstants.MEMBERS_URI)) {
+                return true;
+            }
+        }
+        return false;
     }
 
     @Override
@@ -2021,15 +3100,12 @@ public class SCIMUserManager implements UserManager {
      * @return whether scim is enabled or not for the particular user store
      */
     private boolean isSCIMEnabled(String userStoreName) {
-        UserStoreManager userStoreManager = carbonUM.getSecondaryUserStoreManager(userStoreName);
-        if (userStoreManager != null) {
-            try {
-                return userStoreManager.isSCIMEnabled();
-            } catch (UserStoreException e) {
-                log.error("Error while evaluating isSCIMEnalbed for user store " + userStoreName, e);
-            }
+        // The user stores are read once per request, so that the checks of the users in a list are map lookups.
+        if (tenantUserStores == null) {
+            tenantUserStores = SCIMUserStoreEnablementCache.getInstance()
+                    .getTenantUserStores(UserStoreCallCounter.unwrap(carbonUM));
         }
-        return false;
+        return tenantUserStores.isSCIMEnabled(UserStoreCallCounter.unwrap(carbonUM), userStoreName);
     }
 
     /**
@@ -2039,8 +3115,8 @@ public class SCIMUserManager implements UserManager {
      * @return
      * @throws CharonException
      */
-    private User getSCIMUser(String userName, List<String> claimURIList, Map<String, String> scimToLocalClaimsMap)
-            throws CharonException {
+    private User getSCIMUser(String userName, List<String> claimURIList, Map<String, String> scimToLocalClaimsMap,
+                             boolean isGroupsRequired) throws CharonException {
         User scimUser = null;
 
         String userStoreDomainName = IdentityUtil.extractDomainFromName(userName);
@@ -2063,10 +3139,17 @@ public class SCIMUserManager implements UserManager {
             // Add username with domain name
             attributes.put(SCIMConstants.UserSchemaConstants.USER_NAME_URI, userName);
 
-            //get groups of user and add it as groups attribute
-            String[] roles = carbonUM.getRoleListOfUser(userName);
+            //get groups of user and add it as groups attribute, only if the groups are requested
+            String[] roles = new String[0];
+            if (isGroupsRequired) {
+                roles = carbonUM.getRoleListOfUser(userName);
+            }
             //construct the SCIM Object from the attributes
             scimUser = (User) AttributeMapper.constructSCIMObjectFromAttributes(attributes, 1);
+            if (scimUser.getId() != null) {
+                versionsOfBuiltResources.put(scimUser.getId(), StringUtils.trimToNull(
+                        attributes.get(SCIMConstants.CommonSchemaConstants.LAST_MODIFIED_URI)));
+            }
 
             Map<String, Group> groupMetaAttributesCache = new HashMap<>();
             //add groups of user:
@@ -2112,7 +3195,7 @@ public class SCIMUserManager implements UserManager {
      * @throws CharonException CharonException
      */
     private User[] getSCIMUsers(String[] userNames, List<String> claimURIList, Map<String, String>
-            scimToLocalClaimsMap) throws CharonException {
+            scimToLocalClaimsMap, boolean isGroupsRequired) throws CharonException {
 
         List<User> scimUsers = new ArrayList<>();
 
@@ -2121,14 +3204,36 @@ public class SCIMUserManager implements UserManager {
         Map<String, List<String>> usersRoles;
 
         try {
-            searchEntries = ((AbstractUserStoreManager) carbonUM).getUsersClaimValues(
-                    userNames, claimURIList.toArray(new String[claimURIList.size()]), null);
+            AbstractUserStoreManager abstractUserStoreManager = getAbstractUserStoreManager();
+            long startTime = System.nanoTime();
+            try {
+                searchEntries = abstractUserStoreManager.getUsersClaimValues(
+                        userNames, claimURIList.toArray(new String[claimURIList.size()]), null);
+            } finally {
+                SCIMRequestContext.recordCall(DownstreamService.USER_STORE, "getUsersClaimValues", startTime);
+            }
 
-            usersRoles = ((AbstractUserStoreManager) carbonUM).getRoleListOfUsers(userNames);
+            if (isGroupsRequired) {
+                startTime = System.nanoTime();
+                try {
+                    usersRoles = abstractUserStoreManager.getRoleListOfUsers(userNames);
+                } finally {
+                    SCIMRequestContext.recordCall(DownstreamService.USER_STORE, "getRoleListOfUsers", startTime);
+                }
+            } else {
+                usersRoles = Collections.emptyMap();
+            }
         } catch (org.wso2.carbon.user.core.UserStoreException e) {
             throw new CharonException("Error occurred while retrieving SCIM user information", e);
         }
 
+        Map<String, Map<String, String>> usersClaimValues = new HashMap<>();
+        for (UserClaimSearchEntry entry : searchEntries) {
+            if (StringUtils.isNotBlank(entry.getUserName())) {
+                usersClaimValues.put(entry.getUserName(), entry.getClaims());
+            }
+        }
+
         Map<String, Group> groupMetaAttributesCache = new HashMap<>();
 
         for (String userName : userNames) {
@@ -2139,11 +3244,9 @@ public class SCIMUserManager implements UserManager {
                             "Including user : " + userName + " in the response.");
                 }
                 User scimUser;
-                Map<String, String> userClaimValues = new HashMap<>();
-                for (UserClaimSearchEntry entry : searchEntries) {
-                    if (StringUtils.isNotBlank(entry.getUserName()) && entry.getUserName().equals(userName)) {
-                        userClaimValues = entry.getClaims();
-                    }
+                Map<String, String> userClaimValues = usersClaimValues.get(userName);
+                if (userClaimValues == null) {
+                    userClaimValues = new HashMap<>();
                 }
                 Map<String, String> attributes;
                 try {
@@ -2267,6 +3370,25 @@ public class SCIMUserManager implements UserManager {
                     "enabled for user store " + userStoreDomainName);
         }
 
+        Group group = getGroupWithMembers(groupName);
+        //get other group attributes and set.
+        SCIMGroupHandler groupHandler = new SCIMGroupHandler(carbonUM.getTenantId());
+        group = groupHandler.getGroupWithAttributes(group, groupName, versionsOfBuiltResources);
+        return group;
+    }
+
+    /**
+     * Get the group with the members read from the user store, without the attributes kept in the identity
+     * database.
+     *
+     * @param groupName name of the group with the domain
+     * @return group with the display name and the members set
+     * @throws CharonException
+     * @throws org.wso2.carbon.user.core.UserStoreException
+     */
+    private Group getGroupWithMembers(String groupName)
+            throws CharonException, org.wso2.carbon.user.core.UserStoreException, BadRequestException {
+
         Group group = new Group();
         group.setDisplayName(groupName);
         String[] userNames = carbonUM.getUserListOfRole(groupName);
@@ -2274,16 +3396,45 @@ public class SCIMUserManager implements UserManager {
         //get the ids of the users and set them in the group with id + display name
         if (userNames != null && userNames.length != 0) {
             for (String userName : userNames) {
-                String userId = carbonUM.getUserClaimValue(userName, SCIMConstants.CommonSchemaConstants.ID_URI, null);
+                String userId = userIdResolver.getUserId(userName);
                 group.setMember(userId, userName);
             }
         }
-        //get other group attributes and set.
-        SCIMGroupHandler groupHandler = new SCIMGroupHandler(carbonUM.getTenantId());
-        group = groupHandler.getGroupWithAttributes(group, groupName);
         return group;
     }
 
+    /**
+     * Set the attributes kept in the identity database to the given groups. The user store calls are made before
+     * this, so the single identity database connection shared by the batch is held only while the group
+     * attributes are read.
+     *
+     * @param groupsWithMembers groups with their members, keyed by the group name with the domain
+     * @return groups with the attributes set, in the iteration order of the given map
+     * @throws IdentitySCIMException
+     * @throws CharonException
+     * @throws BadRequestException
+     */
+    private List<Group> setAttributesOfGroups(Map<String, Group> groupsWithMembers)
+            throws IdentitySCIMException, CharonException, BadRequestException {
+
+        List<Group> groups = new ArrayList<>();
+        if (groupsWithMembers.isEmpty()) {
+            return groups;
+        }
+        SCIMGroupHandler groupHandler = new SCIMGroupHandler(carbonUM.getTenantId());
+        UnitOfWork unitOfWork = UnitOfWork.begin();
+        try {
+            for (Map.Entry<String, Group> groupWithMembers : groupsWithMembers.entrySet()) {
+                groups.add(groupHandler.getGroupWithAttributes(groupWithMembers.getValue(),
+                        groupWithMembers.getKey()));
+            }
+            unitOfWork.commit();
+        } finally {
+            unitOfWork.end();
+        }
+        return groups;
+    }
+
     /**
      * This is used to add domain name to the members of a group
      *
@@ -2486,8 +3637,13 @@ public class SCIMUserManager implements UserManager {
             .UserStoreException {
 
         String searchAttribute = getSearchAttribute(filterOperation, attributeValue, FILTERING_DELIMITER);
-        return ((AbstractUserStoreManager) carbonUM).getRoleNames(searchAttribute, MAX_ITEM_LIMIT_UNLIMITED, true,
-                true, true);
+        long startTime = System.nanoTime();
+        try {
+            return getAbstractUserStoreManager().getRoleNames(searchAttribute, MAX_ITEM_LIMIT_UNLIMITED, true,
+                    true, true);
+        } finally {
+            SCIMRequestContext.recordCall(DownstreamService.USER_STORE, "getRoleNames", startTime);
+        }
     }
 
     /**
@@ -2569,6 +3725,18 @@ public class SCIMUserManager implements UserManager {
         return groupHandler.getGroupListFromAttributeName(attributeName, searchAttribute);
     }
 
+    /**
+     * Check whether the users can be read at once. The users are read with the bulk read methods of
+     * AbstractUserStoreManager, which a paginated user store manager may not extend.
+     *
+     * @return true if the users can be read at once.
+     */
+    private boolean isBulkUserReadAvailable() {
+
+        return isPaginatedUserStoreAvailable() && carbonUM instanceof PaginatedUserStoreManager &&
+                getAbstractUserStoreManager() != null;
+    }
+
     private boolean isPaginatedUserStoreAvailable() {
 
         String enablePaginatedUserStore = IdentityUtil.getProperty(ENABLE_PAGINATED_USER_STORE);
@@ -2586,7 +3754,17 @@ public class SCIMUserManager implements UserManager {
      */
     private boolean isImmutableClaim(String claim) throws UserStoreException {
 
-        Map<String, String> claimMappings = SCIMCommonUtils.getSCIMtoLocalMappings();
+        return isImmutableClaim(claim, SCIMCommonUtils.getSCIMtoLocalMappings());
+    }
+
+    /**
+     * Check whether claim is an immutable claim, with the claim mappings read by the caller.
+     *
+     * @param claim         claim URI.
+     * @param claimMappings SCIM to local claim mappings.
+     * @return
+     */
+    private boolean isImmutableClaim(String claim, Map<String, String> claimMappings) {
 
         return claim.equals(claimMappings.get(SCIMConstants.CommonSchemaConstants.ID_URI)) ||
                 claim.equals(claimMappings.get(SCIMConstants.UserSchemaConstants.USER_NAME_URI)) ||
@@ -24,11 +24,14 @@ import org.osgi.framework.ServiceRegistration;
 import org.osgi.service.component.ComponentContext;
 import org.wso2.carbon.identity.core.util.IdentityCoreInitializedEvent;
 import org.wso2.carbon.identity.core.util.IdentityUtil;
+import org.wso2.carbon.identity.scim2.common.cache.SCIMCacheCoherenceProvider;
 import org.wso2.carbon.identity.scim2.common.listener.SCIMTenantMgtListener;
 import org.wso2.carbon.identity.scim2.common.listener.SCIMUserOperationListener;
+import org.wso2.carbon.identity.scim2.common.metrics.SCIMMetrics;
 import org.wso2.carbon.identity.scim2.common.utils.AdminAttributeUtil;
 import org.wso2.carbon.identity.scim2.common.utils.SCIMCommonConstants;
 import org.wso2.carbon.identity.scim2.common.utils.SCIMConfigProcessor;
+import org.wso2.carbon.identity.scim2.common.utils.SCIMMetadataBackfill;
 import org.wso2.carbon.stratos.common.listeners.TenantMgtListener;
 import org.wso2.carbon.user.core.listener.UserOperationEventListener;
 import org.wso2.carbon.user.core.service.RealmService;
@@ -41,8 +44,8 @@ import org.wso2.charon3.core.exceptions.InternalErrorException;
 
 
 import java.io.File;
-import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 
 /**
  * @scr.component name="identity.scim2.common" immediate="true"
@@ -52,14 +55,18 @@ import java.util.concurrent.Executors;
  * @scr.reference name="user.realmservice.default"
  * interface="org.wso2.carbon.user.core.service.RealmService" cardinality="1..1"
  * policy="dynamic" bind="setRealmService" unbind="unsetRealmService"
+ * @scr.reference name="identity.scim2.cache.coherence.provider"
+ * interface="org.wso2.carbon.identity.scim2.common.cache.SCIMCacheCoherenceProvider" cardinality="0..1"
+ * policy="dynamic" bind="setCacheCoherenceProvider" unbind="unsetCacheCoherenceProvider"
  */
 public class SCIMCommonComponent {
     private static Log logger = LogFactory.getLog(SCIMCommonComponent.class);
 
-    ExecutorService executorService = Executors.newFixedThreadPool(1);
+    ScheduledExecutorService executorService = Executors.newScheduledThreadPool(1);
 
     private ServiceRegistration<TenantMgtListener> tenantMgtListenerServiceReg;
     private ServiceRegistration<UserOperationEventListener> userOperationEventListenerServiceReg;
+    private SCIMMetadataBackfill metadataBackfill;
 
 
     protected void activate(ComponentContext ctx) {
@@ -76,8 +83,11 @@ public class SCIMCommonComponent {
                         CarbonUtils.getCarbonConfigDirPath() + File.separator +
                         SCIMConfigConstants.SCIM_SCHEMA_EXTENSION_CONFIG;
                 SCIMUserSchemaExtensionBuilder.getInstance().buildUserSchemaExtension(schemaFilePath);
+                scimConfigProcessor.updateConfigVersion();
             }
 
+            SCIMCommonComponentHolder.setExecutorService(executorService);
+
             //register UserOperationEventListener implementation
             SCIMUserOperationListener scimUserOperationListener = new SCIMUserOperationListener();
             userOperationEventListenerServiceReg = ctx.getBundleContext()
@@ -88,9 +98,17 @@ public class SCIMCommonComponent {
             tenantMgtListenerServiceReg = ctx.getBundleContext().registerService(TenantMgtListener.class,
                     scimTenantMgtListener, null);
 
+            SCIMMetrics.getInstance().registerComponentStats();
+
             //Update super tenant user/group attributes.
-            AdminAttributeUtil.updateAdminUser(MultitenantConstants.SUPER_TENANT_ID, true);
-            AdminAttributeUtil.updateAdminGroup(MultitenantConstants.SUPER_TENANT_ID);
+            AdminAttributeUtil.scheduleAdminAttributesUpdate(MultitenantConstants.SUPER_TENANT_ID);
+
+            //Add SCIM attributes to the users and groups which existed before SCIM was enabled.
+            if (SCIMMetadataBackfill.isEnabled()) {
+                metadataBackfill = new SCIMMetadataBackfill(executorService);
+                SCIMCommonComponentHolder.setMetadataBackfill(metadataBackfill);
+                metadataBackfill.start();
+            }
 
             if (logger.isDebugEnabled()) {
                 logger.debug("SCIM Common component activated successfully.");
@@ -136,7 +154,40 @@ public class SCIMCommonComponent {
         SCIMCommonComponentHolder.setRealmService(null);
     }
 
+    /**
+     * Set the provider which propagates the invalidations of the SCIM caches across the cluster.
+     *
+     * @param cacheCoherenceProvider SCIMCacheCoherenceProvider
+     */
+    protected void setCacheCoherenceProvider(SCIMCacheCoherenceProvider cacheCoherenceProvider) {
+
+        if (logger.isDebugEnabled()) {
+            logger.debug("SCIM cache coherence provider: " + cacheCoherenceProvider.getClass().getName() +
+                    " set in SCIMCommonComponent bundle");
+        }
+        SCIMCommonComponentHolder.setCacheCoherenceProvider(cacheCoherenceProvider);
+    }
+
+    /**
+     * Unset cache coherence provider.
+     */
+    protected void unsetCacheCoherenceProvider(SCIMCacheCoherenceProvider cacheCoherenceProvider) {
+
+        if (logger.isDebugEnabled()) {
+            logger.debug("SCIM cache coherence provider unset in SCIMCommonComponent bundle");
+        }
+        SCIMCommonComponentHolder.setCacheCoherenceProvider(null);
+    }
+
     protected void deactivate(ComponentContext context) {
+        if (metadataBackfill != null) {
+            metadataBackfill.stop();
+            SCIMCommonComponentHolder.setMetadataBackfill(null);
+        }
+        SCIMMetrics.getInstance().unregisterComponentStats();
+        SCIMCommonComponentHolder.setExecutorService(null);
+        executorService.shutdown();
+
         if (tenantMgtListenerServiceReg != null) {
             tenantMgtListenerServiceReg.unregister();
         }
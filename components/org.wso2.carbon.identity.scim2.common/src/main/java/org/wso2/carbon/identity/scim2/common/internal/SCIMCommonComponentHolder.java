@@ -18,8 +18,13 @@
 
 package org.wso2.carbon.identity.scim2.common.internal;
 
+import org.wso2.carbon.identity.scim2.common.cache.LocalSCIMCacheCoherenceProvider;
+import org.wso2.carbon.identity.scim2.common.cache.SCIMCacheCoherenceProvider;
+import org.wso2.carbon.identity.scim2.common.utils.SCIMMetadataBackfill;
 import org.wso2.carbon.user.core.service.RealmService;
 
+import java.util.concurrent.ExecutorService;
+
 /**
  * SCIM service holder class.
  *
@@ -27,6 +32,11 @@ import org.wso2.carbon.user.core.service.RealmService;
 public class SCIMCommonComponentHolder {
 
     private static RealmService realmService;
+    private static final SCIMCacheCoherenceProvider localCacheCoherenceProvider =
+            new LocalSCIMCacheCoherenceProvider();
+    private static volatile SCIMCacheCoherenceProvider cacheCoherenceProvider;
+    private static volatile ExecutorService executorService;
+    private static volatile SCIMMetadataBackfill metadataBackfill;
 
     /**
      * Get realm service.
@@ -48,4 +58,64 @@ public class SCIMCommonComponentHolder {
         SCIMCommonComponentHolder.realmService = realmService;
     }
 
+    /**
+     * Get the provider which propagates the invalidations of the SCIM caches across the cluster.
+     *
+     * @return Registered provider, or the local provider if none is registered.
+     */
+    public static SCIMCacheCoherenceProvider getCacheCoherenceProvider() {
+
+        SCIMCacheCoherenceProvider provider = SCIMCommonComponentHolder.cacheCoherenceProvider;
+        return provider != null ? provider : localCacheCoherenceProvider;
+    }
+
+    /**
+     * Set cache coherence provider.
+     *
+     * @param cacheCoherenceProvider
+     */
+    public static void setCacheCoherenceProvider(SCIMCacheCoherenceProvider cacheCoherenceProvider) {
+
+        SCIMCommonComponentHolder.cacheCoherenceProvider = cacheCoherenceProvider;
+    }
+
+    /**
+     * Get the executor of the component, which runs the background tasks of SCIM.
+     *
+     * @return Executor, or null if the component is not active.
+     */
+    public static ExecutorService getExecutorService() {
+
+        return SCIMCommonComponentHolder.executorService;
+    }
+
+    /**
+     * Set executor service.
+     *
+     * @param executorService
+     */
+    public static void setExecutorService(ExecutorService executorService) {
+
+        SCIMCommonComponentHolder.executorService = executorService;
+    }
+
+    /**
+     * Get the job which adds the SCIM metadata to the users and groups which existed before SCIM was enabled.
+     *
+     * @return Job, or null if the job is not enabled.
+     */
+    public static SCIMMetadataBackfill getMetadataBackfill() {
+
+        return SCIMCommonComponentHolder.metadataBackfill;
+    }
+
+    /**
+     * Set metadata backfill.
+     *
+     * @param metadataBackfill
+     */
+    public static void setMetadataBackfill(SCIMMetadataBackfill metadataBackfill) {
+
+        SCIMCommonComponentHolder.metadataBackfill = metadataBackfill;
+    }
 }
@@ -37,9 +37,7 @@ public class SCIMTenantMgtListener extends AbstractIdentityTenantMgtListener {
         if (log.isDebugEnabled()) {
             log.debug("SCIMTenantMgtListener is fired for Tenant ID : " + tenantId);
         }
-        //Update admin user attributes.
-        AdminAttributeUtil.updateAdminUser(tenantId, false);
-        //Update admin group attributes.
-        AdminAttributeUtil.updateAdminGroup(tenantId);
+        //Update admin user and group attributes, off the tenant loading thread.
+        AdminAttributeUtil.scheduleAdminAttributesUpdate(tenantId);
     }
 }
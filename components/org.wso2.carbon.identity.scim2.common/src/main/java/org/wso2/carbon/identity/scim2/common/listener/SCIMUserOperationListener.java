@@ -18,28 +18,34 @@
 
 package org.wso2.carbon.identity.scim2.common.listener;
 
+import org.apache.commons.lang.ArrayUtils;
 import org.apache.commons.lang.StringUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.wso2.carbon.identity.core.AbstractIdentityUserOperationEventListener;
 import org.wso2.carbon.identity.core.util.IdentityCoreConstants;
+import org.wso2.carbon.identity.core.util.IdentityTenantUtil;
 import org.wso2.carbon.identity.core.util.IdentityUtil;
+import org.wso2.carbon.identity.scim2.common.cache.SCIMLocalClaimCache;
+import org.wso2.carbon.identity.scim2.common.cache.SCIMUserIdCache;
+import org.wso2.carbon.identity.scim2.common.cache.SCIMUserStoreEnablementCache;
 import org.wso2.carbon.identity.scim2.common.exceptions.IdentitySCIMException;
 import org.wso2.carbon.identity.scim2.common.group.SCIMGroupHandler;
 import org.wso2.carbon.identity.scim2.common.utils.SCIMCommonUtils;
+import org.wso2.carbon.identity.scim2.common.utils.SCIMDateTimeFormatter;
 import org.wso2.carbon.user.core.UserCoreConstants;
 import org.wso2.carbon.user.core.UserStoreException;
 import org.wso2.carbon.user.core.UserStoreManager;
 import org.wso2.carbon.user.core.util.UserCoreUtil;
 import org.wso2.charon3.core.schema.SCIMConstants;
-import org.wso2.charon3.core.utils.AttributeUtil;
 
-import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.UUID;
-import java.util.regex.Pattern;
 
 /**
  * This is to perform SCIM related operation on User Operations.
@@ -49,6 +55,12 @@ import java.util.regex.Pattern;
 public class SCIMUserOperationListener extends AbstractIdentityUserOperationEventListener {
 
     private static Log log = LogFactory.getLog(SCIMUserOperationListener.class);
+    private static final String URN_PREFIX = "urn:";
+    private static final String SCIM_CORE_SCHEMAS = "scim:schemas:core:";
+    private static final String SCIM_ID_SUFFIX = ".0:id";
+
+    // User whose id or user name claim is being changed on the thread, to be invalidated again once it is changed.
+    private static final ThreadLocal<String> identifierClaimChangeOfThread = new ThreadLocal<>();
 
     @Override
     public int getExecutionOrderId() {
@@ -74,7 +86,7 @@ public class SCIMUserOperationListener extends AbstractIdentityUserOperationEven
     public boolean doPreAddUser(String userName, Object credential, String[] roleList, Map<String, String> claims,
                                 String profile, UserStoreManager userStoreManager) throws UserStoreException {
         try {
-            if (!isEnable() || userStoreManager == null || !userStoreManager.isSCIMEnabled()) {
+            if (!isEnable() || userStoreManager == null || !isSCIMEnabled(userStoreManager)) {
                 return true;
             }
         } catch (org.wso2.carbon.user.api.UserStoreException e) {
@@ -87,6 +99,25 @@ public class SCIMUserOperationListener extends AbstractIdentityUserOperationEven
     @Override
     public boolean doPostAddUser(String userName, Object credential, String[] roleList, Map<String, String> claims,
                                  String profile, UserStoreManager userStoreManager) throws UserStoreException {
+        try {
+            if (!isEnable() || userStoreManager == null || !isSCIMEnabled(userStoreManager) || claims == null) {
+                return true;
+            }
+        } catch (org.wso2.carbon.user.api.UserStoreException e) {
+            throw new UserStoreException("Error while reading isScimEnabled from userstore manager", e);
+        }
+
+        // Cache the id populated in doPreAddUser, once the user is added.
+        String userIdLocalClaimUri = getLocalClaimUris().userId;
+        String userId = claims.get(userIdLocalClaimUri);
+        if (StringUtils.isNotBlank(userId)) {
+            try {
+                SCIMUserIdCache.getInstance().put(userStoreManager.getTenantId(), userId,
+                        getUserNameWithDomain(userName, userStoreManager));
+            } catch (org.wso2.carbon.user.api.UserStoreException e) {
+                throw new UserStoreException("Error while caching the SCIM id of the user: " + userName, e);
+            }
+        }
         return true;
     }
 
@@ -112,7 +143,7 @@ public class SCIMUserOperationListener extends AbstractIdentityUserOperationEven
     public boolean doPostUpdateCredentialByAdmin(String userName, Object credential, UserStoreManager userStoreManager)
             throws UserStoreException {
         try {
-            if (!isEnable() || userStoreManager == null || !userStoreManager.isSCIMEnabled()) {
+            if (!isEnable() || userStoreManager == null || !isSCIMEnabled(userStoreManager)) {
                 return true;
             }
         } catch (org.wso2.carbon.user.api.UserStoreException e) {
@@ -121,7 +152,7 @@ public class SCIMUserOperationListener extends AbstractIdentityUserOperationEven
 
         // Update last-modified-date.
         try {
-            String lastModifiedDate = AttributeUtil.formatDateTime(Instant.now());
+            String lastModifiedDate = SCIMDateTimeFormatter.formatNewVersion();
             userStoreManager.setUserClaimValue(
                     userName, SCIMConstants.CommonSchemaConstants.LAST_MODIFIED_URI, lastModifiedDate, null);
         } catch (org.wso2.carbon.user.api.UserStoreException e) {
@@ -143,19 +174,29 @@ public class SCIMUserOperationListener extends AbstractIdentityUserOperationEven
     }
 
     @Override
-    public boolean doPostDeleteUser(String s, UserStoreManager userStoreManager) throws UserStoreException {
+    public boolean doPostDeleteUser(String userName, UserStoreManager userStoreManager) throws UserStoreException {
+
+        invalidateUserIdCache(userName, userStoreManager);
         return true;
     }
 
     @Override
-    public boolean doPreSetUserClaimValue(String s, String s1, String s2, String s3, UserStoreManager
-            userStoreManager) throws UserStoreException {
+    public boolean doPreSetUserClaimValue(String userName, String claimURI, String claimValue, String profileName,
+                                          UserStoreManager userStoreManager) throws UserStoreException {
+
+        if (isUserIdentifierClaim(claimURI)) {
+            startIdentifierClaimChange(userName, userStoreManager);
+        }
         return true;
     }
 
     @Override
-    public boolean doPostSetUserClaimValue(String s, UserStoreManager userStoreManager) throws UserStoreException {
-        //TODO: need to set last modified time.
+    public boolean doPostSetUserClaimValue(String userName, UserStoreManager userStoreManager)
+            throws UserStoreException {
+
+        // The last modified time is not set for a single claim change, as it would take a second write to the user
+        // store. It is set by setUserClaimValues, which SCIM updates go through.
+        endIdentifierClaimChange(userStoreManager);
         return true;
     }
 
@@ -163,7 +204,7 @@ public class SCIMUserOperationListener extends AbstractIdentityUserOperationEven
     public boolean doPreSetUserClaimValues(String userName, Map<String, String> claims, String profileName,
                                            UserStoreManager userStoreManager) throws UserStoreException {
         try {
-            if (!isEnable() || userStoreManager == null || !userStoreManager.isSCIMEnabled() || userStoreManager
+            if (!isEnable() || userStoreManager == null || !isSCIMEnabled(userStoreManager) || userStoreManager
                     .isReadOnly()) {
                 return true;
             }
@@ -171,7 +212,7 @@ public class SCIMUserOperationListener extends AbstractIdentityUserOperationEven
             throw new UserStoreException("Error while reading isScimEnabled from userstore manager", e);
         }
 
-        String lastModifiedDate = AttributeUtil.formatDateTime(Instant.now());
+        String lastModifiedDate = SCIMDateTimeFormatter.formatNewVersion();
         claims.put(SCIMConstants.CommonSchemaConstants.LAST_MODIFIED_URI, lastModifiedDate);
 
         return true;
@@ -180,28 +221,56 @@ public class SCIMUserOperationListener extends AbstractIdentityUserOperationEven
     @Override
     public boolean doPostSetUserClaimValues(String userName, Map<String, String> claims, String profileName,
                                             UserStoreManager userStoreManager) throws UserStoreException {
+
+        if (claims != null) {
+            for (String claimURI : claims.keySet()) {
+                if (isUserIdentifierClaim(claimURI)) {
+                    invalidateUserIdCache(userName, userStoreManager);
+                    break;
+                }
+            }
+        }
         return true;
     }
 
     @Override
-    public boolean doPreDeleteUserClaimValues(String s, String[] strings, String s1, UserStoreManager userStoreManager)
-            throws UserStoreException {
+    public boolean doPreDeleteUserClaimValues(String userName, String[] claims, String profileName,
+                                              UserStoreManager userStoreManager) throws UserStoreException {
+
+        if (claims != null) {
+            for (String claimURI : claims) {
+                if (isUserIdentifierClaim(claimURI)) {
+                    startIdentifierClaimChange(userName, userStoreManager);
+                    break;
+                }
+            }
+        }
         return true;
     }
 
     @Override
-    public boolean doPostDeleteUserClaimValues(String s, UserStoreManager userStoreManager) throws UserStoreException {
+    public boolean doPostDeleteUserClaimValues(String userName, UserStoreManager userStoreManager)
+            throws UserStoreException {
+
+        endIdentifierClaimChange(userStoreManager);
         return true;
     }
 
     @Override
-    public boolean doPreDeleteUserClaimValue(String s, String s1, String s2, UserStoreManager userStoreManager)
-            throws UserStoreException {
+    public boolean doPreDeleteUserClaimValue(String userName, String claimURI, String profileName,
+                                             UserStoreManager userStoreManager) throws UserStoreException {
+
+        if (isUserIdentifierClaim(claimURI)) {
+            startIdentifierClaimChange(userName, userStoreManager);
+        }
         return true;
     }
 
     @Override
-    public boolean doPostDeleteUserClaimValue(String s, UserStoreManager userStoreManager) throws UserStoreException {
+    public boolean doPostDeleteUserClaimValue(String userName, UserStoreManager userStoreManager)
+            throws UserStoreException {
+
+        endIdentifierClaimChange(userStoreManager);
         return true;
     }
 
@@ -222,7 +291,7 @@ public class SCIMUserOperationListener extends AbstractIdentityUserOperationEven
     public boolean doPostAddRole(String roleName, String[] userList, org.wso2.carbon.user.api.Permission[] permissions,
                                  UserStoreManager userStoreManager) throws UserStoreException {
         try {
-            if (!isEnable() || userStoreManager == null || !userStoreManager.isSCIMEnabled()) {
+            if (!isEnable() || userStoreManager == null || !isSCIMEnabled(userStoreManager)) {
                 return true;
             }
         } catch (org.wso2.carbon.user.api.UserStoreException e) {
@@ -241,13 +310,9 @@ public class SCIMUserOperationListener extends AbstractIdentityUserOperationEven
             // UserCore Util functionality does not append primary.
             roleNameWithDomain = SCIMCommonUtils.getGroupNameWithDomain(roleNameWithDomain);
 
-            // Query role name from identity table.
+            // Add META if the group has no attributes - i.e: group added via mgt console, not via SCIM endpoint.
             try {
-                if (!scimGroupHandler.isGroupExisting(roleNameWithDomain)) {
-                    // If no attributes - i.e: group added via mgt console, not via SCIM endpoint.
-                    // Add META.
-                    scimGroupHandler.addMandatoryAttributes(roleNameWithDomain);
-                }
+                scimGroupHandler.addMandatoryAttributes(Collections.singletonList(roleNameWithDomain));
             } catch (IdentitySCIMException e) {
                 throw new UserStoreException("Error retrieving group information from SCIM Tables.", e);
             }
@@ -271,7 +336,7 @@ public class SCIMUserOperationListener extends AbstractIdentityUserOperationEven
     public boolean doPreDeleteRole(String roleName, UserStoreManager userStoreManager) throws UserStoreException {
 
         try {
-            if (!isEnable() || userStoreManager == null || !userStoreManager.isSCIMEnabled()) {
+            if (!isEnable() || userStoreManager == null || !isSCIMEnabled(userStoreManager)) {
                 return true;
             }
         } catch (org.wso2.carbon.user.api.UserStoreException e) {
@@ -325,7 +390,7 @@ public class SCIMUserOperationListener extends AbstractIdentityUserOperationEven
             throws UserStoreException {
 
         try {
-            if (!isEnable() || userStoreManager == null || !userStoreManager.isSCIMEnabled()) {
+            if (!isEnable() || userStoreManager == null || !isSCIMEnabled(userStoreManager)) {
                 return true;
             }
         } catch (org.wso2.carbon.user.api.UserStoreException e) {
@@ -333,7 +398,6 @@ public class SCIMUserOperationListener extends AbstractIdentityUserOperationEven
         }
 
         try {
-            //TODO:set last update date
             SCIMGroupHandler scimGroupHandler = new SCIMGroupHandler(userStoreManager.getTenantId());
 
             String domainName = UserCoreUtil.getDomainName(userStoreManager.getRealmConfiguration());
@@ -344,10 +408,10 @@ public class SCIMUserOperationListener extends AbstractIdentityUserOperationEven
             String newRoleNameWithDomain = UserCoreUtil.addDomainToName(newRoleName, domainName);
             try {
                 scimGroupHandler.updateRoleName(roleNameWithDomain, newRoleNameWithDomain);
-
             } catch (IdentitySCIMException e) {
                 throw new UserStoreException("Error updating group information in SCIM Tables.", e);
             }
+            updateLastModifiedOfGroups(new String[]{newRoleName}, userStoreManager);
             return true;
 
         } catch (org.wso2.carbon.user.api.UserStoreException e) {
@@ -366,8 +430,9 @@ public class SCIMUserOperationListener extends AbstractIdentityUserOperationEven
     @Override
     public boolean doPostUpdateUserListOfRole(String roleName, String[] deletedUsers, String[] newUsers,
                                               UserStoreManager userStoreManager) throws UserStoreException {
-        return true;
 
+        updateLastModifiedOfGroups(new String[]{roleName}, userStoreManager);
+        return true;
     }
 
     @Override
@@ -377,16 +442,150 @@ public class SCIMUserOperationListener extends AbstractIdentityUserOperationEven
     }
 
     @Override
-    public boolean doPostUpdateRoleListOfUser(String s, String[] strings, String[] strings1,
+    public boolean doPostUpdateRoleListOfUser(String userName, String[] deletedRoles, String[] newRoles,
                                               UserStoreManager userStoreManager) throws UserStoreException {
+
+        updateLastModifiedOfGroups((String[]) ArrayUtils.addAll(deletedRoles, newRoles), userStoreManager);
         return true;
     }
 
+    /**
+     * Update the last modified time of the groups which were renamed or whose members were changed, so that the
+     * versions of the groups change with them. Only the roles which have SCIM attributes are updated, and they are
+     * found with a single query of the identity database.
+     *
+     * The change of the roles is already done in the user store when this is called, hence a failure is logged
+     * instead of failing the change. The ETags of the groups then stay the same until the groups change again.
+     *
+     * @param roleNames        Role names, with or without the user store domain.
+     * @param userStoreManager User store manager in which the roles were changed.
+     */
+    private void updateLastModifiedOfGroups(String[] roleNames, UserStoreManager userStoreManager) {
+
+        List<String> changedRoleNames = new ArrayList<>();
+        if (roleNames != null) {
+            for (String roleName : roleNames) {
+                if (StringUtils.isNotBlank(roleName)) {
+                    changedRoleNames.add(roleName);
+                }
+            }
+        }
+        if (changedRoleNames.isEmpty() || !isEnable() || userStoreManager == null) {
+            return;
+        }
+        try {
+            if (!isSCIMEnabled(userStoreManager)) {
+                return;
+            }
+            String domainName = UserCoreUtil.getDomainName(userStoreManager.getRealmConfiguration());
+            if (domainName == null) {
+                domainName = UserCoreConstants.PRIMARY_DEFAULT_DOMAIN_NAME;
+            }
+            List<String> roleNamesWithDomain = new ArrayList<>();
+            for (String roleName : changedRoleNames) {
+                roleNamesWithDomain.add(UserCoreUtil.addDomainToName(roleName, domainName));
+            }
+            new SCIMGroupHandler(userStoreManager.getTenantId()).updateLastModified(roleNamesWithDomain);
+        } catch (IdentitySCIMException | org.wso2.carbon.user.api.UserStoreException e) {
+            log.error("Error while updating the last modified time of the groups: " + changedRoleNames, e);
+        }
+    }
+
+    /**
+     * Check whether the claim identifies the user in the SCIM user id cache, i.e. the id or the user name claim.
+     *
+     * @param claimURI Local claim URI.
+     * @return true if the claim is the id or the user name claim.
+     * @throws UserStoreException
+     */
+    private boolean isUserIdentifierClaim(String claimURI) throws UserStoreException {
+
+        if (StringUtils.isBlank(claimURI)) {
+            return false;
+        }
+        LocalClaimUris localClaimUris = getLocalClaimUris();
+        return claimURI.equals(localClaimUris.userId) || claimURI.equals(localClaimUris.userName);
+    }
+
+    /**
+     * Remove the user from the SCIM user id cache. The cache is invalidated regardless of the SCIM enabled state of
+     * the user store, since the state can be changed while the user is cached.
+     *
+     * @param userName         User name without the user store domain.
+     * @param userStoreManager User store manager of the user.
+     * @throws UserStoreException
+     */
+    private void invalidateUserIdCache(String userName, UserStoreManager userStoreManager) throws UserStoreException {
+
+        if (userStoreManager == null || StringUtils.isBlank(userName)) {
+            return;
+        }
+        try {
+            SCIMUserIdCache.getInstance().invalidateUser(userStoreManager.getTenantId(),
+                    getUserNameWithDomain(userName, userStoreManager));
+        } catch (org.wso2.carbon.user.api.UserStoreException e) {
+            throw new UserStoreException("Error while invalidating the SCIM id of the user: " + userName, e);
+        }
+    }
+
+    /**
+     * Invalidate the user before its id or user name claim is changed, and remember the user to invalidate it again
+     * once the claim is changed. The post listeners of single claim changes do not get the claims, and a concurrent
+     * lookup can cache the old mapping again before the change is written to the user store.
+     *
+     * @param userName         User name without the user store domain.
+     * @param userStoreManager User store manager of the user.
+     * @throws UserStoreException
+     */
+    private void startIdentifierClaimChange(String userName, UserStoreManager userStoreManager)
+            throws UserStoreException {
+
+        invalidateUserIdCache(userName, userStoreManager);
+        identifierClaimChangeOfThread.set(userName);
+    }
+
+    /**
+     * Invalidate the user whose id or user name claim was changed on the thread, if any.
+     *
+     * @param userStoreManager User store manager of the user.
+     * @throws UserStoreException
+     */
+    private void endIdentifierClaimChange(UserStoreManager userStoreManager) throws UserStoreException {
+
+        String userName = identifierClaimChangeOfThread.get();
+        if (userName != null) {
+            identifierClaimChangeOfThread.remove();
+            invalidateUserIdCache(userName, userStoreManager);
+        }
+    }
+
+    private String getUserNameWithDomain(String userName, UserStoreManager userStoreManager) {
+
+        String domainName = UserCoreUtil.getDomainName(userStoreManager.getRealmConfiguration());
+        if (domainName == null) {
+            domainName = UserCoreConstants.PRIMARY_DEFAULT_DOMAIN_NAME;
+        }
+        return UserCoreUtil.addDomainToName(userName, domainName);
+    }
+
     @Deprecated
     public Map<String, String> getSCIMAttributes(String userName, Map<String, String> claimsMap) {
         return populateSCIMAttributes(userName, claimsMap);
     }
 
+    /**
+     * Check whether SCIM is enabled for the user store, from the cached SCIMEnabled property of the user store.
+     *
+     * @param userStoreManager user store manager
+     * @return whether SCIM is enabled for the user store
+     * @throws org.wso2.carbon.user.api.UserStoreException
+     */
+    private boolean isSCIMEnabled(UserStoreManager userStoreManager)
+            throws org.wso2.carbon.user.api.UserStoreException {
+
+        return SCIMUserStoreEnablementCache.getInstance().isSCIMEnabled(userStoreManager);
+    }
+
     /**
      * Populate SCIM Attributes map.
      *
@@ -403,36 +602,17 @@ public class SCIMUserOperationListener extends AbstractIdentityUserOperationEven
         }
 
         try {
-            Map<String, String> scimToLocalMappings = SCIMCommonUtils.getSCIMtoLocalMappings();
-            String userIdLocalClaimUri = scimToLocalMappings.get(SCIMConstants.CommonSchemaConstants.ID_URI);
-            String createdLocalClaimUri = scimToLocalMappings.get(SCIMConstants.CommonSchemaConstants.CREATED_URI);
-            String modifiedLocalClaimUri = scimToLocalMappings.get(SCIMConstants.CommonSchemaConstants.LAST_MODIFIED_URI);
-            String usernameLocalClaimUri = scimToLocalMappings.get(SCIMConstants.UserSchemaConstants.USER_NAME_URI);
-            String resourceTypeLocalClaimUri = scimToLocalMappings.get(SCIMConstants.CommonSchemaConstants
-                    .RESOURCE_TYPE_URI);
-
-            Pattern pattern = Pattern.compile("urn:.*scim:schemas:core:.\\.0:id");
-            boolean containsScimIdClaim = false;
-            for (String claimUri : attributes.keySet()) {
-                if (pattern.matcher(claimUri).matches()) {
-                    containsScimIdClaim = true;
-                    break;
-                }
-                if (StringUtils.equals(claimUri, userIdLocalClaimUri)) {
-                    containsScimIdClaim = true;
-                    break;
-                }
-            }
-            if (!containsScimIdClaim) {
+            LocalClaimUris localClaimUris = getLocalClaimUris();
+            if (!containsSCIMIdClaim(attributes, localClaimUris.userId)) {
                 String id = UUID.randomUUID().toString();
-                attributes.put(userIdLocalClaimUri, id);
+                attributes.put(localClaimUris.userId, id);
             }
 
-            String createdDate = AttributeUtil.formatDateTime(Instant.now());
-            attributes.put(createdLocalClaimUri, createdDate);
-            attributes.put(modifiedLocalClaimUri, createdDate);
-            attributes.put(usernameLocalClaimUri, userName);
-            attributes.put(resourceTypeLocalClaimUri, SCIMConstants.USER);
+            String createdDate = SCIMDateTimeFormatter.formatNow();
+            attributes.put(localClaimUris.created, createdDate);
+            attributes.put(localClaimUris.modified, createdDate);
+            attributes.put(localClaimUris.userName, userName);
+            attributes.put(localClaimUris.resourceType, SCIMConstants.USER);
 
         } catch (UserStoreException ex) {
             log.error("Error occurred while retrieving SCIM-to-Local claims map.", ex);
@@ -441,4 +621,76 @@ public class SCIMUserOperationListener extends AbstractIdentityUserOperationEven
         return attributes;
     }
 
+    /**
+     * Get the local claims mapped to the SCIM attributes set by this listener, for the tenant of the claim mappings.
+     * The claims are kept in the {@link SCIMLocalClaimCache}, instead of reading all the SCIM claim mappings for each
+     * user.
+     *
+     * @return local claim URIs
+     * @throws UserStoreException
+     */
+    private LocalClaimUris getLocalClaimUris() throws UserStoreException {
+
+        int tenantId = IdentityTenantUtil.getTenantId(SCIMCommonUtils.getTenantDomainFromSP());
+        SCIMLocalClaimCache localClaimCache = SCIMLocalClaimCache.getInstance();
+        Map<String, String> localClaimUris = localClaimCache.getLocalClaimUris(tenantId, LocalClaimUris.SCIM_URIS);
+        if (localClaimUris == null) {
+            localClaimUris = SCIMCommonUtils.getSCIMtoLocalMappings();
+            localClaimCache.addLocalClaimUris(tenantId, localClaimUris, LocalClaimUris.SCIM_URIS);
+        }
+        return new LocalClaimUris(localClaimUris);
+    }
+
+    private boolean containsSCIMIdClaim(Map<String, String> attributes, String userIdLocalClaimUri) {
+
+        if ((userIdLocalClaimUri != null && attributes.containsKey(userIdLocalClaimUri)) ||
+                attributes.containsKey(SCIMConstants.CommonSchemaConstants.ID_URI)) {
+            return true;
+        }
+        for (String claimUri : attributes.keySet()) {
+            if (isSCIMIdClaimUri(claimUri)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Check whether the claim is the id of a SCIM core schema, i.e. whether it matches
+     * urn:.*scim:schemas:core:.\.0:id, without compiling and matching the pattern for each claim.
+     */
+    private static boolean isSCIMIdClaimUri(String claimUri) {
+
+        if (claimUri == null) {
+            return false;
+        }
+        int schemaIndex = claimUri.length() - SCIM_ID_SUFFIX.length() - 1 - SCIM_CORE_SCHEMAS.length();
+        return schemaIndex >= URN_PREFIX.length() && claimUri.startsWith(URN_PREFIX) &&
+                claimUri.endsWith(SCIM_ID_SUFFIX) && claimUri.startsWith(SCIM_CORE_SCHEMAS, schemaIndex);
+    }
+
+    /**
+     * Local claims mapped to the SCIM attributes set by this listener.
+     */
+    private static class LocalClaimUris {
+
+        private static final String[] SCIM_URIS = {SCIMConstants.CommonSchemaConstants.ID_URI,
+                SCIMConstants.CommonSchemaConstants.CREATED_URI, SCIMConstants.CommonSchemaConstants.LAST_MODIFIED_URI,
+                SCIMConstants.UserSchemaConstants.USER_NAME_URI, SCIMConstants.CommonSchemaConstants.RESOURCE_TYPE_URI};
+
+        private final String userId;
+        private final String created;
+        private final String modified;
+        private final String userName;
+        private final String resourceType;
+
+        LocalClaimUris(Map<String, String> scimToLocalMappings) {
+
+            userId = scimToLocalMappings.get(SCIMConstants.CommonSchemaConstants.ID_URI);
+            created = scimToLocalMappings.get(SCIMConstants.CommonSchemaConstants.CREATED_URI);
+            modified = scimToLocalMappings.get(SCIMConstants.CommonSchemaConstants.LAST_MODIFIED_URI);
+            userName = scimToLocalMappings.get(SCIMConstants.UserSchemaConstants.USER_NAME_URI);
+            resourceType = scimToLocalMappings.get(SCIMConstants.CommonSchemaConstants.RESOURCE_TYPE_URI);
+        }
+    }
 }
@@ -0,0 +1,48 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.wso2.carbon.identity.scim2.common.metrics;
+
+import org.wso2.carbon.user.core.claim.ClaimManager;
+
+/**
+ * Wraps claim managers to time the calls made to them by the SCIM request running on the thread.
+ */
+public class ClaimManagerCallCounter extends DownstreamCallCounter {
+
+    private ClaimManagerCallCounter(ClaimManager claimManager) {
+
+        super(claimManager, DownstreamService.CLAIM_MANAGER);
+    }
+
+    /**
+     * Wrap a claim manager, if the metrics are enabled.
+     *
+     * @param claimManager Claim manager.
+     * @return Wrapped claim manager, or the given one if the metrics are disabled.
+     */
+    public static ClaimManager wrap(ClaimManager claimManager) {
+
+        if (claimManager == null || !SCIMMetrics.getInstance().isEnabled() ||
+                getCallCounter(claimManager, ClaimManagerCallCounter.class) != null) {
+            return claimManager;
+        }
+        return (ClaimManager) newProxy(new ClaimManagerCallCounter(claimManager));
+    }
+}
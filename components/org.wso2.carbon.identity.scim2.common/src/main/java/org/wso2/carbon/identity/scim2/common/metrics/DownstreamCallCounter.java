@@ -0,0 +1,124 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.wso2.carbon.identity.scim2.common.metrics;
+
+import org.apache.commons.lang.ClassUtils;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Proxy invocation handler which times the calls made to a downstream service, and records them against the SCIM
+ * request running on the thread. The proxy implements the public interfaces of the wrapped object, but not its
+ * classes.
+ */
+abstract class DownstreamCallCounter implements InvocationHandler {
+
+    private final Object target;
+    private final DownstreamService service;
+
+    DownstreamCallCounter(Object target, DownstreamService service) {
+
+        this.target = target;
+        this.service = service;
+    }
+
+    /**
+     * Create a proxy which calls the target of the given invocation handler.
+     *
+     * @param callCounter Invocation handler.
+     * @return Proxy.
+     */
+    static Object newProxy(DownstreamCallCounter callCounter) {
+
+        Class<?> targetClass = callCounter.target.getClass();
+        List<Class<?>> interfaces = new ArrayList<>();
+        for (Object type : ClassUtils.getAllInterfaces(targetClass)) {
+            if (Modifier.isPublic(((Class<?>) type).getModifiers())) {
+                interfaces.add((Class<?>) type);
+            }
+        }
+        return Proxy.newProxyInstance(targetClass.getClassLoader(), interfaces.toArray(new Class<?>[interfaces.size()]),
+                callCounter);
+    }
+
+    /**
+     * Get the invocation handler of the given type behind a proxy.
+     *
+     * @param object           Proxy or plain object.
+     * @param callCounterClass Type of the invocation handler.
+     * @return Invocation handler, or null if the object is not a proxy with such a handler.
+     */
+    static <T extends DownstreamCallCounter> T getCallCounter(Object object, Class<T> callCounterClass) {
+
+        if (object != null && Proxy.isProxyClass(object.getClass())) {
+            InvocationHandler invocationHandler = Proxy.getInvocationHandler(object);
+            if (callCounterClass.isInstance(invocationHandler)) {
+                return callCounterClass.cast(invocationHandler);
+            }
+        }
+        return null;
+    }
+
+    Object getTarget() {
+
+        return target;
+    }
+
+    /**
+     * Whether a call to the given method is to be recorded. Override to skip the methods which do not reach the
+     * downstream service.
+     *
+     * @param method Method.
+     * @return Whether the call is recorded.
+     */
+    protected boolean isCounted(Method method) {
+
+        return method.getDeclaringClass() != Object.class;
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+
+        if (!isCounted(method)) {
+            return invokeTarget(method, args);
+        }
+        long startTime = System.nanoTime();
+        try {
+            return invokeTarget(method, args);
+        } finally {
+            SCIMRequestContext.recordCall(service, method.getName(), startTime);
+        }
+    }
+
+    private Object invokeTarget(Method method, Object[] args) throws Throwable {
+
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+}
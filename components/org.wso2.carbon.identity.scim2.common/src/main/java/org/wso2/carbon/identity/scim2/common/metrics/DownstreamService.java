@@ -0,0 +1,43 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.wso2.carbon.identity.scim2.common.metrics;
+
+/**
+ * Services called by the SCIM requests, for which the calls are accounted per request.
+ */
+public enum DownstreamService {
+
+    USER_STORE("userStore"),
+    CLAIM_MANAGER("claimManager"),
+    IDENTITY_DB("identityDB");
+
+    private final String name;
+
+    DownstreamService(String name) {
+
+        this.name = name;
+    }
+
+    @Override
+    public String toString() {
+
+        return name;
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.scim2.common.metrics;
+
+import org.wso2.carbon.identity.scim2.common.internal.SCIMCommonComponentHolder;
+import org.wso2.carbon.identity.scim2.common.utils.AdminAttributeUtil;
+import org.wso2.carbon.identity.scim2.common.utils.SCIMMetadataBackfill;
+
+/**
+ * State of the background tasks of the SCIM component, read when the MBean is queried.
+ */
+public class SCIMComponentStats implements SCIMComponentStatsMXBean {
+
+    @Override
+    public int getPendingAdminAttributesUpdateCount() {
+
+        return AdminAttributeUtil.getPendingAdminAttributesUpdateCount();
+    }
+
+    @Override
+    public String getMetadataBackfillState() {
+
+        SCIMMetadataBackfill metadataBackfill = SCIMCommonComponentHolder.getMetadataBackfill();
+        if (metadataBackfill == null) {
+            return "DISABLED";
+        } else if (metadataBackfill.isCompleted()) {
+            return "COMPLETED";
+        } else if (metadataBackfill.isRunning()) {
+            return "RUNNING";
+        }
+        return "STOPPED";
+    }
+
+    @Override
+    public int getMetadataBackfillTenantCount() {
+
+        SCIMMetadataBackfill metadataBackfill = SCIMCommonComponentHolder.getMetadataBackfill();
+        return metadataBackfill == null ? -1 : metadataBackfill.getTenantCount();
+    }
+
+    @Override
+    public int getMetadataBackfillCompletedTenants() {
+
+        SCIMMetadataBackfill metadataBackfill = SCIMCommonComponentHolder.getMetadataBackfill();
+        return metadataBackfill == null ? 0 : metadataBackfill.getCompletedTenants();
+    }
+
+    @Override
+    public int getMetadataBackfillScannedUsers() {
+
+        SCIMMetadataBackfill metadataBackfill = SCIMCommonComponentHolder.getMetadataBackfill();
+        return metadataBackfill == null ? 0 : metadataBackfill.getScannedUsers();
+    }
+
+    @Override
+    public int getMetadataBackfillUpdatedUsers() {
+
+        SCIMMetadataBackfill metadataBackfill = SCIMCommonComponentHolder.getMetadataBackfill();
+        return metadataBackfill == null ? 0 : metadataBackfill.getUpdatedUsers();
+    }
+
+    @Override
+    public int getMetadataBackfillFailedUsers() {
+
+        SCIMMetadataBackfill metadataBackfill = SCIMCommonComponentHolder.getMetadataBackfill();
+        return metadataBackfill == null ? 0 : metadataBackfill.getFailedUsers();
+    }
+
+    @Override
+    public int getMetadataBackfillScannedGroups() {
+
+        SCIMMetadataBackfill metadataBackfill = SCIMCommonComponentHolder.getMetadataBackfill();
+        return metadataBackfill == null ? 0 : metadataBackfill.getScannedGroups();
+    }
+
+    @Override
+    public int getMetadataBackfillUpdatedGroups() {
+
+        SCIMMetadataBackfill metadataBackfill = SCIMCommonComponentHolder.getMetadataBackfill();
+        return metadataBackfill == null ? 0 : metadataBackfill.getUpdatedGroups();
+    }
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.scim2.common.metrics;
+
+/**
+ * JMX view of the state of the background tasks of the SCIM component.
+ */
+public interface SCIMComponentStatsMXBean {
+
+    /**
+     * @return Number of tenants of which the admin user and group attributes are waiting to be updated.
+     */
+    int getPendingAdminAttributesUpdateCount();
+
+    /**
+     * @return State of the SCIM metadata backfill: DISABLED, RUNNING, STOPPED or COMPLETED.
+     */
+    String getMetadataBackfillState();
+
+    /**
+     * @return Number of tenants to be backfilled, or -1 if the tenants are not listed yet.
+     */
+    int getMetadataBackfillTenantCount();
+
+    /**
+     * @return Number of tenants of which the users and groups are backfilled.
+     */
+    int getMetadataBackfillCompletedTenants();
+
+    /**
+     * @return Number of users read by the backfill.
+     */
+    int getMetadataBackfillScannedUsers();
+
+    /**
+     * @return Number of users to which the backfill added the SCIM metadata.
+     */
+    int getMetadataBackfillUpdatedUsers();
+
+    /**
+     * @return Number of users to which the backfill failed to add the SCIM metadata.
+     */
+    int getMetadataBackfillFailedUsers();
+
+    /**
+     * @return Number of groups read by the backfill.
+     */
+    int getMetadataBackfillScannedGroups();
+
+    /**
+     * @return Number of groups to which the backfill added the SCIM metadata.
+     */
+    int getMetadataBackfillUpdatedGroups();
+}
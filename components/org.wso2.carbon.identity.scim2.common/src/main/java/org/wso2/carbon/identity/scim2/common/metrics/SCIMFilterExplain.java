@@ -0,0 +1,331 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.wso2.carbon.identity.scim2.common.metrics;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.wso2.carbon.user.core.model.Condition;
+import org.wso2.carbon.user.core.model.ExpressionCondition;
+import org.wso2.carbon.user.core.model.OperationalCondition;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Explains how a user filter of the SCIM request running on the thread was executed: the strategy chosen for it, the
+ * conditions sent to each user store domain, the offset recalculations of the multi-domain filters and the time taken
+ * by each stage. Filters which take longer than SCIM.Metrics.SlowRequestThreshold are logged with their explanation,
+ * with the filter values masked. The explanation is also kept in the {@link SCIMRequestContext}, so that it can be
+ * returned to the client. At most {@link #MAX_ENTRIES} store queries and offset recalculations are kept, as a filter
+ * fanned out across many domains may make many of them.
+ */
+public class SCIMFilterExplain {
+
+    /**
+     * Conditions sent to the PaginatedUserStoreManager of a single domain.
+     */
+    public static final String PAGINATED_CONDITION = "paginatedCondition";
+    /**
+     * Users looked up through the non paginated user store APIs and paginated in memory.
+     */
+    public static final String LEGACY_APIS = "legacyAPIs";
+    /**
+     * Conditions sent to the PaginatedUserStoreManager of each domain in turn.
+     */
+    public static final String MULTI_DOMAIN_FAN_OUT = "multiDomainFanOut";
+    public static final String FILTER_STAGE = "filter";
+    public static final String USER_DETAILS_STAGE = "userDetails";
+    static final int MAX_ENTRIES = 100;
+
+    private static final Log log = LogFactory.getLog(SCIMFilterExplain.class);
+    private static final String MASKED_VALUE = "?";
+    private static final ThreadLocal<SCIMFilterExplain> currentExplain = new ThreadLocal<>();
+    // Enough for the closing brackets and the truncation counts.
+    private static final int TRUNCATION_RESERVE = 128;
+
+    private final long startTime = System.nanoTime();
+    private final List<StoreQuery> storeQueries = new ArrayList<>();
+    private final List<OffsetRecalculation> offsetRecalculations = new ArrayList<>();
+    private final Map<String, Long> stageTimes = new LinkedHashMap<>();
+    private int storeQueryCount;
+    private int offsetRecalculationCount;
+    private String strategy;
+    private long time;
+
+    private SCIMFilterExplain() {
+
+    }
+
+    /**
+     * Start explaining a filter on the thread.
+     *
+     * @return Filter explanation, to be ended in a finally block.
+     */
+    public static SCIMFilterExplain start() {
+
+        SCIMFilterExplain explain = new SCIMFilterExplain();
+        currentExplain.set(explain);
+        return explain;
+    }
+
+    /**
+     * Set the strategy of the filter explained on the thread, if any.
+     *
+     * @param strategy Strategy, e.g. {@link #PAGINATED_CONDITION}.
+     */
+    public static void setStrategy(String strategy) {
+
+        SCIMFilterExplain explain = currentExplain.get();
+        if (explain != null) {
+            explain.strategy = strategy;
+        }
+    }
+
+    /**
+     * Record a query made to a user store domain by the filter explained on the thread, if any.
+     *
+     * @param domainName User store domain, or null if the query is not limited to a domain.
+     * @param condition  Condition of the query.
+     * @param offset     Offset of the query.
+     * @param limit      Limit of the query.
+     * @param userNames  Users returned by the query, or null.
+     * @param startTime  Time at which the query was started, from {@link System#nanoTime()}.
+     */
+    public static void recordStoreQuery(String domainName, Condition condition, int offset, int limit,
+                                        String[] userNames, long startTime) {
+
+        SCIMFilterExplain explain = currentExplain.get();
+        if (explain != null && explain.storeQueryCount++ < MAX_ENTRIES) {
+            explain.storeQueries.add(new StoreQuery(domainName, condition, offset, limit,
+                    userNames == null ? 0 : userNames.length, System.nanoTime() - startTime));
+        }
+    }
+
+    /**
+     * Record a recalculation of the offset by the filter explained on the thread, if any.
+     *
+     * @param domainName User store domain for which the offset was recalculated.
+     * @param offset     Offset before the recalculation.
+     * @param newOffset  Recalculated offset.
+     * @param startTime  Time at which the recalculation was started, from {@link System#nanoTime()}.
+     */
+    public static void recordOffsetRecalculation(String domainName, int offset, int newOffset, long startTime) {
+
+        SCIMFilterExplain explain = currentExplain.get();
+        if (explain != null && explain.offsetRecalculationCount++ < MAX_ENTRIES) {
+            explain.offsetRecalculations.add(new OffsetRecalculation(domainName, offset, newOffset,
+                    System.nanoTime() - startTime));
+        }
+    }
+
+    /**
+     * Record the time taken by a stage of the filter explained on the thread, if any.
+     *
+     * @param stage     Stage, e.g. {@link #FILTER_STAGE}.
+     * @param startTime Time at which the stage was started, from {@link System#nanoTime()}.
+     */
+    public static void recordStage(String stage, long startTime) {
+
+        SCIMFilterExplain explain = currentExplain.get();
+        if (explain != null) {
+            Long stageTime = explain.stageTimes.get(stage);
+            explain.stageTimes.put(stage, (stageTime == null ? 0 : stageTime) + System.nanoTime() - startTime);
+        }
+    }
+
+    /**
+     * End explaining the filter. The explanation is logged if the filter was slow.
+     */
+    public void end() {
+
+        time = System.nanoTime() - startTime;
+        if (currentExplain.get() == this) {
+            currentExplain.remove();
+        }
+        SCIMRequestContext requestContext = SCIMRequestContext.getCurrent();
+        if (requestContext != null) {
+            requestContext.setFilterExplain(this);
+        }
+        int slowRequestThreshold = SCIMMetrics.getInstance().getSlowRequestThresholdMillis();
+        if (slowRequestThreshold >= 0 && TimeUnit.NANOSECONDS.toMillis(time) > slowRequestThreshold) {
+            log.warn("Slow SCIM user filter: " + toJSONString(false));
+        }
+    }
+
+    public String getStrategy() {
+
+        return strategy;
+    }
+
+    /**
+     * Get the explanation as a single line JSON string, e.g.
+     * {"strategy":"multiDomainFanOut","timeMs":120,"stages":{"filter":100,"userDetails":20},"storeQueries":[{"domain":
+     * "PRIMARY","condition":"(givenName SW 'jo' AND mail EW '?')","offset":1,"limit":10,"results":0,"timeMs":40}],
+     * "offsetRecalculations":[{"domain":"PRIMARY","offset":21,"newOffset":5,"timeMs":30}]}
+     * Non ASCII characters are escaped, so that the string can be sent as an HTTP header.
+     *
+     * @param includeValues Whether the values of the conditions are included, or masked.
+     * @return Explanation.
+     */
+    public String toJSONString(boolean includeValues) {
+
+        return toJSONString(includeValues, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Get the explanation as a single line JSON string of at most the given length. The store queries and offset
+     * recalculations which don't fit, or which were not kept, are left out, and the explanation ends with their total
+     * counts, e.g. ...,"offsetRecalculations":[],"truncated":{"storeQueries":250,"offsetRecalculations":12}}
+     * As the string is ASCII, its length is also its length in bytes.
+     *
+     * @param includeValues Whether the values of the conditions are included, or masked.
+     * @param maxLength     Maximum length of the string.
+     * @return Explanation.
+     */
+    public String toJSONString(boolean includeValues, int maxLength) {
+
+        StringBuilder json = new StringBuilder("{\"strategy\":");
+        appendString(json, strategy);
+        json.append(",\"timeMs\":").append(TimeUnit.NANOSECONDS.toMillis(time)).append(",\"stages\":{");
+        boolean first = true;
+        for (Map.Entry<String, Long> stageTime : stageTimes.entrySet()) {
+            if (!first) {
+                json.append(',');
+            }
+            first = false;
+            appendString(json, stageTime.getKey());
+            json.append(':').append(TimeUnit.NANOSECONDS.toMillis(stageTime.getValue()));
+        }
+        json.append("},\"storeQueries\":[");
+        int entriesLength = maxLength - TRUNCATION_RESERVE;
+        boolean truncated = storeQueries.size() < storeQueryCount ||
+                offsetRecalculations.size() < offsetRecalculationCount;
+        for (int i = 0; i < storeQueries.size(); i++) {
+            StoreQuery storeQuery = storeQueries.get(i);
+            StringBuilder entry = new StringBuilder(i == 0 ? "{" : ",{").append("\"domain\":");
+            appendString(entry, storeQuery.domainName);
+            entry.append(",\"condition\":");
+            appendString(entry, storeQuery.condition == null ? null :
+                    describe(storeQuery.condition, includeValues));
+            entry.append(",\"offset\":").append(storeQuery.offset).append(",\"limit\":").append(storeQuery.limit)
+                    .append(",\"results\":").append(storeQuery.results).append(",\"timeMs\":")
+                    .append(TimeUnit.NANOSECONDS.toMillis(storeQuery.time)).append('}');
+            if (json.length() + entry.length() > entriesLength) {
+                truncated = true;
+                break;
+            }
+            json.append(entry);
+        }
+        json.append("],\"offsetRecalculations\":[");
+        for (int i = 0; i < offsetRecalculations.size(); i++) {
+            OffsetRecalculation offsetRecalculation = offsetRecalculations.get(i);
+            StringBuilder entry = new StringBuilder(i == 0 ? "{" : ",{").append("\"domain\":");
+            appendString(entry, offsetRecalculation.domainName);
+            entry.append(",\"offset\":").append(offsetRecalculation.offset).append(",\"newOffset\":")
+                    .append(offsetRecalculation.newOffset).append(",\"timeMs\":")
+                    .append(TimeUnit.NANOSECONDS.toMillis(offsetRecalculation.time)).append('}');
+            if (json.length() + entry.length() > entriesLength) {
+                truncated = true;
+                break;
+            }
+            json.append(entry);
+        }
+        json.append(']');
+        if (truncated) {
+            json.append(",\"truncated\":{\"storeQueries\":").append(storeQueryCount)
+                    .append(",\"offsetRecalculations\":").append(offsetRecalculationCount).append('}');
+        }
+        return json.append('}').toString();
+    }
+
+    private static String describe(Condition condition, boolean includeValues) {
+
+        if (condition instanceof ExpressionCondition) {
+            ExpressionCondition expressionCondition = (ExpressionCondition) condition;
+            return expressionCondition.getAttributeName() + " " + expressionCondition.getOperation() + " '" +
+                    (includeValues ? expressionCondition.getAttributeValue() : MASKED_VALUE) + "'";
+        } else if (condition instanceof OperationalCondition) {
+            OperationalCondition operationalCondition = (OperationalCondition) condition;
+            return "(" + describe(operationalCondition.getLeftCondition(), includeValues) + " " +
+                    operationalCondition.getOperation() + " " +
+                    describe(operationalCondition.getRightCondition(), includeValues) + ")";
+        }
+        return String.valueOf(condition);
+    }
+
+    private static void appendString(StringBuilder json, String value) {
+
+        if (value == null) {
+            json.append("null");
+            return;
+        }
+        json.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                json.append('\\').append(c);
+            } else if (c < 0x20 || c > 0x7e) {
+                json.append(String.format("\\u%04x", (int) c));
+            } else {
+                json.append(c);
+            }
+        }
+        json.append('"');
+    }
+
+    private static class StoreQuery {
+
+        private final String domainName;
+        private final Condition condition;
+        private final int offset;
+        private final int limit;
+        private final int results;
+        private final long time;
+
+        StoreQuery(String domainName, Condition condition, int offset, int limit, int results, long time) {
+
+            this.domainName = domainName;
+            this.condition = condition;
+            this.offset = offset;
+            this.limit = limit;
+            this.results = results;
+            this.time = time;
+        }
+    }
+
+    private static class OffsetRecalculation {
+
+        private final String domainName;
+        private final int offset;
+        private final int newOffset;
+        private final long time;
+
+        OffsetRecalculation(String domainName, int offset, int newOffset, long time) {
+
+            this.domainName = domainName;
+            this.offset = offset;
+            this.newOffset = newOffset;
+            this.time = time;
+        }
+    }
+}
@@ -0,0 +1,265 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.wso2.carbon.identity.scim2.common.metrics;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.wso2.carbon.identity.core.util.IdentityUtil;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Registry of the metrics of the SCIM operations, per operation, tenant and user store domain. The metrics of each
+ * combination are registered as an MBean named
+ * org.wso2.carbon.identity.scim2:type=SCIMOperationStats,operation=[operation],tenantId=[id],userStoreDomain=[domain]
+ *
+ * Metrics are configured in identity.xml with the properties SCIM.Metrics.Enable (false by default) and
+ * SCIM.Metrics.MaxEntries, the number of combinations recorded separately. Operations of further tenants and domains
+ * are recorded against the tenant and the domain "other". Operations in a domain without a user store, e.g. a domain
+ * given in a request, are recorded against the domain "other" as well. The calls to the user store and the claim
+ * manager are counted through proxies, which are only created when the metrics are enabled.
+ *
+ * The state of the background tasks of the component, e.g. the number of pending admin attribute updates and the
+ * progress of the metadata backfill, is registered as the MBean org.wso2.carbon.identity.scim2:type=SCIMComponentStats.
+ *
+ * SCIM.Metrics.SlowRequestThreshold is the time in milliseconds (1000 by default) above which a SCIM request is logged
+ * along with the downstream calls made by it. A negative value disables the slow request log. Slow requests are
+ * only logged when the metrics are enabled.
+ */
+public class SCIMMetrics {
+
+    static final String OTHER = "other";
+
+    private static final Log log = LogFactory.getLog(SCIMMetrics.class);
+    private static final String ENABLE = "SCIM.Metrics.Enable";
+    private static final String MAX_ENTRIES = "SCIM.Metrics.MaxEntries";
+    private static final int DEFAULT_MAX_ENTRIES = 1000;
+    private static final String SLOW_REQUEST_THRESHOLD = "SCIM.Metrics.SlowRequestThreshold";
+    private static final int DEFAULT_SLOW_REQUEST_THRESHOLD = 1000;
+    private static final String OBJECT_NAME_PREFIX = "org.wso2.carbon.identity.scim2:type=SCIMOperationStats";
+    private static final String COMPONENT_STATS_OBJECT_NAME = "org.wso2.carbon.identity.scim2:type=SCIMComponentStats";
+
+    private volatile boolean enabled;
+    private final int maxEntries;
+    private final int slowRequestThresholdMillis;
+    private final ConcurrentMap<String, SCIMOperationStats> operationStats = new ConcurrentHashMap<>();
+
+    private SCIMMetrics() {
+
+        enabled = "true".equalsIgnoreCase(IdentityUtil.getProperty(ENABLE));
+        maxEntries = getIntConfig(MAX_ENTRIES, DEFAULT_MAX_ENTRIES);
+        slowRequestThresholdMillis = getIntConfig(SLOW_REQUEST_THRESHOLD, DEFAULT_SLOW_REQUEST_THRESHOLD);
+    }
+
+    public static SCIMMetrics getInstance() {
+
+        return SCIMMetricsHolder.INSTANCE;
+    }
+
+    public boolean isEnabled() {
+
+        return enabled;
+    }
+
+    /**
+     * Enable or disable the metrics, overriding the configuration. User store and claim managers wrapped before the
+     * metrics are disabled keep counting their calls.
+     *
+     * @param enabled Whether the metrics are enabled.
+     */
+    public void setEnabled(boolean enabled) {
+
+        this.enabled = enabled;
+    }
+
+    /**
+     * Get the time above which SCIM requests are logged as slow requests.
+     *
+     * @return Time in milliseconds, or a negative value if slow requests are not logged.
+     */
+    public int getSlowRequestThresholdMillis() {
+
+        return slowRequestThresholdMillis;
+    }
+
+    /**
+     * Get the metrics of an operation in a tenant and a user store domain.
+     *
+     * @param operation       Operation.
+     * @param tenantId        Tenant id.
+     * @param userStoreDomain User store domain.
+     * @return Metrics, or null if no such operation is recorded.
+     */
+    public SCIMOperationStats getStats(SCIMOperation operation, String tenantId, String userStoreDomain) {
+
+        return operationStats.get(getKey(operation.toString(), tenantId, userStoreDomain));
+    }
+
+    /**
+     * Remove the recorded metrics and unregister their MBeans.
+     */
+    public void clear() {
+
+        MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+        for (SCIMOperationStats stats : operationStats.values()) {
+            try {
+                mBeanServer.unregisterMBean(getObjectName(stats));
+            } catch (JMException e) {
+                if (log.isDebugEnabled()) {
+                    log.debug("Error while unregistering the SCIM operation metrics MBean.", e);
+                }
+            }
+        }
+        operationStats.clear();
+    }
+
+    /**
+     * Register the MBean of the state of the background tasks of the component, if the metrics are enabled.
+     */
+    public void registerComponentStats() {
+
+        if (!enabled) {
+            return;
+        }
+        MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+        try {
+            ObjectName objectName = new ObjectName(COMPONENT_STATS_OBJECT_NAME);
+            try {
+                mBeanServer.registerMBean(new SCIMComponentStats(), objectName);
+            } catch (InstanceAlreadyExistsException e) {
+                // Left behind by a previous instance of the component.
+                mBeanServer.unregisterMBean(objectName);
+                mBeanServer.registerMBean(new SCIMComponentStats(), objectName);
+            }
+        } catch (JMException e) {
+            log.warn("Error while registering the SCIM component metrics MBean. The metrics are not available " +
+                    "through JMX.", e);
+        }
+    }
+
+    /**
+     * Unregister the MBean of the state of the background tasks of the component.
+     */
+    public void unregisterComponentStats() {
+
+        MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+        try {
+            ObjectName objectName = new ObjectName(COMPONENT_STATS_OBJECT_NAME);
+            if (mBeanServer.isRegistered(objectName)) {
+                mBeanServer.unregisterMBean(objectName);
+            }
+        } catch (JMException e) {
+            if (log.isDebugEnabled()) {
+                log.debug("Error while unregistering the SCIM component metrics MBean.", e);
+            }
+        }
+    }
+
+    void record(SCIMOperation operation, String tenantId, String userStoreDomain, long timeNanos, boolean successful,
+                int userStoreCalls, int identityDBQueries) {
+
+        if (!enabled) {
+            return;
+        }
+        getOrCreateStats(operation.toString(), tenantId, userStoreDomain).record(timeNanos, successful,
+                userStoreCalls, identityDBQueries);
+    }
+
+    private SCIMOperationStats getOrCreateStats(String operation, String tenantId, String userStoreDomain) {
+
+        String key = getKey(operation, tenantId, userStoreDomain);
+        SCIMOperationStats stats = operationStats.get(key);
+        if (stats != null) {
+            return stats;
+        }
+        if (operationStats.size() >= maxEntries) {
+            tenantId = OTHER;
+            userStoreDomain = OTHER;
+            key = getKey(operation, tenantId, userStoreDomain);
+            stats = operationStats.get(key);
+            if (stats != null) {
+                return stats;
+            }
+        }
+        stats = new SCIMOperationStats(operation, tenantId, userStoreDomain);
+        SCIMOperationStats existingStats = operationStats.putIfAbsent(key, stats);
+        if (existingStats != null) {
+            return existingStats;
+        }
+        register(stats);
+        return stats;
+    }
+
+    private void register(SCIMOperationStats stats) {
+
+        MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+        try {
+            ObjectName objectName = getObjectName(stats);
+            try {
+                mBeanServer.registerMBean(stats, objectName);
+            } catch (InstanceAlreadyExistsException e) {
+                // Left behind by a previous instance of the component.
+                mBeanServer.unregisterMBean(objectName);
+                mBeanServer.registerMBean(stats, objectName);
+            }
+        } catch (JMException e) {
+            log.warn("Error while registering the metrics MBean of SCIM operation: " + stats.getOperation() +
+                    ". The metrics are not available through JMX.", e);
+        }
+    }
+
+    private static ObjectName getObjectName(SCIMOperationStats stats) throws JMException {
+
+        return new ObjectName(OBJECT_NAME_PREFIX + ",operation=" + stats.getOperation() + ",tenantId=" +
+                ObjectName.quote(stats.getTenantId()) + ",userStoreDomain=" +
+                ObjectName.quote(stats.getUserStoreDomain()));
+    }
+
+    private static String getKey(String operation, String tenantId, String userStoreDomain) {
+
+        return operation + '/' + tenantId + '/' + userStoreDomain;
+    }
+
+    private static int getIntConfig(String property, int defaultValue) {
+
+        String value = IdentityUtil.getProperty(property);
+        if (StringUtils.isNotBlank(value)) {
+            try {
+                return Integer.parseInt(value.trim());
+            } catch (NumberFormatException e) {
+                log.warn("Invalid value: " + value + " for " + property + ". Using the default value: " +
+                        defaultValue);
+            }
+        }
+        return defaultValue;
+    }
+
+    private static class SCIMMetricsHolder {
+
+        private static final SCIMMetrics INSTANCE = new SCIMMetrics();
+    }
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.wso2.carbon.identity.scim2.common.metrics;
+
+/**
+ * SCIM operations of the user manager, for which metrics are recorded.
+ */
+public enum SCIMOperation {
+
+    CREATE_USER("createUser"),
+    GET_USER("getUser"),
+    GET_USER_VERSION("getUserVersion"),
+    GET_ME("getMe"),
+    LIST_USERS("listUsers"),
+    FILTER_USERS("filterUsers"),
+    UPDATE_USER("updateUser"),
+    PATCH_USER("patchUser"),
+    DELETE_USER("deleteUser"),
+    CREATE_GROUP("createGroup"),
+    GET_GROUP("getGroup"),
+    GET_GROUP_VERSION("getGroupVersion"),
+    LIST_GROUPS("listGroups"),
+    FILTER_GROUPS("filterGroups"),
+    UPDATE_GROUP("updateGroup"),
+    PATCH_GROUP("patchGroup"),
+    DELETE_GROUP("deleteGroup");
+
+    private final String name;
+
+    SCIMOperation(String name) {
+
+        this.name = name;
+    }
+
+    @Override
+    public String toString() {
+
+        return name;
+    }
+}
@@ -0,0 +1,175 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.wso2.carbon.identity.scim2.common.metrics;
+
+import org.apache.commons.lang.StringUtils;
+import org.wso2.carbon.user.core.UserCoreConstants;
+import org.wso2.carbon.user.core.UserStoreManager;
+
+import java.util.Locale;
+
+/**
+ * Context of the SCIM operation running on the thread, which times the operation and counts the user store calls and
+ * the identity database queries made by it. Operations started while another one is running on the thread are part
+ * of it. The user store domain of an operation is recorded only if it is a domain of the tenant's user stores, as it is
+ * often taken from the request; the rest are recorded as "other". Always end an operation in a finally block:
+ * <pre>
+ * SCIMOperationContext operationContext = SCIMOperationContext.start(SCIMOperation.GET_USER, tenantId,
+ *         userStoreManager);
+ * boolean successful = false;
+ * try {
+ *     ...
+ *     successful = true;
+ * } finally {
+ *     operationContext.end(successful);
+ * }
+ * </pre>
+ */
+public class SCIMOperationContext {
+
+    /**
+     * User store domain of the operations which are not limited to a single domain.
+     */
+    public static final String ALL_DOMAINS = "ALL";
+
+    private static final ThreadLocal<SCIMOperationContext> currentContext = new ThreadLocal<>();
+
+    private final SCIMOperation operation;
+    private final String tenantId;
+    private final UserStoreManager userStoreManager;
+    private final long startTime;
+    private String userStoreDomain = ALL_DOMAINS;
+    private int depth;
+    private boolean failed;
+    private int userStoreCalls;
+    private int identityDBQueries;
+
+    private SCIMOperationContext(SCIMOperation operation, int tenantId, UserStoreManager userStoreManager) {
+
+        this.operation = operation;
+        this.tenantId = Integer.toString(tenantId);
+        this.userStoreManager = userStoreManager;
+        this.startTime = System.nanoTime();
+    }
+
+    /**
+     * Start an operation, or join the operation running on the thread.
+     *
+     * @param operation        Operation.
+     * @param tenantId         Tenant id.
+     * @param userStoreManager User store manager of the tenant, to check the user store domains of the operation.
+     * @return Operation context.
+     */
+    public static SCIMOperationContext start(SCIMOperation operation, int tenantId,
+                                             UserStoreManager userStoreManager) {
+
+        SCIMOperationContext context = currentContext.get();
+        if (context == null) {
+            context = new SCIMOperationContext(operation, tenantId, userStoreManager);
+            currentContext.set(context);
+        }
+        context.depth++;
+        return context;
+    }
+
+    /**
+     * Count a call to the user store made by the operation running on the thread, if any.
+     */
+    public static void countUserStoreCall() {
+
+        SCIMOperationContext context = currentContext.get();
+        if (context != null) {
+            context.userStoreCalls++;
+        }
+    }
+
+    /**
+     * Count a query to the identity database made by the operation running on the thread, if any.
+     */
+    public static void countIdentityDBQuery() {
+
+        SCIMOperationContext context = currentContext.get();
+        if (context != null) {
+            context.identityDBQueries++;
+        }
+    }
+
+    /**
+     * Set the user store domain of the operation running on the thread, if any.
+     *
+     * @param userStoreDomain User store domain.
+     */
+    public static void setCurrentUserStoreDomain(String userStoreDomain) {
+
+        SCIMOperationContext context = currentContext.get();
+        if (context != null) {
+            context.setUserStoreDomain(userStoreDomain);
+        }
+    }
+
+    /**
+     * Set the user store domain of the operation, if it is limited to a single domain. A domain without a user store
+     * is set as "other".
+     *
+     * @param userStoreDomain User store domain.
+     */
+    public void setUserStoreDomain(String userStoreDomain) {
+
+        if (StringUtils.isBlank(userStoreDomain)) {
+            return;
+        }
+        String domainName = userStoreDomain.toUpperCase(Locale.ENGLISH);
+        if (UserCoreConstants.PRIMARY_DEFAULT_DOMAIN_NAME.equals(domainName) ||
+                (userStoreManager != null && userStoreManager.getSecondaryUserStoreManager(domainName) != null)) {
+            this.userStoreDomain = domainName;
+        } else {
+            this.userStoreDomain = SCIMMetrics.OTHER;
+        }
+    }
+
+    /**
+     * End the operation, and record it once the outermost operation of the thread ends.
+     *
+     * @param successful Whether the operation was successful.
+     */
+    public void end(boolean successful) {
+
+        if (!successful) {
+            failed = true;
+        }
+        depth--;
+        if (depth > 0) {
+            return;
+        }
+        currentContext.remove();
+        SCIMMetrics.getInstance().record(operation, tenantId, userStoreDomain, System.nanoTime() - startTime,
+                !failed, userStoreCalls, identityDBQueries);
+    }
+
+    public int getUserStoreCalls() {
+
+        return userStoreCalls;
+    }
+
+    public int getIdentityDBQueries() {
+
+        return identityDBQueries;
+    }
+}
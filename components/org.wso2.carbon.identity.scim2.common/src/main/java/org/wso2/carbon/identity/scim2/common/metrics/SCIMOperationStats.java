@@ -0,0 +1,165 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.wso2.carbon.identity.scim2.common.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Metrics of a SCIM operation in a tenant and a user store domain. Operations are recorded concurrently without
+ * locking.
+ */
+public class SCIMOperationStats implements SCIMOperationStatsMXBean {
+
+    private final String operation;
+    private final String tenantId;
+    private final String userStoreDomain;
+    private final LongAdder count = new LongAdder();
+    private final LongAdder errorCount = new LongAdder();
+    private final LongAdder totalTimeNanos = new LongAdder();
+    private final AtomicLong maxTimeNanos = new AtomicLong();
+    private final LongAdder userStoreCalls = new LongAdder();
+    private final LongAdder identityDBQueries = new LongAdder();
+
+    SCIMOperationStats(String operation, String tenantId, String userStoreDomain) {
+
+        this.operation = operation;
+        this.tenantId = tenantId;
+        this.userStoreDomain = userStoreDomain;
+    }
+
+    /**
+     * Record a completed operation.
+     *
+     * @param timeNanos         Time taken by the operation.
+     * @param successful        Whether the operation was successful.
+     * @param userStoreCalls    Number of user store calls made by the operation.
+     * @param identityDBQueries Number of identity database queries made by the operation.
+     */
+    void record(long timeNanos, boolean successful, int userStoreCalls, int identityDBQueries) {
+
+        count.increment();
+        if (!successful) {
+            errorCount.increment();
+        }
+        totalTimeNanos.add(timeNanos);
+        long max = maxTimeNanos.get();
+        while (timeNanos > max && !maxTimeNanos.compareAndSet(max, timeNanos)) {
+            max = maxTimeNanos.get();
+        }
+        this.userStoreCalls.add(userStoreCalls);
+        this.identityDBQueries.add(identityDBQueries);
+    }
+
+    @Override
+    public String getOperation() {
+
+        return operation;
+    }
+
+    @Override
+    public String getTenantId() {
+
+        return tenantId;
+    }
+
+    @Override
+    public String getUserStoreDomain() {
+
+        return userStoreDomain;
+    }
+
+    @Override
+    public long getCount() {
+
+        return count.sum();
+    }
+
+    @Override
+    public long getErrorCount() {
+
+        return errorCount.sum();
+    }
+
+    @Override
+    public long getTotalTimeMillis() {
+
+        return TimeUnit.NANOSECONDS.toMillis(totalTimeNanos.sum());
+    }
+
+    @Override
+    public double getAverageTimeMillis() {
+
+        return toMillis(average(totalTimeNanos.sum()));
+    }
+
+    @Override
+    public double getMaxTimeMillis() {
+
+        return toMillis(maxTimeNanos.get());
+    }
+
+    @Override
+    public long getUserStoreCalls() {
+
+        return userStoreCalls.sum();
+    }
+
+    @Override
+    public double getAverageUserStoreCalls() {
+
+        return average(userStoreCalls.sum());
+    }
+
+    @Override
+    public long getIdentityDBQueries() {
+
+        return identityDBQueries.sum();
+    }
+
+    @Override
+    public double getAverageIdentityDBQueries() {
+
+        return average(identityDBQueries.sum());
+    }
+
+    @Override
+    public void reset() {
+
+        count.reset();
+        errorCount.reset();
+        totalTimeNanos.reset();
+        maxTimeNanos.set(0);
+        userStoreCalls.reset();
+        identityDBQueries.reset();
+    }
+
+    private double average(double total) {
+
+        long operations = count.sum();
+        return operations == 0 ? 0 : total / operations;
+    }
+
+    private static double toMillis(double nanos) {
+
+        return nanos / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.wso2.carbon.identity.scim2.common.metrics;
+
+/**
+ * JMX view of the metrics of a SCIM operation in a tenant and a user store domain.
+ */
+public interface SCIMOperationStatsMXBean {
+
+    String getOperation();
+
+    String getTenantId();
+
+    String getUserStoreDomain();
+
+    /**
+     * @return Number of completed operations.
+     */
+    long getCount();
+
+    /**
+     * @return Number of operations which failed.
+     */
+    long getErrorCount();
+
+    long getTotalTimeMillis();
+
+    double getAverageTimeMillis();
+
+    double getMaxTimeMillis();
+
+    /**
+     * @return Number of user store calls made by the operations.
+     */
+    long getUserStoreCalls();
+
+    double getAverageUserStoreCalls();
+
+    /**
+     * @return Number of identity database queries made by the operations.
+     */
+    long getIdentityDBQueries();
+
+    double getAverageIdentityDBQueries();
+
+    /**
+     * Reset the metrics.
+     */
+    void reset();
+}
@@ -0,0 +1,254 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.wso2.carbon.identity.scim2.common.metrics;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Context of the SCIM request running on the thread, which accounts the number and the duration of the calls made to
+ * the user store, the claim manager and the identity database while serving the request. Repeated calls to the same
+ * method, such as a user store read per group member, show up as a high count of the method. Always end a request in
+ * a finally block:
+ * <pre>
+ * SCIMRequestContext requestContext = SCIMRequestContext.start();
+ * try {
+ *     ...
+ * } finally {
+ *     requestContext.end();
+ * }
+ * </pre>
+ */
+public class SCIMRequestContext {
+
+    private static final int MAX_REPORTED_METHODS = 10;
+    private static final ThreadLocal<SCIMRequestContext> currentContext = new ThreadLocal<>();
+
+    private final long startTime = System.nanoTime();
+    private final int[] callCounts = new int[DownstreamService.values().length];
+    private final long[] callTimes = new long[DownstreamService.values().length];
+    private final Map<String, MethodCalls> methodCalls = new HashMap<>();
+    private long endTime;
+    private String identityDBCallMethod;
+    private long identityDBCallStartTime;
+    private int identityDBCallDepth;
+    private SCIMFilterExplain filterExplain;
+
+    private SCIMRequestContext() {
+
+    }
+
+    /**
+     * Start accounting a request on the thread. A context left behind by a request which was not ended is discarded.
+     *
+     * @return Request context.
+     */
+    public static SCIMRequestContext start() {
+
+        SCIMRequestContext context = new SCIMRequestContext();
+        currentContext.set(context);
+        return context;
+    }
+
+    /**
+     * Get the context of the request running on the thread.
+     *
+     * @return Request context, or null if no request is accounted on the thread.
+     */
+    public static SCIMRequestContext getCurrent() {
+
+        return currentContext.get();
+    }
+
+    /**
+     * Record a call made to a downstream service. User store calls are counted for the SCIM operation running on the
+     * thread too.
+     *
+     * @param service   Downstream service.
+     * @param method    Method called.
+     * @param startTime Time at which the call was started, from {@link System#nanoTime()}.
+     */
+    public static void recordCall(DownstreamService service, String method, long startTime) {
+
+        if (service == DownstreamService.USER_STORE) {
+            SCIMOperationContext.countUserStoreCall();
+        }
+        SCIMRequestContext context = currentContext.get();
+        if (context != null) {
+            context.addCall(service, method, System.nanoTime() - startTime);
+        }
+    }
+
+    /**
+     * Mark the start of a call to the identity database, which is recorded by {@link #endIdentityDBCall()}. A call
+     * started while another one is running on the thread is part of it, so it is recorded once, against the method of
+     * the outermost call.
+     *
+     * @param method Name of the call.
+     */
+    public static void startIdentityDBCall(String method) {
+
+        SCIMRequestContext context = currentContext.get();
+        if (context != null && context.identityDBCallDepth++ == 0) {
+            context.identityDBCallMethod = method;
+            context.identityDBCallStartTime = System.nanoTime();
+        }
+    }
+
+    /**
+     * Record the call to the identity database started by {@link #startIdentityDBCall(String)}, once the outermost
+     * call ends.
+     */
+    public static void endIdentityDBCall() {
+
+        SCIMRequestContext context = currentContext.get();
+        if (context != null && context.identityDBCallDepth > 0 && --context.identityDBCallDepth == 0) {
+            context.addCall(DownstreamService.IDENTITY_DB, context.identityDBCallMethod, System.nanoTime() -
+                    context.identityDBCallStartTime);
+            context.identityDBCallMethod = null;
+        }
+    }
+
+    /**
+     * End accounting the request.
+     */
+    public void end() {
+
+        endTime = System.nanoTime();
+        if (currentContext.get() == this) {
+            currentContext.remove();
+        }
+    }
+
+    /**
+     * Get the time taken by the request, until it ended or so far.
+     *
+     * @return Time in milliseconds.
+     */
+    public long getElapsedTimeMillis() {
+
+        return TimeUnit.NANOSECONDS.toMillis((endTime == 0 ? System.nanoTime() : endTime) - startTime);
+    }
+
+    public int getCallCount(DownstreamService service) {
+
+        return callCounts[service.ordinal()];
+    }
+
+    public long getCallTimeMillis(DownstreamService service) {
+
+        return TimeUnit.NANOSECONDS.toMillis(callTimes[service.ordinal()]);
+    }
+
+    /**
+     * Get the calls of the request in the format of the Server-Timing HTTP header, e.g.
+     * userStore;desc="12 calls";dur=35.2, claimManager;desc="0 calls";dur=0.0, identityDB;desc="2 calls";dur=4.1
+     *
+     * @return Server timing of the calls.
+     */
+    public String getServerTiming() {
+
+        StringBuilder serverTiming = new StringBuilder();
+        for (DownstreamService service : DownstreamService.values()) {
+            if (serverTiming.length() > 0) {
+                serverTiming.append(", ");
+            }
+            serverTiming.append(service).append(";desc=\"").append(getCallCount(service)).append(" calls\";dur=")
+                    .append(String.format(Locale.ENGLISH, "%.1f", callTimes[service.ordinal()] / 1000000.0));
+        }
+        return serverTiming.toString();
+    }
+
+    /**
+     * Get the calls of the request as key value pairs for the logs, e.g.
+     * userStoreCalls=12, userStoreTimeMs=35, ..., methods=[userStore.getUserClaimValue=10/30ms, ...]
+     * The methods which took the most time are listed.
+     *
+     * @return Summary of the calls.
+     */
+    public String getCallSummary() {
+
+        StringBuilder summary = new StringBuilder();
+        for (DownstreamService service : DownstreamService.values()) {
+            summary.append(service).append("Calls=").append(getCallCount(service)).append(", ").append(service)
+                    .append("TimeMs=").append(getCallTimeMillis(service)).append(", ");
+        }
+
+        List<Map.Entry<String, MethodCalls>> methods = new ArrayList<>(methodCalls.entrySet());
+        Collections.sort(methods, new Comparator<Map.Entry<String, MethodCalls>>() {
+            @Override
+            public int compare(Map.Entry<String, MethodCalls> methods1, Map.Entry<String, MethodCalls> methods2) {
+
+                return Long.compare(methods2.getValue().time, methods1.getValue().time);
+            }
+        });
+        summary.append("methods=[");
+        for (int i = 0; i < methods.size() && i < MAX_REPORTED_METHODS; i++) {
+            if (i > 0) {
+                summary.append(", ");
+            }
+            MethodCalls calls = methods.get(i).getValue();
+            summary.append(methods.get(i).getKey()).append('=').append(calls.count).append('/')
+                    .append(TimeUnit.NANOSECONDS.toMillis(calls.time)).append("ms");
+        }
+        return summary.append(']').toString();
+    }
+
+    /**
+     * Get the explanation of the user filter executed by the request.
+     *
+     * @return Filter explanation, or null if the request did not filter users.
+     */
+    public SCIMFilterExplain getFilterExplain() {
+
+        return filterExplain;
+    }
+
+    void setFilterExplain(SCIMFilterExplain filterExplain) {
+
+        this.filterExplain = filterExplain;
+    }
+
+    private void addCall(DownstreamService service, String method, long time) {
+
+        callCounts[service.ordinal()]++;
+        callTimes[service.ordinal()] += time;
+        String key = service + "." + method;
+        MethodCalls calls = methodCalls.get(key);
+        if (calls == null) {
+            calls = new MethodCalls();
+            methodCalls.put(key, calls);
+        }
+        calls.count++;
+        calls.time += time;
+    }
+
+    private static class MethodCalls {
+
+        private int count;
+        private long time;
+    }
+}
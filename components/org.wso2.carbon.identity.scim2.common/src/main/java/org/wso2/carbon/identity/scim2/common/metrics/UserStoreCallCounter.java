@@ -0,0 +1,83 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.wso2.carbon.identity.scim2.common.metrics;
+
+import org.wso2.carbon.user.core.UserStoreManager;
+
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Wraps user store managers to count the calls made to them by the SCIM operation running on the thread, and to
+ * time them for the SCIM request running on the thread. The wrapper implements the public interfaces of the user
+ * store manager, e.g. PaginatedUserStoreManager, but not its classes. Use {@link #unwrap(UserStoreManager)} for the
+ * methods of AbstractUserStoreManager, and for caches keyed by the user store manager.
+ *
+ * Calls which only read the configuration of the user store manager are not counted.
+ */
+public class UserStoreCallCounter extends DownstreamCallCounter {
+
+    private static final Set<String> CONFIGURATION_METHODS = new HashSet<>(Arrays.asList("getRealmConfiguration",
+            "getSecondaryUserStoreManager", "getTenantId", "isSCIMEnabled", "isReadOnly", "getClaimManager",
+            "isBulkImportSupported"));
+
+    private UserStoreCallCounter(UserStoreManager userStoreManager) {
+
+        super(userStoreManager, DownstreamService.USER_STORE);
+    }
+
+    /**
+     * Wrap a user store manager, if the metrics are enabled.
+     *
+     * @param userStoreManager User store manager.
+     * @return Wrapped user store manager, or the given one if the metrics are disabled.
+     */
+    public static UserStoreManager wrap(UserStoreManager userStoreManager) {
+
+        if (userStoreManager == null || !SCIMMetrics.getInstance().isEnabled() ||
+                getCallCounter(userStoreManager, UserStoreCallCounter.class) != null) {
+            return userStoreManager;
+        }
+        return (UserStoreManager) newProxy(new UserStoreCallCounter(userStoreManager));
+    }
+
+    /**
+     * Get the user store manager wrapped by {@link #wrap(UserStoreManager)}.
+     *
+     * @param userStoreManager Wrapped or plain user store manager.
+     * @return User store manager.
+     */
+    public static UserStoreManager unwrap(UserStoreManager userStoreManager) {
+
+        UserStoreCallCounter callCounter = getCallCounter(userStoreManager, UserStoreCallCounter.class);
+        if (callCounter != null) {
+            return (UserStoreManager) callCounter.getTarget();
+        }
+        return userStoreManager;
+    }
+
+    @Override
+    protected boolean isCounted(Method method) {
+
+        return super.isCounted(method) && !CONFIGURATION_METHODS.contains(method.getName());
+    }
+}
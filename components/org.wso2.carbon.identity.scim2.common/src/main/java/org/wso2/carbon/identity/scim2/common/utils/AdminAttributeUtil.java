@@ -22,6 +22,7 @@ package org.wso2.carbon.identity.scim2.common.utils;
 import org.apache.commons.lang.StringUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.wso2.carbon.context.PrivilegedCarbonContext;
 import org.wso2.carbon.identity.core.util.IdentityTenantUtil;
 import org.wso2.carbon.identity.core.util.IdentityUtil;
 import org.wso2.carbon.identity.scim2.common.exceptions.IdentitySCIMException;
@@ -32,14 +33,18 @@ import org.wso2.carbon.user.core.UserCoreConstants;
 import org.wso2.carbon.user.core.UserStoreException;
 import org.wso2.carbon.user.core.UserStoreManager;
 import org.wso2.carbon.user.core.util.UserCoreUtil;
+import org.wso2.carbon.utils.multitenancy.MultitenantConstants;
 import org.wso2.charon3.core.schema.SCIMConstants;
-import org.wso2.charon3.core.utils.AttributeUtil;
 
-import java.time.Instant;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
 
 
 /**
@@ -48,6 +53,85 @@ import java.util.UUID;
 public class AdminAttributeUtil {
 
     private static Log log = LogFactory.getLog(AdminAttributeUtil.class);
+    // Tenants of which the admin attributes are waiting to be updated.
+    private static final Set<Integer> pendingTenants =
+            Collections.newSetFromMap(new ConcurrentHashMap<Integer, Boolean>());
+
+    /**
+     * Update the admin user's and group's attributes of the given tenant on the executor of the component, so that
+     * loading the tenant is not delayed by the update. Requests for a tenant which is already waiting to be updated
+     * are ignored. The update validates the existing SCIM ID of the admin user, so it can be repeated safely.
+     *
+     * @param tenantId
+     *         is tenant unique id that we need to update the admin user and group.
+     */
+    public static void scheduleAdminAttributesUpdate(final int tenantId) {
+
+        ExecutorService executorService = SCIMCommonComponentHolder.getExecutorService();
+        if (executorService == null) {
+            updateAdminAttributes(tenantId);
+            return;
+        }
+        if (!pendingTenants.add(tenantId)) {
+            if (log.isDebugEnabled()) {
+                log.debug("Admin attributes update is already pending for Tenant ID : " + tenantId);
+            }
+            return;
+        }
+        try {
+            executorService.execute(new Runnable() {
+                @Override
+                public void run() {
+
+                    pendingTenants.remove(tenantId);
+                    updateAdminAttributes(tenantId);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            pendingTenants.remove(tenantId);
+            log.warn("Admin attributes update could not be scheduled for Tenant ID : " + tenantId +
+                    ". Updating the attributes in the calling thread.");
+            updateAdminAttributes(tenantId);
+            return;
+        }
+        if (log.isDebugEnabled()) {
+            log.debug("Admin attributes update scheduled for Tenant ID : " + tenantId + ", pending updates : " +
+                    pendingTenants.size());
+        }
+    }
+
+    /**
+     * Get the number of tenants of which the admin attributes are waiting to be updated.
+     *
+     * @return Number of pending updates.
+     */
+    public static int getPendingAdminAttributesUpdateCount() {
+
+        return pendingTenants.size();
+    }
+
+    private static void updateAdminAttributes(int tenantId) {
+
+        String tenantDomain = MultitenantConstants.SUPER_TENANT_DOMAIN_NAME;
+        if (tenantId != MultitenantConstants.SUPER_TENANT_ID) {
+            try {
+                tenantDomain = SCIMCommonComponentHolder.getRealmService().getTenantManager().getDomain(tenantId);
+            } catch (org.wso2.carbon.user.api.UserStoreException e) {
+                log.error("Error occurred while reading the domain of Tenant ID : " + tenantId + ". Admin "
+                          + "attributes are not updated.", e);
+                return;
+            }
+        }
+        try {
+            PrivilegedCarbonContext.startTenantFlow();
+            PrivilegedCarbonContext.getThreadLocalCarbonContext().setTenantId(tenantId);
+            PrivilegedCarbonContext.getThreadLocalCarbonContext().setTenantDomain(tenantDomain);
+            updateAdminUser(tenantId, true);
+            updateAdminGroup(tenantId);
+        } finally {
+            PrivilegedCarbonContext.endTenantFlow();
+        }
+    }
 
     /**
      * Update admin user attribute under given tenant.
@@ -163,7 +247,7 @@ public class AdminAttributeUtil {
         claimsList.put(SCIMConstants.CommonSchemaConstants.ID_URI, id);
         claimsList.put(SCIMConstants.UserSchemaConstants.USER_NAME_URI, userName);
 
-        String createdDate = AttributeUtil.formatDateTime(Instant.now());
+        String createdDate = SCIMDateTimeFormatter.formatNow();
         claimsList.put(SCIMConstants.CommonSchemaConstants.CREATED_URI, createdDate);
         claimsList.put(SCIMConstants.CommonSchemaConstants.LAST_MODIFIED_URI, createdDate);
         if (log.isDebugEnabled()) {
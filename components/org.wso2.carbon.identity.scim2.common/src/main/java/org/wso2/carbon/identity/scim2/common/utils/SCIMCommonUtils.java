@@ -34,9 +34,7 @@ import org.wso2.carbon.user.core.UserStoreException;
 import org.wso2.carbon.user.core.util.UserCoreUtil;
 import org.wso2.carbon.utils.multitenancy.MultitenantConstants;
 import org.wso2.charon3.core.config.SCIMUserSchemaExtensionBuilder;
-import org.wso2.charon3.core.schema.SCIMConstants;
 
-import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Map;
@@ -178,9 +176,7 @@ public class SCIMCommonUtils {
      * @return
      */
     public static String formatDateTime(Date date) {
-        SimpleDateFormat sdf = new SimpleDateFormat(SCIMConstants.DATE_TIME_FORMAT);
-        String formattedDate = sdf.format(date);
-        return formattedDate;
+        return SCIMDateTimeFormatter.formatLocalDateTime(date);
     }
 
 
@@ -195,9 +191,20 @@ public class SCIMCommonUtils {
             throws UserStoreException {
 
         // Retrieve SCIM to Local Claim Mappings.
-        Map<String, String> scimToLocalClaimMappings;
+        return convertSCIMtoLocalDialect(claimsMap, getSCIMtoLocalMappings());
+    }
+
+    /**
+     * Converts claims in SCIM dialect to local WSO2 dialect, with the given claim mappings.
+     *
+     * @param claimsMap                Map of SCIM claims and claim values.
+     * @param scimToLocalClaimMappings Map of SCIM claims and corresponding Local WSO2 claims.
+     * @return                         map of Local WSO2 Claims and corresponding claim values.
+     */
+    public static Map<String, String> convertSCIMtoLocalDialect(Map<String, String> claimsMap,
+                                                                Map<String, String> scimToLocalClaimMappings) {
+
         Map<String, String> claimsInLocalDialect = new HashMap<>();
-        scimToLocalClaimMappings = getSCIMtoLocalMappings();
         if (MapUtils.isNotEmpty(scimToLocalClaimMappings)) {
             for (Map.Entry entry : claimsMap.entrySet()) {
                 String scimClaimtUri = (String) entry.getKey();
@@ -277,7 +284,7 @@ public class SCIMCommonUtils {
      *
      * @return Service provider's tenant domain.
      */
-    private static String getTenantDomainFromSP() {
+    public static String getTenantDomainFromSP() {
 
         String tenantDomain;
         ThreadLocalProvisioningServiceProvider threadLocalSP = IdentityApplicationManagementUtil
@@ -35,6 +35,7 @@ import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Class responsible for building a programmatic representation of provisioning-config.xml.
@@ -49,6 +50,8 @@ public class SCIMConfigProcessor {
     Map<String, String> properties = new HashMap<String, String>();
     //list to keep the authentication schemas
     List<AuthenticationSchema> authenticationSchemas = null;
+    //version of the configuration, to invalidate the documents derived from it
+    private final AtomicLong configVersion = new AtomicLong();
 
     private Log logger = LogFactory.getLog(SCIMConfigProcessor.class);
 
@@ -67,6 +70,24 @@ public class SCIMConfigProcessor {
         return authenticationSchemas;
     }
 
+    /**
+     * Get the version of the configuration, which changes whenever the configuration file or the user schema
+     * extension is loaded. Documents derived from the configuration can be cached against this version.
+     *
+     * @return Configuration version.
+     */
+    public long getConfigVersion() {
+        return configVersion.get();
+    }
+
+    /**
+     * Update the version of the configuration, when a configuration which is not read by this processor, such as the
+     * user schema extension, is loaded.
+     */
+    public void updateConfigVersion() {
+        configVersion.incrementAndGet();
+    }
+
     public void buildConfigFromFile(String filePath) throws CharonException {
         try {
             InputStream inputStream = null;
@@ -119,6 +140,7 @@ public class SCIMConfigProcessor {
         if (authenticationSchemasIterator != null) {
            authenticationSchemas  = buildAuthenticationSchemasMap(authenticationSchemasIterator);
         }
+        updateConfigVersion();
     }
 
 
@@ -0,0 +1,159 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.wso2.carbon.identity.scim2.common.utils;
+
+import org.wso2.charon3.core.schema.SCIMConstants;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Formats the created and lastModified attributes of SCIM resources, in the ISO-8601 form written by Charon.
+ *
+ * The formatters are immutable and shared between threads. The last formatted millisecond is kept, so that users and
+ * groups stamped in the same millisecond, e.g. by bulk imports, share the formatted value.
+ *
+ * The lastModified attribute is also the version from which the ETag of a resource is derived. It is stamped with
+ * {@link #formatNewVersion()}, which never returns the same time twice on this node, so that two updates of a resource
+ * in the same millisecond don't share an ETag.
+ */
+public class SCIMDateTimeFormatter {
+
+    private static final DateTimeFormatter ISO_INSTANT_FORMATTER = DateTimeFormatter.ISO_INSTANT;
+
+    private static volatile Clock clock = Clock.systemUTC();
+    private static volatile FormattedInstant lastFormattedInstant = new FormattedInstant(Long.MIN_VALUE, null);
+    // Last version stamped on this node, in microseconds since the epoch.
+    private static final AtomicLong lastVersionMicros = new AtomicLong(Long.MIN_VALUE);
+
+    private SCIMDateTimeFormatter() {
+
+    }
+
+    /**
+     * Get the current time, from the clock used for all the timestamps of SCIM resources.
+     *
+     * @return current time.
+     */
+    public static Instant now() {
+
+        return clock.instant();
+    }
+
+    /**
+     * Format the current time.
+     *
+     * @return current time in ISO-8601 form.
+     */
+    public static String formatNow() {
+
+        return format(clock.millis());
+    }
+
+    /**
+     * Format the current time as a new version of a resource, for the lastModified attribute. The time is moved
+     * forward by a microsecond past the last version stamped on this node if needed, so that each version is unique.
+     * The microseconds are written only when they are used, e.g. 2018-01-01T10:00:00.123001Z.
+     *
+     * @return current time in ISO-8601 form, later than any version formatted before on this node.
+     */
+    public static String formatNewVersion() {
+
+        long nowMicros = TimeUnit.MILLISECONDS.toMicros(clock.millis());
+        long lastMicros;
+        long versionMicros;
+        do {
+            lastMicros = lastVersionMicros.get();
+            versionMicros = Math.max(nowMicros, lastMicros + 1);
+        } while (!lastVersionMicros.compareAndSet(lastMicros, versionMicros));
+        return ISO_INSTANT_FORMATTER.format(Instant.ofEpochSecond(TimeUnit.MICROSECONDS.toSeconds(versionMicros),
+                TimeUnit.MICROSECONDS.toNanos(versionMicros % TimeUnit.SECONDS.toMicros(1))));
+    }
+
+    /**
+     * Format the given time, to the millisecond.
+     *
+     * @param instant time to be formatted.
+     * @return time in ISO-8601 form.
+     */
+    public static String format(Instant instant) {
+
+        return format(instant.toEpochMilli());
+    }
+
+    /**
+     * Format the given date with the SCIM date time pattern, in the time zone of the server.
+     *
+     * @param date date to be formatted.
+     * @return formatted date.
+     */
+    public static String formatLocalDateTime(Date date) {
+
+        return LocalDateTimeFormatterHolder.FORMATTER.format(date.toInstant());
+    }
+
+    /**
+     * Set the clock of the timestamps, and forget the last version stamped. This is used by the tests.
+     *
+     * @param timestampClock clock, or null to use the system clock.
+     */
+    static void setClock(Clock timestampClock) {
+
+        clock = timestampClock != null ? timestampClock : Clock.systemUTC();
+        lastVersionMicros.set(Long.MIN_VALUE);
+    }
+
+    private static String format(long epochMilli) {
+
+        FormattedInstant formattedInstant = lastFormattedInstant;
+        if (formattedInstant.epochMilli != epochMilli) {
+            formattedInstant = new FormattedInstant(epochMilli,
+                    ISO_INSTANT_FORMATTER.format(Instant.ofEpochMilli(epochMilli)));
+            lastFormattedInstant = formattedInstant;
+        }
+        return formattedInstant.formatted;
+    }
+
+    /**
+     * Formatter of the SCIM date time pattern, built when it is first used.
+     */
+    private static class LocalDateTimeFormatterHolder {
+
+        private static final DateTimeFormatter FORMATTER = DateTimeFormatter
+                .ofPattern(SCIMConstants.DATE_TIME_FORMAT).withZone(ZoneId.systemDefault());
+    }
+
+    private static class FormattedInstant {
+
+        private final long epochMilli;
+        private final String formatted;
+
+        FormattedInstant(long epochMilli, String formatted) {
+
+            this.epochMilli = epochMilli;
+            this.formatted = formatted;
+        }
+    }
+}
@@ -0,0 +1,574 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.wso2.carbon.identity.scim2.common.utils;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.wso2.carbon.context.PrivilegedCarbonContext;
+import org.wso2.carbon.identity.core.util.IdentityUtil;
+import org.wso2.carbon.identity.scim2.common.exceptions.IdentitySCIMException;
+import org.wso2.carbon.identity.scim2.common.group.SCIMGroupHandler;
+import org.wso2.carbon.identity.scim2.common.internal.SCIMCommonComponentHolder;
+import org.wso2.carbon.user.api.RealmConfiguration;
+import org.wso2.carbon.user.api.Tenant;
+import org.wso2.carbon.user.core.PaginatedUserStoreManager;
+import org.wso2.carbon.user.core.UserCoreConstants;
+import org.wso2.carbon.user.core.UserStoreException;
+import org.wso2.carbon.user.core.UserStoreManager;
+import org.wso2.carbon.user.core.common.AbstractUserStoreManager;
+import org.wso2.carbon.user.core.model.ExpressionAttribute;
+import org.wso2.carbon.user.core.model.ExpressionCondition;
+import org.wso2.carbon.user.core.model.ExpressionOperation;
+import org.wso2.carbon.user.core.model.UserClaimSearchEntry;
+import org.wso2.carbon.user.core.service.RealmService;
+import org.wso2.carbon.user.core.util.UserCoreUtil;
+import org.wso2.carbon.utils.multitenancy.MultitenantConstants;
+import org.wso2.charon3.core.schema.SCIMConstants;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Background job which adds the SCIM id, created and lastModified attributes to the users and groups which existed
+ * before SCIM was enabled. Such users and groups are otherwise skipped by the SCIM endpoints.
+ *
+ * The job goes through the SCIM enabled user stores of each active tenant, one page of users or groups per run, and
+ * schedules the next page so that the configured number of users and groups are updated per second at most. Other
+ * tasks of the executor are run between the pages. The user store calls of a page are made without holding the lock
+ * of the job, so that the progress can be read and the job can be stopped while a page is in progress.
+ *
+ * The position of the job is a tenant, a user store domain of the tenant and an offset within that domain. It is kept
+ * in memory only, so the job continues from the same page when it is stopped and started again, but starts again
+ * from the first tenant after a restart of the server. Users and groups which already have SCIM ids are not changed,
+ * so running the job again only rescans them.
+ *
+ * User stores which do not support pagination are listed only up to their maximum user list length
+ * (MaxUserNameListLength). A warning is logged for such a user store when the limit is reached, as the remaining
+ * users of it are not backfilled.
+ *
+ * The job is configured in identity.xml with the properties SCIM.MetadataBackfill.Enable,
+ * SCIM.MetadataBackfill.PageSize and SCIM.MetadataBackfill.MaxUpdatesPerSecond. The page size has to be positive.
+ * The progress of the job is published through the SCIMComponentStats MBean, when the metrics are enabled.
+ */
+public class SCIMMetadataBackfill implements Runnable {
+
+    private static final Log log = LogFactory.getLog(SCIMMetadataBackfill.class);
+
+    public static final String ENABLE = "SCIM.MetadataBackfill.Enable";
+    public static final String PAGE_SIZE = "SCIM.MetadataBackfill.PageSize";
+    public static final String MAX_UPDATES_PER_SECOND = "SCIM.MetadataBackfill.MaxUpdatesPerSecond";
+    private static final int DEFAULT_PAGE_SIZE = 100;
+    private static final int DEFAULT_MAX_UPDATES_PER_SECOND = 50;
+
+    private final ScheduledExecutorService executorService;
+    private final int pageSize;
+    private final int maxUpdatesPerSecond;
+
+    // Position of the job. Accessed only by the page in progress.
+    private List<Integer> tenantIds;
+    private List<String> tenantDomains;
+    private int tenantIndex;
+    private List<String> domainNames;
+    private List<String> groupNames;
+    private List<String> userNamesOfDomain;
+    private int domainIndex;
+    private int groupOffset;
+    private int userOffset;
+
+    // Progress of the job. Guarded by the lock of the job.
+    private int tenantCount = -1;
+    private int scannedUsers;
+    private int updatedUsers;
+    private int failedUsers;
+    private int scannedGroups;
+    private int updatedGroups;
+    private int completedTenants;
+
+    private volatile boolean running;
+    private volatile boolean completed;
+    private boolean pageInProgress;
+    private ScheduledFuture<?> nextRun;
+
+    public SCIMMetadataBackfill(ScheduledExecutorService executorService) {
+
+        this(executorService, getPageSizeProperty(),
+                getIntProperty(MAX_UPDATES_PER_SECOND, DEFAULT_MAX_UPDATES_PER_SECOND));
+    }
+
+    public SCIMMetadataBackfill(ScheduledExecutorService executorService, int pageSize, int maxUpdatesPerSecond) {
+
+        // The offsets advance by the pages read, hence a job with an empty page would read the same page forever.
+        if (pageSize <= 0) {
+            throw new IllegalArgumentException("Page size of the SCIM metadata backfill must be positive: " +
+                    pageSize);
+        }
+        this.executorService = executorService;
+        this.pageSize = pageSize;
+        this.maxUpdatesPerSecond = maxUpdatesPerSecond;
+    }
+
+    /**
+     * Check whether the job is enabled in identity.xml.
+     *
+     * @return true if the job is enabled.
+     */
+    public static boolean isEnabled() {
+
+        return Boolean.parseBoolean(IdentityUtil.getProperty(ENABLE));
+    }
+
+    /**
+     * Start the job, or continue it from the page at which it was stopped.
+     */
+    public synchronized void start() {
+
+        if (running || completed) {
+            return;
+        }
+        running = true;
+        // A page in progress schedules the next page itself when it is completed.
+        if (!pageInProgress) {
+            nextRun = executorService.schedule(this, 0, TimeUnit.MILLISECONDS);
+        }
+        log.info("SCIM metadata backfill started. " + getProgress());
+    }
+
+    /**
+     * Stop the job after the page in progress. The job can be continued with {@link #start()}.
+     */
+    public synchronized void stop() {
+
+        if (!running) {
+            return;
+        }
+        running = false;
+        if (nextRun != null) {
+            nextRun.cancel(false);
+        }
+        log.info("SCIM metadata backfill stopped. " + getProgress());
+    }
+
+    public boolean isRunning() {
+
+        return running;
+    }
+
+    public boolean isCompleted() {
+
+        return completed;
+    }
+
+    public synchronized int getTenantCount() {
+
+        return tenantCount;
+    }
+
+    public synchronized int getCompletedTenants() {
+
+        return completedTenants;
+    }
+
+    public synchronized int getScannedUsers() {
+
+        return scannedUsers;
+    }
+
+    public synchronized int getUpdatedUsers() {
+
+        return updatedUsers;
+    }
+
+    public synchronized int getFailedUsers() {
+
+        return failedUsers;
+    }
+
+    public synchronized int getScannedGroups() {
+
+        return scannedGroups;
+    }
+
+    public synchronized int getUpdatedGroups() {
+
+        return updatedGroups;
+    }
+
+    /**
+     * Get the progress of the job.
+     *
+     * @return Progress of the job, in a form to be logged.
+     */
+    public synchronized String getProgress() {
+
+        return "Tenants completed: " + completedTenants + (tenantCount < 0 ? "" : " of " + tenantCount) +
+                ", users scanned: " + scannedUsers + ", users updated: " + updatedUsers + ", users failed: " +
+                failedUsers + ", groups scanned: " + scannedGroups + ", groups updated: " + updatedGroups;
+    }
+
+    @Override
+    public void run() {
+
+        long startTime = System.currentTimeMillis();
+        synchronized (this) {
+            if (!running || pageInProgress) {
+                return;
+            }
+            pageInProgress = true;
+        }
+        int updates = 0;
+        RuntimeException error = null;
+        try {
+            updates = runPage();
+        } catch (RuntimeException e) {
+            error = e;
+        }
+        synchronized (this) {
+            pageInProgress = false;
+            nextRun = null;
+            if (error != null) {
+                log.error("Error while adding SCIM metadata. The job is stopped. " + getProgress(), error);
+                running = false;
+                return;
+            }
+            if (completed) {
+                running = false;
+                log.info("SCIM metadata backfill completed. " + getProgress());
+                return;
+            }
+            if (!running) {
+                // Stopped while the page was in progress.
+                return;
+            }
+            // Delay the next page to keep within the configured number of updates per second.
+            long delay = 0;
+            if (maxUpdatesPerSecond > 0) {
+                delay = updates * 1000L / maxUpdatesPerSecond - (System.currentTimeMillis() - startTime);
+            }
+            nextRun = executorService.schedule(this, Math.max(delay, 0), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Process the next page of groups or users.
+     *
+     * @return Number of users and groups read or updated.
+     */
+    private int runPage() {
+
+        if (tenantIds == null) {
+            loadTenants();
+        }
+        if (tenantIndex >= tenantIds.size()) {
+            completed = true;
+            return 0;
+        }
+        int tenantId = tenantIds.get(tenantIndex);
+        try {
+            PrivilegedCarbonContext.startTenantFlow();
+            PrivilegedCarbonContext carbonContext = PrivilegedCarbonContext.getThreadLocalCarbonContext();
+            carbonContext.setTenantId(tenantId);
+            carbonContext.setTenantDomain(tenantDomains.get(tenantIndex));
+
+            UserStoreManager userStoreManager = (UserStoreManager) SCIMCommonComponentHolder.getRealmService()
+                    .getTenantUserRealm(tenantId).getUserStoreManager();
+            if (domainNames == null) {
+                loadTenant(userStoreManager);
+            }
+            if (groupOffset < groupNames.size()) {
+                return addGroupAttributes(tenantId);
+            }
+            if (domainIndex < domainNames.size()) {
+                return addUserAttributes(userStoreManager, domainNames.get(domainIndex));
+            }
+        } catch (org.wso2.carbon.user.api.UserStoreException e) {
+            log.error("Error while adding SCIM metadata to the users and groups of tenant: " + tenantId +
+                    ". The tenant is skipped.", e);
+        } catch (IdentitySCIMException e) {
+            log.error("Error while adding SCIM metadata to the groups of tenant: " + tenantId +
+                    ". The tenant is skipped.", e);
+        } finally {
+            PrivilegedCarbonContext.endTenantFlow();
+        }
+        completeTenant(tenantId);
+        return 0;
+    }
+
+    private void loadTenants() {
+
+        List<Integer> tenantIds = new ArrayList<>();
+        List<String> tenantDomains = new ArrayList<>();
+        tenantIds.add(MultitenantConstants.SUPER_TENANT_ID);
+        tenantDomains.add(MultitenantConstants.SUPER_TENANT_DOMAIN_NAME);
+        RealmService realmService = SCIMCommonComponentHolder.getRealmService();
+        try {
+            Tenant[] tenants = realmService.getTenantManager().getAllTenants();
+            if (tenants != null) {
+                for (Tenant tenant : tenants) {
+                    if (tenant.isActive()) {
+                        tenantIds.add(tenant.getId());
+                        tenantDomains.add(tenant.getDomain());
+                    }
+                }
+            }
+        } catch (org.wso2.carbon.user.api.UserStoreException e) {
+            log.error("Error while listing the tenants. Only the super tenant is scanned.", e);
+        }
+        this.tenantIds = tenantIds;
+        this.tenantDomains = tenantDomains;
+        synchronized (this) {
+            tenantCount = tenantIds.size();
+        }
+    }
+
+    /**
+     * Read the SCIM enabled user stores of the tenant, and the groups of those user stores.
+     */
+    private void loadTenant(UserStoreManager userStoreManager) throws UserStoreException {
+
+        domainNames = new ArrayList<>();
+        for (UserStoreManager manager = userStoreManager; manager != null;
+             manager = manager.getSecondaryUserStoreManager()) {
+            if (manager.isSCIMEnabled()) {
+                String domainName = UserCoreUtil.getDomainName(manager.getRealmConfiguration());
+                domainNames.add(StringUtils.isBlank(domainName) ? UserCoreConstants.PRIMARY_DEFAULT_DOMAIN_NAME :
+                        domainName.toUpperCase());
+            }
+        }
+        groupNames = new ArrayList<>();
+        String[] roleNames = userStoreManager.getRoleNames(true);
+        if (roleNames != null) {
+            for (String roleName : roleNames) {
+                if (domainNames.contains(UserCoreUtil.extractDomainFromName(roleName).toUpperCase())) {
+                    groupNames.add(roleName);
+                }
+            }
+        }
+        if (log.isDebugEnabled()) {
+            log.debug("Adding SCIM metadata to the users and groups of the user stores: " + domainNames +
+                    " of tenant: " + userStoreManager.getTenantId());
+        }
+    }
+
+    private int addGroupAttributes(int tenantId) throws IdentitySCIMException {
+
+        List<String> groupNamesOfPage = groupNames.subList(groupOffset,
+                Math.min(groupOffset + pageSize, groupNames.size()));
+        Set<String> addedGroupNames = new SCIMGroupHandler(tenantId).addMandatoryAttributes(groupNamesOfPage);
+        groupOffset += groupNamesOfPage.size();
+        synchronized (this) {
+            scannedGroups += groupNamesOfPage.size();
+            updatedGroups += addedGroupNames.size();
+        }
+        return groupNamesOfPage.size();
+    }
+
+    private int addUserAttributes(UserStoreManager userStoreManager, String domainName) throws UserStoreException {
+
+        String[] userNames = listUsers(userStoreManager, domainName);
+        String userIdLocalClaim = SCIMCommonUtils.getSCIMtoLocalMappings().get(SCIMConstants
+                .CommonSchemaConstants.ID_URI);
+        int updated = 0;
+        int failed = 0;
+        if (userNames.length > 0 && StringUtils.isNotBlank(userIdLocalClaim)) {
+            Map<String, String> userIds = getUserIds(userStoreManager, userNames, userIdLocalClaim, domainName);
+            for (String userName : userNames) {
+                if (StringUtils.isNotBlank(userIds.get(getDomainQualifiedName(userName, domainName)))) {
+                    continue;
+                }
+                try {
+                    userStoreManager.setUserClaimValues(userName, generateSCIMClaims(),
+                            UserCoreConstants.DEFAULT_PROFILE);
+                    updated++;
+                } catch (UserStoreException e) {
+                    failed++;
+                    log.error("Error while adding SCIM metadata to the user: " + userName, e);
+                }
+            }
+        }
+        synchronized (this) {
+            scannedUsers += userNames.length;
+            updatedUsers += updated;
+            failedUsers += failed;
+        }
+        userOffset += userNames.length;
+        if (userNames.length < pageSize) {
+            if (log.isDebugEnabled()) {
+                log.debug("Added SCIM metadata to the users of the user store: " + domainName + ". " +
+                        getProgress());
+            }
+            domainIndex++;
+            userOffset = 0;
+            userNamesOfDomain = null;
+        }
+        return Math.max(userNames.length, updated);
+    }
+
+    /**
+     * List the next page of users of the user store. User stores which do not support pagination are listed once,
+     * up to their maximum user list length, and the list is paged.
+     */
+    private String[] listUsers(UserStoreManager userStoreManager, String domainName) throws UserStoreException {
+
+        if (userStoreManager instanceof PaginatedUserStoreManager) {
+            // Operator SW set with USERNAME and empty string to get all users.
+            ExpressionCondition condition = new ExpressionCondition(ExpressionOperation.SW.toString(),
+                    ExpressionAttribute.USERNAME.toString(), "");
+            String[] userNames = ((PaginatedUserStoreManager) userStoreManager).getUserList(condition,
+                    domainName, UserCoreConstants.DEFAULT_PROFILE, pageSize, userOffset + 1, null, null);
+            return userNames == null ? new String[0] : userNames;
+        }
+        if (userNamesOfDomain == null) {
+            String[] userNames = userStoreManager.listUsers(domainName + UserCoreConstants.DOMAIN_SEPARATOR +
+                    SCIMCommonConstants.ANY, -1);
+            userNamesOfDomain = userNames == null ? new ArrayList<String>() : Arrays.asList(userNames);
+            int maxUserListLength = getMaxUserListLength(userStoreManager, domainName);
+            if (maxUserListLength > 0 && userNamesOfDomain.size() >= maxUserListLength) {
+                log.warn("Only the first " + userNamesOfDomain.size() + " users of the user store: " + domainName +
+                        " are listed, as the user store does not support pagination. SCIM metadata is not added to " +
+                        "the remaining users. Increase MaxUserNameListLength of the user store to include them.");
+            }
+        }
+        List<String> userNamesOfPage = userNamesOfDomain.subList(Math.min(userOffset, userNamesOfDomain.size()),
+                Math.min(userOffset + pageSize, userNamesOfDomain.size()));
+        return userNamesOfPage.toArray(new String[userNamesOfPage.size()]);
+    }
+
+    private int getMaxUserListLength(UserStoreManager userStoreManager, String domainName) {
+
+        UserStoreManager domainUserStoreManager = userStoreManager.getSecondaryUserStoreManager(domainName);
+        if (domainUserStoreManager == null) {
+            domainUserStoreManager = userStoreManager;
+        }
+        RealmConfiguration realmConfiguration = domainUserStoreManager.getRealmConfiguration();
+        if (realmConfiguration == null) {
+            return -1;
+        }
+        String maxUserListLength = realmConfiguration.getUserStoreProperty(
+                UserCoreConstants.RealmConfig.PROPERTY_MAX_USER_LIST);
+        if (StringUtils.isNotBlank(maxUserListLength)) {
+            try {
+                return Integer.parseInt(maxUserListLength.trim());
+            } catch (NumberFormatException e) {
+                if (log.isDebugEnabled()) {
+                    log.debug("Invalid maximum user list length: " + maxUserListLength + " of the user store: " +
+                            domainName);
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Read the SCIM ids of the users. The ids are keyed by the domain qualified user names, as the user store may
+     * return the names with or without the domain.
+     */
+    private Map<String, String> getUserIds(UserStoreManager userStoreManager, String[] userNames,
+                                           String userIdLocalClaim, String domainName) throws UserStoreException {
+
+        Map<String, String> userIds = new HashMap<>();
+        if (userStoreManager instanceof AbstractUserStoreManager) {
+            UserClaimSearchEntry[] searchEntries = ((AbstractUserStoreManager) userStoreManager)
+                    .getUsersClaimValues(userNames, new String[]{userIdLocalClaim}, null);
+            if (searchEntries != null) {
+                for (UserClaimSearchEntry searchEntry : searchEntries) {
+                    if (searchEntry.getUserName() != null && searchEntry.getClaims() != null) {
+                        userIds.put(getDomainQualifiedName(searchEntry.getUserName(), domainName),
+                                searchEntry.getClaims().get(userIdLocalClaim));
+                    }
+                }
+            }
+        } else {
+            for (String userName : userNames) {
+                userIds.put(getDomainQualifiedName(userName, domainName),
+                        userStoreManager.getUserClaimValue(userName, userIdLocalClaim, null));
+            }
+        }
+        return userIds;
+    }
+
+    private static String getDomainQualifiedName(String userName, String domainName) {
+
+        int separatorIndex = userName.indexOf(UserCoreConstants.DOMAIN_SEPARATOR);
+        if (separatorIndex > 0) {
+            return userName.substring(0, separatorIndex).toUpperCase() + userName.substring(separatorIndex);
+        }
+        return domainName + UserCoreConstants.DOMAIN_SEPARATOR + userName;
+    }
+
+    private Map<String, String> generateSCIMClaims() throws UserStoreException {
+
+        Map<String, String> scimToLocalMappings = SCIMCommonUtils.getSCIMtoLocalMappings();
+        Map<String, String> claims = new HashMap<>();
+        claims.put(scimToLocalMappings.get(SCIMConstants.CommonSchemaConstants.ID_URI), UUID.randomUUID().toString());
+        String createdDate = SCIMDateTimeFormatter.formatNow();
+        claims.put(scimToLocalMappings.get(SCIMConstants.CommonSchemaConstants.CREATED_URI), createdDate);
+        claims.put(scimToLocalMappings.get(SCIMConstants.CommonSchemaConstants.LAST_MODIFIED_URI), createdDate);
+        return claims;
+    }
+
+    private void completeTenant(int tenantId) {
+
+        synchronized (this) {
+            completedTenants++;
+        }
+        log.info("SCIM metadata backfill completed for tenant: " + tenantId + ". " + getProgress());
+        tenantIndex++;
+        domainNames = null;
+        groupNames = null;
+        userNamesOfDomain = null;
+        domainIndex = 0;
+        groupOffset = 0;
+        userOffset = 0;
+    }
+
+    private static int getPageSizeProperty() {
+
+        int pageSize = getIntProperty(PAGE_SIZE, DEFAULT_PAGE_SIZE);
+        if (pageSize <= 0) {
+            log.warn("Invalid value: " + pageSize + " for " + PAGE_SIZE + ". The page size has to be positive. " +
+                    "Using the default value: " + DEFAULT_PAGE_SIZE);
+            return DEFAULT_PAGE_SIZE;
+        }
+        return pageSize;
+    }
+
+    private static int getIntProperty(String property, int defaultValue) {
+
+        String value = IdentityUtil.getProperty(property);
+        if (StringUtils.isNotBlank(value)) {
+            try {
+                return Integer.parseInt(value.trim());
+            } catch (NumberFormatException e) {
+                log.warn("Invalid value: " + value + " for " + property + ". Using the default value: " +
+                        defaultValue);
+            }
+        }
+        return defaultValue;
+    }
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.scim2.common.utils;
+
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Locks of SCIM users and groups, held while a conditional update compares the version of a resource and writes it,
+ * so that no other conditional update of the resource runs between the two.
+ *
+ * The locks are striped by the tenant and the SCIM id of the resource, so that a fixed number of locks is kept, and
+ * unrelated resources rarely share a lock. Only conditional updates take the locks. The locks are local to this node.
+ * Unconditional updates, updates received by other nodes of a cluster, and changes made through other APIs of the
+ * user store, e.g. the user admin service, are not serialized with the conditional updates of this node.
+ */
+public class SCIMResourceLocks {
+
+    // Number of locks, a power of two.
+    private static final int LOCK_COUNT = 64;
+
+    private static final Lock[] locks = new Lock[LOCK_COUNT];
+
+    static {
+        for (int i = 0; i < LOCK_COUNT; i++) {
+            locks[i] = new ReentrantLock();
+        }
+    }
+
+    private SCIMResourceLocks() {
+
+    }
+
+    /**
+     * Get the lock of a user or a group.
+     *
+     * @param tenantId Tenant of the resource.
+     * @param id       SCIM id of the resource.
+     * @return Lock of the resource, shared with the resources of the same stripe.
+     */
+    public static Lock getLock(int tenantId, String id) {
+
+        int hash = 31 * tenantId + (id == null ? 0 : id.hashCode());
+        // Spread the high bits, as only the low bits select the lock.
+        hash ^= (hash >>> 16);
+        return locks[hash & (LOCK_COUNT - 1)];
+    }
+}
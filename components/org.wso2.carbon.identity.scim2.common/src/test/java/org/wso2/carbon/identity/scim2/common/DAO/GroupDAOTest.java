@@ -0,0 +1,117 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.scim2.common.DAO;
+
+import org.mockito.Mock;
+import org.powermock.core.classloader.annotations.PowerMockIgnore;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.testng.PowerMockTestCase;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+import org.wso2.carbon.identity.core.util.IdentityDatabaseUtil;
+import org.wso2.carbon.identity.scim2.common.exceptions.IdentitySCIMException;
+import org.wso2.carbon.identity.scim2.common.utils.SCIMCommonUtils;
+import org.wso2.charon3.core.schema.SCIMConstants;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.MockitoAnnotations.initMocks;
+import static org.powermock.api.mockito.PowerMockito.mockStatic;
+import static org.powermock.api.mockito.PowerMockito.when;
+
+/*
+ * Unit tests for GroupDAO
+ */
+@PrepareForTest({IdentityDatabaseUtil.class, SCIMCommonUtils.class})
+@PowerMockIgnore("java.sql.*")
+public class GroupDAOTest extends PowerMockTestCase {
+
+    private static final String GROUP_NAME = "PRIMARY/testGroup";
+
+    @Mock
+    private Connection connection;
+
+    @Mock
+    private PreparedStatement attributeNamesStatement;
+
+    @Mock
+    private PreparedStatement addAttributesStatement;
+
+    @Mock
+    private ResultSet resultSet;
+
+    @BeforeMethod
+    public void setUp() throws Exception {
+
+        initMocks(this);
+        mockStatic(IdentityDatabaseUtil.class);
+        mockStatic(SCIMCommonUtils.class);
+        when(IdentityDatabaseUtil.getDBConnection()).thenReturn(connection);
+        when(SCIMCommonUtils.getGroupNameWithDomain(anyString())).thenReturn(GROUP_NAME);
+        when(connection.prepareStatement(SQLQueries.GET_ATTRIBUTE_NAMES_SQL)).thenReturn(attributeNamesStatement);
+        when(connection.prepareStatement(SQLQueries.ADD_ATTRIBUTES_SQL)).thenReturn(addAttributesStatement);
+        when(attributeNamesStatement.executeQuery()).thenReturn(resultSet);
+    }
+
+    @Test
+    public void testAddSCIMGroupAttributes() throws Exception {
+
+        when(resultSet.next()).thenReturn(false);
+
+        new GroupDAO().addSCIMGroupAttributes(1, GROUP_NAME, getGroupAttributes());
+
+        // The existence of the group and its attributes is checked with a single query.
+        verify(attributeNamesStatement, times(1)).executeQuery();
+        verify(addAttributesStatement, times(4)).addBatch();
+        verify(addAttributesStatement, times(1)).executeBatch();
+        verify(connection, times(1)).commit();
+    }
+
+    @Test(expectedExceptions = IdentitySCIMException.class)
+    public void testAddSCIMGroupAttributesOfExistingGroup() throws Exception {
+
+        when(resultSet.next()).thenReturn(true, false);
+        when(resultSet.getString(1)).thenReturn(SCIMConstants.CommonSchemaConstants.ID_URI);
+
+        try {
+            new GroupDAO().addSCIMGroupAttributes(1, GROUP_NAME, getGroupAttributes());
+        } finally {
+            verify(addAttributesStatement, never()).executeBatch();
+            verify(connection, never()).commit();
+        }
+    }
+
+    private Map<String, String> getGroupAttributes() {
+
+        Map<String, String> attributes = new HashMap<>();
+        attributes.put(SCIMConstants.CommonSchemaConstants.ID_URI, "1234");
+        attributes.put(SCIMConstants.CommonSchemaConstants.CREATED_URI, "2018-01-01T00:00:00Z");
+        attributes.put(SCIMConstants.CommonSchemaConstants.LAST_MODIFIED_URI, "2018-01-01T00:00:00Z");
+        attributes.put(SCIMConstants.CommonSchemaConstants.LOCATION_URI, "https://localhost:9443/scim2/Groups/1234");
+        return attributes;
+    }
+}
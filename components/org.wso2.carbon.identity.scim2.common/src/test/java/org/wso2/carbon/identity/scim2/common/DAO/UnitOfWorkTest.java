@@ -0,0 +1,116 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.scim2.common.DAO;
+
+import org.mockito.Mock;
+import org.powermock.core.classloader.annotations.PowerMockIgnore;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.testng.PowerMockTestCase;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+import org.wso2.carbon.identity.core.util.IdentityDatabaseUtil;
+import org.wso2.carbon.identity.scim2.common.exceptions.IdentitySCIMException;
+
+import java.sql.Connection;
+
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.MockitoAnnotations.initMocks;
+import static org.powermock.api.mockito.PowerMockito.mockStatic;
+import static org.powermock.api.mockito.PowerMockito.verifyStatic;
+import static org.powermock.api.mockito.PowerMockito.when;
+import static org.testng.Assert.assertSame;
+
+/*
+ * Unit tests for UnitOfWork
+ */
+@PrepareForTest({IdentityDatabaseUtil.class})
+@PowerMockIgnore("java.sql.*")
+public class UnitOfWorkTest extends PowerMockTestCase {
+
+    @Mock
+    private Connection connection;
+
+    @BeforeMethod
+    public void setUp() throws Exception {
+
+        initMocks(this);
+        mockStatic(IdentityDatabaseUtil.class);
+        when(IdentityDatabaseUtil.getDBConnection()).thenReturn(connection);
+    }
+
+    @Test
+    public void testNestedUnitsOfWorkShareConnection() throws Exception {
+
+        UnitOfWork unitOfWork = UnitOfWork.begin();
+        try {
+            Connection outerConnection = UnitOfWork.getDBConnection("testDAOCall");
+            UnitOfWork.commit(outerConnection);
+
+            UnitOfWork nestedUnitOfWork = UnitOfWork.begin();
+            try {
+                assertSame(UnitOfWork.getDBConnection("testDAOCall"), outerConnection);
+                nestedUnitOfWork.commit();
+            } finally {
+                nestedUnitOfWork.end();
+            }
+            // Neither the DAO commit nor the nested unit of work commits the transaction.
+            verify(connection, never()).commit();
+            unitOfWork.commit();
+        } finally {
+            unitOfWork.end();
+        }
+
+        verify(connection, times(1)).commit();
+        verifyStatic(times(1));
+        IdentityDatabaseUtil.getDBConnection();
+        verifyStatic(times(1));
+        IdentityDatabaseUtil.closeConnection(connection);
+    }
+
+    @Test(expectedExceptions = IdentitySCIMException.class)
+    public void testFailedNestedUnitOfWorkRollsBack() throws Exception {
+
+        UnitOfWork unitOfWork = UnitOfWork.begin();
+        try {
+            UnitOfWork.getDBConnection("testDAOCall");
+            UnitOfWork nestedUnitOfWork = UnitOfWork.begin();
+            nestedUnitOfWork.end();
+
+            unitOfWork.commit();
+        } finally {
+            unitOfWork.end();
+            verify(connection, never()).commit();
+            verifyStatic(times(1));
+            IdentityDatabaseUtil.rollBack(connection);
+        }
+    }
+
+    @Test
+    public void testUnitOfWorkWithoutDatabaseAccess() throws Exception {
+
+        UnitOfWork unitOfWork = UnitOfWork.begin();
+        unitOfWork.commit();
+        unitOfWork.end();
+
+        verifyStatic(never());
+        IdentityDatabaseUtil.getDBConnection();
+    }
+}
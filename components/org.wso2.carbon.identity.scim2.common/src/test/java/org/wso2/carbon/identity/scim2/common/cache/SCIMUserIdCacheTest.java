@@ -0,0 +1,154 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.scim2.common.cache;
+
+import org.mockito.Mock;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.testng.PowerMockTestCase;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+import org.wso2.carbon.identity.core.util.IdentityUtil;
+import org.wso2.carbon.identity.scim2.common.internal.SCIMCommonComponentHolder;
+
+import static org.mockito.Mockito.verify;
+import static org.mockito.MockitoAnnotations.initMocks;
+import static org.powermock.api.mockito.PowerMockito.mockStatic;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+
+/*
+ * Unit tests for SCIMUserIdCache
+ */
+@PrepareForTest({IdentityUtil.class})
+public class SCIMUserIdCacheTest extends PowerMockTestCase {
+
+    private static final int TENANT_ID = 1;
+
+    @Mock
+    private SCIMCacheCoherenceProvider mockedCacheCoherenceProvider;
+
+    private SCIMUserIdCache userIdCache;
+
+    @BeforeMethod
+    public void setUp() throws Exception {
+
+        initMocks(this);
+        mockStatic(IdentityUtil.class);
+        userIdCache = SCIMUserIdCache.getInstance();
+        userIdCache.setEnabled(true);
+        userIdCache.clear();
+    }
+
+    @AfterMethod
+    public void tearDown() throws Exception {
+
+        SCIMCommonComponentHolder.setCacheCoherenceProvider(null);
+    }
+
+    @Test
+    public void testGetUserNameAndUserId() throws Exception {
+
+        userIdCache.put(TENANT_ID, "1234", "SECONDARY/testUser");
+
+        assertEquals(userIdCache.getUserName(TENANT_ID, "1234"), "SECONDARY/testUser");
+        assertEquals(userIdCache.getUserId(TENANT_ID, "SECONDARY/testUser"), "1234");
+        // A differently cased name may be a different user in a case sensitive user store.
+        assertNull(userIdCache.getUserId(TENANT_ID, "SECONDARY/TESTUSER"));
+        // Mappings are scoped to the tenant.
+        assertNull(userIdCache.getUserName(2, "1234"));
+    }
+
+    @Test
+    public void testPutReplacesExistingMappings() throws Exception {
+
+        userIdCache.put(TENANT_ID, "1234", "testUser");
+        userIdCache.put(TENANT_ID, "5678", "testUser");
+
+        assertNull(userIdCache.getUserName(TENANT_ID, "1234"));
+        assertEquals(userIdCache.getUserId(TENANT_ID, "testUser"), "5678");
+    }
+
+    @Test
+    public void testInvalidateUser() throws Exception {
+
+        SCIMCommonComponentHolder.setCacheCoherenceProvider(mockedCacheCoherenceProvider);
+        userIdCache.put(TENANT_ID, "1234", "testUser");
+        userIdCache.put(TENANT_ID, "5678", "SECONDARY/otherUser");
+
+        // The primary domain is implied and the case of the name is ignored on invalidation.
+        userIdCache.invalidateUser(TENANT_ID, "PRIMARY/TestUser");
+
+        assertNull(userIdCache.getUserName(TENANT_ID, "1234"));
+        assertEquals(userIdCache.getUserName(TENANT_ID, "5678"), "SECONDARY/otherUser");
+        verify(mockedCacheCoherenceProvider).publishInvalidation("UserIdCache", TENANT_ID, null, "PRIMARY/TestUser");
+    }
+
+    @Test
+    public void testInvalidateLocallyFromOtherNode() throws Exception {
+
+        userIdCache.put(TENANT_ID, "1234", "testUser");
+
+        SCIMTenantCache.getCache("UserIdCache").invalidateLocally(TENANT_ID, "1234", null);
+
+        assertNull(userIdCache.getUserName(TENANT_ID, "1234"));
+        assertNull(userIdCache.getUserId(TENANT_ID, "testUser"));
+    }
+
+    @Test
+    public void testLeastRecentlyUsedEviction() throws Exception {
+
+        SCIMTenantCache tenantCache = new SCIMTenantCache("TestCache", 2, 900) {
+        };
+        tenantCache.setEnabled(true);
+        tenantCache.put(TENANT_ID, "id1", "name1");
+        tenantCache.put(TENANT_ID, "id2", "name2");
+        tenantCache.getValue(TENANT_ID, "id1");
+        tenantCache.put(TENANT_ID, "id3", "name3");
+
+        assertEquals(tenantCache.getValue(TENANT_ID, "id1"), "name1");
+        assertNull(tenantCache.getValue(TENANT_ID, "id2"));
+        assertNull(tenantCache.getKey(TENANT_ID, "name2"));
+        assertEquals(tenantCache.getKey(TENANT_ID, "name3"), "id3");
+    }
+
+    @Test
+    public void testDisabledByDefault() throws Exception {
+
+        SCIMTenantCache tenantCache = new SCIMTenantCache("DisabledCache", 2, 900) {
+        };
+        tenantCache.put(TENANT_ID, "id1", "name1");
+
+        assertFalse(tenantCache.isEnabled());
+        assertNull(tenantCache.getValue(TENANT_ID, "id1"));
+    }
+
+    @Test
+    public void testPutAfterInvalidationDuringRead() throws Exception {
+
+        long invalidationCount = userIdCache.getInvalidationCount();
+        userIdCache.invalidateLocally(TENANT_ID, null, "otherUser");
+        userIdCache.put(TENANT_ID, "1234", "testUser", invalidationCount);
+        assertNull(userIdCache.getUserName(TENANT_ID, "1234"));
+
+        userIdCache.put(TENANT_ID, "1234", "testUser", userIdCache.getInvalidationCount());
+        assertEquals(userIdCache.getUserName(TENANT_ID, "1234"), "testUser");
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.wso2.carbon.identity.scim2.common.cache;
+
+import org.mockito.Mock;
+import org.powermock.modules.testng.PowerMockTestCase;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+import org.wso2.carbon.user.core.UserStoreManager;
+
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.MockitoAnnotations.initMocks;
+import static org.powermock.api.mockito.PowerMockito.when;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+/*
+ * Unit tests for SCIMUserStoreEnablementCache
+ */
+public class SCIMUserStoreEnablementCacheTest extends PowerMockTestCase {
+
+    @Mock
+    private UserStoreManager primaryUserStoreManager;
+
+    @Mock
+    private UserStoreManager secondaryUserStoreManager;
+
+    @Mock
+    private UserStoreManager updatedSecondaryUserStoreManager;
+
+    private SCIMUserStoreEnablementCache enablementCache;
+
+    @BeforeMethod
+    public void setUp() throws Exception {
+
+        initMocks(this);
+        enablementCache = SCIMUserStoreEnablementCache.getInstance();
+        enablementCache.clear();
+    }
+
+    @Test
+    public void testIsSCIMEnabled() throws Exception {
+
+        when(primaryUserStoreManager.isSCIMEnabled()).thenReturn(true);
+
+        assertTrue(enablementCache.isSCIMEnabled(primaryUserStoreManager));
+        assertTrue(enablementCache.isSCIMEnabled(primaryUserStoreManager));
+        assertFalse(enablementCache.isSCIMEnabled(secondaryUserStoreManager));
+
+        verify(primaryUserStoreManager, times(1)).isSCIMEnabled();
+    }
+
+    @Test
+    public void testTenantUserStores() throws Exception {
+
+        when(primaryUserStoreManager.getSecondaryUserStoreManager()).thenReturn(secondaryUserStoreManager);
+        when(primaryUserStoreManager.getSecondaryUserStoreManager("SECONDARY")).thenReturn(secondaryUserStoreManager);
+        when(secondaryUserStoreManager.isSCIMEnabled()).thenReturn(true);
+
+        SCIMUserStoreEnablementCache.TenantUserStores tenantUserStores =
+                enablementCache.getTenantUserStores(primaryUserStoreManager);
+        assertTrue(tenantUserStores.isSCIMEnabled(primaryUserStoreManager, "SECONDARY"));
+        assertTrue(enablementCache.getTenantUserStores(primaryUserStoreManager)
+                .isSCIMEnabled(primaryUserStoreManager, "secondary"));
+        assertFalse(tenantUserStores.isSCIMEnabled(primaryUserStoreManager, "UNKNOWN"));
+        verify(secondaryUserStoreManager, times(1)).isSCIMEnabled();
+
+        // The user store is rebuilt by the user core when its configuration is updated.
+        when(primaryUserStoreManager.getSecondaryUserStoreManager()).thenReturn(updatedSecondaryUserStoreManager);
+        when(primaryUserStoreManager.getSecondaryUserStoreManager("SECONDARY"))
+                .thenReturn(updatedSecondaryUserStoreManager);
+        when(updatedSecondaryUserStoreManager.isSCIMEnabled()).thenReturn(false);
+
+        assertFalse(enablementCache.getTenantUserStores(primaryUserStoreManager)
+                .isSCIMEnabled(primaryUserStoreManager, "SECONDARY"));
+    }
+}
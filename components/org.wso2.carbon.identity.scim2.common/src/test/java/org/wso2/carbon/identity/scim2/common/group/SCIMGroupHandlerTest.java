@@ -28,14 +28,18 @@ import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 import org.wso2.carbon.identity.core.util.IdentityDatabaseUtil;
 import org.wso2.carbon.identity.scim2.common.DAO.GroupDAO;
+import org.wso2.carbon.identity.scim2.common.cache.SCIMGroupIdCache;
 import org.wso2.carbon.identity.scim2.common.exceptions.IdentitySCIMException;
 import org.wso2.carbon.identity.scim2.common.utils.SCIMCommonUtils;
 import org.wso2.charon3.core.objects.Group;
+import org.wso2.charon3.core.schema.SCIMConstants;
 
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Map;
@@ -43,9 +47,13 @@ import java.util.Calendar;
 import java.util.Set;
 import java.util.HashSet;
 
+import static org.mockito.Matchers.anyCollection;
 import static org.mockito.Matchers.anyInt;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Matchers.anyMap;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.MockitoAnnotations.initMocks;
 import static org.powermock.api.mockito.PowerMockito.mock;
@@ -53,6 +61,7 @@ import static org.powermock.api.mockito.PowerMockito.mockStatic;
 import static org.powermock.api.mockito.PowerMockito.when;
 import static org.powermock.api.mockito.PowerMockito.whenNew;
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
 import static org.testng.Assert.assertNotNull;
 import static org.testng.Assert.assertNull;
 import static org.testng.AssertJUnit.assertTrue;
@@ -73,6 +82,8 @@ public class SCIMGroupHandlerTest extends PowerMockTestCase {
     @BeforeMethod
     public void setUp() throws Exception {
         initMocks(this);
+        SCIMGroupIdCache.getInstance().setEnabled(true);
+        SCIMGroupIdCache.getInstance().clear();
     }
 
     @Test
@@ -92,6 +103,31 @@ public class SCIMGroupHandlerTest extends PowerMockTestCase {
         scimGroupHandler.addMandatoryAttributes(anyString());
     }
 
+    @Test
+    public void testAddMandatoryAttributesOfGroups() throws Exception {
+        mockStatic(SCIMCommonUtils.class);
+        when(SCIMCommonUtils.getGroupNameWithDomain("directors")).thenReturn("PRIMARY/directors");
+        when(SCIMCommonUtils.getGroupNameWithDomain("LDAP/managers")).thenReturn("LDAP/managers");
+        when(SCIMCommonUtils.getSCIMGroupURL(anyString())).thenReturn("ID");
+        whenNew(GroupDAO.class).withNoArguments().thenReturn(mockedGroupDAO);
+        Set<String> existingGroupNames = new HashSet<>();
+        existingGroupNames.add("LDAP/managers");
+        when(mockedGroupDAO.getExistingGroupNames(anyInt(), anyCollection())).thenReturn(existingGroupNames);
+        ArgumentCaptor<Map> attributesCaptor = ArgumentCaptor.forClass(Map.class);
+
+        Set<String> addedGroupNames = new SCIMGroupHandler(1).addMandatoryAttributes(
+                Arrays.asList("directors", "LDAP/managers"));
+
+        assertEquals(addedGroupNames, Collections.singleton("PRIMARY/directors"));
+        verify(mockedGroupDAO, times(1)).addSCIMGroupAttributesInBatch(eq(1), attributesCaptor.capture());
+        Map<String, Map<String, String>> attributesOfGroups = attributesCaptor.getValue();
+        assertEquals(attributesOfGroups.keySet(), Collections.singleton("PRIMARY/directors"));
+        String id = attributesOfGroups.get("PRIMARY/directors").get(SCIMConstants.CommonSchemaConstants.ID_URI);
+        assertNotNull(id);
+        assertEquals(SCIMGroupIdCache.getInstance().getGroupName(1, id), "directors");
+        verify(mockedGroupDAO, never()).addSCIMGroupAttributes(anyInt(), anyString(), anyMap());
+    }
+
     @Test
     public void testGetGroupAttributesByName() throws Exception {
         SCIMGroupHandler scimGroupHandler = new SCIMGroupHandler(1);
@@ -173,6 +209,38 @@ public class SCIMGroupHandlerTest extends PowerMockTestCase {
         assertNull(new SCIMGroupHandler(1).getGroupName("NON_EXISITNG_GROUP_NAME"), "asserting for non existance");
     }
 
+    @Test
+    public void testGetGroupNameFromCache() throws Exception {
+        whenNew(GroupDAO.class).withNoArguments().thenReturn(mockedGroupDAO);
+        when(mockedGroupDAO.getGroupNameById(1, "5")).thenReturn("directors");
+
+        assertEquals(new SCIMGroupHandler(1).getGroupName("5"), "directors");
+        assertEquals(new SCIMGroupHandler(1).getGroupName("5"), "directors");
+        // The identity table is checked even for a cached group, which may have been deleted on another node.
+        assertFalse(new SCIMGroupHandler(1).isGroupExisting("PRIMARY/directors"));
+        // Groups are cached per tenant.
+        assertNull(new SCIMGroupHandler(2).getGroupName("5"));
+
+        verify(mockedGroupDAO, times(1)).getGroupNameById(1, "5");
+        verify(mockedGroupDAO, times(1)).isExistingGroup("PRIMARY/directors", 1);
+    }
+
+    @Test
+    public void testCacheOnRenameAndDelete() throws Exception {
+        whenNew(GroupDAO.class).withNoArguments().thenReturn(mockedGroupDAO);
+        when(mockedGroupDAO.isExistingGroup(anyString(), anyInt())).thenReturn(true);
+        when(mockedGroupDAO.getGroupNameById(1, "5")).thenReturn("directors");
+        SCIMGroupHandler scimGroupHandler = new SCIMGroupHandler(1);
+        scimGroupHandler.getGroupName("5");
+
+        scimGroupHandler.updateRoleName("directors", "managers");
+        assertEquals(scimGroupHandler.getGroupName("5"), "managers");
+
+        scimGroupHandler.deleteGroupAttributes("managers");
+        assertNull(SCIMGroupIdCache.getInstance().getGroupName(1, "5"));
+        verify(mockedGroupDAO, times(1)).getGroupNameById(1, "5");
+    }
+
     @Test
     public void testGetGroupId() throws Exception {
         assertNull(new SCIMGroupHandler(1).getGroupId("directors"));
@@ -298,6 +366,37 @@ public class SCIMGroupHandlerTest extends PowerMockTestCase {
         //this method is for testing of throwing IdentitySCIMException, hence no assertion
     }
 
+    @Test
+    public void testUpdateLastModified() throws Exception {
+        mockStatic(SCIMCommonUtils.class);
+        when(SCIMCommonUtils.getGroupNameWithDomain("directors")).thenReturn("PRIMARY/directors");
+        when(SCIMCommonUtils.getGroupNameWithDomain("LDAP/managers")).thenReturn("LDAP/managers");
+        whenNew(GroupDAO.class).withNoArguments().thenReturn(mockedGroupDAO);
+        when(mockedGroupDAO.getExistingGroupNames(anyInt(), anyCollection()))
+                .thenReturn(Collections.singleton("LDAP/managers"));
+
+        new SCIMGroupHandler(1).updateLastModified(Arrays.asList("directors", "LDAP/managers"));
+
+        // groups without SCIM attributes are skipped, and the rest are updated with a single statement.
+        verify(mockedGroupDAO, times(1)).updateSCIMGroupAttribute(eq(1),
+                eq(Collections.singleton("LDAP/managers")), eq(SCIMConstants.CommonSchemaConstants.LAST_MODIFIED_URI),
+                anyString());
+        verify(mockedGroupDAO, never()).updateSCIMGroupAttributes(anyInt(), anyString(), anyMap());
+    }
+
+    @Test
+    public void testUpdateLastModifiedOfGroupsWithoutSCIMAttributes() throws Exception {
+        mockStatic(SCIMCommonUtils.class);
+        when(SCIMCommonUtils.getGroupNameWithDomain("directors")).thenReturn("PRIMARY/directors");
+        whenNew(GroupDAO.class).withNoArguments().thenReturn(mockedGroupDAO);
+        when(mockedGroupDAO.getExistingGroupNames(anyInt(), anyCollection()))
+                .thenReturn(Collections.<String>emptySet());
+
+        new SCIMGroupHandler(1).updateLastModified(Collections.singletonList("directors"));
+
+        verify(mockedGroupDAO, never()).updateSCIMGroupAttribute(anyInt(), anyCollection(), anyString(), anyString());
+    }
+
     @Test
     public void testListSCIMRoles() throws Exception {
         Set<String> groups = mock(HashSet.class);
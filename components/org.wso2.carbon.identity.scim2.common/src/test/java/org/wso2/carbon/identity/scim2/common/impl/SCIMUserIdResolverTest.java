@@ -0,0 +1,190 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.scim2.common.impl;
+
+import org.mockito.Mock;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.testng.PowerMockTestCase;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+import org.wso2.carbon.identity.core.util.IdentityUtil;
+import org.wso2.carbon.identity.scim2.common.cache.SCIMUserIdCache;
+import org.wso2.carbon.identity.scim2.common.utils.SCIMCommonUtils;
+import org.wso2.carbon.user.core.UserCoreConstants;
+import org.wso2.carbon.user.core.UserStoreManager;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.MockitoAnnotations.initMocks;
+import static org.powermock.api.mockito.PowerMockito.mockStatic;
+import static org.powermock.api.mockito.PowerMockito.when;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+
+/*
+ * Unit tests for SCIMUserIdResolver
+ */
+@PrepareForTest({SCIMCommonUtils.class, IdentityUtil.class})
+public class SCIMUserIdResolverTest extends PowerMockTestCase {
+
+    private static final String USER_ID_CLAIM = "http://wso2.org/claims/userid";
+
+    @Mock
+    private UserStoreManager mockedUserStoreManager;
+
+    @BeforeMethod
+    public void setUp() throws Exception {
+
+        initMocks(this);
+        SCIMUserIdCache.getInstance().setEnabled(true);
+        SCIMUserIdCache.getInstance().clear();
+        Map<String, String> scimToLocalClaimMap = new HashMap<>();
+        scimToLocalClaimMap.put("urn:ietf:params:scim:schemas:core:2.0:id", USER_ID_CLAIM);
+        mockStatic(SCIMCommonUtils.class);
+        when(SCIMCommonUtils.getSCIMtoLocalMappings()).thenReturn(scimToLocalClaimMap);
+    }
+
+    @Test
+    public void testGetUserName() throws Exception {
+
+        when(mockedUserStoreManager.getUserList(USER_ID_CLAIM, "1234", UserCoreConstants.DEFAULT_PROFILE))
+                .thenReturn(new String[]{"testUser"});
+
+        SCIMUserIdResolver userIdResolver = new SCIMUserIdResolver(mockedUserStoreManager);
+        assertEquals(userIdResolver.getUserName("1234"), "testUser");
+        assertEquals(userIdResolver.getUserName("1234"), "testUser");
+        // The id of the resolved user is known without reading the claim of the user.
+        assertEquals(userIdResolver.getUserId("testUser"), "1234");
+
+        verify(mockedUserStoreManager, times(1)).getUserList(USER_ID_CLAIM, "1234",
+                UserCoreConstants.DEFAULT_PROFILE);
+        verify(mockedUserStoreManager, never()).getUserClaimValue(anyString(), anyString(), anyString());
+    }
+
+    @Test
+    public void testGetUserNameOfNonExistingUser() throws Exception {
+
+        when(mockedUserStoreManager.getUserList(USER_ID_CLAIM, "1234", UserCoreConstants.DEFAULT_PROFILE))
+                .thenReturn(new String[0]);
+
+        SCIMUserIdResolver userIdResolver = new SCIMUserIdResolver(mockedUserStoreManager);
+        assertNull(userIdResolver.getUserName("1234"));
+    }
+
+    @Test
+    public void testGetUserId() throws Exception {
+
+        when(mockedUserStoreManager.getUserClaimValue("testUser", USER_ID_CLAIM, null)).thenReturn("1234");
+
+        SCIMUserIdResolver userIdResolver = new SCIMUserIdResolver(mockedUserStoreManager);
+        assertEquals(userIdResolver.getUserId("testUser"), "1234");
+        assertEquals(userIdResolver.getUserName("1234"), "testUser");
+
+        verify(mockedUserStoreManager, never()).getUserList(anyString(), anyString(), anyString());
+    }
+
+    @Test
+    public void testGetUserNameInDomain() throws Exception {
+
+        mockStatic(IdentityUtil.class);
+        when(IdentityUtil.addDomainToName("1234", "SECONDARY")).thenReturn("SECONDARY/1234");
+        when(IdentityUtil.extractDomainFromName("SECONDARY/testUser")).thenReturn("SECONDARY");
+        when(mockedUserStoreManager.getUserList(USER_ID_CLAIM, "SECONDARY/1234", UserCoreConstants.DEFAULT_PROFILE))
+                .thenReturn(new String[]{"SECONDARY/testUser"});
+
+        SCIMUserIdResolver userIdResolver = new SCIMUserIdResolver(mockedUserStoreManager);
+        assertEquals(userIdResolver.getUserName("1234", "SECONDARY"), "SECONDARY/testUser");
+        assertEquals(userIdResolver.getUserName("1234", "secondary"), "SECONDARY/testUser");
+
+        // Only the user store of the domain is searched.
+        verify(mockedUserStoreManager, times(1)).getUserList(USER_ID_CLAIM, "SECONDARY/1234",
+                UserCoreConstants.DEFAULT_PROFILE);
+        verify(mockedUserStoreManager, never()).getUserList(USER_ID_CLAIM, "1234", UserCoreConstants.DEFAULT_PROFILE);
+    }
+
+    @Test
+    public void testGetUserNameOfUserInOtherDomain() throws Exception {
+
+        mockStatic(IdentityUtil.class);
+        when(IdentityUtil.addDomainToName("1234", "SECONDARY")).thenReturn("SECONDARY/1234");
+        when(IdentityUtil.extractDomainFromName("testUser")).thenReturn("PRIMARY");
+        when(mockedUserStoreManager.getUserList(USER_ID_CLAIM, "1234", UserCoreConstants.DEFAULT_PROFILE))
+                .thenReturn(new String[]{"testUser"});
+        when(mockedUserStoreManager.getUserList(USER_ID_CLAIM, "SECONDARY/1234", UserCoreConstants.DEFAULT_PROFILE))
+                .thenReturn(new String[0]);
+
+        SCIMUserIdResolver userIdResolver = new SCIMUserIdResolver(mockedUserStoreManager);
+        assertEquals(userIdResolver.getUserName("1234"), "testUser");
+        assertNull(userIdResolver.getUserName("1234", "SECONDARY"));
+    }
+
+    @Test
+    public void testGetUserNameFromTenantCache() throws Exception {
+
+        when(mockedUserStoreManager.getUserList(USER_ID_CLAIM, "1234", UserCoreConstants.DEFAULT_PROFILE))
+                .thenReturn(new String[]{"testUser"});
+
+        assertEquals(new SCIMUserIdResolver(mockedUserStoreManager).getUserName("1234"), "testUser");
+        // Resolvers of later requests read the id from the tenant cache.
+        assertEquals(new SCIMUserIdResolver(mockedUserStoreManager).getUserName("1234"), "testUser");
+        assertEquals(new SCIMUserIdResolver(mockedUserStoreManager).getUserId("testUser"), "1234");
+
+        verify(mockedUserStoreManager, times(1)).getUserList(USER_ID_CLAIM, "1234",
+                UserCoreConstants.DEFAULT_PROFILE);
+        verify(mockedUserStoreManager, never()).getUserClaimValue(anyString(), anyString(), anyString());
+    }
+
+    @Test
+    public void testUserInvalidatedWhileResolvedIsNotCached() throws Exception {
+
+        when(mockedUserStoreManager.getUserList(USER_ID_CLAIM, "1234", UserCoreConstants.DEFAULT_PROFILE))
+                .thenAnswer(new Answer<String[]>() {
+                    @Override
+                    public String[] answer(InvocationOnMock invocation) throws Throwable {
+                        // The user is renamed while the old user name is read.
+                        SCIMUserIdCache.getInstance().invalidateLocally(0, null, "testUser");
+                        return new String[]{"testUser"};
+                    }
+                });
+
+        assertEquals(new SCIMUserIdResolver(mockedUserStoreManager).getUserName("1234"), "testUser");
+        assertNull(SCIMUserIdCache.getInstance().getUserName(0, "1234"));
+    }
+
+    @Test
+    public void testGetUserNameWithCacheDisabled() throws Exception {
+
+        SCIMUserIdCache.getInstance().setEnabled(false);
+        when(mockedUserStoreManager.getUserList(USER_ID_CLAIM, "1234", UserCoreConstants.DEFAULT_PROFILE))
+                .thenReturn(new String[]{"testUser"});
+
+        assertEquals(new SCIMUserIdResolver(mockedUserStoreManager).getUserName("1234"), "testUser");
+        assertEquals(new SCIMUserIdResolver(mockedUserStoreManager).getUserName("1234"), "testUser");
+
+        verify(mockedUserStoreManager, times(2)).getUserList(USER_ID_CLAIM, "1234",
+                UserCoreConstants.DEFAULT_PROFILE);
+    }
+}
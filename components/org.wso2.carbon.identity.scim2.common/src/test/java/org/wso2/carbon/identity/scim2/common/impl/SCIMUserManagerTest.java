@@ -18,7 +18,12 @@
 
 package org.wso2.carbon.identity.scim2.common.impl;
 
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 import org.powermock.core.classloader.annotations.PowerMockIgnore;
 import org.powermock.core.classloader.annotations.PrepareForTest;
 import org.powermock.modules.testng.PowerMockTestCase;
@@ -33,6 +38,9 @@ import org.wso2.carbon.identity.claim.metadata.mgt.model.ExternalClaim;
 import org.wso2.carbon.identity.core.util.IdentityTenantUtil;
 import org.wso2.carbon.identity.core.util.IdentityUtil;
 import org.wso2.carbon.identity.scim2.common.DAO.GroupDAO;
+import org.wso2.carbon.identity.scim2.common.cache.SCIMGroupIdCache;
+import org.wso2.carbon.identity.scim2.common.cache.SCIMUserIdCache;
+import org.wso2.carbon.identity.scim2.common.cache.SCIMUserStoreEnablementCache;
 import org.wso2.carbon.identity.scim2.common.group.SCIMGroupHandler;
 import org.wso2.carbon.identity.scim2.common.test.utils.CommonTestUtils;
 import org.wso2.carbon.identity.scim2.common.utils.AttributeMapper;
@@ -42,46 +50,63 @@ import org.wso2.carbon.identity.testutil.Whitebox;
 import org.wso2.carbon.user.api.Claim;
 import org.wso2.carbon.user.api.ClaimMapping;
 import org.wso2.carbon.user.api.RealmConfiguration;
+import org.wso2.carbon.user.core.UserCoreConstants;
 import org.wso2.carbon.user.core.UserStoreManager;
 import org.wso2.carbon.user.core.claim.ClaimManager;
+import org.wso2.carbon.user.core.common.AbstractUserStoreManager;
+import org.wso2.carbon.user.core.model.UserClaimSearchEntry;
 import org.wso2.carbon.user.core.service.RealmService;
 import org.wso2.charon3.core.config.SCIMUserSchemaExtensionBuilder;
+import org.wso2.charon3.core.exceptions.BadRequestException;
 import org.wso2.charon3.core.exceptions.CharonException;
 import org.wso2.charon3.core.objects.Group;
 import org.wso2.charon3.core.objects.User;
 import org.wso2.charon3.core.schema.SCIMAttributeSchema;
 import org.wso2.charon3.core.schema.SCIMConstants;
+import org.wso2.charon3.core.schema.SCIMDefinitions;
 import org.wso2.charon3.core.utils.codeutils.ExpressionNode;
+import org.wso2.charon3.core.utils.codeutils.PatchOperation;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 
 import static junit.framework.TestCase.assertTrue;
+import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyBoolean;
 import static org.mockito.Matchers.anyInt;
 import static org.mockito.Matchers.anyMap;
 import static org.mockito.Matchers.anySet;
 import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.MockitoAnnotations.initMocks;
+import static org.powermock.api.mockito.PowerMockito.doReturn;
+import static org.powermock.api.mockito.PowerMockito.mock;
 import static org.powermock.api.mockito.PowerMockito.mockStatic;
 import static org.powermock.api.mockito.PowerMockito.spy;
 import static org.powermock.api.mockito.PowerMockito.when;
 import static org.powermock.api.mockito.PowerMockito.whenNew;
 import static org.testng.AssertJUnit.assertEquals;
 import static org.testng.AssertJUnit.assertNotNull;
+import static org.testng.AssertJUnit.assertNull;
 
 /*
  * Unit tests for SCIMUserManager
  */
 @PrepareForTest({SCIMGroupHandler.class, IdentityUtil.class, SCIMUserSchemaExtensionBuilder.class,
 SCIMAttributeSchema.class, AttributeMapper.class, ClaimMetadataHandler.class, SCIMCommonUtils.class,
-IdentityTenantUtil.class})
+IdentityTenantUtil.class, AbstractUserStoreManager.class})
 @PowerMockIgnore("java.sql.*")
 public class SCIMUserManagerTest extends PowerMockTestCase {
 
+    private static final String ENTERPRISE_EXTENSION_URI = "urn:ietf:params:scim:schemas:extension:enterprise:2.0:User";
+
     @Mock
     private UserStoreManager mockedUserStoreManager;
 
@@ -115,11 +140,19 @@ public class SCIMUserManagerTest extends PowerMockTestCase {
     @Mock
     private UserStoreManager secondaryUserStoreManager;
 
+    @Mock
+    private AbstractUserStoreManager mockedAbstractUserStoreManager;
+
 
     @BeforeMethod
     public void setUp() throws Exception {
 
         initMocks(this);
+        SCIMUserIdCache.getInstance().setEnabled(true);
+        SCIMUserIdCache.getInstance().clear();
+        SCIMGroupIdCache.getInstance().setEnabled(true);
+        SCIMGroupIdCache.getInstance().clear();
+        SCIMUserStoreEnablementCache.getInstance().clear();
     }
 
     @DataProvider(name = "ClaimData")
@@ -386,6 +419,444 @@ public class SCIMUserManagerTest extends PowerMockTestCase {
         };
     }
 
+    @Test(dataProvider = "groupsProjection")
+    public void testGetUserWithGroupsProjection(String requiredAttribute, int expectedRoleLookups) throws Exception {
+
+        Map<String, String> scimToLocalClaimMap = new HashMap<>();
+        scimToLocalClaimMap.put("urn:ietf:params:scim:schemas:core:2.0:id", "http://wso2.org/claims/userid");
+        scimToLocalClaimMap.put("urn:ietf:params:scim:schemas:core:2.0:User:userName",
+                "http://wso2.org/claims/username");
+        mockStatic(SCIMCommonUtils.class);
+        when(SCIMCommonUtils.getSCIMtoLocalMappings()).thenReturn(scimToLocalClaimMap);
+        mockStatic(IdentityUtil.class);
+        when(IdentityUtil.extractDomainFromName(anyString())).thenReturn("PRIMARY");
+        mockStatic(AttributeMapper.class);
+        when(AttributeMapper.constructSCIMObjectFromAttributes(anyMap(), anyInt())).thenReturn(mockedUser);
+
+        when(mockedUserStoreManager.getUserList("http://wso2.org/claims/userid", "1234",
+                UserCoreConstants.DEFAULT_PROFILE)).thenReturn(new String[]{"testUser"});
+        when(mockedUserStoreManager.getSecondaryUserStoreManager("PRIMARY")).thenReturn(mockedUserStoreManager);
+        when(mockedUserStoreManager.isSCIMEnabled()).thenReturn(true);
+        when(mockedUserStoreManager.getRoleListOfUser(anyString())).thenReturn(new String[0]);
+
+        Map<String, Boolean> requiredAttributes = new HashMap<>();
+        requiredAttributes.put(requiredAttribute, false);
+        SCIMUserManager scimUserManager = new SCIMUserManager(mockedUserStoreManager, mockedClaimManager);
+        assertNotNull(scimUserManager.getUser("1234", requiredAttributes));
+        verify(mockedUserStoreManager, times(expectedRoleLookups)).getRoleListOfUser("testUser");
+    }
+
+    @DataProvider(name = "groupsProjection")
+    public Object[][] groupsProjection() {
+
+        return new Object[][]{
+                {SCIMConstants.UserSchemaConstants.USER_NAME_URI, 0},
+                {SCIMConstants.UserSchemaConstants.GROUP_URI, 1}
+        };
+    }
+
+    @Test
+    public void testPatchUserWithSingularAttributes() throws Exception {
+
+        Map<String, String> scimToLocalClaimMap = new HashMap<>();
+        scimToLocalClaimMap.put("urn:ietf:params:scim:schemas:core:2.0:id", "http://wso2.org/claims/userid");
+        scimToLocalClaimMap.put("urn:ietf:params:scim:schemas:core:2.0:User:active", "http://wso2.org/claims/active");
+        scimToLocalClaimMap.put("urn:ietf:params:scim:schemas:core:2.0:User:nickName",
+                "http://wso2.org/claims/nickname");
+        scimToLocalClaimMap.put(SCIMConstants.CommonSchemaConstants.LAST_MODIFIED_URI,
+                "http://wso2.org/claims/modified");
+        mockStatic(SCIMCommonUtils.class);
+        when(SCIMCommonUtils.getSCIMtoLocalMappings()).thenReturn(scimToLocalClaimMap);
+        mockStatic(IdentityUtil.class);
+        when(IdentityUtil.extractDomainFromName(anyString())).thenReturn("PRIMARY");
+        mockStatic(AttributeMapper.class);
+        when(AttributeMapper.constructSCIMObjectFromAttributes(anyMap(), anyInt())).thenReturn(mockedUser);
+
+        when(mockedUserStoreManager.getUserList("http://wso2.org/claims/userid", "1234",
+                UserCoreConstants.DEFAULT_PROFILE)).thenReturn(new String[]{"testUser"});
+        when(mockedUserStoreManager.getSecondaryUserStoreManager("PRIMARY")).thenReturn(mockedUserStoreManager);
+        when(mockedUserStoreManager.isSCIMEnabled()).thenReturn(true);
+        when(mockedUserStoreManager.getRoleListOfUser(anyString())).thenReturn(new String[0]);
+
+        List<PatchOperation> operations = new ArrayList<>();
+        operations.add(createPatchOperation(SCIMConstants.OperationalConstants.REPLACE, "active", false));
+        operations.add(createPatchOperation(SCIMConstants.OperationalConstants.REMOVE, "nickName", null));
+
+        SCIMUserManager scimUserManager = new SCIMUserManager(mockedUserStoreManager, mockedClaimManager);
+        assertNotNull(scimUserManager.patchUser("1234", operations, new HashMap<String, Boolean>()));
+
+        // The last modified time is set in the same call as the patched claims.
+        ArgumentCaptor<Map> claimsCaptor = ArgumentCaptor.forClass(Map.class);
+        verify(mockedUserStoreManager, times(1)).setUserClaimValues(eq("testUser"), claimsCaptor.capture(),
+                anyString());
+        Map<?, ?> claims = claimsCaptor.getValue();
+        assertEquals(claims.size(), 2);
+        assertEquals(claims.get("http://wso2.org/claims/active"), "false");
+        assertNotNull(claims.get("http://wso2.org/claims/modified"));
+        verify(mockedUserStoreManager).deleteUserClaimValues("testUser",
+                new String[]{"http://wso2.org/claims/nickname"}, null);
+        verify(mockedUserStoreManager, never()).deleteUserClaimValue(anyString(), anyString(), anyString());
+    }
+
+    @Test(dataProvider = "unsupportedPatchOperations")
+    public void testPatchUserWithUnsupportedOperations(String operation, String path, Object value) throws Exception {
+
+        Map<String, String> scimToLocalClaimMap = new HashMap<>();
+        scimToLocalClaimMap.put("urn:ietf:params:scim:schemas:core:2.0:id", "http://wso2.org/claims/userid");
+        scimToLocalClaimMap.put("urn:ietf:params:scim:schemas:core:2.0:User:emails.work",
+                "http://wso2.org/claims/emailaddress");
+        mockStatic(SCIMCommonUtils.class);
+        when(SCIMCommonUtils.getSCIMtoLocalMappings()).thenReturn(scimToLocalClaimMap);
+
+        List<PatchOperation> operations = new ArrayList<>();
+        operations.add(createPatchOperation(operation, path, value));
+
+        SCIMUserManager scimUserManager = new SCIMUserManager(mockedUserStoreManager, mockedClaimManager);
+        assertNull(scimUserManager.patchUser("1234", operations, new HashMap<String, Boolean>()));
+        verify(mockedUserStoreManager, never()).getUserList(anyString(), anyString(), anyString());
+    }
+
+    @DataProvider(name = "unsupportedPatchOperations")
+    public Object[][] unsupportedPatchOperations() {
+
+        return new Object[][]{
+                // multi-valued attributes are handled by the generic PATCH flow.
+                {SCIMConstants.OperationalConstants.REPLACE, "emails.work", "test@wso2.com"},
+                {SCIMConstants.OperationalConstants.REMOVE, "emails[type eq \"work\"]", null},
+                // immutable and unmapped attributes.
+                {SCIMConstants.OperationalConstants.REPLACE, "id", "5678"},
+                {SCIMConstants.OperationalConstants.ADD, "password", "newPassword"}
+        };
+    }
+
+    @Test(dataProvider = "invalidPatchOperations", expectedExceptions = BadRequestException.class)
+    public void testPatchUserWithInvalidOperations(String operation, String path, Object value) throws Exception {
+
+        Map<String, String> scimToLocalClaimMap = new HashMap<>();
+        scimToLocalClaimMap.put("urn:ietf:params:scim:schemas:core:2.0:id", "http://wso2.org/claims/userid");
+        scimToLocalClaimMap.put("urn:ietf:params:scim:schemas:core:2.0:User:active", "http://wso2.org/claims/active");
+        scimToLocalClaimMap.put("urn:ietf:params:scim:schemas:core:2.0:User:userName",
+                "http://wso2.org/claims/username");
+        mockStatic(SCIMCommonUtils.class);
+        when(SCIMCommonUtils.getSCIMtoLocalMappings()).thenReturn(scimToLocalClaimMap);
+
+        List<PatchOperation> operations = new ArrayList<>();
+        operations.add(createPatchOperation(operation, path, value));
+
+        SCIMUserManager scimUserManager = new SCIMUserManager(mockedUserStoreManager, mockedClaimManager);
+        scimUserManager.patchUser("1234", operations, new HashMap<String, Boolean>());
+    }
+
+    @DataProvider(name = "invalidPatchOperations")
+    public Object[][] invalidPatchOperations() throws Exception {
+
+        return new Object[][]{
+                // values not matching the type of the attribute.
+                {SCIMConstants.OperationalConstants.REPLACE, "active", "yes"},
+                {SCIMConstants.OperationalConstants.REPLACE, "Active", "yes"},
+                {SCIMConstants.OperationalConstants.ADD, null, new JSONObject().put("ACTIVE", "yes")},
+                {SCIMConstants.OperationalConstants.REPLACE, "name", "testName"},
+                // removal of a required attribute.
+                {SCIMConstants.OperationalConstants.REMOVE, "userName", null},
+                {SCIMConstants.OperationalConstants.REMOVE, "USERNAME", null}
+        };
+    }
+
+    @Test
+    public void testPatchUserWithAttributeNamesInDifferentCase() throws Exception {
+
+        Map<String, String> scimToLocalClaimMap = new HashMap<>();
+        scimToLocalClaimMap.put("urn:ietf:params:scim:schemas:core:2.0:id", "http://wso2.org/claims/userid");
+        scimToLocalClaimMap.put("urn:ietf:params:scim:schemas:core:2.0:User:nickName",
+                "http://wso2.org/claims/nickname");
+        mockStatic(SCIMCommonUtils.class);
+        when(SCIMCommonUtils.getSCIMtoLocalMappings()).thenReturn(scimToLocalClaimMap);
+        mockStatic(IdentityUtil.class);
+        when(IdentityUtil.extractDomainFromName(anyString())).thenReturn("PRIMARY");
+        mockStatic(AttributeMapper.class);
+        when(AttributeMapper.constructSCIMObjectFromAttributes(anyMap(), anyInt())).thenReturn(mockedUser);
+
+        when(mockedUserStoreManager.getUserList("http://wso2.org/claims/userid", "1234",
+                UserCoreConstants.DEFAULT_PROFILE)).thenReturn(new String[]{"testUser"});
+        when(mockedUserStoreManager.getSecondaryUserStoreManager("PRIMARY")).thenReturn(mockedUserStoreManager);
+        when(mockedUserStoreManager.isSCIMEnabled()).thenReturn(true);
+        when(mockedUserStoreManager.getRoleListOfUser(anyString())).thenReturn(new String[0]);
+
+        List<PatchOperation> operations = new ArrayList<>();
+        operations.add(createPatchOperation(SCIMConstants.OperationalConstants.REPLACE, "NICKNAME", "testNick"));
+
+        SCIMUserManager scimUserManager = new SCIMUserManager(mockedUserStoreManager, mockedClaimManager);
+        assertNotNull(scimUserManager.patchUser("1234", operations, new HashMap<String, Boolean>()));
+
+        Map<String, String> expectedClaims = new HashMap<>();
+        expectedClaims.put("http://wso2.org/claims/nickname", "testNick");
+        verify(mockedUserStoreManager).setUserClaimValues("testUser", expectedClaims, null);
+    }
+
+    @Test(expectedExceptions = BadRequestException.class)
+    public void testPatchUserWithReadOnlyExtensionAttribute() throws Exception {
+
+        mockEnterpriseExtensionSchema();
+        Map<String, String> scimToLocalClaimMap = new HashMap<>();
+        scimToLocalClaimMap.put("urn:ietf:params:scim:schemas:core:2.0:id", "http://wso2.org/claims/userid");
+        scimToLocalClaimMap.put(ENTERPRISE_EXTENSION_URI + ":manager.displayName", "http://wso2.org/claims/manager");
+        mockStatic(SCIMCommonUtils.class);
+        when(SCIMCommonUtils.getSCIMtoLocalMappings()).thenReturn(scimToLocalClaimMap);
+
+        JSONObject value = new JSONObject().put(ENTERPRISE_EXTENSION_URI,
+                new JSONObject().put("manager", new JSONObject().put("displayName", "testManager")));
+        List<PatchOperation> operations = new ArrayList<>();
+        operations.add(createPatchOperation(SCIMConstants.OperationalConstants.ADD, null, value));
+
+        SCIMUserManager scimUserManager = new SCIMUserManager(mockedUserStoreManager, mockedClaimManager);
+        scimUserManager.patchUser("1234", operations, new HashMap<String, Boolean>());
+    }
+
+    @Test
+    public void testPatchUserWithImmutableExtensionAttribute() throws Exception {
+
+        mockEnterpriseExtensionSchema();
+        Map<String, String> scimToLocalClaimMap = new HashMap<>();
+        scimToLocalClaimMap.put("urn:ietf:params:scim:schemas:core:2.0:id", "http://wso2.org/claims/userid");
+        scimToLocalClaimMap.put(ENTERPRISE_EXTENSION_URI + ":employeeNumber", "http://wso2.org/claims/employeeNumber");
+        mockStatic(SCIMCommonUtils.class);
+        when(SCIMCommonUtils.getSCIMtoLocalMappings()).thenReturn(scimToLocalClaimMap);
+
+        List<PatchOperation> operations = new ArrayList<>();
+        operations.add(createPatchOperation(SCIMConstants.OperationalConstants.REPLACE,
+                ENTERPRISE_EXTENSION_URI + ":employeeNumber", "1234"));
+
+        // Immutable attributes are validated against the existing value by the generic PATCH flow.
+        SCIMUserManager scimUserManager = new SCIMUserManager(mockedUserStoreManager, mockedClaimManager);
+        assertNull(scimUserManager.patchUser("1234", operations, new HashMap<String, Boolean>()));
+        verify(mockedUserStoreManager, never()).setUserClaimValues(anyString(), anyMap(), anyString());
+    }
+
+    private void mockEnterpriseExtensionSchema() {
+
+        SCIMAttributeSchema managerSchema = mockAttributeSchema(ENTERPRISE_EXTENSION_URI + ":manager",
+                SCIMDefinitions.DataType.COMPLEX, SCIMDefinitions.Mutability.READ_WRITE,
+                mockAttributeSchema(ENTERPRISE_EXTENSION_URI + ":manager.displayName",
+                        SCIMDefinitions.DataType.STRING, SCIMDefinitions.Mutability.READ_ONLY));
+        SCIMAttributeSchema extensionSchema = mockAttributeSchema(ENTERPRISE_EXTENSION_URI,
+                SCIMDefinitions.DataType.COMPLEX, SCIMDefinitions.Mutability.READ_WRITE, managerSchema,
+                mockAttributeSchema(ENTERPRISE_EXTENSION_URI + ":employeeNumber", SCIMDefinitions.DataType.STRING,
+                        SCIMDefinitions.Mutability.IMMUTABLE));
+
+        SCIMUserSchemaExtensionBuilder sb = spy(new SCIMUserSchemaExtensionBuilder());
+        mockStatic(SCIMUserSchemaExtensionBuilder.class);
+        when(SCIMUserSchemaExtensionBuilder.getInstance()).thenReturn(sb);
+        when(sb.getExtensionSchema()).thenReturn(extensionSchema);
+    }
+
+    private SCIMAttributeSchema mockAttributeSchema(String uri, SCIMDefinitions.DataType type,
+                                                    SCIMDefinitions.Mutability mutability,
+                                                    SCIMAttributeSchema... subAttributeSchemas) {
+
+        SCIMAttributeSchema attributeSchema = mock(SCIMAttributeSchema.class);
+        when(attributeSchema.getURI()).thenReturn(uri);
+        when(attributeSchema.getName()).thenReturn(uri.substring(uri.lastIndexOf(':') + 1));
+        when(attributeSchema.getType()).thenReturn(type);
+        when(attributeSchema.getMutability()).thenReturn(mutability);
+        doReturn(new ArrayList<>(Arrays.asList(subAttributeSchemas))).when(attributeSchema).getSubAttributeSchemas();
+        return attributeSchema;
+    }
+
+    @Test
+    public void testPatchGroupMembers() throws Exception {
+
+        mockPatchGroup();
+        JSONArray members = new JSONArray().put(new JSONObject().put("value", "5678").put("display", "testUser"));
+        List<PatchOperation> operations = new ArrayList<>();
+        operations.add(createPatchOperation(SCIMConstants.OperationalConstants.ADD, "members", members));
+        operations.add(createPatchOperation(SCIMConstants.OperationalConstants.REMOVE,
+                "members[value eq \"9999\"]", null));
+
+        SCIMUserManager scimUserManager = new SCIMUserManager(mockedUserStoreManager, mockedClaimManager);
+        assertNotNull(scimUserManager.patchGroup("1234", operations, new HashMap<String, Boolean>()));
+
+        verify(mockedUserStoreManager).updateUserListOfRole("testGroup", new String[]{"oldUser"},
+                new String[]{"testUser"});
+        // The member names of the group are read once, instead of the roles of each referenced member.
+        verify(mockedUserStoreManager, times(1)).getUserListOfRole("testGroup");
+        verify(mockedUserStoreManager, never()).getRoleListOfUser(anyString());
+    }
+
+    @Test
+    public void testPatchGroupWithExistingAndNonMembers() throws Exception {
+
+        mockPatchGroup();
+        JSONArray members = new JSONArray().put(new JSONObject().put("value", "9999"));
+        List<PatchOperation> operations = new ArrayList<>();
+        operations.add(createPatchOperation(SCIMConstants.OperationalConstants.ADD, "members", members));
+        operations.add(createPatchOperation(SCIMConstants.OperationalConstants.REMOVE,
+                "members[value eq \"5678\"]", null));
+
+        SCIMUserManager scimUserManager = new SCIMUserManager(mockedUserStoreManager, mockedClaimManager);
+        assertNotNull(scimUserManager.patchGroup("1234", operations, new HashMap<String, Boolean>()));
+
+        // Adding a member and removing a user who is not a member leave the group unchanged.
+        verify(mockedUserStoreManager, never()).updateUserListOfRole(anyString(), any(String[].class),
+                any(String[].class));
+    }
+
+    private void mockPatchGroup() throws Exception {
+
+        Map<String, String> scimToLocalClaimMap = new HashMap<>();
+        scimToLocalClaimMap.put("urn:ietf:params:scim:schemas:core:2.0:id", "http://wso2.org/claims/userid");
+        mockStatic(SCIMCommonUtils.class);
+        when(SCIMCommonUtils.getSCIMtoLocalMappings()).thenReturn(scimToLocalClaimMap);
+        when(SCIMCommonUtils.getGroupNameWithDomain("testGroup")).thenReturn("PRIMARY/testGroup");
+        mockStatic(IdentityUtil.class);
+        when(IdentityUtil.extractDomainFromName(anyString())).thenReturn("PRIMARY");
+        when(IdentityUtil.addDomainToName("5678", "PRIMARY")).thenReturn("5678");
+        when(IdentityUtil.addDomainToName("9999", "PRIMARY")).thenReturn("9999");
+        whenNew(GroupDAO.class).withAnyArguments().thenReturn(mockedGroupDAO);
+        when(mockedGroupDAO.getGroupNameById(anyInt(), anyString())).thenReturn("testGroup");
+
+        when(mockedUserStoreManager.getSecondaryUserStoreManager("PRIMARY")).thenReturn(mockedUserStoreManager);
+        when(mockedUserStoreManager.isSCIMEnabled()).thenReturn(true);
+        when(mockedUserStoreManager.getUserList("http://wso2.org/claims/userid", "5678",
+                UserCoreConstants.DEFAULT_PROFILE)).thenReturn(new String[]{"testUser"});
+        when(mockedUserStoreManager.getUserList("http://wso2.org/claims/userid", "9999",
+                UserCoreConstants.DEFAULT_PROFILE)).thenReturn(new String[]{"oldUser"});
+        when(mockedUserStoreManager.getUserListOfRole("testGroup")).thenReturn(new String[]{"oldUser"});
+    }
+
+    @Test
+    public void testPatchGroupWithDisplayNameChange() throws Exception {
+
+        List<PatchOperation> operations = new ArrayList<>();
+        operations.add(createPatchOperation(SCIMConstants.OperationalConstants.REPLACE, "displayName", "newGroup"));
+
+        SCIMUserManager scimUserManager = new SCIMUserManager(mockedUserStoreManager, mockedClaimManager);
+        assertNull(scimUserManager.patchGroup("1234", operations, new HashMap<String, Boolean>()));
+    }
+
+    @Test
+    public void testUpdateGroupWithAddedAndRemovedMembers() throws Exception {
+
+        mockGroupUpdate();
+        when(mockedAbstractUserStoreManager.getUsersClaimValues(any(String[].class), any(String[].class),
+                anyString())).thenReturn(new UserClaimSearchEntry[]{createUserIdEntry("userB", "2"),
+                createUserIdEntry("userC", "3")});
+
+        Group oldGroup = createGroup("testGroup", "1", "userA", "2", "userB");
+        Group newGroup = createGroup("testGroup", "2", "userB", "3", "userC");
+
+        SCIMUserManager scimUserManager = new SCIMUserManager(mockedAbstractUserStoreManager, mockedClaimManager);
+        scimUserManager.updateGroup(oldGroup, newGroup, new HashMap<String, Boolean>());
+
+        verify(mockedAbstractUserStoreManager).updateUserListOfRole("PRIMARY/testGroup", new String[]{"userA"},
+                new String[]{"userC"});
+        // The ids of the members are resolved with one batch lookup.
+        verify(mockedAbstractUserStoreManager, never()).getUserList(anyString(), anyString(), anyString());
+    }
+
+    @Test(expectedExceptions = BadRequestException.class)
+    public void testUpdateGroupWithUnknownMember() throws Exception {
+
+        mockGroupUpdate();
+        when(mockedAbstractUserStoreManager.getUsersClaimValues(any(String[].class), any(String[].class),
+                anyString())).thenReturn(new UserClaimSearchEntry[]{createUserIdEntry("userB", "2")});
+        when(mockedAbstractUserStoreManager.getUserList("http://wso2.org/claims/userid", "404",
+                UserCoreConstants.DEFAULT_PROFILE)).thenReturn(new String[0]);
+
+        Group oldGroup = createGroup("testGroup", "2", "userB");
+        Group newGroup = createGroup("testGroup", "2", "userB", "404", "unknownUser");
+
+        SCIMUserManager scimUserManager = new SCIMUserManager(mockedAbstractUserStoreManager, mockedClaimManager);
+        scimUserManager.updateGroup(oldGroup, newGroup, new HashMap<String, Boolean>());
+    }
+
+    @Test
+    public void testUpdateGroupWithMembersInSecondaryDomain() throws Exception {
+
+        mockGroupUpdate();
+        when(mockedAbstractUserStoreManager.getUsersClaimValues(any(String[].class), any(String[].class),
+                anyString())).thenReturn(new UserClaimSearchEntry[]{createUserIdEntry("SECONDARY/userA", "1"),
+                createUserIdEntry("SECONDARY/userC", "3")});
+
+        Group oldGroup = createGroup("SECONDARY/testGroup", "1", "SECONDARY/userA");
+        // A member given without the domain of the group belongs to the domain of the group.
+        Group newGroup = createGroup("SECONDARY/testGroup", "1", "SECONDARY/userA", "3", "userC");
+
+        SCIMUserManager scimUserManager = new SCIMUserManager(mockedAbstractUserStoreManager, mockedClaimManager);
+        scimUserManager.updateGroup(oldGroup, newGroup, new HashMap<String, Boolean>());
+
+        verify(mockedAbstractUserStoreManager).updateUserListOfRole("SECONDARY/testGroup", new String[0],
+                new String[]{"SECONDARY/userC"});
+        verify(mockedAbstractUserStoreManager, never()).getUserList(anyString(), anyString(), anyString());
+    }
+
+    private void mockGroupUpdate() throws Exception {
+
+        Map<String, String> scimToLocalClaimMap = new HashMap<>();
+        scimToLocalClaimMap.put("urn:ietf:params:scim:schemas:core:2.0:id", "http://wso2.org/claims/userid");
+        mockStatic(SCIMCommonUtils.class);
+        when(SCIMCommonUtils.getSCIMtoLocalMappings()).thenReturn(scimToLocalClaimMap);
+        when(SCIMCommonUtils.getGroupNameWithDomain(anyString())).thenAnswer(new Answer<String>() {
+            @Override
+            public String answer(InvocationOnMock invocation) {
+
+                String name = (String) invocation.getArguments()[0];
+                return name.contains("/") ? name : "PRIMARY/" + name;
+            }
+        });
+
+        mockStatic(IdentityUtil.class);
+        when(IdentityUtil.getPrimaryDomainName()).thenReturn("PRIMARY");
+        when(IdentityUtil.extractDomainFromName(anyString())).thenAnswer(new Answer<String>() {
+            @Override
+            public String answer(InvocationOnMock invocation) {
+
+                String name = (String) invocation.getArguments()[0];
+                return name.contains("/") ? name.substring(0, name.indexOf('/')).toUpperCase() : "PRIMARY";
+            }
+        });
+        when(IdentityUtil.addDomainToName(anyString(), anyString())).thenAnswer(new Answer<String>() {
+            @Override
+            public String answer(InvocationOnMock invocation) {
+
+                String name = (String) invocation.getArguments()[0];
+                String domain = (String) invocation.getArguments()[1];
+                if (domain == null || name.contains("/") || "PRIMARY".equalsIgnoreCase(domain)) {
+                    return name;
+                }
+                return domain.toUpperCase() + "/" + name;
+            }
+        });
+    }
+
+    private Group createGroup(String displayName, String... members) throws Exception {
+
+        Group group = new Group();
+        group.setDisplayName(displayName);
+        for (int i = 0; i < members.length; i += 2) {
+            group.setMember(members[i], members[i + 1]);
+        }
+        return group;
+    }
+
+    private UserClaimSearchEntry createUserIdEntry(String userName, String userId) {
+
+        UserClaimSearchEntry searchEntry = new UserClaimSearchEntry();
+        searchEntry.setUserName(userName);
+        Map<String, String> claims = new HashMap<>();
+        claims.put("http://wso2.org/claims/userid", userId);
+        searchEntry.setClaims(claims);
+        return searchEntry;
+    }
+
+    private PatchOperation createPatchOperation(String operation, String path, Object value) {
+
+        PatchOperation patchOperation = new PatchOperation();
+        patchOperation.setOperation(operation);
+        patchOperation.setPath(path);
+        patchOperation.setValues(value);
+        return patchOperation;
+    }
+
     @ObjectFactory
     public IObjectFactory getObjectFactory() {
         return new org.powermock.modules.testng.PowerMockObjectFactory();
@@ -27,7 +27,12 @@ import org.testng.annotations.DataProvider;
 import org.testng.annotations.ObjectFactory;
 import org.testng.annotations.Test;
 import org.wso2.carbon.identity.core.util.IdentityCoreConstants;
+import org.wso2.carbon.identity.core.util.IdentityTenantUtil;
 import org.wso2.carbon.identity.scim2.common.DAO.GroupDAO;
+import org.wso2.carbon.identity.scim2.common.cache.SCIMGroupIdCache;
+import org.wso2.carbon.identity.scim2.common.cache.SCIMLocalClaimCache;
+import org.wso2.carbon.identity.scim2.common.cache.SCIMUserIdCache;
+import org.wso2.carbon.identity.scim2.common.cache.SCIMUserStoreEnablementCache;
 import org.wso2.carbon.identity.scim2.common.exceptions.IdentitySCIMException;
 import org.wso2.carbon.identity.scim2.common.group.SCIMGroupHandler;
 import org.wso2.carbon.identity.scim2.common.utils.SCIMCommonUtils;
@@ -40,23 +45,32 @@ import org.wso2.carbon.user.core.util.UserCoreUtil;
 import org.wso2.charon3.core.schema.SCIMConstants;
 
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyCollection;
 import static org.mockito.Matchers.anyInt;
 import static org.mockito.Matchers.anyObject;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.powermock.api.mockito.PowerMockito.mockStatic;
 import static org.powermock.api.mockito.PowerMockito.spy;
+import static org.powermock.api.mockito.PowerMockito.verifyStatic;
 import static org.powermock.api.mockito.PowerMockito.when;
 import static org.powermock.api.mockito.PowerMockito.whenNew;
 import static org.testng.Assert.assertEquals;
 import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNull;
 import static org.testng.Assert.assertTrue;
 
-@PrepareForTest({UserCoreUtil.class, SCIMGroupHandler.class, SCIMCommonUtils.class})
+@PrepareForTest({UserCoreUtil.class, SCIMGroupHandler.class, SCIMCommonUtils.class, IdentityTenantUtil.class})
 public class SCIMUserOperationListenerTest extends PowerMockTestCase {
 
     private String userName = "testUser";
@@ -89,6 +103,12 @@ public class SCIMUserOperationListenerTest extends PowerMockTestCase {
         scimUserOperationListener = spy(new SCIMUserOperationListener());
         mockStatic(UserCoreUtil.class);
         mockStatic(SCIMCommonUtils.class);
+        mockStatic(IdentityTenantUtil.class);
+        SCIMGroupIdCache.getInstance().setEnabled(true);
+        SCIMGroupIdCache.getInstance().clear();
+        SCIMUserIdCache.getInstance().setEnabled(true);
+        SCIMLocalClaimCache.getInstance().clear();
+        SCIMUserStoreEnablementCache.getInstance().clear();
     }
 
     @DataProvider(name = "testGetExecutionOrderIdData")
@@ -191,6 +211,49 @@ public class SCIMUserOperationListenerTest extends PowerMockTestCase {
         assertTrue(scimUserOperationListener.doPostDeleteUser(userName, userStoreManager));
     }
 
+    @Test
+    public void testUserIdCacheOnAddAndDeleteUser() throws Exception {
+        Map<String, String> scimToLocalMappings = new HashMap<>();
+        scimToLocalMappings.put(SCIMConstants.CommonSchemaConstants.ID_URI, "http://wso2.org/claims/userid");
+        when(SCIMCommonUtils.getSCIMtoLocalMappings()).thenReturn(scimToLocalMappings);
+        when(scimUserOperationListener.isEnable()).thenReturn(true);
+        when(userStoreManager.isSCIMEnabled()).thenReturn(true);
+        when(userStoreManager.getTenantId()).thenReturn(1);
+        when(UserCoreUtil.getDomainName((RealmConfiguration) anyObject())).thenReturn("PRIMARY");
+        when(UserCoreUtil.addDomainToName(userName, "PRIMARY")).thenReturn(userName);
+        SCIMUserIdCache.getInstance().clear();
+
+        Map<String, String> userClaims = new HashMap<>();
+        userClaims.put("http://wso2.org/claims/userid", "1234");
+        assertTrue(scimUserOperationListener.doPostAddUser(userName, credential, roleList, userClaims, profile,
+                userStoreManager));
+        assertEquals(SCIMUserIdCache.getInstance().getUserName(1, "1234"), userName);
+
+        assertTrue(scimUserOperationListener.doPostDeleteUser(userName, userStoreManager));
+        assertNull(SCIMUserIdCache.getInstance().getUserName(1, "1234"));
+    }
+
+    @Test
+    public void testUserIdCacheOnUserIdClaimChange() throws Exception {
+        Map<String, String> scimToLocalMappings = new HashMap<>();
+        scimToLocalMappings.put(SCIMConstants.CommonSchemaConstants.ID_URI, "http://wso2.org/claims/userid");
+        when(SCIMCommonUtils.getSCIMtoLocalMappings()).thenReturn(scimToLocalMappings);
+        when(userStoreManager.getTenantId()).thenReturn(1);
+        when(UserCoreUtil.getDomainName((RealmConfiguration) anyObject())).thenReturn("PRIMARY");
+        when(UserCoreUtil.addDomainToName(userName, "PRIMARY")).thenReturn(userName);
+        SCIMUserIdCache.getInstance().clear();
+        SCIMUserIdCache.getInstance().put(1, "1234", userName);
+
+        assertTrue(scimUserOperationListener.doPreSetUserClaimValue(userName, "http://wso2.org/claims/userid",
+                "5678", null, userStoreManager));
+        assertNull(SCIMUserIdCache.getInstance().getUserName(1, "1234"));
+
+        // A concurrent lookup caches the old id before the new id is written to the user store.
+        SCIMUserIdCache.getInstance().put(1, "1234", userName);
+        assertTrue(scimUserOperationListener.doPostSetUserClaimValue(userName, userStoreManager));
+        assertNull(SCIMUserIdCache.getInstance().getUserName(1, "1234"));
+    }
+
     @Test
     public void testDoPreSetUserClaimValue() throws Exception {
         assertTrue(scimUserOperationListener.doPreSetUserClaimValue(eq(userName), anyString(), anyString(), anyString(),
@@ -244,6 +307,21 @@ public class SCIMUserOperationListenerTest extends PowerMockTestCase {
         assertTrue(scimUserOperationListener.doPostDeleteUserClaimValue(userName, userStoreManager));
     }
 
+    @Test
+    public void testUsersNotWrittenOnGroupChanges() throws Exception {
+        mockTestEnvironment(true, true, "testDomain");
+        when(userStoreManager.getUserListOfRole(roleName)).thenReturn(new String[]{"member1", "member2"});
+
+        // The last modified time of the members is not changed, as it would take a write to every member.
+        assertTrue(scimUserOperationListener.doPostSetUserClaimValue(userName, userStoreManager));
+        assertTrue(scimUserOperationListener.doPreDeleteRole(roleName, userStoreManager));
+        assertTrue(scimUserOperationListener.doPostDeleteRole(roleName, userStoreManager));
+        assertTrue(scimUserOperationListener.doPostUpdateUserListOfRole(roleName, new String[]{"member1"},
+                new String[]{"member3"}, userStoreManager));
+        verify(userStoreManager, never()).getUserListOfRole(anyString());
+        verify(userStoreManager, never()).setUserClaimValue(anyString(), anyString(), anyString(), anyString());
+    }
+
     @Test
     public void testDoPreAddRole() throws Exception {
         assertTrue(scimUserOperationListener.doPreAddRole(userName, roleList, permissions, userStoreManager));
@@ -265,6 +343,11 @@ public class SCIMUserOperationListenerTest extends PowerMockTestCase {
             throws Exception {
         mockTestEnvironment(isEnabled, isSCIMEnabled, domainName);
         when(groupDAO.isExistingGroup(anyString(), anyInt())).thenReturn(isGroupExisting);
+        Set<String> existingGroupNames = new HashSet<>();
+        if (isGroupExisting) {
+            existingGroupNames.add("testRoleNameWithDomain");
+        }
+        when(groupDAO.getExistingGroupNames(anyInt(), anyCollection())).thenReturn(existingGroupNames);
 
         assertTrue(scimUserOperationListener.doPostAddRole(roleName, userList, permissions, userStoreManager));
     }
@@ -282,6 +365,8 @@ public class SCIMUserOperationListenerTest extends PowerMockTestCase {
         mockTestEnvironment(true, true, "testDomain");
         when(groupDAO.isExistingGroup(anyString(), anyInt())).thenThrow(new IdentitySCIMException
                 ("IdentitySCIMException"));
+        when(groupDAO.getExistingGroupNames(anyInt(), anyCollection())).thenThrow(new IdentitySCIMException
+                ("IdentitySCIMException"));
 
         scimUserOperationListener.doPostAddRole(roleName, userList, permissions, userStoreManager);
     }
@@ -369,6 +454,17 @@ public class SCIMUserOperationListenerTest extends PowerMockTestCase {
                 any(String[].class), eq(userStoreManager)));
     }
 
+    @Test
+    public void testDoPostUpdateUserListOfRoleWithGroupUpdateError() throws Exception {
+        mockTestEnvironment(true, true, "testDomain");
+        when(groupDAO.getExistingGroupNames(anyInt(), anyCollection()))
+                .thenThrow(new IdentitySCIMException("IdentitySCIMException"));
+
+        // The members are already changed in the user store, hence the change is not failed.
+        assertTrue(scimUserOperationListener.doPostUpdateUserListOfRole(roleName, new String[0],
+                new String[]{userName}, userStoreManager));
+    }
+
     @Test
     public void testDoPreUpdateRoleListOfUser() throws Exception {
         assertTrue(scimUserOperationListener.doPreUpdateRoleListOfUser(anyString(), any(String[].class),
@@ -422,6 +518,47 @@ public class SCIMUserOperationListenerTest extends PowerMockTestCase {
         assertNotNull(scimUserOperationListener.populateSCIMAttributes(userName, claimsMap));
     }
 
+    @Test
+    public void testPopulateSCIMAttributesWithExistingId() throws Exception {
+        Map<String, String> scimToLocalClaimsMap = new HashMap<>();
+        scimToLocalClaimsMap.put(SCIMConstants.CommonSchemaConstants.ID_URI, "http://wso2.org/claims/userid");
+        scimToLocalClaimsMap.put(SCIMConstants.CommonSchemaConstants.CREATED_URI, "http://wso2.org/claims/created");
+        when(SCIMCommonUtils.getSCIMtoLocalMappings()).thenReturn(scimToLocalClaimsMap);
+
+        // Ids of any SCIM core schema version are kept.
+        Map<String, String> claimsMap = new HashMap<>();
+        claimsMap.put("urn:scim:schemas:core:1.0:id", "1234");
+        Map<String, String> attributes = scimUserOperationListener.populateSCIMAttributes(userName, claimsMap);
+        assertNull(attributes.get("http://wso2.org/claims/userid"));
+        assertNotNull(attributes.get("http://wso2.org/claims/created"));
+
+        Map<String, String> newAttributes = scimUserOperationListener.populateSCIMAttributes(userName, null);
+        assertNotNull(newAttributes.get("http://wso2.org/claims/userid"));
+
+        // The claim mappings are read once for both the users.
+        verifyStatic(times(1));
+        SCIMCommonUtils.getSCIMtoLocalMappings();
+    }
+
+    @Test
+    public void testPopulateSCIMAttributesWithoutUserIdMapping() throws Exception {
+        Map<String, String> scimToLocalClaimsMap = new HashMap<>();
+        scimToLocalClaimsMap.put(SCIMConstants.CommonSchemaConstants.CREATED_URI, "http://wso2.org/claims/created");
+        scimToLocalClaimsMap.put(SCIMConstants.CommonSchemaConstants.LAST_MODIFIED_URI,
+                "http://wso2.org/claims/modified");
+        scimToLocalClaimsMap.put(SCIMConstants.UserSchemaConstants.USER_NAME_URI, "http://wso2.org/claims/username");
+        scimToLocalClaimsMap.put(SCIMConstants.CommonSchemaConstants.RESOURCE_TYPE_URI,
+                "http://wso2.org/claims/resourceType");
+        when(SCIMCommonUtils.getSCIMtoLocalMappings()).thenReturn(scimToLocalClaimsMap);
+
+        // Claim maps which do not permit null keys are checked without the unmapped id claim.
+        Map<String, String> claimsMap = new ConcurrentHashMap<>();
+        claimsMap.put(SCIMConstants.CommonSchemaConstants.ID_URI, "1234");
+        Map<String, String> attributes = scimUserOperationListener.populateSCIMAttributes(userName, claimsMap);
+        assertEquals(attributes.get(SCIMConstants.CommonSchemaConstants.ID_URI), "1234");
+        assertNotNull(attributes.get("http://wso2.org/claims/created"));
+    }
+
     private void mockTestEnvironment(boolean isEnabled, boolean isSCIMEnabled, String domainName) throws Exception {
         when(scimUserOperationListener.isEnable()).thenReturn(isEnabled);
         when(userStoreManager.isSCIMEnabled()).thenReturn(isSCIMEnabled);
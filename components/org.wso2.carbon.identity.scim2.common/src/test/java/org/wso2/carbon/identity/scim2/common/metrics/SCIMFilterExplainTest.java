@@ -0,0 +1,138 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.wso2.carbon.identity.scim2.common.metrics;
+
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.testng.PowerMockTestCase;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+import org.wso2.carbon.identity.core.util.IdentityUtil;
+import org.wso2.carbon.user.core.model.ExpressionCondition;
+import org.wso2.carbon.user.core.model.OperationalCondition;
+
+import static org.powermock.api.mockito.PowerMockito.mockStatic;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+/*
+ * Unit tests for SCIMFilterExplain
+ */
+@PrepareForTest({IdentityUtil.class})
+public class SCIMFilterExplainTest extends PowerMockTestCase {
+
+    private SCIMRequestContext requestContext;
+
+    @BeforeMethod
+    public void setUp() throws Exception {
+
+        mockStatic(IdentityUtil.class);
+        requestContext = SCIMRequestContext.start();
+    }
+
+    @AfterMethod
+    public void tearDown() throws Exception {
+
+        requestContext.end();
+    }
+
+    @Test
+    public void testExplainMultiDomainFilter() throws Exception {
+
+        SCIMFilterExplain filterExplain = SCIMFilterExplain.start();
+        SCIMFilterExplain.setStrategy(SCIMFilterExplain.MULTI_DOMAIN_FAN_OUT);
+        long startTime = System.nanoTime();
+        SCIMFilterExplain.recordStoreQuery("PRIMARY", new OperationalCondition("AND",
+                new ExpressionCondition("SW", "givenName", "jo"),
+                new ExpressionCondition("EW", "mail", "@wso2.com")), 21, 10, new String[0], startTime);
+        SCIMFilterExplain.recordOffsetRecalculation("PRIMARY", 21, 5, startTime);
+        SCIMFilterExplain.recordStage(SCIMFilterExplain.FILTER_STAGE, startTime);
+        filterExplain.end();
+
+        assertSame(requestContext.getFilterExplain(), filterExplain);
+        assertEquals(filterExplain.getStrategy(), SCIMFilterExplain.MULTI_DOMAIN_FAN_OUT);
+
+        String explanation = filterExplain.toJSONString(true);
+        assertTrue(explanation.startsWith("{\"strategy\":\"multiDomainFanOut\","));
+        assertTrue(explanation.contains("\"condition\":\"(givenName SW 'jo' AND mail EW '@wso2.com')\"," +
+                "\"offset\":21,\"limit\":10,\"results\":0,"));
+        assertTrue(explanation.contains("\"offsetRecalculations\":[{\"domain\":\"PRIMARY\",\"offset\":21," +
+                "\"newOffset\":5,"));
+
+        // Filter values are masked in the logs.
+        String maskedExplanation = filterExplain.toJSONString(false);
+        assertTrue(maskedExplanation.contains("(givenName SW '?' AND mail EW '?')"));
+        assertFalse(maskedExplanation.contains("wso2.com"));
+
+        // Records made after the filter ended are ignored.
+        SCIMFilterExplain.setStrategy(SCIMFilterExplain.LEGACY_APIS);
+        assertEquals(filterExplain.getStrategy(), SCIMFilterExplain.MULTI_DOMAIN_FAN_OUT);
+    }
+
+    @Test
+    public void testNonASCIIValuesAreEscaped() throws Exception {
+
+        SCIMFilterExplain filterExplain = SCIMFilterExplain.start();
+        SCIMFilterExplain.recordStoreQuery(null, new ExpressionCondition("EQ", "sn", "Jos\u00e9 \"J\""), 1, 10,
+                null, System.nanoTime());
+        filterExplain.end();
+
+        assertTrue(filterExplain.toJSONString(true).contains("\"domain\":null,\"condition\":" +
+                "\"sn EQ 'Jos\\u00e9 \\\"J\\\"'\""));
+    }
+
+    @Test
+    public void testTruncatedExplanation() throws Exception {
+
+        SCIMFilterExplain filterExplain = SCIMFilterExplain.start();
+        SCIMFilterExplain.setStrategy(SCIMFilterExplain.MULTI_DOMAIN_FAN_OUT);
+        long startTime = System.nanoTime();
+        for (int i = 0; i < SCIMFilterExplain.MAX_ENTRIES + 50; i++) {
+            SCIMFilterExplain.recordStoreQuery("DOMAIN" + i, new ExpressionCondition("SW", "givenName", "jo"),
+                    1, 10, new String[0], startTime);
+        }
+        SCIMFilterExplain.recordOffsetRecalculation("PRIMARY", 21, 5, startTime);
+        filterExplain.end();
+
+        // Only MAX_ENTRIES store queries are kept.
+        String explanation = filterExplain.toJSONString(true);
+        assertTrue(explanation.contains("\"domain\":\"DOMAIN" + (SCIMFilterExplain.MAX_ENTRIES - 1) + "\""));
+        assertFalse(explanation.contains("\"domain\":\"DOMAIN" + SCIMFilterExplain.MAX_ENTRIES + "\""));
+        assertTrue(explanation.endsWith(",\"truncated\":{\"storeQueries\":" + (SCIMFilterExplain.MAX_ENTRIES + 50) +
+                ",\"offsetRecalculations\":1}}"));
+
+        // The entries which don't fit the length are left out.
+        String cutExplanation = filterExplain.toJSONString(true, 1024);
+        assertTrue(cutExplanation.length() <= 1024);
+        assertTrue(cutExplanation.contains("\"domain\":\"DOMAIN0\""));
+        assertFalse(cutExplanation.contains("\"domain\":\"DOMAIN20\""));
+        assertTrue(cutExplanation.endsWith(",\"truncated\":{\"storeQueries\":" +
+                (SCIMFilterExplain.MAX_ENTRIES + 50) + ",\"offsetRecalculations\":1}}"));
+
+        // Explanations which fit are not marked as truncated.
+        SCIMFilterExplain smallExplain = SCIMFilterExplain.start();
+        SCIMFilterExplain.recordStoreQuery("PRIMARY", new ExpressionCondition("SW", "givenName", "jo"), 1, 10,
+                new String[0], startTime);
+        smallExplain.end();
+        assertFalse(smallExplain.toJSONString(true, 1024).contains("truncated"));
+    }
+}
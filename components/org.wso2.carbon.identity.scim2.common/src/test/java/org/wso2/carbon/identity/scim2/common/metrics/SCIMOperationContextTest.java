@@ -0,0 +1,150 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.wso2.carbon.identity.scim2.common.metrics;
+
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.testng.PowerMockTestCase;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+import org.wso2.carbon.identity.core.util.IdentityUtil;
+import org.wso2.carbon.user.core.UserStoreManager;
+import org.wso2.carbon.user.core.claim.ClaimManager;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.powermock.api.mockito.PowerMockito.mockStatic;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+
+/*
+ * Unit tests for SCIMOperationContext
+ */
+@PrepareForTest({IdentityUtil.class})
+public class SCIMOperationContextTest extends PowerMockTestCase {
+
+    private static final int TENANT_ID = 1;
+
+    private UserStoreManager userStoreManager;
+
+    @BeforeMethod
+    public void setUp() throws Exception {
+
+        mockStatic(IdentityUtil.class);
+        SCIMMetrics.getInstance().setEnabled(true);
+        SCIMMetrics.getInstance().clear();
+        userStoreManager = mock(UserStoreManager.class);
+        when(userStoreManager.getSecondaryUserStoreManager("SECONDARY")).thenReturn(mock(UserStoreManager.class));
+    }
+
+    @AfterMethod
+    public void tearDown() throws Exception {
+
+        SCIMMetrics.getInstance().setEnabled(false);
+    }
+
+    @Test
+    public void testNestedOperationsAreRecordedOnce() throws Exception {
+
+        SCIMOperationContext operationContext = SCIMOperationContext.start(SCIMOperation.GET_ME, TENANT_ID,
+                userStoreManager);
+        SCIMOperationContext nestedContext = SCIMOperationContext.start(SCIMOperation.GET_USER, TENANT_ID,
+                userStoreManager);
+        assertSame(nestedContext, operationContext);
+
+        SCIMOperationContext.setCurrentUserStoreDomain("secondary");
+        SCIMOperationContext.countUserStoreCall();
+        SCIMOperationContext.countIdentityDBQuery();
+        nestedContext.end(true);
+        assertNull(SCIMMetrics.getInstance().getStats(SCIMOperation.GET_ME, "1", "SECONDARY"));
+        operationContext.end(true);
+
+        SCIMOperationStats stats = SCIMMetrics.getInstance().getStats(SCIMOperation.GET_ME, "1", "SECONDARY");
+        assertEquals(stats.getCount(), 1);
+        assertEquals(stats.getErrorCount(), 0);
+        assertEquals(stats.getUserStoreCalls(), 1);
+        assertEquals(stats.getIdentityDBQueries(), 1);
+        assertNull(SCIMMetrics.getInstance().getStats(SCIMOperation.GET_USER, "1", "SECONDARY"));
+
+        // Calls made outside of an operation are not counted.
+        SCIMOperationContext.countUserStoreCall();
+        assertEquals(stats.getUserStoreCalls(), 1);
+    }
+
+    @Test
+    public void testFailedOperation() throws Exception {
+
+        SCIMOperationContext operationContext = SCIMOperationContext.start(SCIMOperation.LIST_USERS, TENANT_ID,
+                userStoreManager);
+        SCIMOperationContext.start(SCIMOperation.GET_USER, TENANT_ID, userStoreManager).end(false);
+        operationContext.end(true);
+
+        SCIMOperationStats stats = SCIMMetrics.getInstance().getStats(SCIMOperation.LIST_USERS, "1",
+                SCIMOperationContext.ALL_DOMAINS);
+        assertEquals(stats.getCount(), 1);
+        assertEquals(stats.getErrorCount(), 1);
+    }
+
+    @Test
+    public void testOperationOfUnknownDomain() throws Exception {
+
+        SCIMOperationContext operationContext = SCIMOperationContext.start(SCIMOperation.LIST_USERS, TENANT_ID,
+                userStoreManager);
+        operationContext.setUserStoreDomain("unknown");
+        operationContext.end(true);
+
+        assertNull(SCIMMetrics.getInstance().getStats(SCIMOperation.LIST_USERS, "1", "UNKNOWN"));
+        assertEquals(SCIMMetrics.getInstance().getStats(SCIMOperation.LIST_USERS, "1", SCIMMetrics.OTHER)
+                .getCount(), 1);
+
+        operationContext = SCIMOperationContext.start(SCIMOperation.LIST_USERS, TENANT_ID, userStoreManager);
+        operationContext.setUserStoreDomain("primary");
+        operationContext.end(true);
+        assertEquals(SCIMMetrics.getInstance().getStats(SCIMOperation.LIST_USERS, "1", "PRIMARY").getCount(), 1);
+    }
+
+    @Test
+    public void testUserStoreCallCounter() throws Exception {
+
+        UserStoreManager countingUserStoreManager = UserStoreCallCounter.wrap(userStoreManager);
+        assertSame(UserStoreCallCounter.wrap(countingUserStoreManager), countingUserStoreManager);
+        assertSame(UserStoreCallCounter.unwrap(countingUserStoreManager), userStoreManager);
+
+        SCIMOperationContext operationContext = SCIMOperationContext.start(SCIMOperation.GET_USER, TENANT_ID,
+                userStoreManager);
+        countingUserStoreManager.isExistingUser("testUser");
+        countingUserStoreManager.getRealmConfiguration();
+        assertEquals(operationContext.getUserStoreCalls(), 1);
+        operationContext.end(true);
+
+        verify(userStoreManager).isExistingUser("testUser");
+    }
+
+    @Test
+    public void testNotWrappedWhenDisabled() throws Exception {
+
+        SCIMMetrics.getInstance().setEnabled(false);
+        ClaimManager claimManager = mock(ClaimManager.class);
+        assertSame(UserStoreCallCounter.wrap(userStoreManager), userStoreManager);
+        assertSame(ClaimManagerCallCounter.wrap(claimManager), claimManager);
+    }
+}
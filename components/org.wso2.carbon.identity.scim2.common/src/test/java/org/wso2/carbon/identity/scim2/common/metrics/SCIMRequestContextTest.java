@@ -0,0 +1,112 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.wso2.carbon.identity.scim2.common.metrics;
+
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.testng.PowerMockTestCase;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+import org.wso2.carbon.identity.core.util.IdentityUtil;
+import org.wso2.carbon.user.core.UserStoreManager;
+import org.wso2.carbon.user.core.claim.ClaimManager;
+
+import static org.mockito.Mockito.mock;
+import static org.powermock.api.mockito.PowerMockito.mockStatic;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+/*
+ * Unit tests for SCIMRequestContext
+ */
+@PrepareForTest({IdentityUtil.class})
+public class SCIMRequestContextTest extends PowerMockTestCase {
+
+    private SCIMRequestContext requestContext;
+
+    @BeforeMethod
+    public void setUp() throws Exception {
+
+        mockStatic(IdentityUtil.class);
+        SCIMMetrics.getInstance().setEnabled(true);
+        requestContext = SCIMRequestContext.start();
+    }
+
+    @AfterMethod
+    public void tearDown() throws Exception {
+
+        requestContext.end();
+        SCIMMetrics.getInstance().setEnabled(false);
+    }
+
+    @Test
+    public void testCallsOfWrappedServices() throws Exception {
+
+        UserStoreManager userStoreManager = UserStoreCallCounter.wrap(mock(UserStoreManager.class));
+        ClaimManager claimManager = ClaimManagerCallCounter.wrap(mock(ClaimManager.class));
+
+        userStoreManager.getUserClaimValue("testUser1", "http://wso2.org/claims/userid", null);
+        userStoreManager.getUserClaimValue("testUser2", "http://wso2.org/claims/userid", null);
+        userStoreManager.getTenantId();
+        claimManager.getAllClaimMappings("urn:ietf:params:scim:schemas:core:2.0");
+        SCIMRequestContext.startIdentityDBCall("getSCIMGroupAttributes");
+        SCIMRequestContext.endIdentityDBCall();
+
+        assertEquals(requestContext.getCallCount(DownstreamService.USER_STORE), 2);
+        assertEquals(requestContext.getCallCount(DownstreamService.CLAIM_MANAGER), 1);
+        assertEquals(requestContext.getCallCount(DownstreamService.IDENTITY_DB), 1);
+        assertTrue(requestContext.getCallSummary().contains("userStore.getUserClaimValue=2/"));
+        assertTrue(requestContext.getServerTiming().startsWith("userStore;desc=\"2 calls\";dur="));
+    }
+
+    @Test
+    public void testNestedIdentityDBCalls() throws Exception {
+
+        SCIMRequestContext.startIdentityDBCall("addSCIMGroupAttributes");
+        SCIMRequestContext.startIdentityDBCall("getExistingAttributeNames");
+        SCIMRequestContext.endIdentityDBCall();
+        assertEquals(requestContext.getCallCount(DownstreamService.IDENTITY_DB), 0);
+        SCIMRequestContext.endIdentityDBCall();
+
+        // The nested call is a part of the outer call, so a single call is recorded against the outer method.
+        assertEquals(requestContext.getCallCount(DownstreamService.IDENTITY_DB), 1);
+        assertTrue(requestContext.getCallSummary().contains("identityDB.addSCIMGroupAttributes=1/"));
+        assertFalse(requestContext.getCallSummary().contains("getExistingAttributeNames"));
+
+        // An end without a start is ignored.
+        SCIMRequestContext.endIdentityDBCall();
+        assertEquals(requestContext.getCallCount(DownstreamService.IDENTITY_DB), 1);
+    }
+
+    @Test
+    public void testEnd() throws Exception {
+
+        assertSame(SCIMRequestContext.getCurrent(), requestContext);
+        requestContext.end();
+        assertNull(SCIMRequestContext.getCurrent());
+
+        // Calls made after the request ended are not recorded.
+        SCIMRequestContext.recordCall(DownstreamService.USER_STORE, "getUserList", System.nanoTime());
+        assertEquals(requestContext.getCallCount(DownstreamService.USER_STORE), 0);
+    }
+}
@@ -30,6 +30,8 @@ import org.wso2.carbon.identity.core.util.IdentityUtil;
 import org.wso2.carbon.identity.scim2.common.exceptions.IdentitySCIMException;
 import org.wso2.carbon.identity.scim2.common.group.SCIMGroupHandler;
 import org.wso2.carbon.identity.scim2.common.internal.SCIMCommonComponentHolder;
+import org.wso2.carbon.identity.scim2.common.metrics.SCIMComponentStats;
+import org.wso2.carbon.identity.scim2.common.test.utils.CommonTestUtils;
 import org.wso2.carbon.stratos.common.util.ClaimsMgtUtil;
 import org.wso2.carbon.user.api.RealmConfiguration;
 import org.wso2.carbon.user.api.UserRealm;
@@ -37,15 +39,19 @@ import org.wso2.carbon.user.api.UserStoreException;
 import org.wso2.carbon.user.core.UserStoreManager;
 import org.wso2.carbon.user.core.service.RealmService;
 import org.wso2.carbon.user.core.util.UserCoreUtil;
+import org.wso2.carbon.utils.multitenancy.MultitenantConstants;
 import org.wso2.charon3.core.schema.SCIMConstants;
 
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
 
 import static org.mockito.Matchers.anyInt;
 import static org.mockito.Matchers.anyObject;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
+import static org.powermock.api.mockito.PowerMockito.mock;
 import static org.powermock.api.mockito.PowerMockito.mockStatic;
 import static org.powermock.api.mockito.PowerMockito.when;
 import static org.powermock.api.mockito.PowerMockito.whenNew;
@@ -187,4 +193,28 @@ public class AdminAttributeUtilTest extends PowerMockTestCase {
         verify(scimGroupHandler.isGroupExisting(anyString()));
     }
 
+    @Test
+    public void testScheduleAdminAttributesUpdate() throws Exception {
+        ExecutorService executorService = mock(ExecutorService.class);
+        CommonTestUtils.initPrivilegedCarbonContext();
+        mockStatic(SCIMCommonComponentHolder.class);
+        when(SCIMCommonComponentHolder.getExecutorService()).thenReturn(executorService);
+        when(SCIMCommonComponentHolder.getRealmService()).thenReturn(realmService);
+        when(realmService.getTenantUserRealm(anyInt())).thenReturn(userRealm);
+        when(userRealm.getUserStoreManager()).thenReturn(userStoreManager);
+
+        AdminAttributeUtil.scheduleAdminAttributesUpdate(MultitenantConstants.SUPER_TENANT_ID);
+        // Requests for a tenant waiting to be updated are coalesced.
+        AdminAttributeUtil.scheduleAdminAttributesUpdate(MultitenantConstants.SUPER_TENANT_ID);
+        assertEquals(AdminAttributeUtil.getPendingAdminAttributesUpdateCount(), 1);
+        // The pending updates are published through the component metrics MBean.
+        assertEquals(new SCIMComponentStats().getPendingAdminAttributesUpdateCount(), 1);
+
+        ArgumentCaptor<Runnable> argument = ArgumentCaptor.forClass(Runnable.class);
+        verify(executorService, times(1)).execute(argument.capture());
+        argument.getValue().run();
+
+        assertEquals(AdminAttributeUtil.getPendingAdminAttributesUpdateCount(), 0);
+        verify(realmService, times(2)).getTenantUserRealm(MultitenantConstants.SUPER_TENANT_ID);
+    }
 }
@@ -115,6 +115,17 @@ public class SCIMConfigProcessorTest {
 
     }
 
+    @Test
+    public void testConfigVersion() throws Exception {
+        String filePath = Paths.get(System.getProperty("user.dir"), "src", "test", "resources",
+                "charon-config-test.xml").toString();
+        long configVersion = scimConfigProcessor.getConfigVersion();
+        scimConfigProcessor.buildConfigFromFile(filePath);
+        assertEquals(scimConfigProcessor.getConfigVersion(), configVersion + 1);
+        scimConfigProcessor.updateConfigVersion();
+        assertEquals(scimConfigProcessor.getConfigVersion(), configVersion + 2);
+    }
+
     @Test
     public void testGetInstance() throws Exception {
         SCIMConfigProcessor scimConfigProcessor1 = scimConfigProcessor.getInstance();
@@ -0,0 +1,81 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.wso2.carbon.identity.scim2.common.utils;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.Test;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotEquals;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+public class SCIMDateTimeFormatterTest {
+
+    @AfterMethod
+    public void tearDown() {
+
+        SCIMDateTimeFormatter.setClock(null);
+    }
+
+    @Test
+    public void testFormatNow() {
+
+        Instant instant = Instant.parse("2018-01-01T10:00:00.123456Z");
+        SCIMDateTimeFormatter.setClock(Clock.fixed(instant, ZoneOffset.UTC));
+
+        String formattedNow = SCIMDateTimeFormatter.formatNow();
+        assertEquals(formattedNow, "2018-01-01T10:00:00.123Z");
+        // Timestamps of the same millisecond share the formatted value.
+        assertSame(SCIMDateTimeFormatter.formatNow(), formattedNow);
+        assertSame(SCIMDateTimeFormatter.format(SCIMDateTimeFormatter.now()), formattedNow);
+    }
+
+    @Test
+    public void testFormat() {
+
+        assertEquals(SCIMDateTimeFormatter.format(Instant.parse("2018-01-01T10:00:00Z")), "2018-01-01T10:00:00Z");
+        assertEquals(SCIMDateTimeFormatter.format(Instant.parse("2018-01-01T10:00:00.001Z")),
+                "2018-01-01T10:00:00.001Z");
+        assertNotEquals(SCIMDateTimeFormatter.format(Instant.parse("2018-01-01T10:00:00.002Z")),
+                "2018-01-01T10:00:00.001Z");
+    }
+
+    @Test
+    public void testFormatNewVersion() {
+
+        SCIMDateTimeFormatter.setClock(Clock.fixed(Instant.parse("2030-01-01T10:00:00.123Z"), ZoneOffset.UTC));
+
+        // Versions stamped in the same millisecond are still unique and ordered.
+        String version = SCIMDateTimeFormatter.formatNewVersion();
+        String nextVersion = SCIMDateTimeFormatter.formatNewVersion();
+        assertEquals(version, "2030-01-01T10:00:00.123Z");
+        assertEquals(nextVersion, "2030-01-01T10:00:00.123001Z");
+        assertTrue(Instant.parse(nextVersion).isAfter(Instant.parse(version)));
+
+        // A later time is used as it is.
+        SCIMDateTimeFormatter.setClock(Clock.fixed(Instant.parse("2030-01-01T10:00:01Z"), ZoneOffset.UTC));
+        assertEquals(SCIMDateTimeFormatter.formatNewVersion(), "2030-01-01T10:00:01Z");
+    }
+}
@@ -0,0 +1,219 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.wso2.carbon.identity.scim2.common.utils;
+
+import org.mockito.Mock;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.testng.PowerMockTestCase;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+import org.wso2.carbon.identity.core.util.IdentityUtil;
+import org.wso2.carbon.identity.scim2.common.group.SCIMGroupHandler;
+import org.wso2.carbon.identity.scim2.common.internal.SCIMCommonComponentHolder;
+import org.wso2.carbon.identity.scim2.common.metrics.SCIMComponentStats;
+import org.wso2.carbon.identity.scim2.common.test.utils.CommonTestUtils;
+import org.wso2.carbon.user.api.RealmConfiguration;
+import org.wso2.carbon.user.api.Tenant;
+import org.wso2.carbon.user.api.UserRealm;
+import org.wso2.carbon.user.core.PaginatedUserStoreManager;
+import org.wso2.carbon.user.core.UserCoreConstants;
+import org.wso2.carbon.user.core.UserStoreManager;
+import org.wso2.carbon.user.core.common.AbstractUserStoreManager;
+import org.wso2.carbon.user.core.model.Condition;
+import org.wso2.carbon.user.core.model.UserClaimSearchEntry;
+import org.wso2.carbon.user.core.service.RealmService;
+import org.wso2.carbon.user.core.tenant.TenantManager;
+import org.wso2.carbon.user.core.util.UserCoreUtil;
+import org.wso2.charon3.core.schema.SCIMConstants;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyCollection;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyMap;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.withSettings;
+import static org.mockito.MockitoAnnotations.initMocks;
+import static org.powermock.api.mockito.PowerMockito.mockStatic;
+import static org.powermock.api.mockito.PowerMockito.when;
+import static org.powermock.api.mockito.PowerMockito.whenNew;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+@PrepareForTest({SCIMCommonComponentHolder.class, SCIMCommonUtils.class, UserCoreUtil.class,
+        SCIMMetadataBackfill.class, AbstractUserStoreManager.class, IdentityUtil.class})
+public class SCIMMetadataBackfillTest extends PowerMockTestCase {
+
+    private static final String USER_ID_CLAIM = "http://wso2.org/claims/userid";
+
+    @Mock
+    private ScheduledExecutorService executorService;
+
+    @Mock
+    private RealmService realmService;
+
+    @Mock
+    private TenantManager tenantManager;
+
+    @Mock
+    private UserRealm userRealm;
+
+    @Mock
+    private UserStoreManager userStoreManager;
+
+    @Mock
+    private RealmConfiguration realmConfiguration;
+
+    @Mock
+    private SCIMGroupHandler scimGroupHandler;
+
+    @BeforeMethod
+    public void setUp() throws Exception {
+        initMocks(this);
+        CommonTestUtils.initPrivilegedCarbonContext();
+
+        Map<String, String> scimToLocalClaimMap = new HashMap<>();
+        scimToLocalClaimMap.put(SCIMConstants.CommonSchemaConstants.ID_URI, USER_ID_CLAIM);
+        scimToLocalClaimMap.put(SCIMConstants.CommonSchemaConstants.CREATED_URI, "http://wso2.org/claims/created");
+        scimToLocalClaimMap.put(SCIMConstants.CommonSchemaConstants.LAST_MODIFIED_URI,
+                "http://wso2.org/claims/modified");
+        mockStatic(SCIMCommonUtils.class);
+        when(SCIMCommonUtils.getSCIMtoLocalMappings()).thenReturn(scimToLocalClaimMap);
+        mockStatic(SCIMCommonComponentHolder.class);
+        when(SCIMCommonComponentHolder.getRealmService()).thenReturn(realmService);
+        when(realmService.getTenantManager()).thenReturn(tenantManager);
+        when(tenantManager.getAllTenants()).thenReturn(new Tenant[0]);
+        when(realmService.getTenantUserRealm(anyInt())).thenReturn(userRealm);
+        when(userRealm.getUserStoreManager()).thenReturn(userStoreManager);
+        mockStatic(UserCoreUtil.class);
+        when(UserCoreUtil.extractDomainFromName(anyString())).thenReturn(UserCoreConstants.PRIMARY_DEFAULT_DOMAIN_NAME);
+        whenNew(SCIMGroupHandler.class).withAnyArguments().thenReturn(scimGroupHandler);
+
+        when(userStoreManager.isSCIMEnabled()).thenReturn(true);
+        when(userStoreManager.getRealmConfiguration()).thenReturn(realmConfiguration);
+        when(userStoreManager.getRoleNames(true)).thenReturn(new String[]{"admin", "everyone"});
+        when(scimGroupHandler.addMandatoryAttributes(anyCollection())).thenReturn(Collections.singleton("everyone"));
+        when(userStoreManager.listUsers("PRIMARY/*", -1)).thenReturn(new String[]{"alice", "bob", "carol"});
+        when(userStoreManager.getUserClaimValue("alice", USER_ID_CLAIM, null)).thenReturn("1234");
+    }
+
+    @Test
+    public void testBackfill() throws Exception {
+        SCIMMetadataBackfill metadataBackfill = new SCIMMetadataBackfill(executorService, 2, 0);
+        metadataBackfill.start();
+        assertTrue(metadataBackfill.isRunning());
+
+        // Groups of the tenant.
+        metadataBackfill.run();
+        verify(scimGroupHandler, times(1)).addMandatoryAttributes(anyCollection());
+
+        // A stopped job does not process pages until it is started again.
+        metadataBackfill.stop();
+        metadataBackfill.run();
+        verify(userStoreManager, never()).listUsers(anyString(), anyInt());
+        metadataBackfill.start();
+
+        while (metadataBackfill.isRunning()) {
+            metadataBackfill.run();
+        }
+
+        assertTrue(metadataBackfill.isCompleted());
+        assertFalse(metadataBackfill.isRunning());
+        verify(userStoreManager, never()).setUserClaimValues(eq("alice"), anyMap(), anyString());
+        verify(userStoreManager).setUserClaimValues(eq("bob"), anyMap(), eq(UserCoreConstants.DEFAULT_PROFILE));
+        verify(userStoreManager).setUserClaimValues(eq("carol"), anyMap(), eq(UserCoreConstants.DEFAULT_PROFILE));
+        verify(userStoreManager, times(1)).listUsers("PRIMARY/*", -1);
+        assertTrue(metadataBackfill.getProgress().contains("users scanned: 3, users updated: 2"));
+        assertTrue(metadataBackfill.getProgress().contains("groups updated: 1"));
+
+        // The progress is published through the component MBean.
+        when(SCIMCommonComponentHolder.getMetadataBackfill()).thenReturn(metadataBackfill);
+        SCIMComponentStats componentStats = new SCIMComponentStats();
+        assertEquals(componentStats.getMetadataBackfillState(), "COMPLETED");
+        assertEquals(componentStats.getMetadataBackfillCompletedTenants(), 1);
+        assertEquals(componentStats.getMetadataBackfillScannedUsers(), 3);
+        assertEquals(componentStats.getMetadataBackfillUpdatedUsers(), 2);
+        assertEquals(componentStats.getMetadataBackfillUpdatedGroups(), 1);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testBackfillWithEmptyPages() throws Exception {
+        new SCIMMetadataBackfill(executorService, 0, 0);
+    }
+
+    @Test
+    public void testBackfillWithInvalidPageSizeProperty() throws Exception {
+        mockStatic(IdentityUtil.class);
+        when(IdentityUtil.getProperty(SCIMMetadataBackfill.PAGE_SIZE)).thenReturn("0");
+
+        // The default page size is used instead.
+        SCIMMetadataBackfill metadataBackfill = new SCIMMetadataBackfill(executorService);
+        metadataBackfill.start();
+        while (metadataBackfill.isRunning()) {
+            metadataBackfill.run();
+        }
+        assertTrue(metadataBackfill.isCompleted());
+        assertTrue(metadataBackfill.getProgress().contains("users scanned: 3, users updated: 2"));
+    }
+
+    @Test
+    public void testBackfillOfUsersWithIdsReturnedWithoutDomain() throws Exception {
+        AbstractUserStoreManager abstractUserStoreManager = mock(AbstractUserStoreManager.class,
+                withSettings().extraInterfaces(PaginatedUserStoreManager.class));
+        when(userRealm.getUserStoreManager()).thenReturn(abstractUserStoreManager);
+        when(abstractUserStoreManager.isSCIMEnabled()).thenReturn(true);
+        when(abstractUserStoreManager.getRealmConfiguration()).thenReturn(realmConfiguration);
+        when(UserCoreUtil.getDomainName(realmConfiguration)).thenReturn("secondary");
+        when(UserCoreUtil.extractDomainFromName(anyString())).thenReturn("SECONDARY");
+        when(abstractUserStoreManager.getRoleNames(true)).thenReturn(new String[0]);
+        when(((PaginatedUserStoreManager) abstractUserStoreManager).getUserList(any(Condition.class),
+                eq("SECONDARY"), anyString(), anyInt(), anyInt(), anyString(), anyString())).thenReturn(
+                new String[]{"SECONDARY/dave", "SECONDARY/erin"});
+        UserClaimSearchEntry searchEntry = new UserClaimSearchEntry();
+        searchEntry.setUserName("dave");
+        Map<String, String> claims = new HashMap<>();
+        claims.put(USER_ID_CLAIM, "5678");
+        searchEntry.setClaims(claims);
+        when(abstractUserStoreManager.getUsersClaimValues(any(String[].class), any(String[].class), anyString()))
+                .thenReturn(new UserClaimSearchEntry[]{searchEntry});
+
+        SCIMMetadataBackfill metadataBackfill = new SCIMMetadataBackfill(executorService, 10, 0);
+        metadataBackfill.start();
+        while (metadataBackfill.isRunning()) {
+            metadataBackfill.run();
+        }
+
+        // The user store returns the name of the user with the id without the domain.
+        verify(abstractUserStoreManager, never()).setUserClaimValues(eq("SECONDARY/dave"), anyMap(), anyString());
+        verify(abstractUserStoreManager).setUserClaimValues(eq("SECONDARY/erin"), anyMap(),
+                eq(UserCoreConstants.DEFAULT_PROFILE));
+        assertTrue(metadataBackfill.getProgress().contains("users scanned: 2, users updated: 1"));
+    }
+}
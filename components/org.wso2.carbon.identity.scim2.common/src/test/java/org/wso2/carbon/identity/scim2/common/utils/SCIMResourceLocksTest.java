@@ -0,0 +1,54 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+
+package org.wso2.carbon.identity.scim2.common.utils;
+
+import org.testng.annotations.Test;
+
+import java.util.concurrent.locks.Lock;
+
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+public class SCIMResourceLocksTest {
+
+    @Test
+    public void testGetLock() {
+
+        Lock lock = SCIMResourceLocks.getLock(1, "d2c2dbe4-f5a5-4d28-a0e1-0a96bcf8c3f4");
+        assertNotNull(lock);
+        assertSame(SCIMResourceLocks.getLock(1, "d2c2dbe4-f5a5-4d28-a0e1-0a96bcf8c3f4"), lock);
+        assertNotNull(SCIMResourceLocks.getLock(-1234, null));
+    }
+
+    @Test
+    public void testLockIsReentrant() {
+
+        Lock lock = SCIMResourceLocks.getLock(1, "group1");
+        lock.lock();
+        try {
+            assertTrue(SCIMResourceLocks.getLock(1, "group1").tryLock());
+            SCIMResourceLocks.getLock(1, "group1").unlock();
+        } finally {
+            lock.unlock();
+        }
+    }
+}
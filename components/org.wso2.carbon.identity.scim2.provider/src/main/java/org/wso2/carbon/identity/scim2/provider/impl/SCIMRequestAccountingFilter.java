@@ -0,0 +1,76 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.wso2.carbon.identity.scim2.provider.impl;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.wso2.carbon.identity.scim2.common.metrics.SCIMMetrics;
+import org.wso2.carbon.identity.scim2.common.metrics.SCIMRequestContext;
+import org.wso2.carbon.identity.scim2.provider.util.SCIMProviderConstants;
+
+import java.io.IOException;
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.container.ContainerRequestFilter;
+import javax.ws.rs.container.ContainerResponseContext;
+import javax.ws.rs.container.ContainerResponseFilter;
+import javax.ws.rs.ext.Provider;
+
+/**
+ * Accounts the user store, claim manager and identity database calls made by each SCIM request. When debug logs are
+ * enabled for this class, the calls are returned in the Server-Timing header of the response. Requests which take
+ * longer than SCIM.Metrics.SlowRequestThreshold are logged along with their calls.
+ */
+@Provider
+public class SCIMRequestAccountingFilter implements ContainerRequestFilter, ContainerResponseFilter {
+
+    private static final Log log = LogFactory.getLog(SCIMRequestAccountingFilter.class);
+
+    @Override
+    public void filter(ContainerRequestContext requestContext) throws IOException {
+
+        if (SCIMMetrics.getInstance().isEnabled()) {
+            SCIMRequestContext.start();
+        }
+    }
+
+    @Override
+    public void filter(ContainerRequestContext requestContext, ContainerResponseContext responseContext)
+            throws IOException {
+
+        SCIMRequestContext scimRequestContext = SCIMRequestContext.getCurrent();
+        if (scimRequestContext == null) {
+            return;
+        }
+        scimRequestContext.end();
+
+        if (log.isDebugEnabled()) {
+            responseContext.getHeaders().add(SCIMProviderConstants.SERVER_TIMING_HEADER,
+                    scimRequestContext.getServerTiming());
+        }
+        int slowRequestThreshold = SCIMMetrics.getInstance().getSlowRequestThresholdMillis();
+        long elapsedTime = scimRequestContext.getElapsedTimeMillis();
+        if (slowRequestThreshold >= 0 && elapsedTime > slowRequestThreshold) {
+            log.warn("Slow SCIM request: method=" + requestContext.getMethod() + ", path=" +
+                    requestContext.getUriInfo().getRequestUri().getPath() + ", status=" +
+                    responseContext.getStatus() + ", timeMs=" + elapsedTime + ", " +
+                    scimRequestContext.getCallSummary());
+        }
+    }
+}
@@ -0,0 +1,200 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.wso2.carbon.identity.scim2.provider.impl;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.wso2.carbon.identity.core.util.IdentityUtil;
+import org.wso2.carbon.identity.scim2.provider.util.SCIMResponseEntity;
+
+import java.io.IOException;
+import java.util.Locale;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.container.ContainerResponseContext;
+import javax.ws.rs.container.ContainerResponseFilter;
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.ext.Provider;
+import javax.ws.rs.ext.WriterInterceptor;
+import javax.ws.rs.ext.WriterInterceptorContext;
+
+/**
+ * Compresses the SCIM responses which are larger than SCIM.Compression.Threshold bytes (1024 by default) with gzip
+ * or deflate, as negotiated through the Accept-Encoding header of the request. The response is compressed while it
+ * is written to the output stream, without buffering the compressed response. Compression can be disabled with
+ * SCIM.Compression.Enable.
+ *
+ * Responses with a strong ETag are not compressed, as the ETag identifies the uncompressed representation.
+ */
+@Provider
+public class SCIMResponseCompressionFilter implements ContainerResponseFilter, WriterInterceptor {
+
+    private static final Log log = LogFactory.getLog(SCIMResponseCompressionFilter.class);
+    private static final String ENABLE = "SCIM.Compression.Enable";
+    private static final String THRESHOLD = "SCIM.Compression.Threshold";
+    private static final int DEFAULT_THRESHOLD = 1024;
+    private static final String GZIP = "gzip";
+    private static final String X_GZIP = "x-gzip";
+    private static final String DEFLATE = "deflate";
+    private static final String ANY_ENCODING = "*";
+    private static final String VARY_HEADER = "Vary";
+    private static final int BUFFER_SIZE = 8192;
+
+    private final boolean enabled;
+    private final int threshold;
+
+    public SCIMResponseCompressionFilter() {
+
+        enabled = !"false".equalsIgnoreCase(IdentityUtil.getProperty(ENABLE));
+        threshold = getThreshold();
+    }
+
+    @Override
+    public void filter(ContainerRequestContext requestContext, ContainerResponseContext responseContext)
+            throws IOException {
+
+        if (!enabled || getEntityLength(responseContext.getEntity()) < threshold ||
+                responseContext.getHeaders().containsKey(HttpHeaders.CONTENT_ENCODING)) {
+            return;
+        }
+        EntityTag entityTag = responseContext.getEntityTag();
+        if (entityTag != null && !entityTag.isWeak()) {
+            return;
+        }
+        responseContext.getHeaders().add(VARY_HEADER, HttpHeaders.ACCEPT_ENCODING);
+        String encoding = getEncoding(requestContext.getHeaderString(HttpHeaders.ACCEPT_ENCODING));
+        if (encoding != null) {
+            responseContext.getHeaders().putSingle(HttpHeaders.CONTENT_ENCODING, encoding);
+        }
+    }
+
+    @Override
+    public void aroundWriteTo(WriterInterceptorContext context) throws IOException, WebApplicationException {
+
+        Object encoding = context.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING);
+        DeflaterOutputStream compressedStream;
+        if (GZIP.equals(encoding)) {
+            compressedStream = new GZIPOutputStream(context.getOutputStream(), BUFFER_SIZE);
+        } else if (DEFLATE.equals(encoding)) {
+            compressedStream = new DeflaterOutputStream(context.getOutputStream());
+        } else {
+            context.proceed();
+            return;
+        }
+        // the length of the uncompressed entity doesn't apply to the compressed response.
+        context.getHeaders().remove(HttpHeaders.CONTENT_LENGTH);
+        context.setOutputStream(compressedStream);
+        try {
+            context.proceed();
+        } finally {
+            // the underlying stream is closed by the container.
+            compressedStream.finish();
+        }
+    }
+
+    /**
+     * Get the length of the entity of a response, if it is a payload of a known length.
+     *
+     * @param entity Entity of the response.
+     * @return Length of the entity in bytes, or -1 if the entity is not a payload of a known length.
+     */
+    private static int getEntityLength(Object entity) {
+
+        if (entity instanceof SCIMResponseEntity) {
+            return ((SCIMResponseEntity) entity).getLength();
+        }
+        if (entity instanceof byte[]) {
+            return ((byte[]) entity).length;
+        }
+        return -1;
+    }
+
+    /**
+     * Select the encoding of the response from the Accept-Encoding header of the request, preferring gzip over
+     * deflate unless deflate has a higher quality.
+     *
+     * @param acceptEncoding Accept-Encoding header.
+     * @return gzip, deflate, or null if the response is not to be compressed.
+     */
+    private static String getEncoding(String acceptEncoding) {
+
+        if (StringUtils.isBlank(acceptEncoding)) {
+            return null;
+        }
+        double gzipQuality = -1;
+        double deflateQuality = -1;
+        double anyQuality = -1;
+        for (String codingWithParameters : acceptEncoding.split(",")) {
+            String[] parts = codingWithParameters.split(";");
+            String coding = parts[0].trim().toLowerCase(Locale.ENGLISH);
+            if (GZIP.equals(coding) || X_GZIP.equals(coding)) {
+                gzipQuality = getQuality(parts);
+            } else if (DEFLATE.equals(coding)) {
+                deflateQuality = getQuality(parts);
+            } else if (ANY_ENCODING.equals(coding)) {
+                anyQuality = getQuality(parts);
+            }
+        }
+        // codings which are not listed get the quality of *, if it is listed.
+        if (gzipQuality < 0) {
+            gzipQuality = anyQuality;
+        }
+        if (deflateQuality < 0) {
+            deflateQuality = anyQuality;
+        }
+        if (gzipQuality > 0 && gzipQuality >= deflateQuality) {
+            return GZIP;
+        }
+        return deflateQuality > 0 ? DEFLATE : null;
+    }
+
+    private static double getQuality(String[] parts) {
+
+        for (int i = 1; i < parts.length; i++) {
+            String parameter = parts[i].trim();
+            if (parameter.startsWith("q=")) {
+                try {
+                    return Double.parseDouble(parameter.substring(2).trim());
+                } catch (NumberFormatException e) {
+                    return 0;
+                }
+            }
+        }
+        return 1;
+    }
+
+    private static int getThreshold() {
+
+        String value = IdentityUtil.getProperty(THRESHOLD);
+        if (StringUtils.isNotBlank(value)) {
+            try {
+                return Integer.parseInt(value.trim());
+            } catch (NumberFormatException e) {
+                log.warn("Invalid value: " + value + " for " + THRESHOLD + ". Using the default value: " +
+                        DEFAULT_THRESHOLD);
+            }
+        }
+        return DEFAULT_THRESHOLD;
+    }
+}
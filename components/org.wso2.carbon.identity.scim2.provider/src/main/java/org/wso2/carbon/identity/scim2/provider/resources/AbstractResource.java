@@ -21,17 +21,44 @@ package org.wso2.carbon.identity.scim2.provider.resources;
 import org.apache.commons.lang.StringUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.wso2.carbon.identity.scim2.common.impl.IdentitySCIMManager;
+import org.wso2.carbon.identity.scim2.common.impl.SCIMUserManager;
+import org.wso2.carbon.identity.scim2.common.metrics.SCIMFilterExplain;
+import org.wso2.carbon.identity.scim2.common.metrics.SCIMRequestContext;
+import org.wso2.carbon.identity.scim2.provider.util.EntityTagUtils;
 import org.wso2.carbon.identity.scim2.provider.util.SCIMProviderConstants;
 import org.wso2.carbon.identity.scim2.provider.util.SupportUtils;
 import org.wso2.charon3.core.encoder.JSONEncoder;
+import org.wso2.charon3.core.exceptions.BadRequestException;
 import org.wso2.charon3.core.exceptions.CharonException;
 import org.wso2.charon3.core.exceptions.FormatNotSupportedException;
+import org.wso2.charon3.core.extensions.UserManager;
+import org.wso2.charon3.core.objects.AbstractSCIMObject;
+import org.wso2.charon3.core.protocol.ResponseCodeConstants;
+import org.wso2.charon3.core.protocol.SCIMResponse;
 import org.wso2.charon3.core.protocol.endpoints.AbstractResourceManager;
+import org.wso2.charon3.core.schema.SCIMConstants;
+import org.wso2.charon3.core.schema.SCIMResourceTypeSchema;
+import org.wso2.charon3.core.schema.ServerSideValidator;
+import org.wso2.charon3.core.utils.CopyUtil;
+import org.wso2.charon3.core.utils.ResourceManagerUtil;
+import org.wso2.charon3.core.utils.codeutils.PatchOperation;
 
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.Lock;
+import javax.ws.rs.core.EntityTag;
 import javax.ws.rs.core.Response;
 
 public class AbstractResource {
     private static Log logger = LogFactory.getLog(AbstractResource.class);
+    private static final int MAX_CACHED_FORMATS = 256;
+    // Accept and Content-Type header values already evaluated, shared by all the resources.
+    private static final ConcurrentMap<String, Boolean> outputFormats = new ConcurrentHashMap<>();
+    private static final ConcurrentMap<String, Boolean> inputFormats = new ConcurrentHashMap<>();
     private JSONEncoder defaultEncoder = new JSONEncoder();
 
     //identify the output format
@@ -40,30 +67,61 @@ public class AbstractResource {
         if (format == null) {
             return true;
         }
-        if (!StringUtils.contains(format, ",")) {
-            return isValidInputFormat(format);
-        } else {
-            String[] responseFormats = format.split(",");
-            for (String responseFormat : responseFormats) {
-                if (responseFormat != null) {
-                    responseFormat = responseFormat.trim();
-                    boolean validJSONOutputFormat = isValidJSONOutputFormat(responseFormat);
-                    if (validJSONOutputFormat) {
-                        return true;
-                    }
-                }
-            }
-            return false;
+        Boolean validFormat = outputFormats.get(format);
+        if (validFormat == null) {
+            validFormat = evaluateOutputFormat(format);
+            cacheFormat(outputFormats, format, validFormat);
         }
+        return validFormat;
     }
+
     //identify the input format
     public boolean isValidInputFormat(String format) {
-        return format == null || "*/*".equals(format) ||
+
+        if (format == null) {
+            return true;
+        }
+        Boolean validFormat = inputFormats.get(format);
+        if (validFormat == null) {
+            validFormat = evaluateInputFormat(format);
+            cacheFormat(inputFormats, format, validFormat);
+        }
+        return validFormat;
+    }
+
+    private boolean evaluateOutputFormat(String format) {
+
+        if (!StringUtils.contains(format, ",")) {
+            return evaluateInputFormat(format);
+        }
+        String[] responseFormats = format.split(",");
+        for (String responseFormat : responseFormats) {
+            if (responseFormat != null && isValidJSONOutputFormat(responseFormat.trim())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean evaluateInputFormat(String format) {
+
+        return "*/*".equals(format) ||
                 format.equalsIgnoreCase(SCIMProviderConstants.APPLICATION__JSON)
                 || format.equalsIgnoreCase(SCIMProviderConstants.APPLICATION_SCIM_JSON)
                 || format.equalsIgnoreCase(SCIMProviderConstants.APPLICATION_ALL);
     }
 
+    /**
+     * Remember the decision for a header value. Clients send only a few distinct values, so once the cache is full
+     * further values are evaluated on each request rather than letting arbitrary headers grow the cache.
+     */
+    private static void cacheFormat(ConcurrentMap<String, Boolean> formats, String format, Boolean validFormat) {
+
+        if (formats.size() < MAX_CACHED_FORMATS) {
+            formats.putIfAbsent(format, validFormat);
+        }
+    }
+
     /**
      * Build an error message for a Charon exception. We go with the
      * JSON encoder as default if not specified.
@@ -107,6 +165,64 @@ public class AbstractResource {
                 AbstractResourceManager.encodeSCIMException(e));
     }
 
+    /**
+     * Run a SCIM request which has no body: validate the output format, resolve the encoder and the user manager once
+     * for the request, and run the operation. Charon errors are returned as SCIM error responses.
+     *
+     * @param outputFormat Accept header of the request.
+     * @param operation    Operation of the request.
+     * @return Response.
+     */
+    protected Response processRequest(String outputFormat, ResourceOperation operation) {
+
+        return processRequest(null, false, outputFormat, operation);
+    }
+
+    /**
+     * Run a SCIM request which has a body, for which the Content-Type header is compulsory.
+     *
+     * @param inputFormat  Content-Type header of the request.
+     * @param outputFormat Accept header of the request.
+     * @param operation    Operation of the request.
+     * @return Response.
+     * @see #processRequest(String, ResourceOperation)
+     */
+    protected Response processRequest(String inputFormat, String outputFormat, ResourceOperation operation) {
+
+        return processRequest(inputFormat, true, outputFormat, operation);
+    }
+
+    private Response processRequest(String inputFormat, boolean hasBody, String outputFormat,
+                                    ResourceOperation operation) {
+
+        JSONEncoder encoder = null;
+        try {
+            if (hasBody) {
+                // content-type header is compulsory in requests with a body.
+                if (inputFormat == null) {
+                    String error = SCIMProviderConstants.CONTENT_TYPE + " not present in the request header";
+                    throw new FormatNotSupportedException(error);
+                }
+                if (!isValidInputFormat(inputFormat)) {
+                    String error = inputFormat + " is not supported.";
+                    throw new FormatNotSupportedException(error);
+                }
+            }
+            if (!isValidOutputFormat(outputFormat)) {
+                String error = outputFormat + " is not supported.";
+                throw new FormatNotSupportedException(error);
+            }
+            IdentitySCIMManager identitySCIMManager = IdentitySCIMManager.getInstance();
+            // obtain the encoder at this layer in case exceptions needs to be encoded.
+            encoder = identitySCIMManager.getEncoder();
+            return operation.execute(identitySCIMManager.getUserManager(), encoder);
+        } catch (CharonException e) {
+            return handleCharonException(e, encoder);
+        } catch (FormatNotSupportedException e) {
+            return handleFormatNotSupportedException(e);
+        }
+    }
+
     protected boolean isValidJSONOutputFormat(String format) {
 
         return "*/*".equals(format) ||
@@ -114,4 +230,279 @@ public class AbstractResource {
                 || format.equalsIgnoreCase(SCIMProviderConstants.APPLICATION_SCIM_JSON) ||
                 format.equalsIgnoreCase("application/*");
     }
+
+    /**
+     * Decode the operations of a PATCH request.
+     *
+     * @param resourceString PATCH request body.
+     * @return PATCH operations, or null if the request can not be decoded. Such requests are left to charon, which
+     * reports the errors of the request.
+     */
+    protected List<PatchOperation> decodePatchOperations(String resourceString) {
+
+        try {
+            return AbstractResourceManager.getDecoder().decodeRequest(resourceString);
+        } catch (BadRequestException | CharonException e) {
+            if (logger.isDebugEnabled()) {
+                logger.debug("Error while decoding the PATCH request.", e);
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Get the attribute URIs which are required in the response, as charon computes them for its endpoints.
+     *
+     * @param schema             Resource schema.
+     * @param attributes         Attributes requested in the request.
+     * @param excludedAttributes Attributes excluded in the request.
+     * @return Required attribute URIs.
+     * @throws CharonException
+     */
+    protected Map<String, Boolean> getRequiredAttributes(SCIMResourceTypeSchema schema, String attributes,
+                                                         String excludedAttributes) throws CharonException {
+
+        return ResourceManagerUtil.getOnlyRequiredAttributesURIs((SCIMResourceTypeSchema) CopyUtil.deepCopy(schema),
+                attributes, excludedAttributes);
+    }
+
+    /**
+     * Build the response of a resource updated through PATCH, in the same form as the charon PATCH response.
+     *
+     * @param resource           Updated resource.
+     * @param id                 Id of the resource.
+     * @param endpoint           Endpoint of the resource.
+     * @param encoder            Encoder.
+     * @param attributes         Attributes requested in the request.
+     * @param excludedAttributes Attributes excluded in the request.
+     * @return SCIM response.
+     * @throws CharonException
+     */
+    protected SCIMResponse buildPatchResponse(AbstractSCIMObject resource, String id, String endpoint,
+                                              JSONEncoder encoder, String attributes, String excludedAttributes)
+            throws CharonException {
+
+        // skip the attributes which are not requested to be returned.
+        AbstractSCIMObject copiedResource = (AbstractSCIMObject) CopyUtil.deepCopy(resource);
+        ServerSideValidator.validateReturnedAttributes(copiedResource, attributes, excludedAttributes);
+        String encodedResource = encoder.encodeSCIMObject(copiedResource);
+
+        Map<String, String> httpHeaders = new HashMap<>();
+        httpHeaders.put(SCIMConstants.LOCATION_HEADER, AbstractResourceManager.getResourceEndpointURL(endpoint) +
+                "/" + id);
+        httpHeaders.put(SCIMConstants.CONTENT_TYPE_HEADER, SCIMConstants.APPLICATION_JSON);
+        return new SCIMResponse(ResponseCodeConstants.CODE_OK, encodedResource, httpHeaders);
+    }
+
+    /**
+     * Add the explanation of the user filter executed by the request to the response, as the
+     * X-SCIM-Filter-Explain header, if the request asked for it with debug=explain and the user is an admin. The header
+     * is cut to SCIMProviderConstants.MAX_FILTER_EXPLAIN_HEADER_LENGTH, so that it stays within the header size limit
+     * of the container.
+     *
+     * @param response Response.
+     * @param debug    Value of the debug query parameter.
+     * @return Response, with the explanation if it is available.
+     */
+    protected Response addFilterExplain(Response response, String debug) {
+
+        if (!SCIMProviderConstants.DEBUG_EXPLAIN.equalsIgnoreCase(debug)) {
+            return response;
+        }
+        SCIMRequestContext requestContext = SCIMRequestContext.getCurrent();
+        SCIMFilterExplain filterExplain = requestContext == null ? null : requestContext.getFilterExplain();
+        if (filterExplain == null) {
+            return response;
+        }
+        try {
+            if (!IdentitySCIMManager.getInstance().isAuthenticatedUserAuthorized(
+                    SCIMProviderConstants.ADMIN_PERMISSION)) {
+                if (logger.isDebugEnabled()) {
+                    logger.debug("Filter explanation is not returned as the user is not an admin.");
+                }
+                return response;
+            }
+        } catch (CharonException e) {
+            logger.error("Error while checking whether the user is authorized to get the filter explanation.", e);
+            return response;
+        }
+        return Response.fromResponse(response).header(SCIMProviderConstants.FILTER_EXPLAIN_HEADER,
+                filterExplain.toJSONString(true, SCIMProviderConstants.MAX_FILTER_EXPLAIN_HEADER_LENGTH)).build();
+    }
+
+    /**
+     * Get the weak ETag of a user, from the last modified time of the user, without building the user.
+     *
+     * @param userManager User manager.
+     * @param id          SCIM id of the user.
+     * @return ETag, or null if the user doesn't exist or its last modified time is not known.
+     * @throws CharonException
+     */
+    protected EntityTag getUserEntityTag(UserManager userManager, String id) throws CharonException {
+
+        if (!(userManager instanceof SCIMUserManager)) {
+            return null;
+        }
+        return EntityTagUtils.getEntityTag(id, ((SCIMUserManager) userManager).getUserVersion(id));
+    }
+
+    /**
+     * Get the weak ETag of a group, from the last modified time of the group, without reading the members.
+     *
+     * @param userManager User manager.
+     * @param id          SCIM id of the group.
+     * @return ETag, or null if the group doesn't exist or its last modified time is not known.
+     * @throws CharonException
+     */
+    protected EntityTag getGroupEntityTag(UserManager userManager, String id) throws CharonException {
+
+        if (!(userManager instanceof SCIMUserManager)) {
+            return null;
+        }
+        return EntityTagUtils.getEntityTag(id, ((SCIMUserManager) userManager).getGroupVersion(id));
+    }
+
+    /**
+     * Add the ETag of the user or group returned by a successful request. The ETag is taken from the version read
+     * while building the resource, so that it is not read again, and the version is read only if it was not read
+     * with the resource, e.g. when meta is excluded from the response.
+     *
+     * @param response    Response.
+     * @param userManager User manager which built the resource.
+     * @param id          SCIM id of the resource.
+     * @param group       Whether the resource is a group.
+     * @return Response, with the ETag if the request was successful and the version of the resource is known.
+     * @throws CharonException
+     */
+    protected Response addBuiltEntityTag(Response response, UserManager userManager, String id, boolean group)
+            throws CharonException {
+
+        if (response.getStatus() != Response.Status.OK.getStatusCode() ||
+                !(userManager instanceof SCIMUserManager)) {
+            return response;
+        }
+        EntityTag entityTag = EntityTagUtils.getEntityTag(id,
+                ((SCIMUserManager) userManager).getBuiltResourceVersion(id));
+        if (entityTag == null) {
+            entityTag = group ? getGroupEntityTag(userManager, id) : getUserEntityTag(userManager, id);
+        }
+        return addEntityTag(response, entityTag);
+    }
+
+    /**
+     * Evaluate the If-None-Match header of a GET request against the current ETag of the resource.
+     *
+     * @param ifNoneMatch Value of the If-None-Match header.
+     * @param entityTag   Current ETag of the resource, or null if it is not known.
+     * @return 304 response if the client has the current version of the resource, or null to build the resource.
+     */
+    protected Response evaluateIfNoneMatch(String ifNoneMatch, EntityTag entityTag) {
+
+        if (EntityTagUtils.matches(ifNoneMatch, entityTag)) {
+            return Response.notModified(entityTag).build();
+        }
+        return null;
+    }
+
+    /**
+     * Evaluate the If-Match header of a PUT or PATCH request against the current ETag of the resource, so that
+     * clients can avoid overwriting the changes made since they read the resource.
+     *
+     * @param ifMatch   Value of the If-Match header.
+     * @param entityTag Current ETag of the resource, or null if it is not known.
+     * @return 412 response if the header doesn't match the current version, or null to apply the request.
+     */
+    protected Response evaluateIfMatch(String ifMatch, EntityTag entityTag) {
+
+        if (StringUtils.isBlank(ifMatch) || EntityTagUtils.matches(ifMatch, entityTag)) {
+            return null;
+        }
+        if (entityTag == null && EntityTagUtils.isAnyTag(ifMatch)) {
+            // The resource may still exist with an unknown version. Charon reports it if it doesn't.
+            return null;
+        }
+        CharonException e = new CharonException("The resource has been modified or its version is not known.");
+        e.setStatus(Response.Status.PRECONDITION_FAILED.getStatusCode());
+        Response response = SupportUtils.buildResponse(AbstractResourceManager.encodeSCIMException(e));
+        if (entityTag == null) {
+            return response;
+        }
+        return Response.fromResponse(response).tag(entityTag).build();
+    }
+
+    /**
+     * Apply an update of a user or a group, evaluating its If-Match header, if it is present, against the version of
+     * the resource. A conditional update holds the lock of the resource from the comparison until the update is
+     * applied, so that two conditional updates of the resource on this node don't both match the same version.
+     *
+     * Updates without If-Match, including the updates of /Me, are applied without the lock, so that they don't queue
+     * behind each other or behind updates of unrelated resources. The check is best effort: a conditional update can
+     * still overwrite a change made after the comparison by an unconditional update, by another node of a cluster, or
+     * through another API of the user store.
+     *
+     * @param ifMatch     Value of the If-Match header.
+     * @param userManager User manager of the tenant of the request.
+     * @param encoder     Encoder.
+     * @param id          SCIM id of the resource.
+     * @param group       Whether the resource is a group.
+     * @param update      Update of the resource, run if the precondition holds.
+     * @return 412 response if the header doesn't match the current version of the resource, or the response of the
+     * update.
+     * @throws CharonException
+     */
+    protected Response processConditionalUpdate(String ifMatch, UserManager userManager, JSONEncoder encoder,
+                                                String id, boolean group, ResourceOperation update)
+            throws CharonException {
+
+        if (StringUtils.isBlank(ifMatch)) {
+            return update.execute(userManager, encoder);
+        }
+        Lock lock = null;
+        if (userManager instanceof SCIMUserManager) {
+            lock = ((SCIMUserManager) userManager).getResourceLock(id);
+            lock.lock();
+        }
+        try {
+            EntityTag entityTag = group ? getGroupEntityTag(userManager, id) : getUserEntityTag(userManager, id);
+            Response preconditionFailedResponse = evaluateIfMatch(ifMatch, entityTag);
+            if (preconditionFailedResponse != null) {
+                return preconditionFailedResponse;
+            }
+            return update.execute(userManager, encoder);
+        } finally {
+            if (lock != null) {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Add the ETag of the resource to a successful response.
+     *
+     * @param response  Response.
+     * @param entityTag ETag of the resource, or null if it is not known.
+     * @return Response, with the ETag if the request was successful.
+     */
+    protected Response addEntityTag(Response response, EntityTag entityTag) {
+
+        if (entityTag == null || response.getStatusInfo().getFamily() != Response.Status.Family.SUCCESSFUL) {
+            return response;
+        }
+        return Response.fromResponse(response).tag(entityTag).build();
+    }
+
+    /**
+     * Operation of a SCIM request, run by {@link #processRequest(String, ResourceOperation)} with the user manager
+     * and the encoder resolved for the request.
+     */
+    protected interface ResourceOperation {
+
+        /**
+         * @param userManager User manager of the tenant of the request.
+         * @param encoder     Encoder.
+         * @return Response of the request.
+         * @throws CharonException
+         */
+        Response execute(UserManager userManager, JSONEncoder encoder) throws CharonException;
+    }
 }
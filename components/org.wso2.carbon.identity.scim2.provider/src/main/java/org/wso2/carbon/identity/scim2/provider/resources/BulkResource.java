@@ -18,12 +18,10 @@
 
 package org.wso2.carbon.identity.scim2.provider.resources;
 
-import org.wso2.carbon.identity.scim2.common.impl.IdentitySCIMManager;
 import org.wso2.carbon.identity.scim2.provider.util.SCIMProviderConstants;
 import org.wso2.carbon.identity.scim2.provider.util.SupportUtils;
 import org.wso2.charon3.core.encoder.JSONEncoder;
 import org.wso2.charon3.core.exceptions.CharonException;
-import org.wso2.charon3.core.exceptions.FormatNotSupportedException;
 import org.wso2.charon3.core.extensions.UserManager;
 import org.wso2.charon3.core.protocol.SCIMResponse;
 import org.wso2.charon3.core.protocol.endpoints.BulkResourceManager;
@@ -39,48 +37,20 @@ public class BulkResource extends AbstractResource {
     public Response createUser(@HeaderParam(SCIMProviderConstants.AUTHORIZATION) String authorizationHeader,
                                @HeaderParam(SCIMProviderConstants.CONTENT_TYPE) String inputFormat,
                                @HeaderParam(SCIMProviderConstants.ACCEPT_HEADER) String outputFormat,
-                               String resourceString) {
-
-        JSONEncoder encoder = null;
-        try {
-
-            // content-type header is compulsory in post request.
-            if (inputFormat == null) {
-                String error = SCIMProviderConstants.CONTENT_TYPE
-                        + " not present in the request header";
-                throw new FormatNotSupportedException(error);
-            }
-
-            if(!isValidInputFormat(inputFormat)){
-                String error = inputFormat + " is not supported.";
-                throw  new FormatNotSupportedException(error);
-            }
-
-            if(!isValidOutputFormat(outputFormat)){
-                String error = outputFormat + " is not supported.";
-                throw  new FormatNotSupportedException(error);
+                               final String resourceString) {
+
+        return processRequest(inputFormat, outputFormat, new ResourceOperation() {
+            @Override
+            public Response execute(UserManager userManager, JSONEncoder encoder) throws CharonException {
+
+                // create charon-SCIM bulk endpoint per request, as it holds the user manager of the request.
+                BulkResourceManager bulkResourceManager = new BulkResourceManager();
+                //call for process bulk data
+                SCIMResponse scimResponse = bulkResourceManager.processBulkData(resourceString, userManager);
+                // needs to check the code of the response and return 200 0k or other error codes
+                // appropriately.
+                return SupportUtils.buildResponse(scimResponse);
             }
-            IdentitySCIMManager identitySCIMManager = IdentitySCIMManager.getInstance();
-
-            // obtain the encoder at this layer in case exceptions needs to be encoded.
-            encoder = identitySCIMManager.getEncoder();
-
-            // obtain the user store manager
-            UserManager userManager = IdentitySCIMManager.getInstance().getUserManager();
-
-            // create charon-SCIM bulk endpoint and hand-over the request.
-            BulkResourceManager bulkResourceManager = new BulkResourceManager();
-            //call for process bulk data
-            SCIMResponse scimResponse = bulkResourceManager.processBulkData(resourceString, userManager);
-            // needs to check the code of the response and return 200 0k or other error codes
-            // appropriately.
-            return SupportUtils.buildResponse(scimResponse);
-
-        } catch (CharonException e) {
-            return handleCharonException(e,encoder);
-        } catch (FormatNotSupportedException e) {
-            return handleFormatNotSupportedException(e);
-        }
+        });
     }
 }
-
@@ -18,59 +18,64 @@
 
 package org.wso2.carbon.identity.scim2.provider.resources;
 
+import org.apache.commons.lang.StringUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
-import org.wso2.carbon.context.PrivilegedCarbonContext;
 import org.wso2.carbon.identity.jaxrs.designator.PATCH;
-import org.wso2.carbon.identity.scim2.common.impl.IdentitySCIMManager;
+import org.wso2.carbon.identity.scim2.common.impl.SCIMUserManager;
 import org.wso2.carbon.identity.scim2.provider.util.SCIMProviderConstants;
 import org.wso2.carbon.identity.scim2.provider.util.SupportUtils;
 import org.wso2.charon3.core.encoder.JSONEncoder;
+import org.wso2.charon3.core.exceptions.AbstractCharonException;
 import org.wso2.charon3.core.exceptions.CharonException;
-import org.wso2.charon3.core.exceptions.FormatNotSupportedException;
 import org.wso2.charon3.core.extensions.UserManager;
+import org.wso2.charon3.core.objects.Group;
 import org.wso2.charon3.core.protocol.SCIMResponse;
+import org.wso2.charon3.core.protocol.endpoints.AbstractResourceManager;
 import org.wso2.charon3.core.protocol.endpoints.GroupResourceManager;
 import org.wso2.charon3.core.schema.SCIMConstants;
+import org.wso2.charon3.core.schema.SCIMResourceSchemaManager;
+import org.wso2.charon3.core.utils.codeutils.PatchOperation;
 
 import javax.ws.rs.*;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
-import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 public class GroupResource extends AbstractResource {
 
     private static Log logger = LogFactory.getLog(GroupResource.class);
 
+    // charon-SCIM group endpoint, which keeps no state between requests.
+    private static final GroupResourceManager groupResourceManager = new GroupResourceManager();
+
     @GET
     @Path("{id}")
     @Produces({MediaType.APPLICATION_JSON, SCIMProviderConstants.APPLICATION_SCIM_JSON})
-    public Response getGroup(@PathParam(SCIMConstants.CommonSchemaConstants.ID) String id,
+    public Response getGroup(@PathParam(SCIMConstants.CommonSchemaConstants.ID) final String id,
                              @HeaderParam(SCIMProviderConstants.AUTHORIZATION) String authorizationHeader,
                              @HeaderParam(SCIMProviderConstants.ACCEPT_HEADER) String outputFormat,
-                             @QueryParam(SCIMProviderConstants.ATTRIBUTES) String attribute,
-                             @QueryParam(SCIMProviderConstants.EXCLUDE_ATTRIBUTES) String excludedAttributes) {
-
-        String userName = SupportUtils.getAuthenticatedUsername();
-        try {
-            if (!isValidOutputFormat(outputFormat)) {
-                String error = outputFormat + " is not supported.";
-                throw new FormatNotSupportedException(error);
+                             @HeaderParam(SCIMProviderConstants.IF_NONE_MATCH_HEADER) final String ifNoneMatch,
+                             @QueryParam(SCIMProviderConstants.ATTRIBUTES) final String attribute,
+                             @QueryParam(SCIMProviderConstants.EXCLUDE_ATTRIBUTES) final String excludedAttributes) {
+
+        return processRequest(outputFormat, new ResourceOperation() {
+            @Override
+            public Response execute(UserManager userManager, JSONEncoder encoder) throws CharonException {
+
+                // the version of the group is read without its members, to answer conditional requests cheaply.
+                if (StringUtils.isNotBlank(ifNoneMatch)) {
+                    Response notModifiedResponse = evaluateIfNoneMatch(ifNoneMatch,
+                            getGroupEntityTag(userManager, id));
+                    if (notModifiedResponse != null) {
+                        return notModifiedResponse;
+                    }
+                }
+                SCIMResponse scimResponse = groupResourceManager.get(id, userManager, attribute, excludedAttributes);
+                return addBuiltEntityTag(SupportUtils.buildResponse(scimResponse), userManager, id, true);
             }
-        } catch (FormatNotSupportedException e) {
-            return handleFormatNotSupportedException(e);
-        }
-
-        Map<String, String> requestAttributes = new HashMap<>();
-        requestAttributes.put(SCIMProviderConstants.ID, id);
-        requestAttributes.put(SCIMProviderConstants.ACCEPT_HEADER, outputFormat);
-        requestAttributes.put(SCIMProviderConstants.AUTHORIZATION, userName);
-        requestAttributes.put(SCIMProviderConstants.HTTP_VERB, GET.class.getSimpleName());
-        requestAttributes.put(SCIMProviderConstants.ATTRIBUTES, attribute);
-        requestAttributes.put(SCIMProviderConstants.EXCLUDE_ATTRIBUTES, excludedAttributes);
-        requestAttributes.put(SCIMProviderConstants.SEARCH, "0");
-        return processRequest(requestAttributes);
+        });
     }
 
     @POST
@@ -79,292 +84,162 @@ public class GroupResource extends AbstractResource {
     public Response getGroupsByPOST(@HeaderParam(SCIMProviderConstants.AUTHORIZATION) String authorizationHeader,
                                     @HeaderParam(SCIMProviderConstants.CONTENT_TYPE) String inputFormat,
                                     @HeaderParam(SCIMProviderConstants.ACCEPT_HEADER) String outputFormat,
-                                    String resourceString) {
-
-        String userName = SupportUtils.getAuthenticatedUsername();
-        try {
-            // content-type header is compulsory in post request.
-            if (inputFormat == null) {
-                String error = SCIMProviderConstants.CONTENT_TYPE
-                        + " not present in the request header";
-                throw new FormatNotSupportedException(error);
-            }
+                                    final String resourceString) {
 
-            if (!isValidInputFormat(inputFormat)) {
-                String error = inputFormat + " is not supported.";
-                throw new FormatNotSupportedException(error);
-            }
+        return processRequest(inputFormat, outputFormat, new ResourceOperation() {
+            @Override
+            public Response execute(UserManager userManager, JSONEncoder encoder) throws CharonException {
 
-            if (!isValidOutputFormat(outputFormat)) {
-                String error = outputFormat + " is not supported.";
-                throw new FormatNotSupportedException(error);
+                return SupportUtils.buildResponse(groupResourceManager.listWithPOST(resourceString, userManager));
             }
-
-            Map<String, String> requestAttributes = new HashMap<>();
-            requestAttributes.put(SCIMProviderConstants.ACCEPT_HEADER, outputFormat);
-            requestAttributes.put(SCIMProviderConstants.AUTHORIZATION, userName);
-            requestAttributes.put(SCIMProviderConstants.HTTP_VERB, POST.class.getSimpleName());
-            requestAttributes.put(SCIMProviderConstants.RESOURCE_STRING, resourceString );
-            requestAttributes.put(SCIMProviderConstants.SEARCH, "1");
-
-            return processRequest(requestAttributes);
-
-        } catch (FormatNotSupportedException e) {
-            return handleFormatNotSupportedException(e);
-        }
+        });
     }
 
     @POST
     public Response createGroup(@HeaderParam(SCIMProviderConstants.AUTHORIZATION) String authorizationHeader,
                                 @HeaderParam(SCIMProviderConstants.CONTENT_TYPE) String inputFormat,
                                 @HeaderParam(SCIMProviderConstants.ACCEPT_HEADER) String outputFormat,
-                                @QueryParam(SCIMProviderConstants.ATTRIBUTES) String attribute,
-                                @QueryParam(SCIMProviderConstants.EXCLUDE_ATTRIBUTES) String excludedAttributes,
-                                String resourceString) {
-
-        String userName = SupportUtils.getAuthenticatedUsername();
-        try {
-            // content-type header is compulsory in post request.
-            if (inputFormat == null) {
-                String error = SCIMProviderConstants.CONTENT_TYPE
-                        + " not present in the request header";
-                throw new FormatNotSupportedException(error);
-            }
+                                @QueryParam(SCIMProviderConstants.ATTRIBUTES) final String attribute,
+                                @QueryParam(SCIMProviderConstants.EXCLUDE_ATTRIBUTES) final String excludedAttributes,
+                                final String resourceString) {
 
-            if (!isValidInputFormat(inputFormat)) {
-                String error = inputFormat + " is not supported.";
-                throw new FormatNotSupportedException(error);
-            }
+        return processRequest(inputFormat, outputFormat, new ResourceOperation() {
+            @Override
+            public Response execute(UserManager userManager, JSONEncoder encoder) throws CharonException {
 
-            if (!isValidOutputFormat(outputFormat)) {
-                String error = outputFormat + " is not supported.";
-                throw new FormatNotSupportedException(error);
+                return SupportUtils.buildResponse(groupResourceManager.create(resourceString, userManager,
+                        attribute, excludedAttributes));
             }
-        } catch (FormatNotSupportedException e) {
-            return handleFormatNotSupportedException(e);
-        }
-
-        Map<String, String> requestAttributes = new HashMap<>();
-        requestAttributes.put(SCIMProviderConstants.AUTHORIZATION, userName);
-        requestAttributes.put(SCIMProviderConstants.HTTP_VERB, POST.class.getSimpleName());
-        requestAttributes.put(SCIMProviderConstants.RESOURCE_STRING, resourceString);
-        requestAttributes.put(SCIMProviderConstants.ATTRIBUTES, attribute);
-        requestAttributes.put(SCIMProviderConstants.EXCLUDE_ATTRIBUTES, excludedAttributes);
-        requestAttributes.put(SCIMProviderConstants.SEARCH, "0");
-        return processRequest(requestAttributes);
+        });
     }
 
     @GET
     public Response getGroup(@HeaderParam(SCIMProviderConstants.AUTHORIZATION) String authorizationHeader,
                              @HeaderParam(SCIMProviderConstants.ACCEPT_HEADER) String outputFormat,
-                             @QueryParam(SCIMProviderConstants.ATTRIBUTES) String attribute,
-                             @QueryParam(SCIMProviderConstants.EXCLUDE_ATTRIBUTES) String excludedAttributes,
-                             @QueryParam(SCIMProviderConstants.FILTER) String filter,
-                             @QueryParam(SCIMProviderConstants.START_INDEX) String startIndex,
-                             @QueryParam(SCIMProviderConstants.COUNT) String count,
-                             @QueryParam(SCIMProviderConstants.SORT_BY) String sortBy,
-                             @QueryParam(SCIMProviderConstants.SORT_ORDER) String sortOrder,
-                             @QueryParam(SCIMProviderConstants.DOMAIN) String domainName) {
-
-        String userName = SupportUtils.getAuthenticatedUsername();
-        try {
-            if (!isValidOutputFormat(outputFormat)) {
-                String error = outputFormat + " is not supported.";
-                throw new FormatNotSupportedException(error);
-            }
-        } catch (FormatNotSupportedException e) {
-            return handleFormatNotSupportedException(e);
-        }
-
-        Map<String, String> requestAttributes = new HashMap<>();
-        requestAttributes.put(SCIMProviderConstants.AUTHORIZATION, userName);
-        requestAttributes.put(SCIMProviderConstants.HTTP_VERB, GET.class.getSimpleName());
-        requestAttributes.put(SCIMProviderConstants.ATTRIBUTES, attribute);
-        requestAttributes.put(SCIMProviderConstants.EXCLUDE_ATTRIBUTES, excludedAttributes);
-        requestAttributes.put(SCIMProviderConstants.FILTER, filter);
-        requestAttributes.put(SCIMProviderConstants.START_INDEX, startIndex);
-        requestAttributes.put(SCIMProviderConstants.COUNT, count);
-        requestAttributes.put(SCIMProviderConstants.SORT_BY, sortBy);
-        requestAttributes.put(SCIMProviderConstants.SORT_ORDER, sortOrder);
-        requestAttributes.put(SCIMProviderConstants.DOMAIN, domainName);
-        requestAttributes.put(SCIMProviderConstants.SEARCH, "0");
-        return processRequest(requestAttributes);
+                             @QueryParam(SCIMProviderConstants.ATTRIBUTES) final String attribute,
+                             @QueryParam(SCIMProviderConstants.EXCLUDE_ATTRIBUTES) final String excludedAttributes,
+                             @QueryParam(SCIMProviderConstants.FILTER) final String filter,
+                             @QueryParam(SCIMProviderConstants.START_INDEX) final String startIndex,
+                             @QueryParam(SCIMProviderConstants.COUNT) final String count,
+                             @QueryParam(SCIMProviderConstants.SORT_BY) final String sortBy,
+                             @QueryParam(SCIMProviderConstants.SORT_ORDER) final String sortOrder,
+                             @QueryParam(SCIMProviderConstants.DOMAIN) final String domainName) {
+
+        return processRequest(outputFormat, new ResourceOperation() {
+            @Override
+            public Response execute(UserManager userManager, JSONEncoder encoder) throws CharonException {
+
+                int startIndexValue = startIndex == null ? 0 : Integer.parseInt(startIndex);
+                int countValue = count == null ? 0 : Integer.parseInt(count);
+                SCIMResponse scimResponse = groupResourceManager.listWithGET(userManager, filter, startIndexValue,
+                        countValue, sortBy, sortOrder, domainName, attribute, excludedAttributes);
+                return SupportUtils.buildResponse(scimResponse);
+            }
+        });
     }
 
     @DELETE
     @Path("{id}")
-    public Response deleteGroup(@PathParam(SCIMConstants.CommonSchemaConstants.ID) String id,
+    public Response deleteGroup(@PathParam(SCIMConstants.CommonSchemaConstants.ID) final String id,
                                 @HeaderParam(SCIMProviderConstants.AUTHORIZATION) String authorizationHeader,
                                 @HeaderParam(SCIMProviderConstants.ACCEPT_HEADER) String outputFormat) {
 
-        String userName = SupportUtils.getAuthenticatedUsername();
-        try {
-            if (!isValidOutputFormat(outputFormat)) {
-                String error = outputFormat + " is not supported.";
-                throw new FormatNotSupportedException(error);
-            }
-        } catch (FormatNotSupportedException e) {
-            return handleFormatNotSupportedException(e);
-        }
+        return processRequest(outputFormat, new ResourceOperation() {
+            @Override
+            public Response execute(UserManager userManager, JSONEncoder encoder) throws CharonException {
 
-        Map<String, String> requestAttributes = new HashMap<>();
-        requestAttributes.put(SCIMProviderConstants.ID, id);
-        requestAttributes.put(SCIMProviderConstants.AUTHORIZATION, userName);
-        requestAttributes.put(SCIMProviderConstants.HTTP_VERB, DELETE.class.getSimpleName());
-        requestAttributes.put(SCIMProviderConstants.SEARCH, "0");
-        return processRequest(requestAttributes);
+                return SupportUtils.buildResponse(groupResourceManager.delete(id, userManager));
+            }
+        });
     }
 
     @PUT
     @Path("{id}")
-    public Response updateGroup(@PathParam(SCIMConstants.CommonSchemaConstants.ID) String id,
+    public Response updateGroup(@PathParam(SCIMConstants.CommonSchemaConstants.ID) final String id,
                                 @HeaderParam(SCIMProviderConstants.AUTHORIZATION) String authorizationHeader,
                                 @HeaderParam(SCIMConstants.CONTENT_TYPE_HEADER) String inputFormat,
                                 @HeaderParam(SCIMProviderConstants.ACCEPT_HEADER) String outputFormat,
-                                @QueryParam(SCIMProviderConstants.ATTRIBUTES) String attribute,
-                                @QueryParam(SCIMProviderConstants.EXCLUDE_ATTRIBUTES) String excludedAttributes,
-                                String resourceString) {
-
-        String userName = SupportUtils.getAuthenticatedUsername();
-        try {
-            // content-type header is compulsory in put request.
-            if (inputFormat == null) {
-                String error = SCIMProviderConstants.CONTENT_TYPE
-                        + " not present in the request header";
-                throw new FormatNotSupportedException(error);
-            }
-
-            if (!isValidInputFormat(inputFormat)) {
-                String error = inputFormat + " is not supported.";
-                throw new FormatNotSupportedException(error);
-            }
-
-            if (!isValidOutputFormat(outputFormat)) {
-                String error = outputFormat + " is not supported.";
-                throw new FormatNotSupportedException(error);
-            }
-        } catch (FormatNotSupportedException e) {
-            return handleFormatNotSupportedException(e);
-        }
-
-
-        Map<String, String> requestAttributes = new HashMap<>();
-        requestAttributes.put(SCIMProviderConstants.ID, id);
-        requestAttributes.put(SCIMProviderConstants.AUTHORIZATION, userName);
-        requestAttributes.put(SCIMProviderConstants.HTTP_VERB, PUT.class.getSimpleName());
-        requestAttributes.put(SCIMProviderConstants.RESOURCE_STRING, resourceString);
-        requestAttributes.put(SCIMProviderConstants.ATTRIBUTES, attribute);
-        requestAttributes.put(SCIMProviderConstants.EXCLUDE_ATTRIBUTES, excludedAttributes);
-        requestAttributes.put(SCIMProviderConstants.SEARCH, "0");
-        return processRequest(requestAttributes);
+                                @HeaderParam(SCIMProviderConstants.IF_MATCH_HEADER) final String ifMatch,
+                                @QueryParam(SCIMProviderConstants.ATTRIBUTES) final String attribute,
+                                @QueryParam(SCIMProviderConstants.EXCLUDE_ATTRIBUTES) final String excludedAttributes,
+                                final String resourceString) {
+
+        return processRequest(inputFormat, outputFormat, new ResourceOperation() {
+            @Override
+            public Response execute(UserManager userManager, JSONEncoder encoder) throws CharonException {
+
+                return processConditionalUpdate(ifMatch, userManager, encoder, id, true, new ResourceOperation() {
+                    @Override
+                    public Response execute(UserManager userManager, JSONEncoder encoder) throws CharonException {
+
+                        SCIMResponse scimResponse = groupResourceManager.updateWithPUT(id, resourceString,
+                                userManager, attribute, excludedAttributes);
+                        return addBuiltEntityTag(SupportUtils.buildResponse(scimResponse), userManager, id, true);
+                    }
+                });
+            }
+        });
     }
 
     @PATCH
     @Path("{id}")
-    public Response patchGroup(@PathParam(SCIMConstants.CommonSchemaConstants.ID) String id,
+    public Response patchGroup(@PathParam(SCIMConstants.CommonSchemaConstants.ID) final String id,
                                @HeaderParam(SCIMProviderConstants.AUTHORIZATION) String authorizationHeader,
                                @HeaderParam(SCIMConstants.CONTENT_TYPE_HEADER) String inputFormat,
                                @HeaderParam(SCIMProviderConstants.ACCEPT_HEADER) String outputFormat,
-                               @QueryParam(SCIMProviderConstants.ATTRIBUTES) String attribute,
-                               @QueryParam(SCIMProviderConstants.EXCLUDE_ATTRIBUTES) String excludedAttributes,
-                               String resourceString) {
-
-        String userName = SupportUtils.getAuthenticatedUsername();
-        try {
-            // content-type header is compulsory in patch request.
-            if (inputFormat == null) {
-                String error = SCIMProviderConstants.CONTENT_TYPE
-                        + " not present in the request header";
-                throw new FormatNotSupportedException(error);
-            }
-
-            if (!isValidInputFormat(inputFormat)) {
-                String error = inputFormat + " is not supported.";
-                throw new FormatNotSupportedException(error);
-            }
-
-            if (!isValidOutputFormat(outputFormat)) {
-                String error = outputFormat + " is not supported.";
-                throw new FormatNotSupportedException(error);
-            }
-        } catch (FormatNotSupportedException e) {
-            return handleFormatNotSupportedException(e);
-        }
-
-
-        Map<String, String> requestAttributes = new HashMap<>();
-        requestAttributes.put(SCIMProviderConstants.ID, id);
-        requestAttributes.put(SCIMProviderConstants.AUTHORIZATION, userName);
-        requestAttributes.put(SCIMProviderConstants.HTTP_VERB, PATCH.class.getSimpleName());
-        requestAttributes.put(SCIMProviderConstants.RESOURCE_STRING, resourceString);
-        requestAttributes.put(SCIMProviderConstants.ATTRIBUTES, attribute);
-        requestAttributes.put(SCIMProviderConstants.EXCLUDE_ATTRIBUTES, excludedAttributes);
-        requestAttributes.put(SCIMProviderConstants.SEARCH, "0");
-        return processRequest(requestAttributes);
+                               @HeaderParam(SCIMProviderConstants.IF_MATCH_HEADER) final String ifMatch,
+                               @QueryParam(SCIMProviderConstants.ATTRIBUTES) final String attribute,
+                               @QueryParam(SCIMProviderConstants.EXCLUDE_ATTRIBUTES) final String excludedAttributes,
+                               final String resourceString) {
+
+        return processRequest(inputFormat, outputFormat, new ResourceOperation() {
+            @Override
+            public Response execute(UserManager userManager, JSONEncoder encoder) throws CharonException {
+
+                return processConditionalUpdate(ifMatch, userManager, encoder, id, true, new ResourceOperation() {
+                    @Override
+                    public Response execute(UserManager userManager, JSONEncoder encoder) throws CharonException {
+
+                        SCIMResponse scimResponse = null;
+                        if (userManager instanceof SCIMUserManager) {
+                            scimResponse = patchGroupMembers(id, resourceString, (SCIMUserManager) userManager,
+                                    encoder, attribute, excludedAttributes);
+                        }
+                        if (scimResponse == null) {
+                            scimResponse = groupResourceManager.updateWithPATCH(id, resourceString, userManager,
+                                    attribute, excludedAttributes);
+                        }
+                        return addBuiltEntityTag(SupportUtils.buildResponse(scimResponse), userManager, id, true);
+                    }
+                });
+            }
+        });
     }
 
-    private Response processRequest(final Map<String, String> requestAttributes) {
-
-        String id = requestAttributes.get(SCIMProviderConstants.ID);
-        String userName = requestAttributes.get(SCIMProviderConstants.AUTHORIZATION);
-        String httpVerb = requestAttributes.get(SCIMProviderConstants.HTTP_VERB);
-        String resourceString = requestAttributes.get(SCIMProviderConstants.RESOURCE_STRING);
-        String attributes = requestAttributes.get(SCIMProviderConstants.ATTRIBUTES);
-        String excludedAttributes = requestAttributes.get(SCIMProviderConstants.EXCLUDE_ATTRIBUTES);
-        String search = requestAttributes.get(SCIMProviderConstants.SEARCH);
-
-        JSONEncoder encoder = null;
+    /**
+     * Apply a PATCH request which only adds or removes members directly on the group, without loading every member
+     * of the group as done by the charon PATCH flow.
+     *
+     * @return SCIM response, or null if the request has to be handled by the charon PATCH flow.
+     */
+    private SCIMResponse patchGroupMembers(String id, String resourceString, SCIMUserManager userManager,
+                                           JSONEncoder encoder, String attributes, String excludedAttributes) {
+
+        List<PatchOperation> patchOperations = decodePatchOperations(resourceString);
+        if (patchOperations == null) {
+            return null;
+        }
         try {
-
-            IdentitySCIMManager identitySCIMManager = IdentitySCIMManager.getInstance();
-            //obtain the encoder at this layer in case exceptions needs to be encoded.
-            encoder = identitySCIMManager.getEncoder();
-
-            // obtain the user store manager
-            UserManager userManager = IdentitySCIMManager.getInstance().getUserManager();
-
-            //create charon-SCIM group endpoint and hand-over the request.
-            GroupResourceManager groupResourceManager = new GroupResourceManager();
-            SCIMResponse scimResponse = null;
-            int startIndex = 0;
-            int count = 0;
-            if (GET.class.getSimpleName().equals(httpVerb) && id == null) {
-                String filter = requestAttributes.get(SCIMProviderConstants.FILTER);
-                if(requestAttributes.get(SCIMProviderConstants.START_INDEX) != null){
-                    startIndex = Integer.parseInt(requestAttributes.get(SCIMProviderConstants.START_INDEX));
-                }
-                if(requestAttributes.get(SCIMProviderConstants.COUNT) != null){
-                    count = Integer.parseInt(requestAttributes.get(SCIMProviderConstants.COUNT));
-                }
-
-                String sortBy = requestAttributes.get(SCIMProviderConstants.SORT_BY);
-                String sortOrder = requestAttributes.get(SCIMProviderConstants.SORT_ORDER);
-                String domainName = requestAttributes.get(SCIMProviderConstants.DOMAIN);
-
-                scimResponse = groupResourceManager.listWithGET(userManager, filter, startIndex,
-                        count, sortBy, sortOrder, domainName, attributes, excludedAttributes);
-
-            } else if (GET.class.getSimpleName().equals(httpVerb)) {
-                scimResponse = groupResourceManager.get(id, userManager, attributes, excludedAttributes);
-            } else if (POST.class.getSimpleName().equals(httpVerb) && search.equals("1")){
-                scimResponse = groupResourceManager.listWithPOST(resourceString,userManager);
-            } else if (POST.class.getSimpleName().equals(httpVerb)) {
-                scimResponse = groupResourceManager.create(resourceString, userManager, attributes, excludedAttributes);
-            } else if (PUT.class.getSimpleName().equals(httpVerb)) {
-                scimResponse =
-                        groupResourceManager.updateWithPUT(id, resourceString, userManager, attributes, excludedAttributes);
-            } else if (PATCH.class.getSimpleName().equals(httpVerb)) {
-                scimResponse =
-                        groupResourceManager.updateWithPATCH(id, resourceString, userManager, attributes, excludedAttributes);
-            } else if (DELETE.class.getSimpleName().equals(httpVerb)) {
-                scimResponse = groupResourceManager.delete(id, userManager);
-            }
-
-            return SupportUtils.buildResponse(scimResponse);
-
-        } catch (CharonException e) {
-            return handleCharonException(e, encoder);
+            Map<String, Boolean> requiredAttributes = getRequiredAttributes(
+                    SCIMResourceSchemaManager.getInstance().getGroupResourceSchema(), attributes, excludedAttributes);
+            Group updatedGroup = userManager.patchGroup(id, patchOperations, requiredAttributes);
+            if (updatedGroup == null) {
+                return null;
+            }
+            return buildPatchResponse(updatedGroup, updatedGroup.getId(), SCIMConstants.GROUP_ENDPOINT, encoder,
+                    attributes, excludedAttributes);
+        } catch (AbstractCharonException e) {
+            return AbstractResourceManager.encodeSCIMException(e);
         }
     }
-
 }
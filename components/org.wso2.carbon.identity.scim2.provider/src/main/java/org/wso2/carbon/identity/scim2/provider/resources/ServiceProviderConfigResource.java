@@ -22,44 +22,39 @@ package org.wso2.carbon.identity.scim2.provider.resources;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.wso2.carbon.identity.scim2.common.impl.IdentitySCIMManager;
+import org.wso2.carbon.identity.scim2.provider.util.DiscoveryDocumentCache;
 import org.wso2.carbon.identity.scim2.provider.util.SCIMProviderConstants;
-import org.wso2.carbon.identity.scim2.provider.util.SupportUtils;
 import org.wso2.charon3.core.encoder.JSONEncoder;
 import org.wso2.charon3.core.exceptions.CharonException;
-import org.wso2.charon3.core.extensions.UserManager;
-import org.wso2.charon3.core.protocol.SCIMResponse;
 import org.wso2.charon3.core.protocol.endpoints.ServiceProviderConfigResourceManager;
 
 import javax.ws.rs.*;
+import javax.ws.rs.core.Context;
 import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Request;
 import javax.ws.rs.core.Response;
 
 @Path("/")
 public class ServiceProviderConfigResource extends AbstractResource {
     private static Log logger = LogFactory.getLog(ServiceProviderConfigResource.class);
 
+    // The document only changes with the configuration, hence it is rendered once and cached.
+    private static final DiscoveryDocumentCache documentCache =
+            new DiscoveryDocumentCache(new ServiceProviderConfigResourceManager());
+
     @GET
     @Produces(MediaType.APPLICATION_JSON)
-    public Response getUser() {
+    public Response getUser(@Context Request request) {
 
         JSONEncoder encoder = null;
         try {
-
             IdentitySCIMManager identitySCIMManager = IdentitySCIMManager.getInstance();
 
             // obtain the encoder at this layer in case exceptions needs to be encoded.
             encoder = identitySCIMManager.getEncoder();
 
-            // obtain the user store manager
-
-            // create charon-SCIM service provider config endpoint and hand-over the request.
-            ServiceProviderConfigResourceManager serviceProviderConfigResourceManager =
-                    new ServiceProviderConfigResourceManager();
-
-            SCIMResponse scimResponse = serviceProviderConfigResourceManager.get(null, null, null, null);
-            // needs to check the code of the response and return 200 0k or other error codes
-            // appropriately.
-            return SupportUtils.buildResponse(scimResponse);
+            // serve the document rendered by the charon-SCIM endpoint, unless the client has the current one.
+            return documentCache.getResponse(request);
 
         } catch (CharonException e) {
             return handleCharonException(e,encoder);
@@ -18,19 +18,27 @@
 
 package org.wso2.carbon.identity.scim2.provider.resources;
 
+import org.apache.commons.lang.StringUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.wso2.carbon.identity.jaxrs.designator.PATCH;
-import org.wso2.carbon.identity.scim2.common.impl.IdentitySCIMManager;
+import org.wso2.carbon.identity.scim2.common.impl.SCIMUserManager;
 import org.wso2.carbon.identity.scim2.provider.util.SCIMProviderConstants;
 import org.wso2.carbon.identity.scim2.provider.util.SupportUtils;
 import org.wso2.charon3.core.encoder.JSONEncoder;
+import org.wso2.charon3.core.exceptions.AbstractCharonException;
 import org.wso2.charon3.core.exceptions.CharonException;
-import org.wso2.charon3.core.exceptions.FormatNotSupportedException;
 import org.wso2.charon3.core.extensions.UserManager;
+import org.wso2.charon3.core.objects.User;
 import org.wso2.charon3.core.protocol.SCIMResponse;
+import org.wso2.charon3.core.protocol.endpoints.AbstractResourceManager;
 import org.wso2.charon3.core.protocol.endpoints.UserResourceManager;
 import org.wso2.charon3.core.schema.SCIMConstants;
+import org.wso2.charon3.core.schema.SCIMResourceSchemaManager;
+import org.wso2.charon3.core.utils.codeutils.PatchOperation;
+
+import java.util.List;
+import java.util.Map;
 
 import javax.ws.rs.*;
 import javax.ws.rs.core.MediaType;
@@ -40,179 +48,100 @@ import javax.ws.rs.core.Response;
 public class UserResource extends AbstractResource {
     private static Log logger = LogFactory.getLog(UserResource.class);
 
+    // charon-SCIM user endpoint, which keeps no state between requests.
+    private static final UserResourceManager userResourceManager = new UserResourceManager();
+
     @GET
     @Path("{id}")
     @Produces({MediaType.APPLICATION_JSON, SCIMProviderConstants.APPLICATION_SCIM_JSON})
-    public Response getUser(@PathParam(SCIMConstants.CommonSchemaConstants.ID) String id,
+    public Response getUser(@PathParam(SCIMConstants.CommonSchemaConstants.ID) final String id,
                             @HeaderParam(SCIMProviderConstants.AUTHORIZATION) String authorizationHeader,
                             @HeaderParam(SCIMProviderConstants.ACCEPT_HEADER) String outputFormat,
-                            @QueryParam(SCIMProviderConstants.ATTRIBUTES) String attribute,
-                            @QueryParam(SCIMProviderConstants.EXCLUDE_ATTRIBUTES) String  excludedAttributes) {
-
-        JSONEncoder encoder = null;
-        try {
-            IdentitySCIMManager identitySCIMManager = IdentitySCIMManager.getInstance();
-
-            if(!isValidOutputFormat(outputFormat)){
-                String error = outputFormat + " is not supported.";
-                throw  new FormatNotSupportedException(error);
-            }
-            // obtain the encoder at this layer in case exceptions needs to be encoded.
-            encoder = identitySCIMManager.getEncoder();
-
-            // obtain the user store manager
-            UserManager userManager = IdentitySCIMManager.getInstance().getUserManager();
-
-            // create charon-SCIM user endpoint and hand-over the request.
-            UserResourceManager userResourceManager = new UserResourceManager();
-
-            SCIMResponse scimResponse = userResourceManager.get(id, userManager,attribute, excludedAttributes);
-            // needs to check the code of the response and return 200 0k or other error codes
-            // appropriately.
-            return SupportUtils.buildResponse(scimResponse);
-
-        } catch (CharonException e) {
-            return handleCharonException(e,encoder);
-        } catch (FormatNotSupportedException e) {
-            return handleFormatNotSupportedException(e);
-        }
+                            @HeaderParam(SCIMProviderConstants.IF_NONE_MATCH_HEADER) final String ifNoneMatch,
+                            @QueryParam(SCIMProviderConstants.ATTRIBUTES) final String attribute,
+                            @QueryParam(SCIMProviderConstants.EXCLUDE_ATTRIBUTES) final String excludedAttributes) {
+
+        return processRequest(outputFormat, new ResourceOperation() {
+            @Override
+            public Response execute(UserManager userManager, JSONEncoder encoder) throws CharonException {
+
+                // the version of the user is read from its last modified claim, to answer conditional requests
+                // without building the user.
+                if (StringUtils.isNotBlank(ifNoneMatch)) {
+                    Response notModifiedResponse = evaluateIfNoneMatch(ifNoneMatch,
+                            getUserEntityTag(userManager, id));
+                    if (notModifiedResponse != null) {
+                        return notModifiedResponse;
+                    }
+                }
+                SCIMResponse scimResponse = userResourceManager.get(id, userManager, attribute, excludedAttributes);
+                // needs to check the code of the response and return 200 0k or other error codes
+                // appropriately.
+                return addBuiltEntityTag(SupportUtils.buildResponse(scimResponse), userManager, id, false);
+            }
+        });
     }
 
     @POST
     public Response createUser(@HeaderParam(SCIMProviderConstants.AUTHORIZATION) String authorizationHeader,
                                @HeaderParam(SCIMProviderConstants.CONTENT_TYPE) String inputFormat,
                                @HeaderParam(SCIMProviderConstants.ACCEPT_HEADER) String outputFormat,
-                               @QueryParam(SCIMProviderConstants.ATTRIBUTES) String attribute,
-                               @QueryParam(SCIMProviderConstants.EXCLUDE_ATTRIBUTES) String  excludedAttributes,
-                               String resourceString) {
+                               @QueryParam(SCIMProviderConstants.ATTRIBUTES) final String attribute,
+                               @QueryParam(SCIMProviderConstants.EXCLUDE_ATTRIBUTES) final String excludedAttributes,
+                               final String resourceString) {
 
+        return processRequest(inputFormat, outputFormat, new ResourceOperation() {
+            @Override
+            public Response execute(UserManager userManager, JSONEncoder encoder) throws CharonException {
 
-        JSONEncoder encoder = null;
-        try {
-            // obtain default charon manager
-            IdentitySCIMManager identitySCIMManager = IdentitySCIMManager.getInstance();
-
-            // content-type header is compulsory in post request.
-            if (inputFormat == null) {
-                String error = SCIMProviderConstants.CONTENT_TYPE
-                        + " not present in the request header";
-                throw new FormatNotSupportedException(error);
-            }
-
-            if(!isValidInputFormat(inputFormat)){
-                String error = inputFormat + " is not supported.";
-                throw  new FormatNotSupportedException(error);
-            }
-
-            if(!isValidOutputFormat(outputFormat)){
-                String error = outputFormat + " is not supported.";
-                throw  new FormatNotSupportedException(error);
+                SCIMResponse response = userResourceManager.create(resourceString, userManager,
+                        attribute, excludedAttributes);
+                return SupportUtils.buildResponse(response);
             }
-            // obtain the encoder at this layer in case exceptions needs to be encoded.
-            encoder = identitySCIMManager.getEncoder();
-
-            // obtain the user store manager
-            UserManager userManager = IdentitySCIMManager.getInstance().getUserManager();
-
-            // create charon-SCIM user endpoint and hand-over the request.
-            UserResourceManager userResourceManager = new UserResourceManager();
-
-            SCIMResponse response = userResourceManager.create(resourceString, userManager,
-                    attribute, excludedAttributes);
-
-            return SupportUtils.buildResponse(response);
-
-        } catch (CharonException e) {
-            return handleCharonException(e, encoder);
-        } catch (FormatNotSupportedException e) {
-            return handleFormatNotSupportedException(e);
-        }
+        });
     }
 
     @DELETE
     @Path("{id}")
-    public Response deleteUser(@PathParam(SCIMProviderConstants.ID) String id,
+    public Response deleteUser(@PathParam(SCIMProviderConstants.ID) final String id,
                                @HeaderParam(SCIMProviderConstants.AUTHORIZATION) String authorizationHeader,
                                @HeaderParam(SCIMProviderConstants.ACCEPT_HEADER) String format) {
 
-        JSONEncoder encoder = null;
-        try {
-            IdentitySCIMManager identitySCIMManager = IdentitySCIMManager.getInstance();
+        return processRequest(format, new ResourceOperation() {
+            @Override
+            public Response execute(UserManager userManager, JSONEncoder encoder) throws CharonException {
 
-            // defaults to application/scim+json.
-            if (format == null) {
-                format = SCIMProviderConstants.APPLICATION_SCIM_JSON;
+                SCIMResponse scimResponse = userResourceManager.delete(id, userManager);
+                // needs to check the code of the response and return 200 0k or other error codes
+                // appropriately.
+                return SupportUtils.buildResponse(scimResponse);
             }
-            if(!isValidOutputFormat(format)){
-                String error = format + " is not supported.";
-                throw  new FormatNotSupportedException(error);
-            }
-            // obtain the encoder at this layer in case exceptions needs to be encoded.
-            encoder = identitySCIMManager.getEncoder();
-
-            // obtain the user store manager
-            UserManager userManager = IdentitySCIMManager.getInstance().getUserManager();
-
-            // create charon-SCIM user resource manager and hand-over the request.
-            UserResourceManager userResourceManager = new UserResourceManager();
-
-            SCIMResponse scimResponse = userResourceManager.delete(id, userManager);
-            // needs to check the code of the response and return 200 0k or other error codes
-            // appropriately.
-            return SupportUtils.buildResponse(scimResponse);
-
-        } catch (CharonException e) {
-            return handleCharonException(e, encoder);
-        } catch (FormatNotSupportedException e) {
-            return handleFormatNotSupportedException(e);
-        }
+        });
     }
 
     @GET
     @Produces({MediaType.APPLICATION_JSON, SCIMProviderConstants.APPLICATION_SCIM_JSON})
     public Response getUser(@HeaderParam(SCIMProviderConstants.AUTHORIZATION) String authorizationHeader,
                             @HeaderParam(SCIMProviderConstants.ACCEPT_HEADER) String format,
-                            @QueryParam (SCIMProviderConstants.ATTRIBUTES) String attribute,
-                            @QueryParam (SCIMProviderConstants.EXCLUDE_ATTRIBUTES) String excludedAttributes,
-                            @QueryParam (SCIMProviderConstants.FILTER) String filter,
-                            @QueryParam (SCIMProviderConstants.START_INDEX) int startIndex,
-                            @QueryParam (SCIMProviderConstants.COUNT) int count,
-                            @QueryParam (SCIMProviderConstants.SORT_BY) String sortBy,
-                            @QueryParam (SCIMProviderConstants.SORT_ORDER) String sortOrder,
-                            @QueryParam (SCIMProviderConstants.DOMAIN) String domainName) {
-
-        JSONEncoder encoder = null;
-        try {
-            IdentitySCIMManager identitySCIMManager = IdentitySCIMManager.getInstance();
-
-            // defaults to application/scim+json.
-            if (format == null) {
-                format = SCIMProviderConstants.APPLICATION_SCIM_JSON;
-            }
-            if(!isValidOutputFormat(format)){
-                String error = format + " is not supported.";
-                throw  new FormatNotSupportedException(error);
-            }
-            // obtain the encoder at this layer in case exceptions needs to be encoded.
-            encoder = identitySCIMManager.getEncoder();
-
-            // obtain the user store manager
-            UserManager userManager = IdentitySCIMManager.getInstance().getUserManager();
-
-            // create charon-SCIM user resource manager and hand-over the request.
-            UserResourceManager userResourceManager = new UserResourceManager();
-
-            SCIMResponse scimResponse = null;
-
-            scimResponse = userResourceManager.listWithGET(userManager, filter, startIndex, count,
-                    sortBy, sortOrder, domainName, attribute, excludedAttributes);
-
-            return SupportUtils.buildResponse(scimResponse);
-        } catch (CharonException e) {
-            return handleCharonException(e, encoder);
-        } catch (FormatNotSupportedException e) {
-            return handleFormatNotSupportedException(e);
-        }
+                            @QueryParam (SCIMProviderConstants.ATTRIBUTES) final String attribute,
+                            @QueryParam (SCIMProviderConstants.EXCLUDE_ATTRIBUTES) final String excludedAttributes,
+                            @QueryParam (SCIMProviderConstants.FILTER) final String filter,
+                            @QueryParam (SCIMProviderConstants.START_INDEX) final int startIndex,
+                            @QueryParam (SCIMProviderConstants.COUNT) final int count,
+                            @QueryParam (SCIMProviderConstants.SORT_BY) final String sortBy,
+                            @QueryParam (SCIMProviderConstants.SORT_ORDER) final String sortOrder,
+                            @QueryParam (SCIMProviderConstants.DOMAIN) final String domainName,
+                            @QueryParam (SCIMProviderConstants.DEBUG) final String debug) {
+
+        return processRequest(format, new ResourceOperation() {
+            @Override
+            public Response execute(UserManager userManager, JSONEncoder encoder) throws CharonException {
+
+                SCIMResponse scimResponse = userResourceManager.listWithGET(userManager, filter, startIndex, count,
+                        sortBy, sortOrder, domainName, attribute, excludedAttributes);
+                return addFilterExplain(SupportUtils.buildResponse(scimResponse), debug);
+            }
+        });
     }
 
     @POST
@@ -221,153 +150,106 @@ public class UserResource extends AbstractResource {
     public Response getUsersByPost(@HeaderParam(SCIMProviderConstants.AUTHORIZATION) String authorizationHeader,
                                    @HeaderParam(SCIMProviderConstants.CONTENT_TYPE) String inputFormat,
                                    @HeaderParam(SCIMProviderConstants.ACCEPT_HEADER) String outputFormat,
-                                   String resourceString) {
+                                   @QueryParam(SCIMProviderConstants.DEBUG) final String debug,
+                                   final String resourceString) {
 
-        JSONEncoder encoder = null;
-        try {
-            IdentitySCIMManager identitySCIMManager = IdentitySCIMManager.getInstance();
-
-            // content-type header is compulsory in post request.
-            if (inputFormat == null) {
-                String error = SCIMProviderConstants.CONTENT_TYPE
-                        + " not present in the request header";
-                throw new FormatNotSupportedException(error);
-            }
+        return processRequest(inputFormat, outputFormat, new ResourceOperation() {
+            @Override
+            public Response execute(UserManager userManager, JSONEncoder encoder) throws CharonException {
 
-            if(!isValidInputFormat(inputFormat)){
-                String error = inputFormat + " is not supported.";
-                throw  new FormatNotSupportedException(error);
+                SCIMResponse scimResponse = userResourceManager.listWithPOST(resourceString, userManager);
+                return addFilterExplain(SupportUtils.buildResponse(scimResponse), debug);
             }
-
-            if(!isValidOutputFormat(outputFormat)){
-                String error = outputFormat + " is not supported.";
-                throw  new FormatNotSupportedException(error);
-            }
-            // obtain the encoder at this layer in case exceptions needs to be encoded.
-            encoder = identitySCIMManager.getEncoder();
-
-            // obtain the user store manager
-            UserManager userManager = IdentitySCIMManager.getInstance().getUserManager();
-
-            // create charon-SCIM user resource manager and hand-over the request.
-            UserResourceManager userResourceManager = new UserResourceManager();
-
-            SCIMResponse scimResponse = null;
-
-            scimResponse = userResourceManager.listWithPOST(resourceString, userManager);
-
-            return SupportUtils.buildResponse(scimResponse);
-
-        } catch (CharonException e) {
-            return handleCharonException(e, encoder);
-        } catch (FormatNotSupportedException e) {
-            return handleFormatNotSupportedException(e);
-        }
+        });
     }
 
     @PUT
     @Path("{id}")
-    public Response updateUser(@PathParam(SCIMConstants.CommonSchemaConstants.ID) String id,
+    public Response updateUser(@PathParam(SCIMConstants.CommonSchemaConstants.ID) final String id,
                                @HeaderParam(SCIMProviderConstants.AUTHORIZATION) String authorizationHeader,
                                @HeaderParam(SCIMProviderConstants.CONTENT_TYPE) String inputFormat,
                                @HeaderParam(SCIMProviderConstants.ACCEPT_HEADER) String outputFormat,
-                               @QueryParam (SCIMProviderConstants.ATTRIBUTES) String attribute,
-                               @QueryParam (SCIMProviderConstants.EXCLUDE_ATTRIBUTES) String excludedAttributes,
-                               String resourceString) {
-
-        JSONEncoder encoder = null;
-        try {
-            // obtain default charon manager
-            IdentitySCIMManager identitySCIMManager = IdentitySCIMManager.getInstance();
-
-            // content-type header is compulsory in post request.
-            if (inputFormat == null) {
-                String error = SCIMProviderConstants.CONTENT_TYPE
-                        + " not present in the request header";
-                throw new FormatNotSupportedException(error);
-            }
-
-            if(!isValidInputFormat(inputFormat)){
-                String error = inputFormat + " is not supported.";
-                throw  new FormatNotSupportedException(error);
-            }
-
-            if(!isValidOutputFormat(outputFormat)){
-                String error = outputFormat + " is not supported.";
-                throw  new FormatNotSupportedException(error);
-            }
-            // obtain the encoder at this layer in case exceptions needs to be encoded.
-            encoder = identitySCIMManager.getEncoder();
-
-            // obtain the user store manager
-            UserManager userManager = IdentitySCIMManager.getInstance().getUserManager();
-
-            // create charon-SCIM user endpoint and hand-over the request.
-            UserResourceManager userResourceEndpoint = new UserResourceManager();
-
-            SCIMResponse response = userResourceEndpoint.updateWithPUT(
-                    id, resourceString, userManager, attribute, excludedAttributes);
-
-            return SupportUtils.buildResponse(response);
-
-        } catch (CharonException e) {
-            return handleCharonException(e, encoder);
-        } catch (FormatNotSupportedException e) {
-            return handleFormatNotSupportedException(e);
-        }
+                               @HeaderParam(SCIMProviderConstants.IF_MATCH_HEADER) final String ifMatch,
+                               @QueryParam (SCIMProviderConstants.ATTRIBUTES) final String attribute,
+                               @QueryParam (SCIMProviderConstants.EXCLUDE_ATTRIBUTES) final String excludedAttributes,
+                               final String resourceString) {
+
+        return processRequest(inputFormat, outputFormat, new ResourceOperation() {
+            @Override
+            public Response execute(UserManager userManager, JSONEncoder encoder) throws CharonException {
+
+                return processConditionalUpdate(ifMatch, userManager, encoder, id, false, new ResourceOperation() {
+                    @Override
+                    public Response execute(UserManager userManager, JSONEncoder encoder) throws CharonException {
+
+                        SCIMResponse response = userResourceManager.updateWithPUT(
+                                id, resourceString, userManager, attribute, excludedAttributes);
+                        return addBuiltEntityTag(SupportUtils.buildResponse(response), userManager, id, false);
+                    }
+                });
+            }
+        });
     }
 
     @PATCH
     @Path("{id}")
-    public Response patchUser(@PathParam(SCIMConstants.CommonSchemaConstants.ID) String id,
+    public Response patchUser(@PathParam(SCIMConstants.CommonSchemaConstants.ID) final String id,
                               @HeaderParam(SCIMProviderConstants.AUTHORIZATION) String authorizationHeader,
                               @HeaderParam(SCIMProviderConstants.CONTENT_TYPE) String inputFormat,
                               @HeaderParam(SCIMProviderConstants.ACCEPT_HEADER) String outputFormat,
-                              @QueryParam (SCIMProviderConstants.ATTRIBUTES) String attribute,
-                              @QueryParam (SCIMProviderConstants.EXCLUDE_ATTRIBUTES) String excludedAttributes,
-                              String resourceString) {
-
+                              @HeaderParam(SCIMProviderConstants.IF_MATCH_HEADER) final String ifMatch,
+                              @QueryParam (SCIMProviderConstants.ATTRIBUTES) final String attribute,
+                              @QueryParam (SCIMProviderConstants.EXCLUDE_ATTRIBUTES) final String excludedAttributes,
+                              final String resourceString) {
+
+        return processRequest(inputFormat, outputFormat, new ResourceOperation() {
+            @Override
+            public Response execute(UserManager userManager, JSONEncoder encoder) throws CharonException {
+
+                return processConditionalUpdate(ifMatch, userManager, encoder, id, false, new ResourceOperation() {
+                    @Override
+                    public Response execute(UserManager userManager, JSONEncoder encoder) throws CharonException {
+
+                        SCIMResponse response = null;
+                        if (userManager instanceof SCIMUserManager) {
+                            response = patchUserWithClaims(id, resourceString, (SCIMUserManager) userManager, encoder,
+                                    attribute, excludedAttributes);
+                        }
+                        if (response == null) {
+                            response = userResourceManager.updateWithPATCH(
+                                    id, resourceString, userManager, attribute, excludedAttributes);
+                        }
+                        return addBuiltEntityTag(SupportUtils.buildResponse(response), userManager, id, false);
+                    }
+                });
+            }
+        });
+    }
 
-        JSONEncoder encoder = null;
+    /**
+     * Apply the PATCH request directly as claim updates of the user, without loading and replacing the whole user
+     * as done by the charon PATCH flow.
+     *
+     * @return SCIM response, or null if the request has to be handled by the charon PATCH flow.
+     */
+    private SCIMResponse patchUserWithClaims(String id, String resourceString, SCIMUserManager userManager,
+                                             JSONEncoder encoder, String attributes, String excludedAttributes) {
+
+        List<PatchOperation> patchOperations = decodePatchOperations(resourceString);
+        if (patchOperations == null) {
+            return null;
+        }
         try {
-            // obtain default charon manager
-            IdentitySCIMManager identitySCIMManager = IdentitySCIMManager.getInstance();
-
-            // content-type header is compulsory in post request.
-            if (inputFormat == null) {
-                String error = SCIMProviderConstants.CONTENT_TYPE
-                        + " not present in the request header";
-                throw new FormatNotSupportedException(error);
-            }
-
-            if(!isValidInputFormat(inputFormat)){
-                String error = inputFormat + " is not supported.";
-                throw  new FormatNotSupportedException(error);
-            }
-
-            if(!isValidOutputFormat(outputFormat)){
-                String error = outputFormat + " is not supported.";
-                throw  new FormatNotSupportedException(error);
-            }
-            // obtain the encoder at this layer in case exceptions needs to be encoded.
-            encoder = identitySCIMManager.getEncoder();
-
-            // obtain the user store manager
-            UserManager userManager = IdentitySCIMManager.getInstance().getUserManager();
-
-            // create charon-SCIM user endpoint and hand-over the request.
-            UserResourceManager userResourceEndpoint = new UserResourceManager();
-
-            SCIMResponse response = userResourceEndpoint.updateWithPATCH(
-                    id, resourceString, userManager, attribute, excludedAttributes);
-
-            return SupportUtils.buildResponse(response);
-
-        } catch (CharonException e) {
-            return handleCharonException(e, encoder);
-        } catch (FormatNotSupportedException e) {
-            return handleFormatNotSupportedException(e);
+            Map<String, Boolean> requiredAttributes = getRequiredAttributes(
+                    SCIMResourceSchemaManager.getInstance().getUserResourceSchema(), attributes, excludedAttributes);
+            User updatedUser = userManager.patchUser(id, patchOperations, requiredAttributes);
+            if (updatedUser == null) {
+                return null;
+            }
+            return buildPatchResponse(updatedUser, updatedUser.getId(), SCIMConstants.USER_ENDPOINT, encoder,
+                    attributes, excludedAttributes);
+        } catch (AbstractCharonException e) {
+            return AbstractResourceManager.encodeSCIMException(e);
         }
     }
-
-}
\ No newline at end of file
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.wso2.carbon.identity.scim2.provider.util;
+
+import org.apache.axiom.om.util.Base64;
+import org.apache.commons.collections.MapUtils;
+import org.wso2.carbon.context.PrivilegedCarbonContext;
+import org.wso2.carbon.identity.scim2.common.utils.SCIMConfigProcessor;
+import org.wso2.charon3.core.exceptions.CharonException;
+import org.wso2.charon3.core.protocol.ResponseCodeConstants;
+import org.wso2.charon3.core.protocol.SCIMResponse;
+import org.wso2.charon3.core.protocol.endpoints.ResourceManager;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.Request;
+import javax.ws.rs.core.Response;
+
+/**
+ * Cache of a discovery document of the SCIM endpoints, such as the service provider config, which only changes with
+ * the configuration. The document is rendered once per tenant and configuration version, kept as bytes, and served
+ * with a strong ETag so that clients polling the endpoint with If-None-Match get a 304 response.
+ */
+public class DiscoveryDocumentCache {
+
+    private static final String DIGEST_ALGORITHM = "SHA-256";
+
+    private final ResourceManager resourceManager;
+    private final ConcurrentMap<String, DiscoveryDocument> documents = new ConcurrentHashMap<>();
+
+    /**
+     * @param resourceManager Charon resource manager which renders the document.
+     */
+    public DiscoveryDocumentCache(ResourceManager resourceManager) {
+
+        this.resourceManager = resourceManager;
+    }
+
+    /**
+     * Build the response of a request for the document.
+     *
+     * @param request Request, to evaluate its preconditions.
+     * @return Document, or a 304 response if the client has the current document.
+     * @throws CharonException if the document could not be rendered.
+     */
+    public Response getResponse(Request request) throws CharonException {
+
+        String tenantDomain = String.valueOf(PrivilegedCarbonContext.getThreadLocalCarbonContext().getTenantDomain());
+        long configVersion = SCIMConfigProcessor.getInstance().getConfigVersion();
+        DiscoveryDocument document = documents.get(tenantDomain);
+        if (document == null || document.configVersion != configVersion) {
+            SCIMResponse scimResponse = resourceManager.get(null, null, null, null);
+            if (scimResponse.getResponseStatus() != ResponseCodeConstants.CODE_OK) {
+                return SupportUtils.buildResponse(scimResponse);
+            }
+            document = new DiscoveryDocument(configVersion, scimResponse);
+            documents.put(tenantDomain, document);
+        }
+
+        Response.ResponseBuilder responseBuilder = request.evaluatePreconditions(document.entityTag);
+        if (responseBuilder == null) {
+            responseBuilder = Response.ok(document.body);
+            for (Map.Entry<String, String> header : document.headers.entrySet()) {
+                responseBuilder.header(header.getKey(), header.getValue());
+            }
+        }
+        return responseBuilder.tag(document.entityTag).build();
+    }
+
+    private static class DiscoveryDocument {
+
+        private final long configVersion;
+        private final byte[] body;
+        private final Map<String, String> headers;
+        private final EntityTag entityTag;
+
+        DiscoveryDocument(long configVersion, SCIMResponse scimResponse) throws CharonException {
+
+            this.configVersion = configVersion;
+            this.body = scimResponse.getResponseMessage() == null ? new byte[0] :
+                    scimResponse.getResponseMessage().getBytes(StandardCharsets.UTF_8);
+            this.headers = new HashMap<>();
+            if (MapUtils.isNotEmpty(scimResponse.getHeaderParamMap())) {
+                headers.putAll(scimResponse.getHeaderParamMap());
+            }
+            try {
+                this.entityTag = new EntityTag(Base64.encode(MessageDigest.getInstance(DIGEST_ALGORITHM)
+                        .digest(body)));
+            } catch (NoSuchAlgorithmException e) {
+                throw new CharonException("Error while computing the ETag of the document.", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.wso2.carbon.identity.scim2.provider.util;
+
+import org.apache.axiom.om.util.Base64;
+import org.apache.commons.lang.StringUtils;
+import org.wso2.charon3.core.exceptions.CharonException;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import javax.ws.rs.core.EntityTag;
+
+/**
+ * Utils for the weak ETags of SCIM resources, which are derived from the id and the last modified time of the
+ * resource so that they can be evaluated without building the resource.
+ */
+public class EntityTagUtils {
+
+    private static final String DIGEST_ALGORITHM = "SHA-256";
+    private static final String ANY_TAG = "*";
+    private static final String WEAK_PREFIX = "W/";
+
+    private EntityTagUtils() {}
+
+    /**
+     * Build the weak ETag of a resource version.
+     *
+     * @param id           SCIM id of the resource.
+     * @param lastModified Last modified time of the resource.
+     * @return ETag, or null if the last modified time is not known.
+     * @throws CharonException
+     */
+    public static EntityTag getEntityTag(String id, String lastModified) throws CharonException {
+
+        if (StringUtils.isBlank(id) || StringUtils.isBlank(lastModified)) {
+            return null;
+        }
+        try {
+            byte[] digest = MessageDigest.getInstance(DIGEST_ALGORITHM).digest(
+                    (id + ":" + lastModified).getBytes(StandardCharsets.UTF_8));
+            return new EntityTag(Base64.encode(digest), true);
+        } catch (NoSuchAlgorithmException e) {
+            throw new CharonException("Error while computing the ETag of the resource: " + id, e);
+        }
+    }
+
+    /**
+     * Check whether an If-Match or If-None-Match header matches the ETag, with the weak comparison of RFC 7232. SCIM
+     * allows weak ETags in If-Match as well, hence the same comparison is used for both headers.
+     *
+     * @param header    Value of the header, a comma separated list of ETags or *.
+     * @param entityTag Current ETag of the resource.
+     * @return true if the header lists the ETag or is *.
+     */
+    public static boolean matches(String header, EntityTag entityTag) {
+
+        if (StringUtils.isBlank(header) || entityTag == null) {
+            return false;
+        }
+        for (String tag : header.split(",")) {
+            tag = tag.trim();
+            if (ANY_TAG.equals(tag)) {
+                return true;
+            }
+            if (tag.startsWith(WEAK_PREFIX)) {
+                tag = tag.substring(WEAK_PREFIX.length());
+            }
+            if (tag.length() > 1 && tag.startsWith("\"") && tag.endsWith("\"")) {
+                tag = tag.substring(1, tag.length() - 1);
+            }
+            if (tag.equals(entityTag.getValue())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Check whether the header is *, which matches any current version of the resource.
+     *
+     * @param header Value of the header.
+     * @return true if the header is *.
+     */
+    public static boolean isAnyTag(String header) {
+
+        return header != null && ANY_TAG.equals(header.trim());
+    }
+}
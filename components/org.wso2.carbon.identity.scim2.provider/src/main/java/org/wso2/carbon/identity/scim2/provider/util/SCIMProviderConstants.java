@@ -35,6 +35,15 @@ public class SCIMProviderConstants {
     public static final String ACCEPT_HEADER = "Accept";
     public static final String ID = "id";
     public static final String DOMAIN = "domain";
+    public static final String SERVER_TIMING_HEADER = "Server-Timing";
+    public static final String FILTER_EXPLAIN_HEADER = "X-SCIM-Filter-Explain";
+    // Well below the 8 KB header limit of Tomcat, leaving room for the other headers.
+    public static final int MAX_FILTER_EXPLAIN_HEADER_LENGTH = 4096;
+    public static final String DEBUG = "debug";
+    public static final String DEBUG_EXPLAIN = "explain";
+    public static final String ADMIN_PERMISSION = "/permission/admin";
+    public static final String IF_MATCH_HEADER = "If-Match";
+    public static final String IF_NONE_MATCH_HEADER = "If-None-Match";
 
     public static final String RESOURCE_STRING = "RESOURCE_STRING";
     public static final String HTTP_VERB = "HTTP_VERB";
@@ -0,0 +1,101 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.scim2.provider.util;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import javax.ws.rs.core.StreamingOutput;
+
+/**
+ * Payload of a SCIM response, encoded as UTF-8 while it is written to the output stream of the response, so that
+ * the payload encoded by Charon is not copied into a byte array first. The encoded length is counted from the
+ * characters of the payload, without encoding it, to set the Content-Length of the response and to decide whether
+ * the response is compressed.
+ */
+public class SCIMResponseEntity implements StreamingOutput {
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private final String payload;
+    private final int length;
+
+    /**
+     * @param payload Payload encoded by Charon.
+     */
+    public SCIMResponseEntity(String payload) {
+
+        this.payload = payload;
+        this.length = getEncodedLength(payload);
+    }
+
+    /**
+     * @return Length of the payload encoded as UTF-8, in bytes.
+     */
+    public int getLength() {
+
+        return length;
+    }
+
+    @Override
+    public void write(OutputStream outputStream) throws IOException {
+
+        // The payload is written in chunks, as the writer copies the characters it is given into a char array. The
+        // writer is flushed but not closed, as the output stream is closed by the container.
+        Writer writer = new OutputStreamWriter(outputStream, StandardCharsets.UTF_8);
+        for (int offset = 0; offset < payload.length(); offset += BUFFER_SIZE) {
+            writer.write(payload, offset, Math.min(BUFFER_SIZE, payload.length() - offset));
+        }
+        writer.flush();
+    }
+
+    @Override
+    public String toString() {
+
+        return payload;
+    }
+
+    /**
+     * Count the bytes of a string encoded as UTF-8. Unpaired surrogates are counted as the single byte of the
+     * replacement character written by the encoder.
+     */
+    private static int getEncodedLength(String value) {
+
+        int length = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                length++;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < value.length() &&
+                    Character.isLowSurrogate(value.charAt(i + 1))) {
+                length += 4;
+                i++;
+            } else if (Character.isSurrogate(c)) {
+                length++;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+}
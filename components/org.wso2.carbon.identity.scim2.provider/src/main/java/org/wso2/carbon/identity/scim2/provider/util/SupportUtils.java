@@ -23,6 +23,7 @@ import org.apache.commons.collections.MapUtils;
 import org.wso2.carbon.context.PrivilegedCarbonContext;
 import org.wso2.charon3.core.protocol.SCIMResponse;
 
+import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.Response;
 import java.util.Map;
 
@@ -49,9 +50,11 @@ public class SupportUtils {
                 responseBuilder.header(entry.getKey(), entry.getValue());
             }
         }
-        //set the payload of the response, if available.
+        //set the payload of the response, if available. The payload is encoded as UTF-8 while it is written to the
+        //response, and compressed by the SCIMResponseCompressionFilter if it is large.
         if (scimResponse.getResponseMessage() != null) {
-            responseBuilder.entity(scimResponse.getResponseMessage());
+            SCIMResponseEntity entity = new SCIMResponseEntity(scimResponse.getResponseMessage());
+            responseBuilder.entity(entity).header(HttpHeaders.CONTENT_LENGTH, entity.getLength());
         }
         return responseBuilder.build();
     }
@@ -0,0 +1,282 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.wso2.carbon.identity.scim2.provider.impl;
+
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.testng.PowerMockTestCase;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+import org.wso2.carbon.identity.core.util.IdentityUtil;
+import org.wso2.carbon.identity.scim2.provider.util.SCIMResponseEntity;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.container.ContainerResponseContext;
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MultivaluedHashMap;
+import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.ext.WriterInterceptorContext;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.powermock.api.mockito.PowerMockito.mock;
+import static org.powermock.api.mockito.PowerMockito.mockStatic;
+import static org.powermock.api.mockito.PowerMockito.when;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+
+@PrepareForTest(IdentityUtil.class)
+public class SCIMResponseCompressionFilterTest extends PowerMockTestCase {
+
+    private static final String ENABLE = "SCIM.Compression.Enable";
+    private static final String THRESHOLD = "SCIM.Compression.Threshold";
+
+    private ContainerRequestContext requestContext;
+    private ContainerResponseContext responseContext;
+    private MultivaluedMap<String, Object> responseHeaders;
+
+    @BeforeMethod
+    public void setUp() {
+
+        mockStatic(IdentityUtil.class);
+        requestContext = mock(ContainerRequestContext.class);
+        responseContext = mock(ContainerResponseContext.class);
+        responseHeaders = new MultivaluedHashMap<>();
+        when(responseContext.getHeaders()).thenReturn(responseHeaders);
+    }
+
+    @DataProvider(name = "acceptEncodings")
+    public Object[][] getAcceptEncodings() {
+
+        return new Object[][]{
+                {"gzip", "gzip"},
+                {"gzip, deflate", "gzip"},
+                {"deflate, gzip", "gzip"},
+                {"x-gzip", "gzip"},
+                {"GZIP;q=0.8", "gzip"},
+                {"deflate", "deflate"},
+                {"gzip;q=0.5, deflate", "deflate"},
+                {"gzip;q=0.5, deflate;q=0.5", "gzip"},
+                {"gzip;q=0, deflate;q=0.1", "deflate"},
+                {"gzip; q=0", null},
+                {"gzip;q=invalid", null},
+                {"*", "gzip"},
+                {"*;q=0.5, gzip;q=0", "deflate"},
+                {"*;q=0", null},
+                {"identity", null},
+                {"br, identity;q=0.5", null}
+        };
+    }
+
+    @Test(dataProvider = "acceptEncodings")
+    public void testFilterWithAcceptEncoding(String acceptEncoding, String expectedEncoding) throws Exception {
+
+        when(requestContext.getHeaderString(HttpHeaders.ACCEPT_ENCODING)).thenReturn(acceptEncoding);
+        when(responseContext.getEntity()).thenReturn(new byte[2048]);
+
+        new SCIMResponseCompressionFilter().filter(requestContext, responseContext);
+
+        assertEquals(responseHeaders.getFirst(HttpHeaders.CONTENT_ENCODING), expectedEncoding);
+        // the response varies by the Accept-Encoding header whether it is compressed or not.
+        assertEquals(responseHeaders.getFirst("Vary"), HttpHeaders.ACCEPT_ENCODING);
+    }
+
+    @Test
+    public void testFilterWithoutAcceptEncoding() throws Exception {
+
+        when(responseContext.getEntity()).thenReturn(new byte[2048]);
+
+        new SCIMResponseCompressionFilter().filter(requestContext, responseContext);
+
+        assertNull(responseHeaders.getFirst(HttpHeaders.CONTENT_ENCODING));
+    }
+
+    @Test
+    public void testFilterBelowThreshold() throws Exception {
+
+        when(requestContext.getHeaderString(HttpHeaders.ACCEPT_ENCODING)).thenReturn("gzip");
+        when(responseContext.getEntity()).thenReturn(new SCIMResponseEntity(repeat('a', 1023)));
+
+        new SCIMResponseCompressionFilter().filter(requestContext, responseContext);
+
+        assertFalse(responseHeaders.containsKey(HttpHeaders.CONTENT_ENCODING));
+        assertFalse(responseHeaders.containsKey("Vary"));
+    }
+
+    @Test
+    public void testFilterAtThreshold() throws Exception {
+
+        when(requestContext.getHeaderString(HttpHeaders.ACCEPT_ENCODING)).thenReturn("gzip");
+        // the threshold applies to the encoded length, two bytes for each of the characters.
+        when(responseContext.getEntity()).thenReturn(new SCIMResponseEntity(repeat('\u00e9', 512)));
+
+        new SCIMResponseCompressionFilter().filter(requestContext, responseContext);
+
+        assertEquals(responseHeaders.getFirst(HttpHeaders.CONTENT_ENCODING), "gzip");
+    }
+
+    @Test
+    public void testFilterWithConfiguredThreshold() throws Exception {
+
+        when(IdentityUtil.getProperty(THRESHOLD)).thenReturn(" 10 ");
+        when(requestContext.getHeaderString(HttpHeaders.ACCEPT_ENCODING)).thenReturn("gzip");
+        when(responseContext.getEntity()).thenReturn(new byte[10]);
+
+        new SCIMResponseCompressionFilter().filter(requestContext, responseContext);
+
+        assertEquals(responseHeaders.getFirst(HttpHeaders.CONTENT_ENCODING), "gzip");
+    }
+
+    @Test
+    public void testFilterWithInvalidThreshold() throws Exception {
+
+        when(IdentityUtil.getProperty(THRESHOLD)).thenReturn("invalid");
+        when(requestContext.getHeaderString(HttpHeaders.ACCEPT_ENCODING)).thenReturn("gzip");
+        when(responseContext.getEntity()).thenReturn(new byte[1023]);
+
+        new SCIMResponseCompressionFilter().filter(requestContext, responseContext);
+
+        assertFalse(responseHeaders.containsKey(HttpHeaders.CONTENT_ENCODING));
+    }
+
+    @Test
+    public void testFilterWhenDisabled() throws Exception {
+
+        when(IdentityUtil.getProperty(ENABLE)).thenReturn("false");
+        when(requestContext.getHeaderString(HttpHeaders.ACCEPT_ENCODING)).thenReturn("gzip");
+        when(responseContext.getEntity()).thenReturn(new byte[2048]);
+
+        new SCIMResponseCompressionFilter().filter(requestContext, responseContext);
+
+        assertFalse(responseHeaders.containsKey(HttpHeaders.CONTENT_ENCODING));
+    }
+
+    @Test
+    public void testFilterWithUnknownLength() throws Exception {
+
+        when(requestContext.getHeaderString(HttpHeaders.ACCEPT_ENCODING)).thenReturn("gzip");
+        when(responseContext.getEntity()).thenReturn(repeat('a', 2048));
+
+        new SCIMResponseCompressionFilter().filter(requestContext, responseContext);
+
+        assertFalse(responseHeaders.containsKey(HttpHeaders.CONTENT_ENCODING));
+    }
+
+    @Test
+    public void testFilterWithStrongEntityTag() throws Exception {
+
+        when(requestContext.getHeaderString(HttpHeaders.ACCEPT_ENCODING)).thenReturn("gzip");
+        when(responseContext.getEntity()).thenReturn(new byte[2048]);
+        when(responseContext.getEntityTag()).thenReturn(new EntityTag("document"));
+
+        new SCIMResponseCompressionFilter().filter(requestContext, responseContext);
+
+        assertFalse(responseHeaders.containsKey(HttpHeaders.CONTENT_ENCODING));
+        assertFalse(responseHeaders.containsKey("Vary"));
+    }
+
+    @Test
+    public void testFilterWithWeakEntityTag() throws Exception {
+
+        when(requestContext.getHeaderString(HttpHeaders.ACCEPT_ENCODING)).thenReturn("gzip");
+        when(responseContext.getEntity()).thenReturn(new byte[2048]);
+        when(responseContext.getEntityTag()).thenReturn(new EntityTag("user", true));
+
+        new SCIMResponseCompressionFilter().filter(requestContext, responseContext);
+
+        assertEquals(responseHeaders.getFirst(HttpHeaders.CONTENT_ENCODING), "gzip");
+    }
+
+    @Test
+    public void testFilterWithEncodedResponse() throws Exception {
+
+        when(requestContext.getHeaderString(HttpHeaders.ACCEPT_ENCODING)).thenReturn("gzip");
+        when(responseContext.getEntity()).thenReturn(new byte[2048]);
+        responseHeaders.putSingle(HttpHeaders.CONTENT_ENCODING, "br");
+
+        new SCIMResponseCompressionFilter().filter(requestContext, responseContext);
+
+        assertEquals(responseHeaders.getFirst(HttpHeaders.CONTENT_ENCODING), "br");
+    }
+
+    @Test
+    public void testAroundWriteToWithGzip() throws Exception {
+
+        final String payload = repeat('a', 2048);
+        final ByteArrayOutputStream responseStream = new ByteArrayOutputStream();
+        final OutputStream[] outputStream = {responseStream};
+        WriterInterceptorContext context = mock(WriterInterceptorContext.class);
+        responseHeaders.putSingle(HttpHeaders.CONTENT_ENCODING, "gzip");
+        responseHeaders.putSingle(HttpHeaders.CONTENT_LENGTH, payload.length());
+        when(context.getHeaders()).thenReturn(responseHeaders);
+        when(context.getOutputStream()).thenReturn(responseStream);
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) {
+
+                outputStream[0] = (OutputStream) invocation.getArguments()[0];
+                return null;
+            }
+        }).when(context).setOutputStream(any(OutputStream.class));
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) throws Exception {
+
+                outputStream[0].write(payload.getBytes(StandardCharsets.UTF_8));
+                return null;
+            }
+        }).when(context).proceed();
+
+        new SCIMResponseCompressionFilter().aroundWriteTo(context);
+
+        assertFalse(responseHeaders.containsKey(HttpHeaders.CONTENT_LENGTH));
+        assertEquals(decompress(responseStream.toByteArray()), payload);
+    }
+
+    private static String decompress(byte[] compressed) throws Exception {
+
+        GZIPInputStream inputStream = new GZIPInputStream(new ByteArrayInputStream(compressed));
+        ByteArrayOutputStream decompressed = new ByteArrayOutputStream();
+        byte[] buffer = new byte[1024];
+        int length;
+        while ((length = inputStream.read(buffer)) > 0) {
+            decompressed.write(buffer, 0, length);
+        }
+        return new String(decompressed.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private static String repeat(char c, int count) {
+
+        StringBuilder value = new StringBuilder(count);
+        for (int i = 0; i < count; i++) {
+            value.append(c);
+        }
+        return value.toString();
+    }
+}
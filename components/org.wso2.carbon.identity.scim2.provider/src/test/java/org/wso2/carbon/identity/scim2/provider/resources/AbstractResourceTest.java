@@ -0,0 +1,165 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.wso2.carbon.identity.scim2.provider.resources;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+import org.wso2.carbon.identity.scim2.common.impl.SCIMUserManager;
+import org.wso2.carbon.identity.scim2.provider.util.EntityTagUtils;
+import org.wso2.charon3.core.encoder.JSONEncoder;
+import org.wso2.charon3.core.extensions.UserManager;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.Response;
+
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+public class AbstractResourceTest {
+
+    private static final String ID = "d2c2dbe4-f5a5-4d28-a0e1-0a96bcf8c3f4";
+    private static final String LAST_MODIFIED = "2018-06-12T10:15:30.123Z";
+
+    private AbstractResource resource;
+    private EntityTag entityTag;
+
+    @BeforeMethod
+    public void setUp() throws Exception {
+
+        resource = new AbstractResource();
+        entityTag = EntityTagUtils.getEntityTag(ID, LAST_MODIFIED);
+    }
+
+    @Test
+    public void testEvaluateIfMatchWithoutHeader() {
+
+        assertNull(resource.evaluateIfMatch(null, entityTag));
+        assertNull(resource.evaluateIfMatch("", null));
+    }
+
+    @Test
+    public void testEvaluateIfMatchWithCurrentVersion() {
+
+        assertNull(resource.evaluateIfMatch("W/\"" + entityTag.getValue() + "\"", entityTag));
+        assertNull(resource.evaluateIfMatch("\"other\", \"" + entityTag.getValue() + "\"", entityTag));
+    }
+
+    @Test
+    public void testEvaluateIfMatchWithAnyTag() {
+
+        assertNull(resource.evaluateIfMatch("*", entityTag));
+        // the version of the resource is not known, the request is applied if the resource exists.
+        assertNull(resource.evaluateIfMatch("*", null));
+    }
+
+    @Test
+    public void testEvaluateIfMatchWithModifiedResource() {
+
+        Response response = resource.evaluateIfMatch("W/\"other\"", entityTag);
+
+        assertEquals(response.getStatus(), Response.Status.PRECONDITION_FAILED.getStatusCode());
+        assertEquals(response.getEntityTag(), entityTag);
+    }
+
+    @Test
+    public void testEvaluateIfMatchWithUnknownVersion() {
+
+        Response response = resource.evaluateIfMatch("W/\"" + entityTag.getValue() + "\"", null);
+
+        assertEquals(response.getStatus(), Response.Status.PRECONDITION_FAILED.getStatusCode());
+        assertNull(response.getEntityTag());
+    }
+
+    @Test
+    public void testProcessConditionalUpdateWithoutIfMatch() throws Exception {
+
+        SCIMUserManager userManager = mock(SCIMUserManager.class);
+        AtomicBoolean updated = new AtomicBoolean();
+
+        Response response = resource.processConditionalUpdate(null, userManager, new JSONEncoder(), ID, false,
+                getUpdate(updated, null));
+
+        assertEquals(response.getStatus(), Response.Status.OK.getStatusCode());
+        assertTrue(updated.get());
+        // unconditional updates don't take the lock of the resource, nor read its version.
+        verify(userManager, never()).getResourceLock(anyString());
+        verify(userManager, never()).getUserVersion(anyString());
+    }
+
+    @Test
+    public void testProcessConditionalUpdateWithCurrentVersion() throws Exception {
+
+        SCIMUserManager userManager = mock(SCIMUserManager.class);
+        ReentrantLock lock = new ReentrantLock();
+        when(userManager.getResourceLock(ID)).thenReturn(lock);
+        when(userManager.getGroupVersion(ID)).thenReturn(LAST_MODIFIED);
+        AtomicBoolean updated = new AtomicBoolean();
+
+        Response response = resource.processConditionalUpdate("W/\"" + entityTag.getValue() + "\"", userManager,
+                new JSONEncoder(), ID, true, getUpdate(updated, lock));
+
+        assertEquals(response.getStatus(), Response.Status.OK.getStatusCode());
+        assertTrue(updated.get());
+        assertFalse(lock.isLocked());
+    }
+
+    @Test
+    public void testProcessConditionalUpdateWithModifiedResource() throws Exception {
+
+        SCIMUserManager userManager = mock(SCIMUserManager.class);
+        ReentrantLock lock = new ReentrantLock();
+        when(userManager.getResourceLock(ID)).thenReturn(lock);
+        when(userManager.getUserVersion(ID)).thenReturn("2018-06-12T10:15:31.123Z");
+        AtomicBoolean updated = new AtomicBoolean();
+
+        Response response = resource.processConditionalUpdate("W/\"" + entityTag.getValue() + "\"", userManager,
+                new JSONEncoder(), ID, false, getUpdate(updated, lock));
+
+        assertEquals(response.getStatus(), Response.Status.PRECONDITION_FAILED.getStatusCode());
+        assertEquals(response.getEntityTag(), EntityTagUtils.getEntityTag(ID, "2018-06-12T10:15:31.123Z"));
+        assertFalse(updated.get());
+        assertFalse(lock.isLocked());
+    }
+
+    /**
+     * Get an update which records that it was run, checking that it runs while holding the given lock.
+     */
+    private AbstractResource.ResourceOperation getUpdate(final AtomicBoolean updated, final ReentrantLock lock) {
+
+        return new AbstractResource.ResourceOperation() {
+            @Override
+            public Response execute(UserManager userManager, JSONEncoder encoder) {
+
+                assertTrue(lock == null || lock.isHeldByCurrentThread());
+                updated.set(true);
+                return Response.ok().build();
+            }
+        };
+    }
+}
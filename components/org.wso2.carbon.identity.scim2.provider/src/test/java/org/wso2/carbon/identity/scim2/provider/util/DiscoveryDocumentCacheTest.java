@@ -0,0 +1,162 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.wso2.carbon.identity.scim2.provider.util;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+import org.wso2.carbon.base.CarbonBaseConstants;
+import org.wso2.carbon.context.PrivilegedCarbonContext;
+import org.wso2.carbon.identity.scim2.common.utils.SCIMConfigProcessor;
+import org.wso2.charon3.core.extensions.UserManager;
+import org.wso2.charon3.core.protocol.ResponseCodeConstants;
+import org.wso2.charon3.core.protocol.SCIMResponse;
+import org.wso2.charon3.core.protocol.endpoints.ResourceManager;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.Map;
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.Request;
+import javax.ws.rs.core.Response;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotEquals;
+
+public class DiscoveryDocumentCacheTest {
+
+    private static final String DOCUMENT = "{\"schemas\":[" +
+            "\"urn:ietf:params:scim:schemas:core:2.0:ServiceProviderConfig\"]}";
+    private static final Map<String, String> HEADERS = Collections.singletonMap(
+            "Content-Type", "application/scim+json");
+
+    private ResourceManager resourceManager;
+    private Request request;
+    private DiscoveryDocumentCache documentCache;
+
+    @BeforeMethod
+    public void setUp() {
+
+        System.setProperty(CarbonBaseConstants.CARBON_HOME, Paths.get(System.getProperty("user.dir"), "target")
+                .toString());
+        PrivilegedCarbonContext.startTenantFlow();
+        PrivilegedCarbonContext.getThreadLocalCarbonContext().setTenantDomain("carbon.super");
+
+        resourceManager = mock(ResourceManager.class);
+        when(resourceManager.get(anyString(), any(UserManager.class), anyString(),
+                anyString())).thenReturn(new SCIMResponse(ResponseCodeConstants.CODE_OK, DOCUMENT, HEADERS));
+        request = mock(Request.class);
+        documentCache = new DiscoveryDocumentCache(resourceManager);
+    }
+
+    @AfterMethod
+    public void tearDown() {
+
+        PrivilegedCarbonContext.endTenantFlow();
+    }
+
+    @Test
+    public void testGetResponse() throws Exception {
+
+        Response response = documentCache.getResponse(request);
+
+        assertEquals(response.getStatus(), Response.Status.OK.getStatusCode());
+        assertEquals((byte[]) response.getEntity(), DOCUMENT.getBytes(StandardCharsets.UTF_8));
+        assertEquals(response.getHeaderString("Content-Type"), "application/scim+json");
+        // the document is served with a strong ETag, which is not compressed.
+        assertFalse(response.getEntityTag().isWeak());
+    }
+
+    @Test
+    public void testGetResponseIsRenderedOnce() throws Exception {
+
+        EntityTag entityTag = documentCache.getResponse(request).getEntityTag();
+        Response response = documentCache.getResponse(request);
+
+        assertEquals(response.getEntityTag(), entityTag);
+        assertEquals((byte[]) response.getEntity(), DOCUMENT.getBytes(StandardCharsets.UTF_8));
+        verify(resourceManager, times(1)).get(anyString(), any(UserManager.class),
+                anyString(), anyString());
+    }
+
+    @Test
+    public void testGetResponseWithCurrentDocument() throws Exception {
+
+        EntityTag entityTag = documentCache.getResponse(request).getEntityTag();
+        when(request.evaluatePreconditions(entityTag)).thenReturn(Response.notModified());
+
+        Response response = documentCache.getResponse(request);
+
+        assertEquals(response.getStatus(), Response.Status.NOT_MODIFIED.getStatusCode());
+        assertEquals(response.getEntityTag(), entityTag);
+    }
+
+    @Test
+    public void testGetResponseAfterConfigChange() throws Exception {
+
+        EntityTag entityTag = documentCache.getResponse(request).getEntityTag();
+        when(resourceManager.get(anyString(), any(UserManager.class), anyString(),
+                anyString())).thenReturn(new SCIMResponse(ResponseCodeConstants.CODE_OK, "{}", HEADERS));
+        SCIMConfigProcessor.getInstance().updateConfigVersion();
+
+        Response response = documentCache.getResponse(request);
+
+        assertEquals((byte[]) response.getEntity(), "{}".getBytes(StandardCharsets.UTF_8));
+        assertNotEquals(response.getEntityTag(), entityTag);
+    }
+
+    @Test
+    public void testGetResponseOfEachTenant() throws Exception {
+
+        documentCache.getResponse(request);
+        PrivilegedCarbonContext.startTenantFlow();
+        try {
+            PrivilegedCarbonContext.getThreadLocalCarbonContext().setTenantDomain("wso2.com");
+            documentCache.getResponse(request);
+            documentCache.getResponse(request);
+        } finally {
+            PrivilegedCarbonContext.endTenantFlow();
+        }
+
+        verify(resourceManager, times(2)).get(anyString(), any(UserManager.class),
+                anyString(), anyString());
+    }
+
+    @Test
+    public void testGetErrorResponse() throws Exception {
+
+        when(resourceManager.get(anyString(), any(UserManager.class), anyString(),
+                anyString())).thenReturn(new SCIMResponse(ResponseCodeConstants.CODE_INTERNAL_ERROR, "{}", HEADERS));
+
+        assertEquals(documentCache.getResponse(request).getStatus(), ResponseCodeConstants.CODE_INTERNAL_ERROR);
+        // errors are not cached.
+        documentCache.getResponse(request);
+        verify(resourceManager, times(2)).get(anyString(), any(UserManager.class),
+                anyString(), anyString());
+    }
+}
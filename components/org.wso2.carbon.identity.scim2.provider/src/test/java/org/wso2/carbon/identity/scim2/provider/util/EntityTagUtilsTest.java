@@ -0,0 +1,93 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.wso2.carbon.identity.scim2.provider.util;
+
+import org.testng.annotations.Test;
+
+import javax.ws.rs.core.EntityTag;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+public class EntityTagUtilsTest {
+
+    private static final String ID = "d2c2dbe4-f5a5-4d28-a0e1-0a96bcf8c3f4";
+    private static final String LAST_MODIFIED = "2018-06-12T10:15:30.123Z";
+
+    @Test
+    public void testGetEntityTag() throws Exception {
+
+        EntityTag entityTag = EntityTagUtils.getEntityTag(ID, LAST_MODIFIED);
+        assertTrue(entityTag.isWeak());
+        assertEquals(EntityTagUtils.getEntityTag(ID, LAST_MODIFIED), entityTag);
+        assertNotEquals(EntityTagUtils.getEntityTag(ID, "2018-06-12T10:15:31.123Z"), entityTag);
+        assertNotEquals(EntityTagUtils.getEntityTag("other", LAST_MODIFIED), entityTag);
+    }
+
+    @Test
+    public void testGetEntityTagWithoutVersion() throws Exception {
+
+        assertNull(EntityTagUtils.getEntityTag(ID, null));
+        assertNull(EntityTagUtils.getEntityTag(ID, " "));
+        assertNull(EntityTagUtils.getEntityTag(null, LAST_MODIFIED));
+    }
+
+    @Test
+    public void testMatchesWithWeakComparison() throws Exception {
+
+        EntityTag entityTag = EntityTagUtils.getEntityTag(ID, LAST_MODIFIED);
+        String value = entityTag.getValue();
+
+        assertTrue(EntityTagUtils.matches("W/\"" + value + "\"", entityTag));
+        // a strong tag of the same value matches with the weak comparison.
+        assertTrue(EntityTagUtils.matches("\"" + value + "\"", entityTag));
+        assertTrue(EntityTagUtils.matches("W/\"other\", W/\"" + value + "\"", entityTag));
+        assertFalse(EntityTagUtils.matches("W/\"other\"", entityTag));
+        assertFalse(EntityTagUtils.matches("W/\"" + EntityTagUtils.getEntityTag(ID, "2018-06-12T10:15:31.123Z")
+                .getValue() + "\"", entityTag));
+    }
+
+    @Test
+    public void testMatchesAnyTag() throws Exception {
+
+        EntityTag entityTag = EntityTagUtils.getEntityTag(ID, LAST_MODIFIED);
+
+        assertTrue(EntityTagUtils.matches("*", entityTag));
+        assertTrue(EntityTagUtils.matches(" * ", entityTag));
+        // * doesn't match a resource without a known version.
+        assertFalse(EntityTagUtils.matches("*", null));
+        assertTrue(EntityTagUtils.isAnyTag(" * "));
+        assertFalse(EntityTagUtils.isAnyTag("W/\"*\""));
+        assertFalse(EntityTagUtils.isAnyTag(null));
+    }
+
+    @Test
+    public void testMatchesWithoutHeader() throws Exception {
+
+        EntityTag entityTag = EntityTagUtils.getEntityTag(ID, LAST_MODIFIED);
+
+        assertFalse(EntityTagUtils.matches(null, entityTag));
+        assertFalse(EntityTagUtils.matches("", entityTag));
+        assertFalse(EntityTagUtils.matches("W/\"" + entityTag.getValue() + "\"", null));
+    }
+}
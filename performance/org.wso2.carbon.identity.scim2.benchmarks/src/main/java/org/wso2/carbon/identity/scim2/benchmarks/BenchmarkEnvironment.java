@@ -0,0 +1,180 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.wso2.carbon.identity.scim2.benchmarks;
+
+import org.wso2.carbon.base.CarbonBaseConstants;
+import org.wso2.carbon.identity.claim.metadata.mgt.ClaimMetadataManagementService;
+import org.wso2.carbon.identity.claim.metadata.mgt.internal.IdentityClaimManagementServiceDataHolder;
+import org.wso2.carbon.identity.claim.metadata.mgt.model.ExternalClaim;
+import org.wso2.charon3.core.config.SCIMUserSchemaExtensionBuilder;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Environment of the benchmarks, in place of a Carbon server. It creates a Carbon home with an empty identity.xml,
+ * builds the user schema extension, with the enterprise user attributes and the benchmark attributes of
+ * {@link SyntheticClaims}, and serves the claim mappings of {@link SyntheticClaims} as the claim metadata. The claim
+ * metadata management service only serves the external claims of the dialects; its other methods return null.
+ */
+public class BenchmarkEnvironment {
+
+    private static final String CORE_DIALECT = "urn:ietf:params:scim:schemas:core:2.0";
+    private static final String USER_DIALECT = "urn:ietf:params:scim:schemas:core:2.0:User";
+    private static final String IDENTITY_CONFIG = "<Server xmlns=\"http://wso2.org/projects/carbon/carbon.xml\">" +
+            "</Server>";
+
+    private static boolean initialized;
+
+    private BenchmarkEnvironment() {
+
+    }
+
+    /**
+     * Initialize the environment, once per JVM.
+     *
+     * @throws Exception if the environment cannot be initialized.
+     */
+    public static synchronized void init() throws Exception {
+
+        if (initialized) {
+            return;
+        }
+        Path carbonHome = Files.createTempDirectory("scim2-benchmarks");
+        Path identityConfigDir = Files.createDirectories(carbonHome.resolve("repository").resolve("conf")
+                .resolve("identity"));
+        write(identityConfigDir.resolve("identity.xml"), IDENTITY_CONFIG);
+        System.setProperty(CarbonBaseConstants.CARBON_HOME, carbonHome.toString());
+
+        Path schemaExtensionConfig = identityConfigDir.resolve("scim2-schema-extension.config");
+        write(schemaExtensionConfig, buildSchemaExtensionConfig());
+        SCIMUserSchemaExtensionBuilder.getInstance().buildUserSchemaExtension(schemaExtensionConfig.toString());
+        IdentityClaimManagementServiceDataHolder.getInstance()
+                .setClaimManagementService(createClaimMetadataManagementService());
+        initialized = true;
+    }
+
+    private static ClaimMetadataManagementService createClaimMetadataManagementService() {
+
+        final Map<String, List<ExternalClaim>> externalClaimsOfDialects = new HashMap<>();
+        for (Map.Entry<String, String> claimMapping : SyntheticClaims.getSCIMToLocalClaimMappings().entrySet()) {
+            String dialect = getDialect(claimMapping.getKey());
+            List<ExternalClaim> externalClaims = externalClaimsOfDialects.get(dialect);
+            if (externalClaims == null) {
+                externalClaims = new ArrayList<>();
+                externalClaimsOfDialects.put(dialect, externalClaims);
+            }
+            externalClaims.add(new ExternalClaim(dialect, claimMapping.getKey(), claimMapping.getValue()));
+        }
+
+        InvocationHandler handler = new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+
+                if (method.getDeclaringClass() == Object.class) {
+                    return invokeObjectMethod(proxy, method, args);
+                }
+                if (!"getExternalClaims".equals(method.getName())) {
+                    return null;
+                }
+                List<ExternalClaim> externalClaims = externalClaimsOfDialects.get((String) args[0]);
+                return externalClaims == null ? Collections.<ExternalClaim>emptyList() : externalClaims;
+            }
+        };
+        return (ClaimMetadataManagementService) Proxy.newProxyInstance(BenchmarkEnvironment.class.getClassLoader(),
+                new Class<?>[]{ClaimMetadataManagementService.class}, handler);
+    }
+
+    private static Object invokeObjectMethod(Object proxy, Method method, Object[] args) {
+
+        switch (method.getName()) {
+            case "equals":
+                return proxy == args[0];
+            case "hashCode":
+                return System.identityHashCode(proxy);
+            default:
+                return "In-memory claim metadata management service";
+        }
+    }
+
+    private static String getDialect(String attributeURI) {
+
+        if (attributeURI.startsWith(SyntheticClaims.EXTENSION_SCHEMA_URI + ":")) {
+            return SyntheticClaims.EXTENSION_SCHEMA_URI;
+        }
+        if (attributeURI.startsWith(USER_DIALECT + ":")) {
+            return USER_DIALECT;
+        }
+        return CORE_DIALECT;
+    }
+
+    private static String buildSchemaExtensionConfig() {
+
+        String extensionURI = SyntheticClaims.EXTENSION_SCHEMA_URI;
+        StringBuilder config = new StringBuilder("[");
+        appendAttribute(config, extensionURI + ":manager.value", "value", "string", "null");
+        appendAttribute(config, extensionURI + ":manager.$ref", "$ref", "reference", "null");
+        appendAttribute(config, extensionURI + ":manager.displayName", "displayName", "string", "null");
+        appendAttribute(config, extensionURI + ":manager", "manager", "complex", "value $ref displayName");
+
+        StringBuilder subAttributes = new StringBuilder("manager");
+        String[] stringAttributes = {"employeeNumber", "costCenter", "organization", "division", "department"};
+        for (String attributeName : stringAttributes) {
+            appendAttribute(config, extensionURI + ":" + attributeName, attributeName, "string", "null");
+            subAttributes.append(' ').append(attributeName);
+        }
+        for (int i = 1; i <= SyntheticClaims.getBenchmarkAttributeCount(); i++) {
+            String attributeName = SyntheticClaims.BENCHMARK_ATTRIBUTE_PREFIX + i;
+            appendAttribute(config, extensionURI + ":" + attributeName, attributeName, "string", "null");
+            subAttributes.append(' ').append(attributeName);
+        }
+        appendAttribute(config, extensionURI, extensionURI, "complex", subAttributes.toString());
+        // Replaces the separator after the last attribute.
+        config.setCharAt(config.length() - 1, ']');
+        return config.toString();
+    }
+
+    private static void appendAttribute(StringBuilder config, String attributeURI, String attributeName,
+                                        String dataType, String subAttributes) {
+
+        config.append("{\"attributeURI\":\"").append(attributeURI)
+                .append("\",\"attributeName\":\"").append(attributeName)
+                .append("\",\"dataType\":\"").append(dataType)
+                .append("\",\"multiValued\":\"false\",\"description\":\"").append(attributeName)
+                .append("\",\"required\":\"false\",\"caseExact\":\"false\",\"mutability\":\"readwrite\"")
+                .append(",\"returned\":\"default\",\"uniqueness\":\"none\",\"subAttributes\":\"").append(subAttributes)
+                .append("\",\"canonicalValues\":[],\"referenceTypes\":[]},");
+    }
+
+    private static void write(Path path, String content) throws IOException {
+
+        Files.write(path, content.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.wso2.carbon.identity.scim2.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.wso2.carbon.identity.scim2.common.utils.SCIMCommonUtils;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of the conversions of the claims of a user between the local and the SCIM dialects, with all the
+ * claims of {@link SyntheticClaims} mapped.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class ClaimDialectBenchmark {
+
+    @Param({"10", "50", "100", "200"})
+    private int claimCount;
+
+    private Map<String, String> scimToLocalClaimMappings;
+    private Map<String, String> localClaims;
+    private Map<String, String> scimClaims;
+
+    @Setup
+    public void setUp() throws Exception {
+
+        BenchmarkEnvironment.init();
+        scimToLocalClaimMappings = SyntheticClaims.getSCIMToLocalClaimMappings();
+        localClaims = SyntheticClaims.getLocalClaims(1, claimCount);
+        scimClaims = SyntheticClaims.getSCIMClaims(1, claimCount);
+    }
+
+    @Benchmark
+    public Map<String, String> convertLocalToSCIMDialect() throws Exception {
+
+        return SCIMCommonUtils.convertLocalToSCIMDialect(localClaims, scimToLocalClaimMappings);
+    }
+
+    @Benchmark
+    public Map<String, String> convertSCIMtoLocalDialect() {
+
+        return SCIMCommonUtils.convertSCIMtoLocalDialect(scimClaims, scimToLocalClaimMappings);
+    }
+}
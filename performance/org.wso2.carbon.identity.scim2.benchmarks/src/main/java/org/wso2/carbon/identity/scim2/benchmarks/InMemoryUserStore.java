@@ -0,0 +1,398 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.wso2.carbon.identity.scim2.benchmarks;
+
+import org.wso2.carbon.user.api.Properties;
+import org.wso2.carbon.user.api.RealmConfiguration;
+import org.wso2.carbon.user.core.PaginatedUserStoreManager;
+import org.wso2.carbon.user.core.UserCoreConstants;
+import org.wso2.carbon.user.core.UserStoreException;
+import org.wso2.carbon.user.core.UserStoreManager;
+import org.wso2.carbon.user.core.common.AbstractUserStoreManager;
+import org.wso2.carbon.user.core.common.RoleContext;
+import org.wso2.carbon.user.core.model.Condition;
+import org.wso2.carbon.user.core.model.UserClaimSearchEntry;
+import org.wso2.carbon.user.core.tenant.Tenant;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * In-memory primary user store, with synthetic users. Only the operations used to list a page of users and to read
+ * them in bulk are backed by the users. The rest of the reads return no values, and the writes fail, as the user store
+ * is read only.
+ * <p>
+ * The user store overrides the public operations used by the benchmark, so that the benchmark measures the SCIM
+ * component rather than the user store code of the kernel, which needs a realm configuration and a claim manager.
+ */
+public class InMemoryUserStore extends AbstractUserStoreManager implements PaginatedUserStoreManager {
+
+    private final Map<String, Map<String, String>> claimsOfUsers = new HashMap<>();
+    private final String[] userNames;
+
+    /**
+     * Create a user store with synthetic users, having the given number of claims each.
+     *
+     * @param userCount  number of the users.
+     * @param claimCount number of the claims of each user.
+     */
+    public InMemoryUserStore(int userCount, int claimCount) {
+
+        userNames = new String[userCount];
+        for (int i = 0; i < userCount; i++) {
+            userNames[i] = UserCoreConstants.PRIMARY_DEFAULT_DOMAIN_NAME + UserCoreConstants.DOMAIN_SEPARATOR +
+                    SyntheticClaims.getUserName(i);
+            claimsOfUsers.put(userNames[i], SyntheticClaims.getLocalClaims(i, claimCount));
+        }
+    }
+
+    @Override
+    public boolean isSCIMEnabled() {
+
+        return true;
+    }
+
+    @Override
+    public UserStoreManager getSecondaryUserStoreManager(String userDomain) {
+
+        return UserCoreConstants.PRIMARY_DEFAULT_DOMAIN_NAME.equalsIgnoreCase(userDomain) ? this : null;
+    }
+
+    @Override
+    public String[] getUserList(Condition condition, String domain, String profileName, int limit, int offset,
+                                String sortBy, String sortOrder) {
+
+        if (!UserCoreConstants.PRIMARY_DEFAULT_DOMAIN_NAME.equalsIgnoreCase(domain)) {
+            return new String[0];
+        }
+        // The offset starts from 1, as in the SCIM requests.
+        int fromIndex = Math.min(Math.max(offset - 1, 0), userNames.length);
+        int toIndex = Math.min(fromIndex + limit, userNames.length);
+        return Arrays.copyOfRange(userNames, fromIndex, toIndex);
+    }
+
+    @Override
+    public String[] getUserList(String claim, String claimValue, String profileName, int limit, int offset) {
+
+        return new String[0];
+    }
+
+    @Override
+    public String[] listUsers(String filter, int limit, int offset) {
+
+        return new String[0];
+    }
+
+    @Override
+    public UserClaimSearchEntry[] getUsersClaimValues(String[] userNames, String[] claims, String profileName) {
+
+        List<UserClaimSearchEntry> searchEntries = new ArrayList<>();
+        for (String userName : userNames) {
+            Map<String, String> claimsOfUser = claimsOfUsers.get(userName);
+            if (claimsOfUser == null) {
+                continue;
+            }
+            // Copies the claims, as a user store reads them for each request.
+            Map<String, String> claimValues = new HashMap<>();
+            for (String claimURI : claims) {
+                String claimValue = claimsOfUser.get(claimURI);
+                if (claimValue != null) {
+                    claimValues.put(claimURI, claimValue);
+                }
+            }
+            UserClaimSearchEntry searchEntry = new UserClaimSearchEntry();
+            searchEntry.setUserName(userName);
+            searchEntry.setClaims(claimValues);
+            searchEntries.add(searchEntry);
+        }
+        return searchEntries.toArray(new UserClaimSearchEntry[0]);
+    }
+
+    @Override
+    public Map<String, List<String>> getRoleListOfUsers(String[] userNames) {
+
+        return Collections.emptyMap();
+    }
+
+    @Override
+    protected Map<String, String> getUserPropertyValues(String userName, String[] propertyNames,
+                                                        String profileName) {
+
+        return Collections.emptyMap();
+    }
+
+    @Override
+    protected boolean doCheckExistingRole(String roleName) {
+
+        return false;
+    }
+
+    @Override
+    protected RoleContext createRoleContext(String roleName) {
+
+        return new RoleContext();
+    }
+
+    @Override
+    protected boolean doCheckExistingUser(String userName) {
+
+        return claimsOfUsers.containsKey(userName);
+    }
+
+    @Override
+    protected String[] getUserListFromProperties(String property, String value, String profileName) {
+
+        return new String[0];
+    }
+
+    @Override
+    protected boolean doAuthenticate(String userName, Object credential) {
+
+        return false;
+    }
+
+    @Override
+    protected void doAddUser(String userName, Object credential, String[] roleList, Map<String, String> claims,
+                             String profileName, boolean requirePasswordChange) throws UserStoreException {
+
+        throw readOnly();
+    }
+
+    @Override
+    protected void doUpdateCredential(String userName, Object newCredential, Object oldCredential)
+            throws UserStoreException {
+
+        throw readOnly();
+    }
+
+    @Override
+    protected void doUpdateCredentialByAdmin(String userName, Object newCredential) throws UserStoreException {
+
+        throw readOnly();
+    }
+
+    @Override
+    protected void doDeleteUser(String userName) throws UserStoreException {
+
+        throw readOnly();
+    }
+
+    @Override
+    protected void doSetUserClaimValue(String userName, String claimURI, String claimValue, String profileName)
+            throws UserStoreException {
+
+        throw readOnly();
+    }
+
+    @Override
+    protected void doSetUserClaimValues(String userName, Map<String, String> claims, String profileName)
+            throws UserStoreException {
+
+        throw readOnly();
+    }
+
+    @Override
+    protected void doDeleteUserClaimValue(String userName, String claimURI, String profileName)
+            throws UserStoreException {
+
+        throw readOnly();
+    }
+
+    @Override
+    protected void doDeleteUserClaimValues(String userName, String[] claims, String profileName)
+            throws UserStoreException {
+
+        throw readOnly();
+    }
+
+    @Override
+    protected void doUpdateUserListOfRole(String roleName, String[] deletedUsers, String[] newUsers)
+            throws UserStoreException {
+
+        throw readOnly();
+    }
+
+    @Override
+    protected void doUpdateRoleListOfUser(String userName, String[] deletedRoles, String[] newRoles)
+            throws UserStoreException {
+
+        throw readOnly();
+    }
+
+    @Override
+    protected String[] doGetExternalRoleListOfUser(String userName, String filter) {
+
+        return new String[0];
+    }
+
+    @Override
+    protected String[] doGetSharedRoleListOfUser(String userName, String tenantDomain, String filter) {
+
+        return new String[0];
+    }
+
+    @Override
+    protected void doAddRole(String roleName, String[] userList, boolean shared) throws UserStoreException {
+
+        throw readOnly();
+    }
+
+    @Override
+    protected void doDeleteRole(String roleName) throws UserStoreException {
+
+        throw readOnly();
+    }
+
+    @Override
+    protected void doUpdateRoleName(String roleName, String newRoleName) throws UserStoreException {
+
+        throw readOnly();
+    }
+
+    @Override
+    protected String[] doGetRoleNames(String filter, int maxItemLimit) {
+
+        return new String[0];
+    }
+
+    @Override
+    protected String[] doListUsers(String filter, int maxItemLimit) {
+
+        return new String[0];
+    }
+
+    @Override
+    protected String[] doGetDisplayNamesForInternalRole(String[] userNames) {
+
+        return userNames;
+    }
+
+    @Override
+    public boolean doCheckIsUserInRole(String userName, String roleName) {
+
+        return false;
+    }
+
+    @Override
+    protected String[] doGetSharedRoleNames(String tenantDomain, String filter, int maxItemLimit) {
+
+        return new String[0];
+    }
+
+    @Override
+    protected String[] doGetUserListOfRole(String roleName, String filter) {
+
+        return new String[0];
+    }
+
+    @Override
+    public String[] getProfileNames(String userName) {
+
+        return new String[]{UserCoreConstants.DEFAULT_PROFILE};
+    }
+
+    @Override
+    public String[] getAllProfileNames() {
+
+        return new String[]{UserCoreConstants.DEFAULT_PROFILE};
+    }
+
+    @Override
+    public boolean isReadOnly() {
+
+        return true;
+    }
+
+    @Override
+    public Date getPasswordExpirationTime(String userName) {
+
+        return null;
+    }
+
+    @Override
+    public int getUserId(String userName) {
+
+        return 0;
+    }
+
+    @Override
+    public int getTenantId(String userName) {
+
+        return tenantId;
+    }
+
+    @Override
+    public Map<String, String> getProperties(Tenant tenant) {
+
+        return Collections.emptyMap();
+    }
+
+    @Override
+    public Map<String, String> getProperties(org.wso2.carbon.user.api.Tenant tenant) {
+
+        return Collections.emptyMap();
+    }
+
+    @Override
+    public boolean isMultipleProfilesAllowed() {
+
+        return false;
+    }
+
+    @Override
+    public void addRememberMe(String userName, String token) {
+
+        // Remember me tokens are not stored.
+    }
+
+    @Override
+    public boolean isValidRememberMeToken(String userName, String token) {
+
+        return false;
+    }
+
+    @Override
+    public boolean isBulkImportSupported() {
+
+        return false;
+    }
+
+    @Override
+    public RealmConfiguration getRealmConfiguration() {
+
+        return realmConfig;
+    }
+
+    @Override
+    public Properties getDefaultUserStoreProperties() {
+
+        return new Properties();
+    }
+
+    private static UserStoreException readOnly() {
+
+        return new UserStoreException("The in-memory user store of the benchmarks is read only.");
+    }
+}
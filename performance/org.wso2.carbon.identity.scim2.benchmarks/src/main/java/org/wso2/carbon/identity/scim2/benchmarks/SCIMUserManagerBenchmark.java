@@ -0,0 +1,84 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.wso2.carbon.identity.scim2.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.wso2.carbon.identity.scim2.common.cache.SCIMUserStoreEnablementCache;
+import org.wso2.carbon.identity.scim2.common.impl.SCIMUserManager;
+import org.wso2.carbon.user.core.UserCoreConstants;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark of listing a page of users through {@link SCIMUserManager#listUsersWithGET}, from an in-memory user
+ * store. The page is listed from the primary user store, so that the users are read in bulk. The score is the time of
+ * a page; divide it by the user count for the cost of a user.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class SCIMUserManagerBenchmark {
+
+    @Param({"10", "100"})
+    private int userCount;
+
+    @Param({"10", "50", "200"})
+    private int claimCount;
+
+    private Map<String, Boolean> requiredAttributes;
+    private InMemoryUserStore userStore;
+
+    @Setup
+    public void setUp() throws Exception {
+
+        BenchmarkEnvironment.init();
+        SCIMUserStoreEnablementCache.getInstance().clear();
+        userStore = new InMemoryUserStore(userCount, claimCount);
+        requiredAttributes = new HashMap<>();
+        for (String attributeURI : SyntheticClaims.getSCIMClaims(0, claimCount).keySet()) {
+            requiredAttributes.put(attributeURI, Boolean.TRUE);
+        }
+    }
+
+    @Benchmark
+    public List<Object> listUsers() throws Exception {
+
+        // A user manager serves a single request.
+        SCIMUserManager scimUserManager = new SCIMUserManager(userStore, null);
+        return scimUserManager.listUsersWithGET(null, 1, userCount, null, null,
+                UserCoreConstants.PRIMARY_DEFAULT_DOMAIN_NAME, requiredAttributes);
+    }
+}
@@ -0,0 +1,196 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.wso2.carbon.identity.scim2.benchmarks;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Synthetic claims of users, mapped to the core user schema, the enterprise user extension and attributes added to
+ * the extension for the benchmarks. The claims of a claim set are the first claims of the list, so that larger claim
+ * sets contain the smaller ones.
+ */
+public class SyntheticClaims {
+
+    public static final int MAX_CLAIM_COUNT = 200;
+    public static final String EXTENSION_SCHEMA_URI = "urn:ietf:params:scim:schemas:extension:enterprise:2.0:User";
+    public static final String USER_NAME_URI = "urn:ietf:params:scim:schemas:core:2.0:User:userName";
+    public static final String USER_ID_URI = "urn:ietf:params:scim:schemas:core:2.0:id";
+    public static final String BENCHMARK_ATTRIBUTE_PREFIX = "benchmarkAttribute";
+
+    private static final String CORE_SCHEMA_URI = "urn:ietf:params:scim:schemas:core:2.0:";
+    private static final String USER_SCHEMA_URI = CORE_SCHEMA_URI + "User:";
+    private static final String LOCAL_CLAIM_PREFIX = "http://wso2.org/claims/";
+
+    // SCIM attribute, local claim and value pattern of the mapped claims, as in the default claim configuration.
+    private static final String[][] MAPPED_CLAIMS = {
+            {USER_ID_URI, "userid", "%08d-0000-0000-0000-000000000000"},
+            {USER_NAME_URI, "username", "user%d"},
+            {CORE_SCHEMA_URI + "meta.created", "created", "2018-01-01T10:00:00.000Z"},
+            {CORE_SCHEMA_URI + "meta.lastModified", "modified", "2018-01-01T10:00:00.000Z"},
+            {CORE_SCHEMA_URI + "meta.resourceType", "resourceType", "User"},
+            {USER_SCHEMA_URI + "name.givenName", "givenname", "Given%d"},
+            {USER_SCHEMA_URI + "name.familyName", "lastname", "Family%d"},
+            {USER_SCHEMA_URI + "emails.work", "emails.work", "user%d@work.example.com"},
+            {USER_SCHEMA_URI + "emails.home", "emails.home", "user%d@home.example.com"},
+            {USER_SCHEMA_URI + "phoneNumbers.mobile", "mobile", "+1555%07d"},
+            {USER_SCHEMA_URI + "name.formatted", "fullname", "Given%1$d Family%1$d"},
+            {USER_SCHEMA_URI + "name.middleName", "middleName", "Middle%d"},
+            {USER_SCHEMA_URI + "name.honorificPrefix", "prefix", "Dr"},
+            {USER_SCHEMA_URI + "name.honorificSuffix", "suffix", "Jr"},
+            {USER_SCHEMA_URI + "displayName", "displayName", "User %d"},
+            {USER_SCHEMA_URI + "nickName", "nickname", "nick%d"},
+            {USER_SCHEMA_URI + "profileUrl", "url", "https://example.com/users/%d"},
+            {USER_SCHEMA_URI + "title", "title", "Engineer"},
+            {USER_SCHEMA_URI + "userType", "userType", "Employee"},
+            {USER_SCHEMA_URI + "preferredLanguage", "preferredLanguage", "en"},
+            {USER_SCHEMA_URI + "locale", "local", "en_US"},
+            {USER_SCHEMA_URI + "timezone", "timeZone", "Asia/Colombo"},
+            {USER_SCHEMA_URI + "emails.other", "emails.other", "user%d@other.example.com"},
+            {USER_SCHEMA_URI + "phoneNumbers.home", "phoneNumbers.home", "+1556%07d"},
+            {USER_SCHEMA_URI + "phoneNumbers.work", "phoneNumbers.work", "+1557%07d"},
+            {USER_SCHEMA_URI + "phoneNumbers.other", "phoneNumbers.other", "+1558%07d"},
+            {USER_SCHEMA_URI + "ims.gtalk", "im", "user%d@gtalk.example.com"},
+            {USER_SCHEMA_URI + "ims.skype", "skype", "user%d.skype"},
+            {USER_SCHEMA_URI + "photos.photo", "photourl", "https://example.com/photos/%d"},
+            {USER_SCHEMA_URI + "photos.thumbnail", "thumbnail", "https://example.com/thumbnails/%d"},
+            {EXTENSION_SCHEMA_URI + ":employeeNumber", "extendedRef", "%06d"},
+            {EXTENSION_SCHEMA_URI + ":costCenter", "costCenter", "CC%d"},
+            {EXTENSION_SCHEMA_URI + ":organization", "organization", "Example"},
+            {EXTENSION_SCHEMA_URI + ":division", "division", "Engineering"},
+            {EXTENSION_SCHEMA_URI + ":department", "department", "Identity"},
+            {EXTENSION_SCHEMA_URI + ":manager.value", "manager.value", "%08d-1111-1111-1111-111111111111"},
+            {EXTENSION_SCHEMA_URI + ":manager.displayName", "manager.displayName", "Manager %d"},
+    };
+
+    private static final List<String[]> CLAIMS = Collections.unmodifiableList(buildClaims());
+
+    private SyntheticClaims() {
+
+    }
+
+    /**
+     * Get the number of the attributes added to the extension schema for the benchmarks.
+     *
+     * @return number of the benchmark attributes.
+     */
+    public static int getBenchmarkAttributeCount() {
+
+        return MAX_CLAIM_COUNT - MAPPED_CLAIMS.length;
+    }
+
+    /**
+     * Get the SCIM to local claim mappings of all the claims.
+     *
+     * @return map of SCIM attribute URIs to local claim URIs.
+     */
+    public static Map<String, String> getSCIMToLocalClaimMappings() {
+
+        Map<String, String> claimMappings = new HashMap<>();
+        for (String[] claim : CLAIMS) {
+            claimMappings.put(claim[0], claim[1]);
+        }
+        return claimMappings;
+    }
+
+    /**
+     * Get the local claim URIs of a claim set.
+     *
+     * @param claimCount number of the claims.
+     * @return local claim URIs.
+     */
+    public static List<String> getLocalClaimURIs(int claimCount) {
+
+        List<String> claimURIs = new ArrayList<>();
+        for (String[] claim : getClaims(claimCount)) {
+            claimURIs.add(claim[1]);
+        }
+        return claimURIs;
+    }
+
+    /**
+     * Get the claims of a user in the SCIM dialect.
+     *
+     * @param userIndex  index of the user, to vary the claim values between users.
+     * @param claimCount number of the claims.
+     * @return map of SCIM attribute URIs to values.
+     */
+    public static Map<String, String> getSCIMClaims(int userIndex, int claimCount) {
+
+        Map<String, String> claims = new LinkedHashMap<>();
+        for (String[] claim : getClaims(claimCount)) {
+            claims.put(claim[0], String.format(claim[2], userIndex));
+        }
+        return claims;
+    }
+
+    /**
+     * Get the claims of a user in the local dialect.
+     *
+     * @param userIndex  index of the user, to vary the claim values between users.
+     * @param claimCount number of the claims.
+     * @return map of local claim URIs to values.
+     */
+    public static Map<String, String> getLocalClaims(int userIndex, int claimCount) {
+
+        Map<String, String> claims = new HashMap<>();
+        for (String[] claim : getClaims(claimCount)) {
+            claims.put(claim[1], String.format(claim[2], userIndex));
+        }
+        return claims;
+    }
+
+    /**
+     * Get the user name of a user, without the user store domain.
+     *
+     * @param userIndex index of the user.
+     * @return user name.
+     */
+    public static String getUserName(int userIndex) {
+
+        return "user" + userIndex;
+    }
+
+    private static List<String[]> getClaims(int claimCount) {
+
+        if (claimCount < 1 || claimCount > MAX_CLAIM_COUNT) {
+            throw new IllegalArgumentException("Claim count should be between 1 and " + MAX_CLAIM_COUNT +
+                    ", but was " + claimCount);
+        }
+        return CLAIMS.subList(0, claimCount);
+    }
+
+    private static List<String[]> buildClaims() {
+
+        List<String[]> claims = new ArrayList<>();
+        for (String[] mappedClaim : MAPPED_CLAIMS) {
+            claims.add(new String[]{mappedClaim[0], LOCAL_CLAIM_PREFIX + mappedClaim[1], mappedClaim[2]});
+        }
+        for (int i = 1; i <= getBenchmarkAttributeCount(); i++) {
+            claims.add(new String[]{EXTENSION_SCHEMA_URI + ":" + BENCHMARK_ATTRIBUTE_PREFIX + i,
+                    LOCAL_CLAIM_PREFIX + BENCHMARK_ATTRIBUTE_PREFIX + i, "value" + i + "-%d"});
+        }
+        return claims;
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.wso2.carbon.identity.scim2.loadtests;
+
+import org.wso2.carbon.identity.claim.metadata.mgt.ClaimMetadataManagementService;
+import org.wso2.carbon.identity.claim.metadata.mgt.model.ExternalClaim;
+import org.wso2.carbon.user.api.Claim;
+import org.wso2.carbon.user.api.ClaimMapping;
+import org.wso2.carbon.user.core.claim.ClaimManager;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Claim metadata of the load tests, with the mappings of the SCIM 2.0 dialects to the local claims read from
+ * scim2-claim-mappings.txt. It serves as the claim metadata management service and as the claim manager of the realm.
+ * The claim manager maps the SCIM attributes to the local claim URIs, which the in-memory user store uses as the
+ * attribute names of the claims.
+ */
+public class ClaimMappings {
+
+    private static final String MAPPINGS_FILE = "scim2-claim-mappings.txt";
+    private static final String CORE_DIALECT = "urn:ietf:params:scim:schemas:core:2.0";
+    private static final String USER_DIALECT = "urn:ietf:params:scim:schemas:core:2.0:User";
+    private static final String ENTERPRISE_DIALECT = "urn:ietf:params:scim:schemas:extension:enterprise:2.0:User";
+
+    private final Map<String, List<ExternalClaim>> externalClaimsOfDialects = new HashMap<>();
+    private final ClaimMetadataManagementService claimMetadataManagementService;
+    private final ClaimManager claimManager;
+
+    public ClaimMappings() throws IOException {
+
+        try (InputStream inputStream = ClaimMappings.class.getClassLoader().getResourceAsStream(MAPPINGS_FILE);
+             BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream, StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                String[] mapping = line.split("\\s+");
+                String dialect = getDialect(mapping[0]);
+                List<ExternalClaim> externalClaims = externalClaimsOfDialects.get(dialect);
+                if (externalClaims == null) {
+                    externalClaims = new ArrayList<>();
+                    externalClaimsOfDialects.put(dialect, externalClaims);
+                }
+                externalClaims.add(new ExternalClaim(dialect, mapping[0], mapping[1]));
+            }
+        }
+        claimMetadataManagementService = Stubs.create(this, ClaimMetadataManagementService.class);
+        claimManager = Stubs.create(this, ClaimManager.class);
+    }
+
+    public ClaimMetadataManagementService getClaimMetadataManagementService() {
+
+        return claimMetadataManagementService;
+    }
+
+    public ClaimManager getClaimManager() {
+
+        return claimManager;
+    }
+
+    /**
+     * Get the local claims mapped to the SCIM attributes, to seed the users.
+     *
+     * @return local claim URIs.
+     */
+    public List<String> getMappedLocalClaims() {
+
+        List<String> localClaims = new ArrayList<>();
+        for (List<ExternalClaim> externalClaims : externalClaimsOfDialects.values()) {
+            for (ExternalClaim externalClaim : externalClaims) {
+                localClaims.add(externalClaim.getMappedLocalClaim());
+            }
+        }
+        return localClaims;
+    }
+
+    public List<ExternalClaim> getExternalClaims(String externalClaimDialectURI, String tenantDomain) {
+
+        List<ExternalClaim> externalClaims = externalClaimsOfDialects.get(externalClaimDialectURI);
+        return externalClaims == null ? Collections.<ExternalClaim>emptyList() : externalClaims;
+    }
+
+    public ClaimMapping[] getAllClaimMappings(String dialectUri) {
+
+        List<ClaimMapping> claimMappings = new ArrayList<>();
+        for (ExternalClaim externalClaim : getExternalClaims(dialectUri, null)) {
+            Claim claim = new Claim();
+            claim.setClaimUri(externalClaim.getClaimURI());
+            claimMappings.add(new ClaimMapping(claim, externalClaim.getMappedLocalClaim()));
+        }
+        return claimMappings.toArray(new ClaimMapping[0]);
+    }
+
+    private static String getDialect(String attributeURI) {
+
+        if (attributeURI.startsWith(ENTERPRISE_DIALECT + ":")) {
+            return ENTERPRISE_DIALECT;
+        }
+        if (attributeURI.startsWith(USER_DIALECT + ":")) {
+            return USER_DIALECT;
+        }
+        return CORE_DIALECT;
+    }
+}
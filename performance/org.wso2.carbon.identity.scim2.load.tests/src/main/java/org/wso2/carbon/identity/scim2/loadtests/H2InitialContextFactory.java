@@ -0,0 +1,66 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.wso2.carbon.identity.scim2.loadtests;
+
+import org.h2.jdbcx.JdbcConnectionPool;
+
+import java.util.Hashtable;
+import javax.naming.Context;
+import javax.naming.NamingException;
+import javax.naming.spi.InitialContextFactory;
+
+/**
+ * JNDI context factory of the load tests, which binds every name to the in-memory H2 database holding the identity
+ * tables. It is set as the initial context factory, so that the identity database of identity.xml is looked up from it.
+ */
+public class H2InitialContextFactory implements InitialContextFactory {
+
+    private static volatile JdbcConnectionPool dataSource;
+
+    /**
+     * Set the data source returned by the contexts.
+     *
+     * @param dataSource data source.
+     */
+    public static void setDataSource(JdbcConnectionPool dataSource) {
+
+        H2InitialContextFactory.dataSource = dataSource;
+    }
+
+    @Override
+    public Context getInitialContext(Hashtable<?, ?> environment) throws NamingException {
+
+        return Stubs.create(new Bindings(), Context.class);
+    }
+
+    /**
+     * Bindings of a context, which look up the data source by any name.
+     */
+    public static class Bindings {
+
+        public Object lookup(String name) throws NamingException {
+
+            if (dataSource == null) {
+                throw new NamingException("Data source of " + name + " is not initialized.");
+            }
+            return dataSource;
+        }
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.wso2.carbon.identity.scim2.loadtests;
+
+import org.wso2.carbon.user.api.RealmConfiguration;
+import org.wso2.carbon.user.api.TenantManager;
+import org.wso2.carbon.user.core.UserRealm;
+import org.wso2.carbon.user.core.UserStoreManager;
+import org.wso2.carbon.user.core.claim.ClaimManager;
+import org.wso2.carbon.user.core.service.RealmService;
+import org.wso2.carbon.user.core.tenant.Tenant;
+import org.wso2.carbon.utils.multitenancy.MultitenantConstants;
+
+/**
+ * Realm of the super tenant, backed by an {@link InMemoryUserStore} and the claim manager of {@link ClaimMappings}. It
+ * serves as the realm service, the tenant manager and the user realm of the load tests.
+ */
+public class InMemoryRealm {
+
+    private final InMemoryUserStore userStore;
+    private final ClaimManager claimManager;
+    private final RealmService realmService;
+    private final TenantManager tenantManager;
+    private final UserRealm userRealm;
+
+    public InMemoryRealm(InMemoryUserStore userStore, ClaimManager claimManager) {
+
+        this.userStore = userStore;
+        this.claimManager = claimManager;
+        this.realmService = Stubs.create(this, RealmService.class);
+        this.tenantManager = Stubs.create(this, TenantManager.class,
+                org.wso2.carbon.user.core.tenant.TenantManager.class);
+        this.userRealm = Stubs.create(this, UserRealm.class);
+    }
+
+    public RealmService getRealmService() {
+
+        return realmService;
+    }
+
+    public TenantManager getTenantManager() {
+
+        return tenantManager;
+    }
+
+    public UserRealm getTenantUserRealm(int tenantId) {
+
+        return tenantId == MultitenantConstants.SUPER_TENANT_ID ? userRealm : null;
+    }
+
+    public UserRealm getBootstrapRealm() {
+
+        return userRealm;
+    }
+
+    public RealmConfiguration getBootstrapRealmConfiguration() {
+
+        return userStore.getRealmConfiguration();
+    }
+
+    public RealmConfiguration getRealmConfiguration() {
+
+        return userStore.getRealmConfiguration();
+    }
+
+    public UserStoreManager getUserStoreManager() {
+
+        return userStore.getUserStoreManager();
+    }
+
+    public ClaimManager getClaimManager() {
+
+        return claimManager;
+    }
+
+    public int getTenantId(String tenantDomain) {
+
+        return MultitenantConstants.SUPER_TENANT_DOMAIN_NAME.equals(tenantDomain) ?
+                MultitenantConstants.SUPER_TENANT_ID : MultitenantConstants.INVALID_TENANT_ID;
+    }
+
+    public String getDomain(int tenantId) {
+
+        return tenantId == MultitenantConstants.SUPER_TENANT_ID ? MultitenantConstants.SUPER_TENANT_DOMAIN_NAME : null;
+    }
+
+    public Tenant[] getAllTenants() {
+
+        return new Tenant[0];
+    }
+}
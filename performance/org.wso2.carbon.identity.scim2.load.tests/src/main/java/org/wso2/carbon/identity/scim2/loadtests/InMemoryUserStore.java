@@ -0,0 +1,573 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.wso2.carbon.identity.scim2.loadtests;
+
+import org.wso2.carbon.user.api.Permission;
+import org.wso2.carbon.user.api.RealmConfiguration;
+import org.wso2.carbon.user.core.PaginatedUserStoreManager;
+import org.wso2.carbon.user.core.UserCoreConstants;
+import org.wso2.carbon.user.core.UserStoreException;
+import org.wso2.carbon.user.core.UserStoreManager;
+import org.wso2.carbon.user.core.model.Condition;
+import org.wso2.carbon.user.core.model.ExpressionAttribute;
+import org.wso2.carbon.user.core.model.ExpressionCondition;
+import org.wso2.carbon.user.core.model.ExpressionOperation;
+import org.wso2.carbon.user.core.model.OperationalCondition;
+import org.wso2.carbon.user.core.model.OperationalOperation;
+import org.wso2.carbon.utils.multitenancy.MultitenantConstants;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.regex.Pattern;
+
+/**
+ * In-memory user store of the load tests, with a primary user store and secondary user stores. The primary user store
+ * manager serves the users and roles of all the user stores, as the user core does, and names the users and roles of
+ * the primary user store without the domain.
+ *
+ * The primary user store manager is a paginated user store manager, as the user stores of the user core are, so the
+ * SCIM endpoints list and filter pages of users with the paginated methods. The bulk reads of users are methods of
+ * AbstractUserStoreManager, which the stand-in does not extend, so the users of a page are read one by one.
+ */
+public class InMemoryUserStore {
+
+    public static final String USER_ID_CLAIM = "http://wso2.org/claims/userid";
+    public static final String USER_NAME_CLAIM = "http://wso2.org/claims/username";
+    public static final String EVERYONE_ROLE = UserCoreConstants.INTERNAL_DOMAIN + UserCoreConstants.DOMAIN_SEPARATOR +
+            "everyone";
+
+    private static final String PRIMARY = UserCoreConstants.PRIMARY_DEFAULT_DOMAIN_NAME;
+
+    // Users are sorted by the key, so that the users of a domain are listed in pages in a stable order.
+    private final ConcurrentNavigableMap<String, ConcurrentMap<String, String>> claimsOfUsers =
+            new ConcurrentSkipListMap<>();
+    private final ConcurrentMap<String, String> userNamesOfIds = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Set<String>> membersOfRoles = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Set<String>> rolesOfUsers = new ConcurrentHashMap<>();
+    private final RealmConfiguration realmConfiguration;
+    private final UserStoreManager userStoreManager;
+    private final Map<String, UserStoreManager> userStoreManagers = new HashMap<>();
+    private final UserStoreManager secondaryUserStoreManager;
+
+    /**
+     * Create a user store with the given secondary user stores.
+     *
+     * @param secondaryDomainNames domain names of the secondary user stores.
+     */
+    public InMemoryUserStore(List<String> secondaryDomainNames) {
+
+        realmConfiguration = createRealmConfiguration(PRIMARY);
+        userStoreManager = Stubs.create(this, UserStoreManager.class, PaginatedUserStoreManager.class);
+        userStoreManagers.put(PRIMARY, userStoreManager);
+        UserStoreManager nextUserStoreManager = null;
+        for (int i = secondaryDomainNames.size() - 1; i >= 0; i--) {
+            String domainName = secondaryDomainNames.get(i).toUpperCase(Locale.ENGLISH);
+            nextUserStoreManager = Stubs.create(new SecondaryUserStore(createRealmConfiguration(domainName),
+                    nextUserStoreManager), UserStoreManager.class);
+            userStoreManagers.put(domainName, nextUserStoreManager);
+        }
+        secondaryUserStoreManager = nextUserStoreManager;
+    }
+
+    /**
+     * Get the user store manager of the primary user store, which serves all the user stores.
+     *
+     * @return user store manager.
+     */
+    public UserStoreManager getUserStoreManager() {
+
+        return userStoreManager;
+    }
+
+    public RealmConfiguration getRealmConfiguration() {
+
+        return realmConfiguration;
+    }
+
+    public UserStoreManager getSecondaryUserStoreManager() {
+
+        return secondaryUserStoreManager;
+    }
+
+    public UserStoreManager getSecondaryUserStoreManager(String domainName) {
+
+        return domainName == null ? null : userStoreManagers.get(domainName.toUpperCase(Locale.ENGLISH));
+    }
+
+    public boolean isSCIMEnabled() {
+
+        return true;
+    }
+
+    public int getTenantId() {
+
+        return MultitenantConstants.SUPER_TENANT_ID;
+    }
+
+    public boolean isExistingUser(String userName) {
+
+        return claimsOfUsers.containsKey(getKey(userName));
+    }
+
+    public void addUser(String userName, Object credential, String[] roleList, Map<String, String> claims,
+                        String profileName) throws UserStoreException {
+
+        String userKey = getKey(userName);
+        ConcurrentMap<String, String> userClaims = new ConcurrentHashMap<>();
+        if (claims != null) {
+            userClaims.putAll(claims);
+        }
+        if (claimsOfUsers.putIfAbsent(userKey, userClaims) != null) {
+            throw new UserStoreException("User " + userName + " already exists.");
+        }
+        rolesOfUsers.put(userKey, Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>()));
+        indexUserId(userKey, null, userClaims.get(USER_ID_CLAIM));
+        if (roleList != null) {
+            for (String roleName : roleList) {
+                addMember(getKey(roleName), userKey);
+            }
+        }
+    }
+
+    public void deleteUser(String userName) {
+
+        String userKey = getKey(userName);
+        Map<String, String> claims = claimsOfUsers.remove(userKey);
+        if (claims != null) {
+            indexUserId(userKey, claims.get(USER_ID_CLAIM), null);
+        }
+        Set<String> roles = rolesOfUsers.remove(userKey);
+        if (roles != null) {
+            for (String roleKey : roles) {
+                Set<String> members = membersOfRoles.get(roleKey);
+                if (members != null) {
+                    members.remove(userKey);
+                }
+            }
+        }
+    }
+
+    public void updateCredentialByAdmin(String userName, Object newCredential) {
+
+        // Credentials are not stored.
+    }
+
+    public String[] getUserList(String claim, String claimValue, String profileName) {
+
+        String domainName = null;
+        String value = claimValue;
+        int separatorIndex = claimValue.indexOf(UserCoreConstants.DOMAIN_SEPARATOR);
+        if (separatorIndex > 0) {
+            domainName = claimValue.substring(0, separatorIndex).toUpperCase(Locale.ENGLISH);
+            value = claimValue.substring(separatorIndex + 1);
+        }
+
+        List<String> userNames = new ArrayList<>();
+        if (USER_ID_CLAIM.equals(claim) && !value.contains("*")) {
+            String userKey = userNamesOfIds.get(value);
+            if (userKey != null && (domainName == null || userKey.startsWith(domainName +
+                    UserCoreConstants.DOMAIN_SEPARATOR))) {
+                userNames.add(getUserName(userKey));
+            }
+            return userNames.toArray(new String[0]);
+        }
+
+        Pattern pattern = toPattern(value, USER_NAME_CLAIM.equals(claim));
+        for (Map.Entry<String, ConcurrentMap<String, String>> user : claimsOfUsers.entrySet()) {
+            String userKey = user.getKey();
+            if (domainName != null && !userKey.startsWith(domainName + UserCoreConstants.DOMAIN_SEPARATOR)) {
+                continue;
+            }
+            String userValue = USER_NAME_CLAIM.equals(claim) ? getNameWithoutDomain(userKey) :
+                    user.getValue().get(claim);
+            if (userValue != null && pattern.matcher(userValue).matches()) {
+                userNames.add(getUserName(userKey));
+            }
+        }
+        return userNames.toArray(new String[0]);
+    }
+
+    public String[] getUserList(Condition condition, String domain, String profileName, int limit, int offset,
+                                String sortBy, String sortOrder) {
+
+        String domainName = domain == null ? PRIMARY : domain.toUpperCase(Locale.ENGLISH);
+        // The keys of the users of the domain are between the domain with the separator and the next character.
+        char separator = UserCoreConstants.DOMAIN_SEPARATOR.charAt(0);
+        Map<String, ConcurrentMap<String, String>> usersOfDomain = claimsOfUsers.subMap(domainName + separator,
+                domainName + (char) (separator + 1));
+
+        List<String> userNames = new ArrayList<>();
+        // The offset starts from 1, as in the SCIM requests.
+        int skippedUsers = 0;
+        for (Map.Entry<String, ConcurrentMap<String, String>> user : usersOfDomain.entrySet()) {
+            if (userNames.size() >= limit) {
+                break;
+            }
+            if (!matches(condition, user.getKey(), user.getValue())) {
+                continue;
+            }
+            if (skippedUsers < offset - 1) {
+                skippedUsers++;
+                continue;
+            }
+            userNames.add(getUserName(user.getKey()));
+        }
+        return userNames.toArray(new String[0]);
+    }
+
+    public Map<String, String> getUserClaimValues(String userName, String[] claims, String profileName)
+            throws UserStoreException {
+
+        String userKey = getKey(userName);
+        Map<String, String> userClaims = claimsOfUsers.get(userKey);
+        if (userClaims == null) {
+            throw new UserStoreException("User " + userName + " does not exist.");
+        }
+        Map<String, String> claimValues = new HashMap<>();
+        for (String claim : claims) {
+            String value = USER_NAME_CLAIM.equals(claim) ? getNameWithoutDomain(userKey) : userClaims.get(claim);
+            if (value != null) {
+                claimValues.put(claim, value);
+            }
+        }
+        return claimValues;
+    }
+
+    public void setUserClaimValues(String userName, Map<String, String> claims, String profileName)
+            throws UserStoreException {
+
+        String userKey = getKey(userName);
+        ConcurrentMap<String, String> userClaims = getClaimsOfUser(userName, userKey);
+        String oldId = userClaims.get(USER_ID_CLAIM);
+        userClaims.putAll(claims);
+        indexUserId(userKey, oldId, userClaims.get(USER_ID_CLAIM));
+    }
+
+    public void deleteUserClaimValue(String userName, String claimURI, String profileName)
+            throws UserStoreException {
+
+        deleteUserClaimValues(userName, new String[]{claimURI}, profileName);
+    }
+
+    public void deleteUserClaimValues(String userName, String[] claims, String profileName)
+            throws UserStoreException {
+
+        String userKey = getKey(userName);
+        ConcurrentMap<String, String> userClaims = getClaimsOfUser(userName, userKey);
+        String oldId = userClaims.get(USER_ID_CLAIM);
+        for (String claim : claims) {
+            userClaims.remove(claim);
+        }
+        indexUserId(userKey, oldId, userClaims.get(USER_ID_CLAIM));
+    }
+
+    public String[] getRoleListOfUser(String userName) {
+
+        Set<String> roles = rolesOfUsers.get(getKey(userName));
+        List<String> roleNames = new ArrayList<>();
+        if (roles != null) {
+            for (String roleKey : roles) {
+                roleNames.add(getUserName(roleKey));
+            }
+        }
+        roleNames.add(EVERYONE_ROLE);
+        return roleNames.toArray(new String[0]);
+    }
+
+    public String[] getUserListOfRole(String roleName) {
+
+        Set<String> members = membersOfRoles.get(getKey(roleName));
+        List<String> userNames = new ArrayList<>();
+        if (members != null) {
+            for (String userKey : members) {
+                userNames.add(getUserName(userKey));
+            }
+        }
+        return userNames.toArray(new String[0]);
+    }
+
+    public boolean isExistingRole(String roleName) {
+
+        return membersOfRoles.containsKey(getKey(roleName));
+    }
+
+    public boolean isExistingRole(String roleName, boolean shared) {
+
+        return isExistingRole(roleName);
+    }
+
+    public void addRole(String roleName, String[] userList, Permission[] permissions, boolean isSharedRole)
+            throws UserStoreException {
+
+        addRole(roleName, userList, permissions);
+    }
+
+    public void addRole(String roleName, String[] userList, Permission[] permissions) throws UserStoreException {
+
+        String roleKey = getKey(roleName);
+        if (membersOfRoles.putIfAbsent(roleKey, Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>()))
+                != null) {
+            throw new UserStoreException("Role " + roleName + " already exists.");
+        }
+        if (userList != null) {
+            for (String userName : userList) {
+                addMember(roleKey, getKey(userName));
+            }
+        }
+    }
+
+    public void deleteRole(String roleName) {
+
+        String roleKey = getKey(roleName);
+        Set<String> members = membersOfRoles.remove(roleKey);
+        if (members != null) {
+            for (String userKey : members) {
+                Set<String> roles = rolesOfUsers.get(userKey);
+                if (roles != null) {
+                    roles.remove(roleKey);
+                }
+            }
+        }
+    }
+
+    public synchronized void updateRoleName(String roleName, String newRoleName) throws UserStoreException {
+
+        String roleKey = getKey(roleName);
+        String newRoleKey = getKey(newRoleName);
+        Set<String> members = membersOfRoles.get(roleKey);
+        if (members == null) {
+            throw new UserStoreException("Role " + roleName + " does not exist.");
+        }
+        if (membersOfRoles.putIfAbsent(newRoleKey, members) != null) {
+            throw new UserStoreException("Role " + newRoleName + " already exists.");
+        }
+        membersOfRoles.remove(roleKey);
+        for (String userKey : members) {
+            Set<String> roles = rolesOfUsers.get(userKey);
+            if (roles != null) {
+                roles.remove(roleKey);
+                roles.add(newRoleKey);
+            }
+        }
+    }
+
+    public void updateUserListOfRole(String roleName, String[] deletedUsers, String[] newUsers)
+            throws UserStoreException {
+
+        String roleKey = getKey(roleName);
+        if (!membersOfRoles.containsKey(roleKey)) {
+            throw new UserStoreException("Role " + roleName + " does not exist.");
+        }
+        if (deletedUsers != null) {
+            for (String userName : deletedUsers) {
+                String userKey = getKey(userName);
+                membersOfRoles.get(roleKey).remove(userKey);
+                Set<String> roles = rolesOfUsers.get(userKey);
+                if (roles != null) {
+                    roles.remove(roleKey);
+                }
+            }
+        }
+        if (newUsers != null) {
+            for (String userName : newUsers) {
+                addMember(roleKey, getKey(userName));
+            }
+        }
+    }
+
+    private void addMember(String roleKey, String userKey) {
+
+        Set<String> members = membersOfRoles.get(roleKey);
+        Set<String> roles = rolesOfUsers.get(userKey);
+        if (members != null && roles != null) {
+            members.add(userKey);
+            roles.add(roleKey);
+        }
+    }
+
+    /**
+     * Check whether a user matches a condition of the paginated user store. The attribute of a claim is the local claim
+     * URI, as mapped by {@link ClaimMappings}.
+     */
+    private boolean matches(Condition condition, String userKey, Map<String, String> claims) {
+
+        if (condition instanceof OperationalCondition) {
+            OperationalCondition operationalCondition = (OperationalCondition) condition;
+            if (OperationalOperation.AND.toString().equals(operationalCondition.getOperation())) {
+                return matches(operationalCondition.getLeftCondition(), userKey, claims) &&
+                        matches(operationalCondition.getRightCondition(), userKey, claims);
+            }
+            return matches(operationalCondition.getLeftCondition(), userKey, claims) ||
+                    matches(operationalCondition.getRightCondition(), userKey, claims);
+        }
+
+        ExpressionCondition expressionCondition = (ExpressionCondition) condition;
+        String attributeName = expressionCondition.getAttributeName();
+        String operation = expressionCondition.getOperation();
+        String value = expressionCondition.getAttributeValue();
+        if (ExpressionAttribute.USERNAME.toString().equals(attributeName)) {
+            return matches(operation, getNameWithoutDomain(userKey).toLowerCase(Locale.ENGLISH),
+                    value.toLowerCase(Locale.ENGLISH));
+        }
+        if (ExpressionAttribute.ROLE.toString().equals(attributeName)) {
+            Set<String> roles = rolesOfUsers.get(userKey);
+            if (roles != null) {
+                for (String roleKey : roles) {
+                    if (matches(operation, getNameWithoutDomain(roleKey), value)) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+        String claimValue = claims.get(attributeName);
+        return claimValue != null && matches(operation, claimValue, value);
+    }
+
+    private static boolean matches(String operation, String attributeValue, String value) {
+
+        if (ExpressionOperation.SW.toString().equals(operation)) {
+            return attributeValue.startsWith(value);
+        } else if (ExpressionOperation.EW.toString().equals(operation)) {
+            return attributeValue.endsWith(value);
+        } else if (ExpressionOperation.CO.toString().equals(operation)) {
+            return attributeValue.contains(value);
+        }
+        return attributeValue.equals(value);
+    }
+
+    private ConcurrentMap<String, String> getClaimsOfUser(String userName, String userKey)
+            throws UserStoreException {
+
+        ConcurrentMap<String, String> userClaims = claimsOfUsers.get(userKey);
+        if (userClaims == null) {
+            throw new UserStoreException("User " + userName + " does not exist.");
+        }
+        return userClaims;
+    }
+
+    private void indexUserId(String userKey, String oldId, String newId) {
+
+        if (oldId != null && !oldId.equals(newId)) {
+            userNamesOfIds.remove(oldId, userKey);
+        }
+        if (newId != null) {
+            userNamesOfIds.put(newId, userKey);
+        }
+    }
+
+    /**
+     * Get the key of a user or a role, which is the name with the upper case domain.
+     */
+    private static String getKey(String name) {
+
+        int separatorIndex = name.indexOf(UserCoreConstants.DOMAIN_SEPARATOR);
+        if (separatorIndex < 0) {
+            return PRIMARY + UserCoreConstants.DOMAIN_SEPARATOR + name;
+        }
+        return name.substring(0, separatorIndex).toUpperCase(Locale.ENGLISH) + name.substring(separatorIndex);
+    }
+
+    /**
+     * Get the name of a user or a role as returned by the user core, without the domain of the primary user store.
+     */
+    private static String getUserName(String key) {
+
+        if (key.startsWith(PRIMARY + UserCoreConstants.DOMAIN_SEPARATOR)) {
+            return key.substring(PRIMARY.length() + 1);
+        }
+        return key;
+    }
+
+    private static String getNameWithoutDomain(String key) {
+
+        return key.substring(key.indexOf(UserCoreConstants.DOMAIN_SEPARATOR) + 1);
+    }
+
+    private static Pattern toPattern(String value, boolean caseInsensitive) {
+
+        StringBuilder regex = new StringBuilder();
+        for (String part : value.split("\\*", -1)) {
+            if (regex.length() > 0 || value.startsWith("*")) {
+                regex.append(".*");
+            }
+            regex.append(Pattern.quote(part));
+        }
+        return caseInsensitive ? Pattern.compile(regex.toString(), Pattern.CASE_INSENSITIVE) :
+                Pattern.compile(regex.toString());
+    }
+
+    private static RealmConfiguration createRealmConfiguration(String domainName) {
+
+        RealmConfiguration realmConfiguration = new RealmConfiguration();
+        Map<String, String> userStoreProperties = new HashMap<>();
+        userStoreProperties.put(UserCoreConstants.RealmConfig.PROPERTY_DOMAIN_NAME, domainName);
+        userStoreProperties.put("SCIMEnabled", "true");
+        realmConfiguration.setUserStoreProperties(userStoreProperties);
+        realmConfiguration.setEveryOneRoleName(EVERYONE_ROLE);
+        realmConfiguration.setAdminRoleName("admin");
+        realmConfiguration.setAdminUserName("admin");
+        return realmConfiguration;
+    }
+
+    /**
+     * Secondary user store, which only describes itself. Its users are served by the primary user store manager.
+     */
+    public static class SecondaryUserStore {
+
+        private final RealmConfiguration realmConfiguration;
+        private final UserStoreManager secondaryUserStoreManager;
+
+        SecondaryUserStore(RealmConfiguration realmConfiguration, UserStoreManager secondaryUserStoreManager) {
+
+            this.realmConfiguration = realmConfiguration;
+            this.secondaryUserStoreManager = secondaryUserStoreManager;
+        }
+
+        public RealmConfiguration getRealmConfiguration() {
+
+            return realmConfiguration;
+        }
+
+        public UserStoreManager getSecondaryUserStoreManager() {
+
+            return secondaryUserStoreManager;
+        }
+
+        public boolean isSCIMEnabled() {
+
+            return true;
+        }
+
+        public int getTenantId() {
+
+            return MultitenantConstants.SUPER_TENANT_ID;
+        }
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.wso2.carbon.identity.scim2.loadtests;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latencies of the requests sent by one load test thread. The recorders of all the threads are merged into a report
+ * once the run ends, so that recording does not contend between the threads.
+ */
+public class LatencyRecorder {
+
+    private long[] latencies = new long[1024];
+    private int count;
+    private int errors;
+
+    /**
+     * Record a request.
+     *
+     * @param latencyNanos latency of the request, in nanoseconds.
+     * @param successful   whether the request was successful.
+     */
+    public void record(long latencyNanos, boolean successful) {
+
+        if (count == latencies.length) {
+            latencies = Arrays.copyOf(latencies, count * 2);
+        }
+        latencies[count++] = latencyNanos;
+        if (!successful) {
+            errors++;
+        }
+    }
+
+    /**
+     * Build the report of the requests recorded by the given recorders.
+     *
+     * @param scenario        scenario name.
+     * @param recorders       recorders of the threads.
+     * @param durationSeconds duration of the measured run.
+     * @return report line.
+     */
+    public static String report(String scenario, List<LatencyRecorder> recorders, int durationSeconds) {
+
+        int total = 0;
+        int errors = 0;
+        for (LatencyRecorder recorder : recorders) {
+            total += recorder.count;
+            errors += recorder.errors;
+        }
+        long[] merged = new long[total];
+        int offset = 0;
+        for (LatencyRecorder recorder : recorders) {
+            System.arraycopy(recorder.latencies, 0, merged, offset, recorder.count);
+            offset += recorder.count;
+        }
+        Arrays.sort(merged);
+        return String.format("%-16s %10d %8d %12.1f %10.2f %10.2f %10.2f %10.2f", scenario, total, errors,
+                durationSeconds > 0 ? (double) total / durationSeconds : 0, toMillis(percentile(merged, 50)),
+                toMillis(percentile(merged, 90)), toMillis(percentile(merged, 99)),
+                toMillis(total > 0 ? merged[total - 1] : 0));
+    }
+
+    /**
+     * Get the header of the report lines.
+     *
+     * @return header.
+     */
+    public static String reportHeader() {
+
+        return String.format("%-16s %10s %8s %12s %10s %10s %10s %10s", "scenario", "requests", "errors", "requests/s",
+                "p50 (ms)", "p90 (ms)", "p99 (ms)", "max (ms)");
+    }
+
+    private static long percentile(long[] sortedLatencies, int percentile) {
+
+        if (sortedLatencies.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.ceil(percentile / 100.0 * sortedLatencies.length) - 1;
+        return sortedLatencies[Math.max(index, 0)];
+    }
+
+    private static double toMillis(long nanos) {
+
+        return nanos / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    }
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.wso2.carbon.identity.scim2.loadtests;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Configuration of a load test run, read from the system properties with the prefix scim2.loadtest.
+ */
+public class LoadTestConfig {
+
+    private static final String PREFIX = "scim2.loadtest.";
+
+    private final int users;
+    private final int groups;
+    private final int secondaryDomains;
+    private final int membersPerGroup;
+    private final int threads;
+    private final int warmupSeconds;
+    private final int durationSeconds;
+    private final int bulkOperations;
+    private final int port;
+    private final List<Scenario> scenarios = new ArrayList<>();
+
+    private LoadTestConfig() {
+
+        users = getInt("users", 2000);
+        groups = getInt("groups", 50);
+        secondaryDomains = getInt("secondaryDomains", 1);
+        membersPerGroup = getInt("membersPerGroup", 20);
+        threads = getInt("threads", 8);
+        warmupSeconds = getInt("warmupSeconds", 10);
+        durationSeconds = getInt("durationSeconds", 30);
+        bulkOperations = getInt("bulkOperations", 10);
+        port = getInt("port", 9863);
+        String scenarioNames = System.getProperty(PREFIX + "scenarios");
+        if (scenarioNames == null || scenarioNames.trim().isEmpty()) {
+            for (Scenario scenario : Scenario.values()) {
+                scenarios.add(scenario);
+            }
+        } else {
+            for (String scenarioName : scenarioNames.split(",")) {
+                scenarios.add(Scenario.fromName(scenarioName.trim()));
+            }
+        }
+    }
+
+    /**
+     * Read the configuration from the system properties.
+     *
+     * @return configuration.
+     */
+    public static LoadTestConfig fromSystemProperties() {
+
+        return new LoadTestConfig();
+    }
+
+    public int getUsers() {
+
+        return users;
+    }
+
+    public int getGroups() {
+
+        return groups;
+    }
+
+    public int getSecondaryDomains() {
+
+        return secondaryDomains;
+    }
+
+    public int getMembersPerGroup() {
+
+        return membersPerGroup;
+    }
+
+    public int getThreads() {
+
+        return threads;
+    }
+
+    public int getWarmupSeconds() {
+
+        return warmupSeconds;
+    }
+
+    public int getDurationSeconds() {
+
+        return durationSeconds;
+    }
+
+    public int getBulkOperations() {
+
+        return bulkOperations;
+    }
+
+    public int getPort() {
+
+        return port;
+    }
+
+    public List<Scenario> getScenarios() {
+
+        return scenarios;
+    }
+
+    @Override
+    public String toString() {
+
+        return "users=" + users + ", groups=" + groups + ", secondaryDomains=" + secondaryDomains +
+                ", membersPerGroup=" + membersPerGroup + ", threads=" + threads + ", warmupSeconds=" + warmupSeconds +
+                ", durationSeconds=" + durationSeconds + ", bulkOperations=" + bulkOperations + ", port=" + port +
+                ", scenarios=" + scenarios;
+    }
+
+    private static int getInt(String name, int defaultValue) {
+
+        String value = System.getProperty(PREFIX + name);
+        if (value == null || value.trim().isEmpty()) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid value: " + value + " for " + PREFIX + name, e);
+        }
+    }
+}
@@ -0,0 +1,262 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.wso2.carbon.identity.scim2.loadtests;
+
+import org.apache.axis2.AxisFault;
+import org.apache.axis2.context.ConfigurationContext;
+import org.apache.axis2.description.Parameter;
+import org.apache.axis2.description.TransportInDescription;
+import org.apache.axis2.engine.AxisConfiguration;
+import org.h2.jdbcx.JdbcConnectionPool;
+import org.wso2.carbon.base.CarbonBaseConstants;
+import org.wso2.carbon.base.ServerConfiguration;
+import org.wso2.carbon.context.PrivilegedCarbonContext;
+import org.wso2.carbon.identity.claim.metadata.mgt.internal.IdentityClaimManagementServiceDataHolder;
+import org.wso2.carbon.identity.core.internal.IdentityCoreServiceComponent;
+import org.wso2.carbon.identity.core.util.IdentityTenantUtil;
+import org.wso2.carbon.identity.scim2.common.group.SCIMGroupHandler;
+import org.wso2.carbon.identity.scim2.common.internal.SCIMCommonComponentHolder;
+import org.wso2.carbon.identity.scim2.common.utils.SCIMCommonConstants;
+import org.wso2.carbon.identity.scim2.common.utils.SCIMDateTimeFormatter;
+import org.wso2.carbon.user.core.UserCoreConstants;
+import org.wso2.carbon.utils.ConfigurationContextService;
+import org.wso2.carbon.utils.multitenancy.MultitenantConstants;
+import org.wso2.charon3.core.config.SCIMConfigProcessor;
+import org.wso2.charon3.core.config.SCIMUserSchemaExtensionBuilder;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.sql.Connection;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.naming.Context;
+
+/**
+ * Environment of the load tests, in place of a Carbon server. It creates a Carbon home with the SCIM configuration,
+ * binds the identity database to an in-memory H2 database, registers the in-memory realm and claim metadata, and
+ * seeds the users and groups.
+ */
+public class LoadTestEnvironment {
+
+    private static final String DATABASE_URL = "jdbc:h2:mem:WSO2IdentityDB;DB_CLOSE_DELAY=-1";
+    private static final String USER_NAME_PREFIX = "loadtest.user";
+    private static final String GROUP_NAME_PREFIX = "loadtest.group";
+    private static final String SECONDARY_DOMAIN_PREFIX = "SECONDARY";
+
+    private final List<String> userIds = new ArrayList<>();
+    private final List<String> userNames = new ArrayList<>();
+    private final List<String> groupIds = new ArrayList<>();
+    private final AtomicLong createdUsers = new AtomicLong();
+    private final String runId = Long.toString(System.currentTimeMillis(), Character.MAX_RADIX);
+
+    private LoadTestEnvironment() {
+
+    }
+
+    /**
+     * Create the environment and seed the users and groups of the configuration.
+     *
+     * @param config load test configuration.
+     * @return environment.
+     * @throws Exception if the environment cannot be created.
+     */
+    public static LoadTestEnvironment create(LoadTestConfig config) throws Exception {
+
+        Path carbonHome = Files.createTempDirectory("scim2-load-tests");
+        Path configDir = Files.createDirectories(carbonHome.resolve("repository").resolve("conf"));
+        Path identityConfigDir = Files.createDirectories(configDir.resolve("identity"));
+        copyResource("carbon.xml", configDir);
+        copyResource("identity.xml", identityConfigDir);
+        copyResource(SCIMCommonConstants.CHARON_CONFIG_NAME, identityConfigDir);
+        copyResource("scim2-schema-extension.config", identityConfigDir);
+        System.setProperty(CarbonBaseConstants.CARBON_HOME, carbonHome.toString());
+        ServerConfiguration.getInstance().init(configDir.resolve("carbon.xml").toString());
+
+        initDatabase();
+        SCIMConfigProcessor.getInstance().buildConfigFromFile(identityConfigDir
+                .resolve(SCIMCommonConstants.CHARON_CONFIG_NAME).toString());
+        SCIMUserSchemaExtensionBuilder.getInstance().buildUserSchemaExtension(identityConfigDir
+                .resolve("scim2-schema-extension.config").toString());
+        initServerURL(config.getPort());
+
+        List<String> secondaryDomainNames = new ArrayList<>();
+        for (int i = 1; i <= config.getSecondaryDomains(); i++) {
+            secondaryDomainNames.add(SECONDARY_DOMAIN_PREFIX + i);
+        }
+        InMemoryUserStore userStore = new InMemoryUserStore(secondaryDomainNames);
+        ClaimMappings claimMappings = new ClaimMappings();
+        InMemoryRealm realm = new InMemoryRealm(userStore, claimMappings.getClaimManager());
+        SCIMCommonComponentHolder.setRealmService(realm.getRealmService());
+        SCIMCommonComponentHolder.setExecutorService(Executors.newSingleThreadExecutor());
+        IdentityTenantUtil.setRealmService(realm.getRealmService());
+        IdentityClaimManagementServiceDataHolder.getInstance()
+                .setClaimManagementService(claimMappings.getClaimMetadataManagementService());
+
+        LoadTestEnvironment environment = new LoadTestEnvironment();
+        List<String> domainNames = new ArrayList<>();
+        domainNames.add(UserCoreConstants.PRIMARY_DEFAULT_DOMAIN_NAME);
+        domainNames.addAll(secondaryDomainNames);
+        environment.seedUsers(userStore, config.getUsers(), domainNames);
+        environment.seedGroups(userStore, config.getGroups(), config.getMembersPerGroup(), domainNames);
+        return environment;
+    }
+
+    public List<String> getUserIds() {
+
+        return userIds;
+    }
+
+    public List<String> getUserNames() {
+
+        return userNames;
+    }
+
+    public List<String> getGroupIds() {
+
+        return groupIds;
+    }
+
+    /**
+     * Get the name of a user not created yet, for the scenarios creating users.
+     *
+     * @return user name.
+     */
+    public String nextNewUserName() {
+
+        return USER_NAME_PREFIX + "." + runId + "." + createdUsers.incrementAndGet();
+    }
+
+    private void seedUsers(InMemoryUserStore userStore, int users, List<String> domainNames) throws Exception {
+
+        for (int i = 0; i < users; i++) {
+            String domainName = domainNames.get(i % domainNames.size());
+            String userName = USER_NAME_PREFIX + i;
+            if (!UserCoreConstants.PRIMARY_DEFAULT_DOMAIN_NAME.equals(domainName)) {
+                userName = domainName + UserCoreConstants.DOMAIN_SEPARATOR + userName;
+            }
+            String userId = UUID.randomUUID().toString();
+            String timestamp = SCIMDateTimeFormatter.formatNow();
+            Map<String, String> claims = new HashMap<>();
+            claims.put(InMemoryUserStore.USER_ID_CLAIM, userId);
+            claims.put("http://wso2.org/claims/created", timestamp);
+            claims.put("http://wso2.org/claims/modified", timestamp);
+            claims.put("http://wso2.org/claims/resourceType", "User");
+            claims.put("http://wso2.org/claims/givenname", "Given" + i);
+            claims.put("http://wso2.org/claims/lastname", "Family" + i);
+            claims.put("http://wso2.org/claims/displayName", "Load Test User " + i);
+            claims.put("http://wso2.org/claims/emails.work", USER_NAME_PREFIX + i + "@example.com");
+            claims.put("http://wso2.org/claims/mobile", String.format("+1555%07d", i));
+            claims.put("http://wso2.org/claims/title", "Engineer");
+            claims.put("http://wso2.org/claims/extendedRef", Integer.toString(i));
+            claims.put("http://wso2.org/claims/organization", "Example");
+            claims.put("http://wso2.org/claims/department", "Department" + (i % 10));
+            userStore.addUser(userName, null, null, claims, UserCoreConstants.DEFAULT_PROFILE);
+            userIds.add(userId);
+            userNames.add(userName);
+        }
+    }
+
+    private void seedGroups(InMemoryUserStore userStore, int groups, int membersPerGroup, List<String> domainNames)
+            throws Exception {
+
+        Random random = new Random(groups);
+        List<String> groupNames = new ArrayList<>();
+        for (int i = 0; i < groups; i++) {
+            int domainIndex = i % domainNames.size();
+            String domainName = domainNames.get(domainIndex);
+            String groupName = GROUP_NAME_PREFIX + i;
+            if (!UserCoreConstants.PRIMARY_DEFAULT_DOMAIN_NAME.equals(domainName)) {
+                groupName = domainName + UserCoreConstants.DOMAIN_SEPARATOR + groupName;
+            }
+            // Members are users of the domain of the group, whose indexes are congruent to the domain index.
+            int usersOfDomain = (userNames.size() - domainIndex + domainNames.size() - 1) / domainNames.size();
+            List<String> members = new ArrayList<>();
+            for (int j = 0; j < Math.min(membersPerGroup, usersOfDomain); j++) {
+                members.add(userNames.get(random.nextInt(usersOfDomain) * domainNames.size() + domainIndex));
+            }
+            userStore.addRole(groupName, members.toArray(new String[0]), null);
+            groupNames.add(groupName);
+        }
+
+        PrivilegedCarbonContext.startTenantFlow();
+        try {
+            PrivilegedCarbonContext carbonContext = PrivilegedCarbonContext.getThreadLocalCarbonContext();
+            carbonContext.setTenantDomain(MultitenantConstants.SUPER_TENANT_DOMAIN_NAME);
+            carbonContext.setTenantId(MultitenantConstants.SUPER_TENANT_ID);
+            SCIMGroupHandler groupHandler = new SCIMGroupHandler(MultitenantConstants.SUPER_TENANT_ID);
+            groupHandler.addMandatoryAttributes(groupNames);
+            for (String groupName : groupNames) {
+                groupIds.add(groupHandler.getGroupId(groupName));
+            }
+        } finally {
+            PrivilegedCarbonContext.endTenantFlow();
+        }
+    }
+
+    private static void initDatabase() throws Exception {
+
+        JdbcConnectionPool dataSource = JdbcConnectionPool.create(DATABASE_URL, "sa", "");
+        try (Connection connection = dataSource.getConnection();
+             Statement statement = connection.createStatement()) {
+            statement.execute("RUNSCRIPT FROM 'classpath:/idn-scim-group.sql'");
+        }
+        H2InitialContextFactory.setDataSource(dataSource);
+        System.setProperty(Context.INITIAL_CONTEXT_FACTORY, H2InitialContextFactory.class.getName());
+    }
+
+    /**
+     * Register the configuration context from which the locations of the SCIM resources are built.
+     */
+    private static void initServerURL(int port) throws AxisFault {
+
+        AxisConfiguration axisConfiguration = new AxisConfiguration();
+        TransportInDescription transportIn = new TransportInDescription("https");
+        transportIn.addParameter(new Parameter("port", Integer.toString(port)));
+        axisConfiguration.addTransportIn(transportIn);
+        ConfigurationContext configurationContext = new ConfigurationContext(axisConfiguration);
+        final ConfigurationContextService configurationContextService =
+                new ConfigurationContextService(configurationContext, configurationContext);
+        new IdentityCoreServiceComponent() {
+            {
+                setConfigurationContextService(configurationContextService);
+            }
+        };
+    }
+
+    private static void copyResource(String name, Path directory) throws IOException {
+
+        try (InputStream inputStream = LoadTestEnvironment.class.getClassLoader().getResourceAsStream(name)) {
+            if (inputStream == null) {
+                throw new IOException("Resource " + name + " is not found in the class path.");
+            }
+            Files.copy(inputStream, directory.resolve(name), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.wso2.carbon.identity.scim2.loadtests;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the load tests of the SCIM 2.0 endpoints. The endpoints are started in this JVM with the in-memory realm of
+ * {@link LoadTestEnvironment}, and each scenario is run by a number of threads for a fixed time after a warm up.
+ * Latency percentiles, throughput and errors are printed per scenario.
+ *
+ * The run is configured with system properties, e.g.
+ * java -Dscim2.loadtest.users=10000 -Dscim2.loadtest.threads=32 -Dscim2.loadtest.scenarios=getUser,filterUsers
+ * -jar load-tests.jar
+ */
+public class LoadTestRunner {
+
+    private LoadTestRunner() {
+
+    }
+
+    public static void main(String[] args) throws Exception {
+
+        LoadTestConfig config = LoadTestConfig.fromSystemProperties();
+        System.out.println("Load test configuration: " + config);
+        LoadTestEnvironment environment = LoadTestEnvironment.create(config);
+        LoadTestServer server = LoadTestServer.start(config.getPort());
+        ExecutorService executor = Executors.newFixedThreadPool(config.getThreads());
+        try {
+            ScimClient client = new ScimClient(server.getBaseURL());
+            List<String> reports = new ArrayList<>();
+            for (Scenario scenario : config.getScenarios()) {
+                System.out.println("Warming up " + scenario + " for " + config.getWarmupSeconds() + "s.");
+                run(executor, scenario, client, environment, config, config.getWarmupSeconds());
+                System.out.println("Running " + scenario + " for " + config.getDurationSeconds() + "s.");
+                List<LatencyRecorder> recorders = run(executor, scenario, client, environment, config,
+                        config.getDurationSeconds());
+                reports.add(LatencyRecorder.report(scenario.toString(), recorders, config.getDurationSeconds()));
+            }
+            System.out.println();
+            System.out.println(LatencyRecorder.reportHeader());
+            for (String report : reports) {
+                System.out.println(report);
+            }
+        } finally {
+            executor.shutdownNow();
+            server.stop();
+        }
+        System.exit(0);
+    }
+
+    private static List<LatencyRecorder> run(ExecutorService executor, final Scenario scenario,
+                                             final ScimClient client, final LoadTestEnvironment environment,
+                                             final LoadTestConfig config, int seconds) throws Exception {
+
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+        List<Future<LatencyRecorder>> futures = new ArrayList<>();
+        for (int i = 0; i < config.getThreads(); i++) {
+            final Random random = new Random(i);
+            futures.add(executor.submit(new Callable<LatencyRecorder>() {
+                @Override
+                public LatencyRecorder call() {
+
+                    LatencyRecorder recorder = new LatencyRecorder();
+                    while (System.nanoTime() < deadline) {
+                        long start = System.nanoTime();
+                        boolean successful;
+                        try {
+                            int status = scenario.execute(client, environment, config, random);
+                            successful = status >= 200 && status < 300;
+                        } catch (Exception e) {
+                            successful = false;
+                        }
+                        recorder.record(System.nanoTime() - start, successful);
+                    }
+                    return recorder;
+                }
+            }));
+        }
+        List<LatencyRecorder> recorders = new ArrayList<>();
+        for (Future<LatencyRecorder> future : futures) {
+            recorders.add(future.get());
+        }
+        return recorders;
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.wso2.carbon.identity.scim2.loadtests;
+
+import org.apache.cxf.endpoint.Server;
+import org.apache.cxf.jaxrs.JAXRSServerFactoryBean;
+import org.wso2.carbon.identity.scim2.provider.impl.SCIMRequestAccountingFilter;
+import org.wso2.carbon.identity.scim2.provider.impl.SCIMResponseCompressionFilter;
+import org.wso2.carbon.identity.scim2.provider.resources.BulkResource;
+import org.wso2.carbon.identity.scim2.provider.resources.GroupResource;
+import org.wso2.carbon.identity.scim2.provider.resources.ResourceTypesResource;
+import org.wso2.carbon.identity.scim2.provider.resources.ServiceProviderConfigResource;
+import org.wso2.carbon.identity.scim2.provider.resources.UserResource;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * SCIM 2.0 endpoints of the load tests, served by the resources of the SCIM 2.0 webapp on an embedded Jetty server,
+ * at the addresses of cxf-servlet.xml.
+ */
+public class LoadTestServer {
+
+    private final String baseURL;
+    private final List<Server> servers = new ArrayList<>();
+
+    private LoadTestServer(int port) {
+
+        this.baseURL = "http://localhost:" + port + "/scim2";
+    }
+
+    /**
+     * Start the endpoints on the given port.
+     *
+     * @param port HTTP port.
+     * @return started server.
+     */
+    public static LoadTestServer start(int port) {
+
+        LoadTestServer loadTestServer = new LoadTestServer(port);
+        Map<String, Object> resources = new LinkedHashMap<>();
+        resources.put("/Users", new UserResource());
+        resources.put("/Groups", new GroupResource());
+        resources.put("/Bulk", new BulkResource());
+        resources.put("/ServiceProviderConfig", new ServiceProviderConfigResource());
+        resources.put("/ResourceTypes", new ResourceTypesResource());
+        for (Map.Entry<String, Object> resource : resources.entrySet()) {
+            JAXRSServerFactoryBean serverFactory = new JAXRSServerFactoryBean();
+            serverFactory.setAddress(loadTestServer.baseURL + resource.getKey());
+            serverFactory.setServiceBean(resource.getValue());
+            serverFactory.getInInterceptors().add(new TenantContextInterceptor());
+            serverFactory.setProviders(Arrays.asList(new SCIMRequestAccountingFilter(),
+                    new SCIMResponseCompressionFilter()));
+            loadTestServer.servers.add(serverFactory.create());
+        }
+        return loadTestServer;
+    }
+
+    public String getBaseURL() {
+
+        return baseURL;
+    }
+
+    /**
+     * Stop the endpoints.
+     */
+    public void stop() {
+
+        for (Server server : servers) {
+            server.destroy();
+        }
+        servers.clear();
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.wso2.carbon.identity.scim2.loadtests;
+
+import java.io.IOException;
+import java.net.URLEncoder;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Request mixes of the load tests. Each execution sends one request for a random seeded user or group.
+ */
+public enum Scenario {
+
+    LIST_USERS("listUsers") {
+        @Override
+        int execute(ScimClient client, LoadTestEnvironment environment, LoadTestConfig config, Random random)
+                throws IOException {
+
+            return client.send("GET", "/Users?startIndex=1&count=100", null);
+        }
+    },
+    FILTER_USERS("filterUsers") {
+        @Override
+        int execute(ScimClient client, LoadTestEnvironment environment, LoadTestConfig config, Random random)
+                throws IOException {
+
+            String filter = "userName eq \"" + pick(environment.getUserNames(), random) + "\"";
+            return client.send("GET", "/Users?filter=" + URLEncoder.encode(filter, "UTF-8"), null);
+        }
+    },
+    GET_USER("getUser") {
+        @Override
+        int execute(ScimClient client, LoadTestEnvironment environment, LoadTestConfig config, Random random)
+                throws IOException {
+
+            return client.send("GET", "/Users/" + pick(environment.getUserIds(), random), null);
+        }
+    },
+    PUT_USER("putUser") {
+        @Override
+        int execute(ScimClient client, LoadTestEnvironment environment, LoadTestConfig config, Random random)
+                throws IOException {
+
+            int index = random.nextInt(environment.getUserIds().size());
+            String body = "{\"schemas\":[\"" + USER_SCHEMA + "\"],\"userName\":\"" +
+                    environment.getUserNames().get(index) + "\",\"name\":{\"givenName\":\"Given" + random.nextInt() +
+                    "\",\"familyName\":\"Family" + index + "\"},\"emails\":[{\"type\":\"work\",\"value\":\"user" +
+                    index + "@example.com\"}]}";
+            return client.send("PUT", "/Users/" + environment.getUserIds().get(index), body);
+        }
+    },
+    PATCH_USER("patchUser") {
+        @Override
+        int execute(ScimClient client, LoadTestEnvironment environment, LoadTestConfig config, Random random)
+                throws IOException {
+
+            String body = "{\"schemas\":[\"urn:ietf:params:scim:api:messages:2.0:PatchOp\"],\"Operations\":[" +
+                    "{\"op\":\"replace\",\"value\":{\"nickName\":\"nick" + random.nextInt() + "\"}}]}";
+            return client.send("PATCH", "/Users/" + pick(environment.getUserIds(), random), body);
+        }
+    },
+    BULK_CREATE_USERS("bulkCreateUsers") {
+        @Override
+        int execute(ScimClient client, LoadTestEnvironment environment, LoadTestConfig config, Random random)
+                throws IOException {
+
+            StringBuilder body = new StringBuilder("{\"schemas\":[\"urn:ietf:params:scim:api:messages:2.0:" +
+                    "BulkRequest\"],\"Operations\":[");
+            for (int i = 0; i < config.getBulkOperations(); i++) {
+                if (i > 0) {
+                    body.append(',');
+                }
+                body.append("{\"method\":\"POST\",\"path\":\"/Users\",\"bulkId\":\"user").append(i)
+                        .append("\",\"data\":{\"schemas\":[\"").append(USER_SCHEMA).append("\"],\"userName\":\"")
+                        .append(environment.nextNewUserName()).append("\",\"password\":\"Password1!\"}}");
+            }
+            body.append("]}");
+            return client.send("POST", "/Bulk", body.toString());
+        }
+    },
+    LIST_GROUPS("listGroups") {
+        @Override
+        int execute(ScimClient client, LoadTestEnvironment environment, LoadTestConfig config, Random random)
+                throws IOException {
+
+            return client.send("GET", "/Groups", null);
+        }
+    },
+    GET_GROUP("getGroup") {
+        @Override
+        int execute(ScimClient client, LoadTestEnvironment environment, LoadTestConfig config, Random random)
+                throws IOException {
+
+            return client.send("GET", "/Groups/" + pick(environment.getGroupIds(), random), null);
+        }
+    };
+
+    private static final String USER_SCHEMA = "urn:ietf:params:scim:schemas:core:2.0:User";
+
+    private final String name;
+
+    Scenario(String name) {
+
+        this.name = name;
+    }
+
+    /**
+     * Get the scenario with the given name.
+     *
+     * @param name scenario name, as listed in scim2.loadtest.scenarios.
+     * @return scenario.
+     */
+    public static Scenario fromName(String name) {
+
+        for (Scenario scenario : values()) {
+            if (scenario.name.equalsIgnoreCase(name)) {
+                return scenario;
+            }
+        }
+        throw new IllegalArgumentException("Unknown scenario: " + name);
+    }
+
+    /**
+     * Send one request of the scenario.
+     *
+     * @return HTTP status code of the response.
+     */
+    abstract int execute(ScimClient client, LoadTestEnvironment environment, LoadTestConfig config, Random random)
+            throws IOException;
+
+    @Override
+    public String toString() {
+
+        return name;
+    }
+
+    private static String pick(List<String> values, Random random) {
+
+        return values.get(random.nextInt(values.size()));
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.wso2.carbon.identity.scim2.loadtests;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Minimal SCIM 2.0 client of the load tests. Responses are read fully, so that the time of a request includes the
+ * transfer of the response.
+ */
+public class ScimClient {
+
+    private static final String SCIM_CONTENT_TYPE = "application/scim+json";
+    private static final String METHOD_OVERRIDE_HEADER = "X-HTTP-Method-Override";
+    private static final String PATCH = "PATCH";
+
+    private final String baseURL;
+
+    public ScimClient(String baseURL) {
+
+        this.baseURL = baseURL;
+    }
+
+    /**
+     * Send a request. PATCH requests are sent as POST requests overriding the method, since HttpURLConnection does
+     * not support PATCH.
+     *
+     * @param method HTTP method.
+     * @param path   path relative to the SCIM 2.0 base URL, with the query.
+     * @param body   JSON body, or null.
+     * @return HTTP status code.
+     * @throws IOException if the request cannot be sent.
+     */
+    public int send(String method, String path, String body) throws IOException {
+
+        HttpURLConnection connection = (HttpURLConnection) new URL(baseURL + path).openConnection();
+        if (PATCH.equals(method)) {
+            connection.setRequestMethod("POST");
+            connection.setRequestProperty(METHOD_OVERRIDE_HEADER, PATCH);
+        } else {
+            connection.setRequestMethod(method);
+        }
+        connection.setRequestProperty("Accept", SCIM_CONTENT_TYPE);
+        if (body != null) {
+            byte[] content = body.getBytes(StandardCharsets.UTF_8);
+            connection.setDoOutput(true);
+            connection.setRequestProperty("Content-Type", SCIM_CONTENT_TYPE);
+            connection.setFixedLengthStreamingMode(content.length);
+            try (OutputStream outputStream = connection.getOutputStream()) {
+                outputStream.write(content);
+            }
+        }
+        int status = connection.getResponseCode();
+        // Reads the response fully, so that the connection is kept alive for the next request of the thread.
+        InputStream inputStream = status < HttpURLConnection.HTTP_BAD_REQUEST ? connection.getInputStream() :
+                connection.getErrorStream();
+        if (inputStream != null) {
+            drain(inputStream);
+        }
+        return status;
+    }
+
+    private static void drain(InputStream inputStream) throws IOException {
+
+        try (InputStream stream = inputStream) {
+            byte[] buffer = new byte[8192];
+            while (stream.read(buffer) != -1) {
+                // Discards the response.
+            }
+        }
+    }
+}
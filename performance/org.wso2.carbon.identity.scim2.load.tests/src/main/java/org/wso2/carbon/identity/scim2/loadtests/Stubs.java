@@ -0,0 +1,130 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.wso2.carbon.identity.scim2.loadtests;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Stand-ins of the Carbon services used by the SCIM endpoints. A stand-in implements the service interfaces by
+ * calling the public methods of a target object with the same signatures. The rest of the methods do nothing and
+ * return the default value of their return type.
+ */
+public class Stubs {
+
+    private static final Map<Class<?>, Object> DEFAULT_VALUES = new HashMap<>();
+
+    static {
+        DEFAULT_VALUES.put(boolean.class, false);
+        DEFAULT_VALUES.put(byte.class, (byte) 0);
+        DEFAULT_VALUES.put(short.class, (short) 0);
+        DEFAULT_VALUES.put(char.class, (char) 0);
+        DEFAULT_VALUES.put(int.class, 0);
+        DEFAULT_VALUES.put(long.class, 0L);
+        DEFAULT_VALUES.put(float.class, 0F);
+        DEFAULT_VALUES.put(double.class, 0D);
+    }
+
+    private Stubs() {
+
+    }
+
+    /**
+     * Create a stand-in of the given interfaces.
+     *
+     * @param target     object implementing the used methods of the interfaces.
+     * @param type       main interface.
+     * @param extraTypes other interfaces implemented by the stand-in.
+     * @param <T>        type of the main interface.
+     * @return stand-in.
+     */
+    public static <T> T create(Object target, Class<T> type, Class<?>... extraTypes) {
+
+        Class<?>[] types = new Class<?>[extraTypes.length + 1];
+        types[0] = type;
+        System.arraycopy(extraTypes, 0, types, 1, extraTypes.length);
+        return type.cast(Proxy.newProxyInstance(Stubs.class.getClassLoader(), types, new Handler(target)));
+    }
+
+    private static class Handler implements InvocationHandler {
+
+        private static final Method NO_METHOD;
+
+        static {
+            try {
+                NO_METHOD = Object.class.getMethod("hashCode");
+            } catch (NoSuchMethodException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        private final Object target;
+        private final ConcurrentMap<Method, Method> targetMethods = new ConcurrentHashMap<>();
+
+        Handler(Object target) {
+
+            this.target = target;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+
+            if (method.getDeclaringClass() == Object.class) {
+                switch (method.getName()) {
+                    case "equals":
+                        return proxy == args[0];
+                    case "hashCode":
+                        return System.identityHashCode(proxy);
+                    default:
+                        return "Stand-in of " + target;
+                }
+            }
+            Method targetMethod = getTargetMethod(method);
+            if (targetMethod == NO_METHOD) {
+                return DEFAULT_VALUES.get(method.getReturnType());
+            }
+            try {
+                return targetMethod.invoke(target, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+
+        private Method getTargetMethod(Method method) {
+
+            Method targetMethod = targetMethods.get(method);
+            if (targetMethod == null) {
+                try {
+                    targetMethod = target.getClass().getMethod(method.getName(), method.getParameterTypes());
+                } catch (NoSuchMethodException e) {
+                    targetMethod = NO_METHOD;
+                }
+                targetMethods.put(method, targetMethod);
+            }
+            return targetMethod;
+        }
+    }
+}
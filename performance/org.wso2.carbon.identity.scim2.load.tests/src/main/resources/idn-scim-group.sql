@@ -0,0 +1,11 @@
+CREATE TABLE IF NOT EXISTS IDN_SCIM_GROUP (
+            ID INTEGER AUTO_INCREMENT,
+            TENANT_ID INTEGER NOT NULL,
+            ROLE_NAME VARCHAR(255) NOT NULL,
+            ATTR_NAME VARCHAR(1024) NOT NULL,
+            ATTR_VALUE VARCHAR(1024),
+            PRIMARY KEY (ID)
+);
+
+CREATE INDEX IDX_IDN_SCIM_GROUP_TI_RN ON IDN_SCIM_GROUP (TENANT_ID, ROLE_NAME);
+CREATE INDEX IDX_IDN_SCIM_GROUP_TI_RN_AN ON IDN_SCIM_GROUP (TENANT_ID, ROLE_NAME, ATTR_NAME);